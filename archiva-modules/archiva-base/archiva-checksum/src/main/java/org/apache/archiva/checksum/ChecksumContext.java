@@ -0,0 +1,246 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Context that shares the calculated checksums of files between different users, e.g. the consumers
+ * of a repository scan, so that each file is read only once.
+ * <p>
+ * If a checksum is requested for a file, all default algorithms of the context are calculated together
+ * in a single pass. The results are kept for the last recently used files and are dropped, if the size or the
+ * modification time of the file changes.
+ * </p>
+ * <p>
+ * The context is bound to the current thread by {@link #activate()}. {@link ChecksummedFile} uses the active
+ * context of the current thread, if there is one. Instances are not thread safe and should be used by one thread
+ * only.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class ChecksumContext
+{
+    private static final ThreadLocal<ChecksumContext> ACTIVE_CONTEXT = new ThreadLocal<>( );
+
+    static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private final Set<ChecksumAlgorithm> defaultAlgorithms;
+
+    private final Map<Path, FileChecksums> entries;
+
+    private long readCount = 0;
+
+    /**
+     * Creates a new context.
+     *
+     * @param defaultAlgorithms the algorithms that are always calculated, if a file is read
+     */
+    public ChecksumContext( Collection<ChecksumAlgorithm> defaultAlgorithms )
+    {
+        this( defaultAlgorithms, DEFAULT_MAX_ENTRIES );
+    }
+
+    /**
+     * Creates a new context.
+     *
+     * @param defaultAlgorithms the algorithms that are always calculated, if a file is read
+     * @param maxEntries        the maximum number of files, for that the checksums are kept
+     */
+    public ChecksumContext( Collection<ChecksumAlgorithm> defaultAlgorithms, final int maxEntries )
+    {
+        this.defaultAlgorithms = defaultAlgorithms.isEmpty( ) ? EnumSet.noneOf( ChecksumAlgorithm.class ) : EnumSet.copyOf( defaultAlgorithms );
+        // ASC is a signature, not a digest
+        this.defaultAlgorithms.remove( ChecksumAlgorithm.ASC );
+        this.entries = new LinkedHashMap<Path, FileChecksums>( maxEntries + 1, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Path, FileChecksums> eldest )
+            {
+                return size( ) > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the context that is active for the current thread, or <code>null</code>, if there is none.
+     */
+    public static ChecksumContext getActiveContext( )
+    {
+        return ACTIVE_CONTEXT.get( );
+    }
+
+    /**
+     * Binds this context to the current thread.
+     *
+     * @return the context that was active before, or <code>null</code>. Should be restored by {@link #deactivate(ChecksumContext)}
+     */
+    public ChecksumContext activate( )
+    {
+        ChecksumContext previous = ACTIVE_CONTEXT.get( );
+        ACTIVE_CONTEXT.set( this );
+        return previous;
+    }
+
+    /**
+     * Removes this context from the current thread and restores the given context.
+     *
+     * @param previous the context returned by {@link #activate()}
+     */
+    public void deactivate( ChecksumContext previous )
+    {
+        if ( previous == null )
+        {
+            ACTIVE_CONTEXT.remove( );
+        }
+        else
+        {
+            ACTIVE_CONTEXT.set( previous );
+        }
+    }
+
+    /**
+     * Returns the checksum of the given file. If the file was not read before, the checksums
+     * for all default algorithms and the given algorithm are calculated.
+     *
+     * @param file      the file
+     * @param algorithm the checksum algorithm
+     * @return the finished checksum. The instance must not be updated by the caller.
+     * @throws IOException if the file could not be read
+     */
+    public Checksum getChecksum( Path file, ChecksumAlgorithm algorithm ) throws IOException
+    {
+        return getChecksums( file, EnumSet.of( algorithm ) ).get( 0 );
+    }
+
+    /**
+     * Returns the checksums of the given file in the order of the given algorithms. All missing checksums are calculated
+     * in a single pass.
+     *
+     * @param file       the file
+     * @param algorithms the checksum algorithms
+     * @return the finished checksums. The instances must not be updated by the caller.
+     * @throws IOException if the file could not be read
+     */
+    public List<Checksum> getChecksums( Path file, Collection<ChecksumAlgorithm> algorithms ) throws IOException
+    {
+        Path key = file.toAbsolutePath( ).normalize( );
+        BasicFileAttributes attrs = Files.readAttributes( key, BasicFileAttributes.class );
+        FileChecksums entry = entries.get( key );
+        if ( entry == null || entry.size != attrs.size( ) || entry.lastModified != attrs.lastModifiedTime( ).toMillis( ) )
+        {
+            entry = new FileChecksums( attrs.size( ), attrs.lastModifiedTime( ).toMillis( ) );
+            entries.put( key, entry );
+        }
+
+        Set<ChecksumAlgorithm> missingAlgorithms = EnumSet.noneOf( ChecksumAlgorithm.class );
+        if ( entry.checksums.isEmpty( ) )
+        {
+            missingAlgorithms.addAll( defaultAlgorithms );
+        }
+        for ( ChecksumAlgorithm algorithm : algorithms )
+        {
+            if ( !entry.checksums.containsKey( algorithm ) )
+            {
+                missingAlgorithms.add( algorithm );
+            }
+        }
+        if ( !missingAlgorithms.isEmpty( ) )
+        {
+            List<Checksum> missing = ChecksumUtil.newChecksums( new ArrayList<>( missingAlgorithms ) );
+            ChecksumUtil.update( missing, key );
+            readCount++;
+            for ( Checksum checksum : missing )
+            {
+                entry.checksums.put( checksum.getAlgorithm( ), checksum );
+            }
+        }
+
+        List<Checksum> result = new ArrayList<>( algorithms.size( ) );
+        for ( ChecksumAlgorithm algorithm : algorithms )
+        {
+            result.add( entry.checksums.get( algorithm ) );
+        }
+        return result;
+    }
+
+    /**
+     * Adds checksums, that were calculated outside of this context, e.g. while the file was downloaded.
+     * The checksums are valid for the current size and modification time of the file.
+     *
+     * @param file      the file
+     * @param checksums the finished checksums of the file
+     * @throws IOException if the file attributes could not be read
+     */
+    public void putChecksums( Path file, Collection<Checksum> checksums ) throws IOException
+    {
+        Path key = file.toAbsolutePath( ).normalize( );
+        BasicFileAttributes attrs = Files.readAttributes( key, BasicFileAttributes.class );
+        FileChecksums entry = new FileChecksums( attrs.size( ), attrs.lastModifiedTime( ).toMillis( ) );
+        for ( Checksum checksum : checksums )
+        {
+            entry.checksums.put( checksum.getAlgorithm( ), checksum );
+        }
+        entries.put( key, entry );
+    }
+
+    /**
+     * Returns the number of times, a file was read by this context.
+     */
+    public long getReadCount( )
+    {
+        return readCount;
+    }
+
+    /**
+     * Removes all cached checksums.
+     */
+    public void clear( )
+    {
+        entries.clear( );
+    }
+
+    private static final class FileChecksums
+    {
+        final long size;
+
+        final long lastModified;
+
+        final Map<ChecksumAlgorithm, Checksum> checksums = new EnumMap<>( ChecksumAlgorithm.class );
+
+        FileChecksums( long size, long lastModified )
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -20,35 +20,48 @@
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
  * Utility class that handles multiple checksums for a single file.
+ * <p>
+ * All checksums are updated in a single pass over the file. Small files are read into a reusable
+ * direct buffer, large files are mapped into memory in big windows, so that only a few mappings are
+ * created per file.
+ * </p>
  */
 public class ChecksumUtil {
 
 
-    static final int BUFFER_SIZE = 32768;
+    static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Files with at least this size are mapped into memory, smaller files are read by the channel.
+     */
+    static final long MAPPING_THRESHOLD = 8 * 1024 * 1024;
+
+    /**
+     * The maximum size of a single memory mapping.
+     */
+    static final long MAPPING_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+        ThreadLocal.withInitial( ( ) -> ByteBuffer.allocateDirect( BUFFER_SIZE ) );
 
     public static void update(List<Checksum> checksumList, Path file ) throws IOException {
-        long fileSize;
         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ )) {
-            fileSize = channel.size();
-            long pos = 0;
-            while (pos < fileSize) {
-                long bufferSize = Math.min(BUFFER_SIZE, fileSize - pos);
-                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, bufferSize);
-                for (Checksum checksum : checksumList) {
-                    checksum.update(buffer);
-                    buffer.rewind();
-                }
-                fileSize = channel.size();
-                pos += BUFFER_SIZE;
+            long fileSize = channel.size();
+            if (fileSize >= MAPPING_THRESHOLD) {
+                updateMapped(checksumList, channel, fileSize);
+            } else {
+                updateBuffered(checksumList, channel);
             }
             for (Checksum checksum : checksumList) {
                 checksum.finish();
@@ -59,20 +72,34 @@ public static void update(List<Checksum> checksumList, Path file ) throws IOExce
     public static void update(Checksum checksum, Path file)
         throws IOException
     {
-        long fileSize;
-        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ )) {
-            fileSize = channel.size();
-            long pos = 0;
-            while (pos<fileSize)
-            {
-                long bufferSize = Math.min(BUFFER_SIZE, fileSize-pos);
-                MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, pos, bufferSize);
-                checksum.update( buffer );
-                buffer.rewind();
-                fileSize = channel.size();
-                pos += BUFFER_SIZE;
-            }
-            checksum.finish();
+        update( Collections.singletonList( checksum ), file );
+    }
+
+    private static void updateBuffered(List<Checksum> checksumList, FileChannel channel) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        buffer.clear();
+        // Reads until the end of the file, even if the file grows while reading
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            updateAll(checksumList, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void updateMapped(List<Checksum> checksumList, FileChannel channel, long fileSize) throws IOException {
+        long pos = 0;
+        while (pos < fileSize) {
+            long windowSize = Math.min(MAPPING_WINDOW_SIZE, fileSize - pos);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, windowSize);
+            updateAll(checksumList, buffer);
+            pos += windowSize;
+        }
+    }
+
+    private static void updateAll(List<Checksum> checksumList, ByteBuffer buffer) {
+        for (Checksum checksum : checksumList) {
+            buffer.rewind();
+            checksum.update(buffer);
         }
     }
 
@@ -96,12 +96,35 @@ private static Path getReferenceFile( Path checksumFile )
     public String calculateChecksum( ChecksumAlgorithm checksumAlgorithm )
         throws IOException
     {
-
+        ChecksumContext context = ChecksumContext.getActiveContext( );
+        if ( context != null )
+        {
+            return context.getChecksum( referenceFile, checksumAlgorithm ).getChecksum( );
+        }
         Checksum checksum = new Checksum( checksumAlgorithm );
         ChecksumUtil.update(checksum, referenceFile );
         return checksum.getChecksum( );
     }
 
+    /**
+     * Calculates the checksums for all given algorithms in a single pass. If a {@link ChecksumContext}
+     * is active for the current thread, already calculated checksums are reused.
+     *
+     * @param algorithms the algorithms to use
+     * @return the finished checksums in the order of the given algorithms
+     * @throws IOException if unable to calculate the checksums
+     */
+    public List<Checksum> calculateChecksums( List<ChecksumAlgorithm> algorithms )
+        throws IOException
+    {
+        ChecksumContext context = ChecksumContext.getActiveContext( );
+        if ( context != null )
+        {
+            return context.getChecksums( referenceFile, algorithms );
+        }
+        return ChecksumUtil.initializeChecksums( referenceFile, algorithms );
+    }
+
     /**
      * Writes a checksum file for the referenceFile.
      *
@@ -199,7 +222,7 @@ public boolean isValidChecksums( List<ChecksumAlgorithm> algorithms, boolean thr
         // Parse file once, for all checksums.
         try
         {
-            checksums = ChecksumUtil.initializeChecksums( referenceFile, algorithms );
+            checksums = calculateChecksums( algorithms );
         }
         catch (IOException e )
         {
@@ -280,7 +303,7 @@ public UpdateStatusList fixChecksums( List<ChecksumAlgorithm> algorithms )
         try
         {
             // Parse file once, for all checksums.
-            checksums = ChecksumUtil.initializeChecksums(getReferenceFile(), algorithms);
+            checksums = calculateChecksums( algorithms );
         }
         catch (IOException e )
         {
@@ -0,0 +1,115 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ChecksumContextTest
+ */
+public class ChecksumContextTest
+    extends AbstractChecksumTestCase
+{
+    private Path copyResource( String filename )
+        throws Exception
+    {
+        Path srcFile = getTestResource( filename );
+        Path destFile = getTestOutputDir( ).resolve( srcFile.getFileName( ) );
+        Files.copy( srcFile, destFile, StandardCopyOption.REPLACE_EXISTING );
+        return destFile;
+    }
+
+    @Test
+    public void testFileIsReadOnce( )
+        throws Exception
+    {
+        Path jarFile = copyResource( "examples/redback-authz-open.jar" );
+        copyResource( "examples/redback-authz-open.jar.sha1" );
+        copyResource( "examples/redback-authz-open.jar.md5" );
+        String expectedSha1 = new ChecksummedFile( jarFile ).calculateChecksum( ChecksumAlgorithm.SHA1 );
+        String expectedMd5 = new ChecksummedFile( jarFile ).calculateChecksum( ChecksumAlgorithm.MD5 );
+
+        ChecksumContext context = new ChecksumContext( Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 ) );
+        ChecksumContext previous = context.activate( );
+        try
+        {
+            ChecksummedFile checksummedFile = new ChecksummedFile( jarFile );
+            assertEquals( expectedSha1, checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA1 ) );
+            assertEquals( expectedMd5, checksummedFile.calculateChecksum( ChecksumAlgorithm.MD5 ) );
+            assertTrue( checksummedFile.isValidChecksums( Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 ) ) );
+            assertEquals( 1, context.getReadCount( ) );
+
+            // Not a default algorithm, needs a second pass
+            checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA256 );
+            checksummedFile.calculateChecksum( ChecksumAlgorithm.SHA256 );
+            assertEquals( 2, context.getReadCount( ) );
+        }
+        finally
+        {
+            context.deactivate( previous );
+        }
+        assertNull( ChecksumContext.getActiveContext( ) );
+    }
+
+    @Test
+    public void testChangedFileIsReadAgain( )
+        throws Exception
+    {
+        Path jarFile = copyResource( "examples/redback-keys-api.jar" );
+        Path otherFile = copyResource( "examples/redback-authz-open.jar" );
+        ChecksumContext context = new ChecksumContext( Arrays.asList( ChecksumAlgorithm.SHA1 ) );
+
+        List<Checksum> checksums = context.getChecksums( jarFile, Arrays.asList( ChecksumAlgorithm.SHA1 ) );
+        String firstSha1 = checksums.get( 0 ).getChecksum( );
+
+        Files.copy( otherFile, jarFile, StandardCopyOption.REPLACE_EXISTING );
+        Files.setLastModifiedTime( jarFile, FileTime.fromMillis( System.currentTimeMillis( ) + 10000 ) );
+        String secondSha1 = context.getChecksum( jarFile, ChecksumAlgorithm.SHA1 ).getChecksum( );
+
+        assertEquals( 2, context.getReadCount( ) );
+        assertNotEquals( firstSha1, secondSha1 );
+        assertEquals( new ChecksummedFile( otherFile ).calculateChecksum( ChecksumAlgorithm.SHA1 ), secondSha1 );
+    }
+
+    @Test
+    public void testPutChecksums( )
+        throws Exception
+    {
+        Path jarFile = copyResource( "examples/redback-authz-open.jar" );
+        byte[] content = Files.readAllBytes( jarFile );
+        Checksum sha1 = new Checksum( ChecksumAlgorithm.SHA1 ).update( content, 0, content.length ).finish( );
+
+        ChecksumContext context = new ChecksumContext( Arrays.asList( ChecksumAlgorithm.SHA1 ) );
+        context.putChecksums( jarFile, Arrays.asList( sha1 ) );
+
+        assertEquals( new ChecksummedFile( jarFile ).calculateChecksum( ChecksumAlgorithm.SHA1 ),
+            context.getChecksum( jarFile, ChecksumAlgorithm.SHA1 ).getChecksum( ) );
+        assertEquals( 0, context.getReadCount( ) );
+    }
+}
@@ -0,0 +1,77 @@
+package org.apache.archiva.checksum;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ChecksumUtilTest
+ */
+public class ChecksumUtilTest
+    extends AbstractChecksumTestCase
+{
+    private void assertChecksums( int size )
+        throws Exception
+    {
+        byte[] content = new byte[size];
+        new Random( size ).nextBytes( content );
+        Path file = getTestOutputDir( ).resolve( "file-" + size + ".bin" );
+        Files.write( file, content );
+
+        List<ChecksumAlgorithm> algorithms = Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.SHA256 );
+        List<Checksum> checksums = ChecksumUtil.initializeChecksums( file, algorithms );
+        for ( int i = 0; i < algorithms.size( ); i++ )
+        {
+            byte[] expected = MessageDigest.getInstance( algorithms.get( i ).getAlgorithm( ) ).digest( content );
+            Assert.assertEquals( "Checksum " + algorithms.get( i ) + " of " + size + " bytes", Hex.encode( expected ),
+                checksums.get( i ).getChecksum( ) );
+        }
+    }
+
+    @Test
+    public void testEmptyFile( )
+        throws Exception
+    {
+        assertChecksums( 0 );
+    }
+
+    @Test
+    public void testBufferedFile( )
+        throws Exception
+    {
+        assertChecksums( 1024 );
+        assertChecksums( ChecksumUtil.BUFFER_SIZE * 3 + 17 );
+    }
+
+    @Test
+    public void testMappedFile( )
+        throws Exception
+    {
+        assertChecksums( (int) ChecksumUtil.MAPPING_THRESHOLD + 4711 );
+    }
+}
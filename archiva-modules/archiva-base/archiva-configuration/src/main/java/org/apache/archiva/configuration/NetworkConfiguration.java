@@ -51,6 +51,12 @@
      */
     private boolean usePooling = true;
 
+    /**
+     * stream proxied artifacts to the client while they are
+     * downloaded, default false.
+     */
+    private boolean streamingDownloads = false;
+
 
       //-----------/
      //- Methods -/
@@ -86,6 +92,17 @@ public boolean isUsePooling()
         return this.usePooling;
     } //-- boolean isUsePooling()
 
+    /**
+     * Get stream proxied artifacts to the client while they are
+     * downloaded, default false.
+     * 
+     * @return boolean
+     */
+    public boolean isStreamingDownloads()
+    {
+        return this.streamingDownloads;
+    } //-- boolean isStreamingDownloads()
+
     /**
      * Set maximum total external http connections.
      * 
@@ -116,4 +133,15 @@ public void setUsePooling( boolean usePooling )
         this.usePooling = usePooling;
     } //-- void setUsePooling( boolean )
 
+    /**
+     * Set stream proxied artifacts to the client while they are
+     * downloaded, default false.
+     * 
+     * @param streamingDownloads
+     */
+    public void setStreamingDownloads( boolean streamingDownloads )
+    {
+        this.streamingDownloads = streamingDownloads;
+    } //-- void setStreamingDownloads( boolean )
+
 }
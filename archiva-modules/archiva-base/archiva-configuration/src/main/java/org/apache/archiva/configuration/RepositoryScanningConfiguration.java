@@ -48,6 +48,24 @@
      */
     private java.util.List<String> invalidContentConsumers;
 
+    /**
+     * The default number of threads used for scanning a
+     * repository. A value of 1 scans the repository serially.
+     */
+    private int scanParallelism = 1;
+
+    /**
+     * Field repositoryScanParallelism.
+     */
+    private java.util.Map repositoryScanParallelism;
+
+    /**
+     * True, if a journal of the scanned directories is kept for
+     * each repository, that is used by incremental scans to skip
+     * unchanged directories.
+     */
+    private boolean scanJournal = false;
+
 
       //-----------/
      //- Methods -/
@@ -83,6 +101,17 @@ public void addKnownContentConsumer( String string )
         getKnownContentConsumers().add( string );
     } //-- void addKnownContentConsumer( String )
 
+    /**
+     * Method addRepositoryScanParallelism.
+     * 
+     * @param key
+     * @param value
+     */
+    public void addRepositoryScanParallelism( Object key, String value )
+    {
+        getRepositoryScanParallelism().put( key, value );
+    } //-- void addRepositoryScanParallelism( Object, String )
+
     /**
      * Method getFileTypes.
      * 
@@ -128,6 +157,44 @@ public java.util.List<String> getKnownContentConsumers()
         return this.knownContentConsumers;
     } //-- java.util.List<String> getKnownContentConsumers()
 
+    /**
+     * Method getRepositoryScanParallelism.
+     * 
+     * @return Map
+     */
+    public java.util.Map getRepositoryScanParallelism()
+    {
+        if ( this.repositoryScanParallelism == null )
+        {
+            this.repositoryScanParallelism = new java.util.HashMap();
+        }
+
+        return this.repositoryScanParallelism;
+    } //-- java.util.Map getRepositoryScanParallelism()
+
+    /**
+     * Get the default number of threads used for scanning a
+     * repository. A value of 1 scans the repository serially.
+     * 
+     * @return int
+     */
+    public int getScanParallelism()
+    {
+        return this.scanParallelism;
+    } //-- int getScanParallelism()
+
+    /**
+     * Get true, if a journal of the scanned directories is kept
+     * for each repository, that is used by incremental scans to
+     * skip unchanged directories.
+     * 
+     * @return boolean
+     */
+    public boolean isScanJournal()
+    {
+        return this.scanJournal;
+    } //-- boolean isScanJournal()
+
     /**
      * Method removeFileType.
      * 
@@ -188,4 +255,38 @@ public void setKnownContentConsumers( java.util.List<String> knownContentConsume
         this.knownContentConsumers = knownContentConsumers;
     } //-- void setKnownContentConsumers( java.util.List )
 
+    /**
+     * Set the number of scanning threads per repository. The
+     * key is the repository id, the value the number of threads.
+     * 
+     * @param repositoryScanParallelism
+     */
+    public void setRepositoryScanParallelism( java.util.Map repositoryScanParallelism )
+    {
+        this.repositoryScanParallelism = repositoryScanParallelism;
+    } //-- void setRepositoryScanParallelism( java.util.Map )
+
+    /**
+     * Set true, if a journal of the scanned directories is kept
+     * for each repository, that is used by incremental scans to
+     * skip unchanged directories.
+     * 
+     * @param scanJournal
+     */
+    public void setScanJournal( boolean scanJournal )
+    {
+        this.scanJournal = scanJournal;
+    } //-- void setScanJournal( boolean )
+
+    /**
+     * Set the default number of threads used for scanning a
+     * repository. A value of 1 scans the repository serially.
+     * 
+     * @param scanParallelism
+     */
+    public void setScanParallelism( int scanParallelism )
+    {
+        this.scanParallelism = scanParallelism;
+    } //-- void setScanParallelism( int )
+
 }
@@ -1201,6 +1201,12 @@ private RepositoryScanningConfiguration readRepositoryScanningConfiguration(Stri
         java.util.List invalidContentConsumers = new java.util.ArrayList/*<String>*/();
         invalidContentConsumers.addAll(registry.getList(prefix + "invalidContentConsumers.invalidContentConsumer"));
         value.setInvalidContentConsumers(invalidContentConsumers);
+        int scanParallelism = registry.getInt(prefix + "scanParallelism", value.getScanParallelism());
+        value.setScanParallelism(scanParallelism);
+        java.util.Map repositoryScanParallelism = registry.getProperties(prefix + "repositoryScanParallelism");
+        value.setRepositoryScanParallelism(repositoryScanParallelism);
+        boolean scanJournal = registry.getBoolean(prefix + "scanJournal", value.isScanJournal());
+        value.setScanJournal(scanJournal);
 
         return value;
     }
@@ -1335,6 +1341,8 @@ private NetworkConfiguration readNetworkConfiguration(String prefix, Registry re
         value.setMaxTotalPerHost(maxTotalPerHost);
         boolean usePooling = registry.getBoolean(prefix + "usePooling", value.isUsePooling());
         value.setUsePooling(usePooling);
+        boolean streamingDownloads = registry.getBoolean(prefix + "streamingDownloads", value.isStreamingDownloads());
+        value.setStreamingDownloads(streamingDownloads);
 
         return value;
     }
@@ -780,6 +780,27 @@ private void writeRepositoryScanningConfiguration(String prefix, RepositoryScann
                     registry.setString(prefix + name, invalidContentConsumer);
                 }
             }
+            if (value.getScanParallelism() != 1
+            ) {
+                String scanParallelism = "scanParallelism";
+                registry.setInt(prefix + scanParallelism, value.getScanParallelism());
+            }
+            if (value.getRepositoryScanParallelism() != null && value.getRepositoryScanParallelism().size() > 0
+            ) {
+                registry.removeSubset(prefix + "repositoryScanParallelism");
+
+                for (Iterator iter = value.getRepositoryScanParallelism().keySet().iterator(); iter.hasNext(); ) {
+                    String key = (String) iter.next();
+                    String v = (String) value.getRepositoryScanParallelism().get(key);
+
+                    registry.setString(prefix + "repositoryScanParallelism." + key, v);
+                }
+            }
+            if (value.isScanJournal() != false
+            ) {
+                String scanJournal = "scanJournal";
+                registry.setBoolean(prefix + scanJournal, value.isScanJournal());
+            }
         }
     }
 
@@ -865,6 +886,11 @@ private void writeNetworkConfiguration(String prefix, NetworkConfiguration value
             }
             String usePooling = "usePooling";
             registry.setBoolean(prefix + usePooling, value.isUsePooling());
+            if (value.isStreamingDownloads() != false
+            ) {
+                String streamingDownloads = "streamingDownloads";
+                registry.setBoolean(prefix + streamingDownloads, value.isStreamingDownloads());
+            }
         }
     }
 
@@ -53,4 +53,16 @@
      * @param monitor the monitor to remove.
      */
     void removeConsumerMonitor( ConsumerMonitor monitor );
+
+    /**
+     * Returns <code>true</code>, if this consumer may process files from different threads
+     * at the same time. Consumers that are not thread safe are always called serially by the
+     * repository scanner, even if the scan itself runs in parallel.
+     *
+     * @return <code>true</code>, if the processing methods can be called concurrently, otherwise <code>false</code>
+     */
+    default boolean isThreadSafe()
+    {
+        return false;
+    }
 }
@@ -179,6 +179,14 @@ public void processFile( String path, boolean executeOnEntireRepo )
     }
 
 
+    @Override
+    public boolean isThreadSafe( )
+    {
+        // repositoryDir and algorithms are only set by beginScan() and initialize(), each worker writes the
+        // checksum files of its own artifact
+        return true;
+    }
+
     /*
     @Override
     public void afterConfigurationChange( Registry registry, String propertyName, Object propertyValue )
@@ -156,6 +156,14 @@ public void processFile( String path, boolean executeOnEntireReDpo )
         processFile( path );
     }
 
+    @Override
+    public boolean isThreadSafe( )
+    {
+        // repositoryDir is only set by beginScan(), the checksums are computed with the thread-local checksum
+        // context and read buffer of the worker
+        return true;
+    }
+
     @PostConstruct
     public void initialize( )
     {
@@ -46,14 +46,23 @@
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.time.Clock;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Take an artifact off of disk and put it into the metadata repository.
+ * <p>
+ * The metadata is saved in batches with one repository session for the whole scan. A batch is saved, if it contains
+ * {@link #setBatchSize(int) batchSize} artifacts, if {@link #setBatchTimeMillis(long) batchTimeMillis} have passed
+ * since its first artifact, or at the end of the scan.
+ * </p>
  */
 @Service ("knownRepositoryContentConsumer#create-archiva-metadata")
 @Scope ("prototype")
@@ -93,6 +102,44 @@
 
     private String repoId;
 
+    /**
+     * Number of attempts for saving a batch, before the artifacts are saved one by one
+     */
+    private static final int MAX_RETRIES = 1;
+
+    /**
+     * Number of cached project versions. Artifacts of the same version are found close to each other by the scan.
+     */
+    private static final int VERSION_CACHE_SIZE = 100;
+
+    private int batchSize = 100;
+
+    private long batchTimeMillis = 5000;
+
+    /**
+     * The clock of the batch time
+     */
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * The session is kept open for the whole scan
+     */
+    private RepositorySession repositorySession;
+
+    private final List<PendingArtifact> pending = new ArrayList<>();
+
+    private long batchStarted;
+
+    private final Map<String, ProjectVersionMetadata> versionMetadataCache =
+        new LinkedHashMap<String, ProjectVersionMetadata>( VERSION_CACHE_SIZE, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, ProjectVersionMetadata> eldest )
+            {
+                return size() > VERSION_CACHE_SIZE;
+            }
+        };
+
     @Override
     public String getId()
     {
@@ -121,6 +168,9 @@ public List<String> getIncludes()
     public void beginScan( ManagedRepository repo, Date whenGathered )
         throws ConsumerException
     {
+        // artifacts of a scan, that was not completed, belong to the previous repository
+        flush();
+        versionMetadataCache.clear();
         repoId = repo.getId();
         this.whenGathered = ZonedDateTime.ofInstant(whenGathered.toInstant(), ZoneId.of("GMT"));
     }
@@ -136,16 +186,6 @@ public void beginScan( ManagedRepository repository, Date whenGathered, boolean
     public void processFile( String path )
         throws ConsumerException
     {
-
-        RepositorySession repositorySession = null;
-        try
-        {
-            repositorySession = repositorySessionFactory.createSession();
-        }
-        catch ( MetadataRepositoryException e )
-        {
-            e.printStackTrace( );
-        }
         try
         {
             // note that we do minimal processing including checksums and POM information for performance of
@@ -160,74 +200,158 @@ public void processFile( String path )
 
             String projectVersion = VersionUtil.getBaseVersion( artifact.getVersion() );
 
-            MetadataRepository metadataRepository = repositorySession.getRepository();
+            ProjectVersionMetadata versionMetadata = getVersionMetadata( path, artifact, projectVersion );
+
+            // read the metadata and update it if it is newer or doesn't exist
+            artifact.setWhenGathered( whenGathered );
+            if ( pending.isEmpty() )
+            {
+                batchStarted = clock.millis();
+            }
+            pending.add( new PendingArtifact( path, artifact, project, projectVersion, versionMetadata ) );
+        }
+        catch ( RepositoryStorageRuntimeException e )
+        {
+            log.warn(
+                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
+                path, repoId, e.getMessage(), e );
+        }
+
+        if ( pending.size() >= batchSize || clock.millis() - batchStarted >= batchTimeMillis )
+        {
+            flush();
+        }
+    }
 
-            boolean createVersionMetadata = false;
+    /**
+     * Returns the metadata of the project version, or <code>null</code> if the POM is invalid and the version
+     * should not be updated. The metadata is cached, so sibling artifacts of a version read the POM only once.
+     */
+    private ProjectVersionMetadata getVersionMetadata( String path, ArtifactMetadata artifact, String projectVersion )
+    {
+        String key = artifact.getNamespace() + ":" + artifact.getProject() + ":" + projectVersion;
+        if ( versionMetadataCache.containsKey( key ) )
+        {
+            return versionMetadataCache.get( key );
+        }
+        ProjectVersionMetadata versionMetadata = null;
+        try
+        {
+            ReadMetadataRequest readMetadataRequest =
+                new ReadMetadataRequest().repositoryId( repoId ).namespace( artifact.getNamespace() ).projectId(
+                    artifact.getProject() ).projectVersion( projectVersion );
+            versionMetadata = repositoryStorage.readProjectVersionMetadata( readMetadataRequest );
+        }
+        catch ( RepositoryStorageMetadataNotFoundException e )
+        {
+            log.warn( "Missing or invalid POM for artifact:{} (repository:{}); creating empty metadata", path,
+                      repoId );
+
+            versionMetadata = new ProjectVersionMetadata();
+            versionMetadata.setId( projectVersion );
+            versionMetadata.setIncomplete( true );
+        }
+        catch ( RepositoryStorageMetadataInvalidException e )
+        {
+            log.warn( "Error occurred resolving POM for artifact:{} (repository:{}); message: {}",
+                      new Object[]{ path, repoId, e.getMessage() } );
+        }
+        versionMetadataCache.put( key, versionMetadata );
+        return versionMetadata;
+    }
 
-            // FIXME: maybe not too efficient since it may have already been read and stored for this artifact
-            ProjectVersionMetadata versionMetadata = null;
+    /**
+     * Saves the pending artifacts. If saving the batch fails, it is retried once with a new session. If it fails
+     * again, the artifacts are saved one by one, so only the broken ones are skipped.
+     */
+    private void flush()
+    {
+        if ( pending.isEmpty() )
+        {
+            return;
+        }
+        List<PendingArtifact> batch = new ArrayList<>( pending );
+        pending.clear();
+        for ( int attempt = 0; attempt <= MAX_RETRIES; attempt++ )
+        {
             try
             {
-                ReadMetadataRequest readMetadataRequest =
-                    new ReadMetadataRequest().repositoryId( repoId ).namespace( artifact.getNamespace() ).projectId(
-                        artifact.getProject() ).projectVersion( projectVersion );
-                versionMetadata = repositoryStorage.readProjectVersionMetadata( readMetadataRequest );
-                createVersionMetadata = true;
+                save( batch );
+                return;
             }
-            catch ( RepositoryStorageMetadataNotFoundException e )
+            catch ( MetadataRepositoryException | MetadataSessionException | RepositoryStorageRuntimeException e )
             {
-                log.warn( "Missing or invalid POM for artifact:{} (repository:{}); creating empty metadata", path,
-                          repoId );
-
-                versionMetadata = new ProjectVersionMetadata();
-                versionMetadata.setId( projectVersion );
-                versionMetadata.setIncomplete( true );
-                createVersionMetadata = true;
+                log.warn( "Error occurred persisting metadata of {} artifacts (repository:{}); message: {}",
+                          batch.size(), repoId, e.getMessage() );
+                discardSession();
             }
-            catch ( RepositoryStorageMetadataInvalidException e )
+        }
+        for ( PendingArtifact artifact : batch )
+        {
+            try
             {
-                log.warn( "Error occurred resolving POM for artifact:{} (repository:{}); message: {}",
-                          new Object[]{ path, repoId, e.getMessage() } );
+                save( Collections.singletonList( artifact ) );
             }
-
-            // read the metadata and update it if it is newer or doesn't exist
-            artifact.setWhenGathered( whenGathered );
-            metadataRepository.updateArtifact(repositorySession , repoId, project.getNamespace(), project.getId(),
-                projectVersion, artifact );
-            if ( createVersionMetadata )
+            catch ( MetadataRepositoryException | MetadataSessionException | RepositoryStorageRuntimeException e )
             {
-                metadataRepository.updateProjectVersion(repositorySession , repoId, project.getNamespace(),
-                    project.getId(), versionMetadata );
+                log.warn( "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
+                          artifact.path, repoId, e.getMessage(), e );
+                discardSession();
             }
-            metadataRepository.updateProject(repositorySession , repoId, project );
-            repositorySession.save();
         }
-        catch ( MetadataRepositoryException e )
+    }
+
+    private void save( List<PendingArtifact> artifacts )
+        throws MetadataRepositoryException, MetadataSessionException
+    {
+        if ( repositorySession == null )
         {
-            log.warn(
-                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}" ,
-                path, repoId, e.getMessage(), e );
-            try {
-                repositorySession.revert();
-            } catch (MetadataSessionException ex) {
-                log.error("Reverting failed {}", ex.getMessage());
+            repositorySession = repositorySessionFactory.createSession();
+        }
+        MetadataRepository metadataRepository = repositorySession.getRepository();
+
+        // sibling artifacts of a version update the version and the project only once
+        Map<String, PendingArtifact> versions = new LinkedHashMap<>();
+        Map<String, ProjectMetadata> projects = new LinkedHashMap<>();
+        for ( PendingArtifact pendingArtifact : artifacts )
+        {
+            ProjectMetadata project = pendingArtifact.project;
+            metadataRepository.updateArtifact( repositorySession, repoId, project.getNamespace(), project.getId(),
+                pendingArtifact.projectVersion, pendingArtifact.artifact );
+            String projectKey = project.getNamespace() + ":" + project.getId();
+            if ( pendingArtifact.versionMetadata != null )
+            {
+                versions.put( projectKey + ":" + pendingArtifact.projectVersion, pendingArtifact );
             }
+            projects.putIfAbsent( projectKey, project );
         }
-        catch ( RepositoryStorageRuntimeException e )
+        for ( PendingArtifact pendingArtifact : versions.values() )
         {
-            log.warn(
-                "Error occurred persisting metadata for artifact:{} (repository:{}); message: {}",
-                path, repoId, e.getMessage(), e );
-            try {
+            metadataRepository.updateProjectVersion( repositorySession, repoId,
+                pendingArtifact.project.getNamespace(), pendingArtifact.project.getId(),
+                pendingArtifact.versionMetadata );
+        }
+        for ( ProjectMetadata project : projects.values() )
+        {
+            metadataRepository.updateProject( repositorySession, repoId, project );
+        }
+        repositorySession.save();
+    }
+
+    private void discardSession()
+    {
+        if ( repositorySession != null )
+        {
+            try
+            {
                 repositorySession.revert();
-            } catch (MetadataSessionException ex) {
-                log.error("Reverting failed {}", ex.getMessage());
             }
-        } catch (MetadataSessionException e) {
-            throw new ConsumerException(e.getMessage(), e);
-        } finally
-        {
-            repositorySession.close();
+            catch ( MetadataSessionException ex )
+            {
+                log.error( "Reverting failed {}", ex.getMessage() );
+            }
+            repositorySession.closeQuietly();
+            repositorySession = null;
         }
     }
 
@@ -241,7 +365,13 @@ public void processFile( String path, boolean executeOnEntireRepo )
     @Override
     public void completeScan()
     {
-        /* do nothing */
+        flush();
+        if ( repositorySession != null )
+        {
+            repositorySession.close();
+            repositorySession = null;
+        }
+        versionMetadataCache.clear();
     }
 
     @Override
@@ -277,4 +407,59 @@ public void initialize()
 
         initIncludes();
     }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the maximum number of artifacts, that are saved together
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeMillis()
+    {
+        return batchTimeMillis;
+    }
+
+    /**
+     * @param batchTimeMillis the time after the first artifact of a batch, after which the batch is saved with the
+     *                        next processed file or at the end of the scan
+     */
+    public void setBatchTimeMillis( long batchTimeMillis )
+    {
+        this.batchTimeMillis = batchTimeMillis;
+    }
+
+    void setClock( Clock clock )
+    {
+        this.clock = clock;
+    }
+
+    private static final class PendingArtifact
+    {
+        final String path;
+
+        final ArtifactMetadata artifact;
+
+        final ProjectMetadata project;
+
+        final String projectVersion;
+
+        final ProjectVersionMetadata versionMetadata;
+
+        PendingArtifact( String path, ArtifactMetadata artifact, ProjectMetadata project, String projectVersion,
+                         ProjectVersionMetadata versionMetadata )
+        {
+            this.path = path;
+            this.artifact = artifact;
+            this.project = project;
+            this.projectVersion = projectVersion;
+            this.versionMetadata = versionMetadata;
+        }
+    }
 }
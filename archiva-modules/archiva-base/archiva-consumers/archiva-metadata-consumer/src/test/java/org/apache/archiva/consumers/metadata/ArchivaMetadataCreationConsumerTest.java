@@ -0,0 +1,259 @@
+package org.apache.archiva.consumers.metadata;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.model.ProjectMetadata;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
+import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataSessionException;
+import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.RepositorySessionFactory;
+import org.apache.archiva.metadata.repository.storage.ReadMetadataRequest;
+import org.apache.archiva.metadata.repository.storage.RepositoryStorage;
+import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.*;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ArchivaMetadataCreationConsumerTest
+{
+    private static final String TEST_REPO_ID = "internal";
+
+    private static final String NAMESPACE = "org.apache.archiva";
+
+    @Mock
+    private RepositorySessionFactory repositorySessionFactory;
+
+    @Mock
+    private RepositoryStorage repositoryStorage;
+
+    @Mock
+    private RepositorySession repositorySession;
+
+    @Mock
+    private MetadataRepository metadataRepository;
+
+    @Mock
+    private ManagedRepository repository;
+
+    @InjectMocks
+    private ArchivaMetadataCreationConsumer consumer;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        MockitoAnnotations.initMocks( this );
+        when( repositorySessionFactory.createSession() ).thenReturn( repositorySession );
+        when( repositorySession.getRepository() ).thenReturn( metadataRepository );
+        when( repository.getId() ).thenReturn( TEST_REPO_ID );
+        when( repositoryStorage.readProjectVersionMetadata( any( ReadMetadataRequest.class ) ) ).thenReturn(
+            new ProjectVersionMetadata() );
+
+        consumer.setBatchSize( 2 );
+        consumer.setBatchTimeMillis( 60000 );
+        consumer.beginScan( repository, new Date() );
+    }
+
+    @Test
+    public void testBatchIsSavedWhenItIsFull()
+        throws Exception
+    {
+        ArtifactMetadata first = processArtifact( "archiva-common", "1.0" );
+        verify( repositorySession, never() ).save();
+
+        ArtifactMetadata second = processArtifact( "archiva-common", "1.1" );
+        verify( repositorySession, times( 1 ) ).save();
+        verifyUpdated( first, 1 );
+        verifyUpdated( second, 1 );
+
+        processArtifact( "archiva-proxy", "1.0" );
+        verify( repositorySession, times( 1 ) ).save();
+        // the same session is used for the whole scan
+        verify( repositorySessionFactory, times( 1 ) ).createSession();
+    }
+
+    @Test
+    public void testBatchIsSavedAfterTheBatchTime()
+        throws Exception
+    {
+        Clock start = Clock.fixed( Instant.parse( "2020-01-01T00:00:00Z" ), ZoneOffset.UTC );
+        consumer.setClock( start );
+        consumer.setBatchSize( 100 );
+        consumer.setBatchTimeMillis( 50 );
+
+        ArtifactMetadata first = processArtifact( "archiva-common", "1.0" );
+        consumer.setClock( Clock.offset( start, Duration.ofMillis( 49 ) ) );
+        processArtifact( "archiva-proxy", "1.0" );
+        verify( repositorySession, never() ).save();
+
+        consumer.setClock( Clock.offset( start, Duration.ofMillis( 50 ) ) );
+        ArtifactMetadata second = processArtifact( "archiva-common", "1.1" );
+        verify( repositorySession, times( 1 ) ).save();
+        verifyUpdated( first, 1 );
+        verifyUpdated( second, 1 );
+    }
+
+    @Test
+    public void testPendingArtifactsAreSavedOnCompleteScan()
+        throws Exception
+    {
+        consumer.setBatchSize( 100 );
+
+        ArtifactMetadata first = processArtifact( "archiva-common", "1.0" );
+        ArtifactMetadata second = processArtifact( "archiva-common", "1.0" );
+        ArtifactMetadata third = processArtifact( "archiva-proxy", "1.0" );
+        verify( repositorySession, never() ).save();
+
+        consumer.completeScan();
+
+        verify( repositorySession, times( 1 ) ).save();
+        verifyUpdated( first, 1 );
+        verifyUpdated( second, 1 );
+        verifyUpdated( third, 1 );
+        // sibling artifacts update their version only once
+        verify( metadataRepository, times( 2 ) ).updateProjectVersion( same( repositorySession ), eq( TEST_REPO_ID ),
+                                                                      eq( NAMESPACE ), anyString(),
+                                                                      any( ProjectVersionMetadata.class ) );
+        verify( repositorySession ).close();
+    }
+
+    @Test
+    public void testFailedSaveIsRetriedWithNewSession()
+        throws Exception
+    {
+        doThrow( new MetadataSessionException( "session expired" ) ).doNothing().when( repositorySession ).save();
+
+        ArtifactMetadata first = processArtifact( "archiva-common", "1.0" );
+        ArtifactMetadata second = processArtifact( "archiva-common", "1.1" );
+
+        verify( repositorySession, times( 2 ) ).save();
+        verify( repositorySession, times( 1 ) ).revert();
+        verify( repositorySessionFactory, times( 2 ) ).createSession();
+        verifyUpdated( first, 2 );
+        verifyUpdated( second, 2 );
+    }
+
+    @Test
+    public void testArtifactsAreSavedOneByOneIfTheRetryFails()
+        throws Exception
+    {
+        doThrow( new MetadataSessionException( "session expired" ) ).doThrow(
+            new MetadataSessionException( "session expired" ) ).doNothing().when( repositorySession ).save();
+
+        ArtifactMetadata first = processArtifact( "archiva-common", "1.0" );
+        ArtifactMetadata second = processArtifact( "archiva-common", "1.1" );
+
+        // two attempts for the batch, then one save for each artifact
+        verify( repositorySession, times( 4 ) ).save();
+        verify( repositorySession, times( 2 ) ).revert();
+        verifyUpdated( first, 3 );
+        verifyUpdated( second, 3 );
+    }
+
+    @Test
+    public void testOnlyBrokenArtifactIsSkipped()
+        throws Exception
+    {
+        ArtifactMetadata broken = createArtifact( "archiva-broken", "1.0" );
+        doThrow( new MetadataRepositoryException( "invalid artifact" ) ).when( metadataRepository ).updateArtifact(
+            same( repositorySession ), eq( TEST_REPO_ID ), eq( NAMESPACE ), eq( "archiva-broken" ), eq( "1.0" ),
+            same( broken ) );
+
+        process( broken );
+        ArtifactMetadata good = processArtifact( "archiva-common", "1.0" );
+
+        // the batch fails twice before the update of the good artifact, the single save of it succeeds
+        verify( repositorySession, times( 1 ) ).save();
+        verify( repositorySession, times( 3 ) ).revert();
+        verify( metadataRepository, times( 1 ) ).updateProject( same( repositorySession ), eq( TEST_REPO_ID ),
+                                                                 any( ProjectMetadata.class ) );
+        verifyUpdated( good, 1 );
+    }
+
+    @Test
+    public void testPendingArtifactsAreSavedOnBeginOfNextScan()
+        throws Exception
+    {
+        consumer.setBatchSize( 100 );
+        ArtifactMetadata artifact = processArtifact( "archiva-common", "1.0" );
+
+        consumer.beginScan( repository, new Date() );
+
+        verify( repositorySession, times( 1 ) ).save();
+        verifyUpdated( artifact, 1 );
+    }
+
+    private ArtifactMetadata processArtifact( String project, String version )
+        throws Exception
+    {
+        ArtifactMetadata artifact = createArtifact( project, version );
+        process( artifact );
+        return artifact;
+    }
+
+    private void process( ArtifactMetadata artifact )
+        throws Exception
+    {
+        String path = NAMESPACE.replace( '.', '/' ) + "/" + artifact.getProject() + "/" + artifact.getVersion() + "/"
+            + artifact.getId();
+        when( repositoryStorage.readArtifactMetadataFromPath( TEST_REPO_ID, path ) ).thenReturn( artifact );
+        consumer.processFile( path );
+    }
+
+    private static ArtifactMetadata createArtifact( String project, String version )
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setNamespace( NAMESPACE );
+        artifact.setProject( project );
+        artifact.setVersion( version );
+        artifact.setProjectVersion( version );
+        artifact.setId( project + "-" + version + ".jar" );
+        return artifact;
+    }
+
+    private void verifyUpdated( ArtifactMetadata artifact, int count )
+        throws Exception
+    {
+        verify( metadataRepository, times( count ) ).updateArtifact( same( repositorySession ), eq( TEST_REPO_ID ),
+                                                                     eq( NAMESPACE ), eq( artifact.getProject() ),
+                                                                     eq( artifact.getVersion() ), same( artifact ) );
+    }
+}
@@ -19,21 +19,21 @@
  * under the License.
  */
 
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Lock manager with shared read locks and exclusive write locks. Many threads may read the same
+ * file concurrently, a writer waits until all readers released the file. Waiting threads are parked
+ * and do not spin.
+ *
  * @author Olivier Lamy
  * @since 2.0.0
  */
@@ -41,10 +41,8 @@
 public class DefaultFileLockManager
     implements FileLockManager
 {
-    // TODO currently we create lock for read and write!!
-    // the idea could be to store lock here with various clients read/write
-    // only read could be a more simple lock and acquire a write lock means waiting the end of all reading threads
-    private static final ConcurrentMap<Path, Lock> lockFiles = new ConcurrentHashMap<Path, Lock>( 64 );
+    // The lock entries are reference counted and removed, if no client holds or waits for the lock
+    private static final ConcurrentMap<Path, LockEntry> lockFiles = new ConcurrentHashMap<Path, LockEntry>( 64 );
 
     private boolean skipLocking = true;
 
@@ -62,83 +60,12 @@ public Lock readFileLock( Path file )
             return new Lock( file );
 
         }
-        StopWatch stopWatch = new StopWatch();
-        boolean acquired = false;
         try {
             mkdirs(file.getParent());
         } catch (IOException e) {
             throw new FileLockException("Could not create directories "+file.getParent(), e);
         }
-
-        Lock lock = null;
-
-        stopWatch.start();
-
-        while ( !acquired )
-        {
-            // Make sure that not a bad lock is returned, if a exception was thrown.
-            lock = null;
-
-            if ( timeout > 0 )
-            {
-                long delta = stopWatch.getTime();
-                log.debug( "delta {}, timeout {}", delta, timeout );
-                if ( delta > timeout )
-                {
-                    log.warn( "Cannot acquire read lock within {} millis. Will skip the file: {}", timeout, file );
-                    // we could not get the lock within the timeout period, so  throw  FileLockTimeoutException
-                    throw new FileLockTimeoutException();
-                }
-            }
-
-            Lock current = lockFiles.get( file );
-
-            if ( current != null )
-            {
-                log.trace( "read lock file exist continue wait" );
-                continue;
-            }
-
-            try
-            {
-                lock = new Lock( file, false );
-                createNewFileQuietly( file );
-                lock.openLock( false, timeout > 0 );
-                // We are not returning an existing lock. If the lock is not
-                // exclusive, another thread may release the lock and the client
-                // knows nothing about it.
-                // The only atomic operation is the putIfAbsent operation, so if
-                // this returns null everything is OK, otherwise we should start at
-                // the beginning.
-                current = lockFiles.putIfAbsent( file, lock );
-                if ( current == null )
-                {
-                    // Success
-                    acquired = true;
-                } else {
-                    // We try again
-                    lock.close();
-                    lock=null;
-                }
-            }
-            catch ( FileNotFoundException | NoSuchFileException e )
-            {
-
-                log.debug( "read Lock skip: {} try to create file", e.getMessage() );
-                createNewFileQuietly( file );
-            }
-            catch ( IOException e )
-            {
-                throw new FileLockException( e.getMessage(), e );
-            }
-            catch ( IllegalStateException e )
-            {
-                log.trace( "openLock {}:{}", e.getClass(), e.getMessage() );
-            }
-        }
-
-        return lock;
-
+        return acquire( file, false );
     }
 
 
@@ -156,91 +83,39 @@ public Lock writeFileLock( Path file )
         } catch (IOException e) {
             throw new FileLockException("Could not create directory "+file.getParent(), e);
         }
-
-        StopWatch stopWatch = new StopWatch();
-        boolean acquired = false;
-
-        Lock lock = null;
-
-        stopWatch.start();
-
-        while ( !acquired )
-        {
-            // Make sure that not a bad lock is returned, if a exception was thrown.
-            lock = null;
-            if ( timeout > 0 )
-            {
-                long delta = stopWatch.getTime();
-                log.debug( "delta {}, timeout {}", delta, timeout );
-                if ( delta > timeout )
-                {
-                    log.warn( "Cannot acquire read lock within {} millis. Will skip the file: {}", timeout, file );
-                    // we could not get the lock within the timeout period, so throw FileLockTimeoutException
-                    throw new FileLockTimeoutException();
-                }
-            }
-
-            Lock current = lockFiles.get( file );
-
-            try
-            {
-
-                if ( current != null )
-                {
-                    log.trace( "write lock file exist continue wait" );
-
-                    continue;
-                }
-                lock = new Lock( file, true );
-                createNewFileQuietly( file );
-                lock.openLock( true, timeout > 0 );
-                // We are not returning an existing lock. If the lock is not
-                // exclusive, another thread may release the lock and the client
-                // knows nothing about it.
-                // The only atomic operation is the putIfAbsent operation, so if
-                // this returns null everything is OK, otherwise we should start at
-                // the beginning.
-                current = lockFiles.putIfAbsent( file, lock );
-                if ( current == null )
-                {
-                    // Success
-                    acquired = true;
-                } else {
-                    // We try again
-                    lock.close();
-                    lock=null;
-                }
-            }
-            catch ( FileNotFoundException | NoSuchFileException e )
-            {
-
-                log.debug( "write Lock skip: {} try to create file", e.getMessage() );
-                createNewFileQuietly( file );
-            }
-            catch ( IOException e )
-            {
-                throw new FileLockException( e.getMessage(), e );
-            }
-            catch ( IllegalStateException e )
-            {
-                log.trace( "openLock {}:{}", e.getClass(), e.getMessage() );
-            }
-        }
-
-        return lock;
-
-
+        return acquire( file, true );
     }
 
-     private void createNewFileQuietly( Path file )
+    private Lock acquire( Path file, boolean write )
+        throws FileLockException, FileLockTimeoutException
     {
+        LockEntry entry = LockEntry.reference( file, lockFiles );
         try
         {
-            Files.createFile(file);
+            long stamp = entry.lock( write, timeout );
+            return new Lock( entry, write, stamp );
+        }
+        catch ( FileLockTimeoutException e )
+        {
+            entry.dereference();
+            log.warn( "Cannot acquire {} lock within {} millis. Will skip the file: {}", write ? "write" : "read", timeout, file );
+            throw e;
+        }
+        catch ( InterruptedException e )
+        {
+            entry.dereference();
+            Thread.currentThread().interrupt();
+            throw new FileLockException( "Interrupted while waiting for lock of " + file, e );
         }
         catch ( IOException e )
         {
-            // skip that
+            entry.dereference();
+            throw new FileLockException( e.getMessage(), e );
+        }
+        catch ( RuntimeException e )
+        {
+            entry.dereference();
+            throw e;
         }
     }
 
@@ -253,20 +128,11 @@ public void release( Lock lock )
             log.debug( "skip releasing null" );
             return;
         }
-        if ( skipLocking )
-        {
-            return;
-        }
         try
         {
-            lockFiles.remove( lock.getFile() );
+            // Closing has no effect, if locking was skipped
             lock.close();
         }
-        catch ( ClosedChannelException e )
-        {
-            // skip this one
-            log.debug( "ignore ClosedChannelException: {}", e.getMessage() );
-        }
         catch ( IOException e )
         {
             throw new FileLockException( e.getMessage(), e );
@@ -21,16 +21,17 @@
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A lock on a file, that is held by a client of the {@link FileLockManager}. Each call of
+ * {@link FileLockManager#readFileLock(Path)} or {@link FileLockManager#writeFileLock(Path)} returns a new instance.
+ * Read locks of the same file are shared, write locks are exclusive.
+ *
  * @author Olivier Lamy
  * @since 2.0.0
  */
@@ -42,21 +43,30 @@ public class Lock implements Closeable
 
     private final Map<Thread, AtomicInteger> fileClients = new HashMap<>();
 
-    private FileLock fileLock;
+    private final LockEntry entry;
+
+    private final long stamp;
 
-    private FileChannel fileChannel;
+    private final boolean exclusive;
+
+    private final AtomicBoolean released = new AtomicBoolean( false );
 
     public Lock( Path file )
     {
         this.file = file;
+        this.entry = null;
+        this.stamp = 0;
+        this.exclusive = false;
     }
 
-    public Lock( Path file, boolean write )
-            throws IOException
+    Lock( LockEntry entry, boolean write, long stamp )
     {
-        this.file = file;
+        this.file = entry.getFile();
         this.write = new AtomicBoolean( write );
-        fileChannel = write ? FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ) : FileChannel.open(file, StandardOpenOption.READ);
+        this.entry = entry;
+        this.stamp = stamp;
+        this.exclusive = write;
+        fileClients.put( Thread.currentThread(), new AtomicInteger( 1 ) );
     }
 
     public Path getFile()
@@ -81,12 +91,12 @@ public void setWrite( boolean write )
 
     public boolean isShared()
     {
-        return this.fileLock.isValid() && this.fileLock.isShared();
+        return this.write != null && !this.write.get() && isValid();
     }
 
     public boolean isValid()
     {
-        return this.fileLock!=null && this.fileLock.isValid();
+        return this.entry != null && !this.released.get() && this.entry.isValid();
     }
 
     public Map<Thread, AtomicInteger> getFileClients()
@@ -104,53 +114,24 @@ public boolean removeFileClient( Thread thread )
         return this.fileClients.remove( thread ) != null;
     }
 
+    /**
+     * Releases the lock. Further calls have no effect.
+     */
     public void close()
         throws IOException
     {
-        IOException ioException = null;
-        try
+        if ( entry == null || !released.compareAndSet( false, true ) )
         {
-            if (this.fileLock!=null) {
-                this.fileLock.release();
-            }
+            return;
         }
-        catch ( IOException e )
-        {
-            ioException = e;
-        } finally {
-            closeQuietly( fileChannel );
-            fileClients.remove( Thread.currentThread() );
-        }
-
-        if ( ioException != null )
-        {
-            throw ioException;
-        }
-
-    }
-
-    protected void openLock( boolean write, boolean timeout )
-        throws IOException
-    {
-        fileClients.put( Thread.currentThread(), new AtomicInteger( 1 ) );
-
-        this.fileLock = timeout
-            ? fileChannel.tryLock( 0L, Long.MAX_VALUE, write ? false : true )
-            : fileChannel.lock( 0L, Long.MAX_VALUE, write ? false : true );
-
-    }
-
-
-
-    private void closeQuietly( Closeable closeable )
-    {
         try
         {
-            closeable.close();
+            entry.unlock( stamp, exclusive );
         }
-        catch ( IOException e )
+        finally
         {
-            // ignore
+            entry.dereference();
+            fileClients.remove( Thread.currentThread() );
         }
     }
 
@@ -0,0 +1,366 @@
+package org.apache.archiva.common.filelock;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The shared lock state of a single file. Threads of this JVM are coordinated by a {@link StampedLock},
+ * so that many readers can hold the lock at the same time and writers get exclusive access. Waiting
+ * threads are parked by the stamped lock.
+ * <p>
+ * Other processes are excluded by a file system lock. Because the JVM does not allow overlapping file locks,
+ * the first reader acquires a shared file lock, that is released by the last reader. The other readers wait
+ * for the first one within their timeout, the file lock itself is acquired outside of the monitor. A writer
+ * acquires an exclusive file lock.
+ * </p>
+ * <p>
+ * Entries are reference counted by the registry map. An entry is removed from the map, if the last
+ * client released its lock.
+ * </p>
+ *
+ * @since 3.0
+ */
+class LockEntry
+{
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos( 50 );
+
+    private final Path file;
+
+    private final ConcurrentMap<Path, LockEntry> registry;
+
+    private final StampedLock stampedLock = new StampedLock( );
+
+    /**
+     * Number of clients that hold or wait for a lock. Only modified inside the compute functions of the registry.
+     */
+    private int references = 0;
+
+    /**
+     * Number of readers, that hold the shared file lock.
+     */
+    private int readers = 0;
+
+    /**
+     * <code>true</code>, while the first reader acquires the shared file lock. The other readers wait for it
+     * outside of the file system lock call.
+     */
+    private boolean acquiringSharedLock = false;
+
+    private FileChannel fileChannel;
+
+    private FileLock fileLock;
+
+    LockEntry( Path file, ConcurrentMap<Path, LockEntry> registry )
+    {
+        this.file = file;
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the entry for the given file from the registry and increases its reference count.
+     */
+    static LockEntry reference( Path file, ConcurrentMap<Path, LockEntry> registry )
+    {
+        return registry.compute( file, ( path, entry ) -> {
+            LockEntry result = entry == null ? new LockEntry( path, registry ) : entry;
+            result.references++;
+            return result;
+        } );
+    }
+
+    /**
+     * Decreases the reference count and removes the entry from the registry, if it is not referenced anymore.
+     */
+    void dereference( )
+    {
+        registry.computeIfPresent( file, ( path, entry ) -> {
+            if ( entry != this )
+            {
+                // The registry was cleared in the meantime
+                return entry;
+            }
+            return --references <= 0 ? null : this;
+        } );
+    }
+
+    Path getFile( )
+    {
+        return file;
+    }
+
+    /**
+     * Acquires the lock.
+     *
+     * @param write   <code>true</code> for exclusive access, <code>false</code> for shared access
+     * @param timeout the timeout in milliseconds, or 0 for waiting without limit
+     * @return the stamp, that must be used for {@link #unlock(long, boolean)}
+     * @throws FileLockTimeoutException if the lock could not be acquired within the timeout
+     * @throws IOException              if the file lock could not be acquired
+     * @throws InterruptedException     if the thread was interrupted while waiting
+     */
+    long lock( boolean write, int timeout )
+        throws FileLockTimeoutException, IOException, InterruptedException
+    {
+        long deadline = timeout > 0 ? System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( timeout ) : 0;
+        long stamp;
+        if ( timeout > 0 )
+        {
+            stamp = write
+                ? stampedLock.tryWriteLock( timeout, TimeUnit.MILLISECONDS )
+                : stampedLock.tryReadLock( timeout, TimeUnit.MILLISECONDS );
+            if ( stamp == 0 )
+            {
+                throw new FileLockTimeoutException( );
+            }
+        }
+        else
+        {
+            stamp = write ? stampedLock.writeLockInterruptibly( ) : stampedLock.readLockInterruptibly( );
+        }
+        try
+        {
+            if ( write )
+            {
+                acquireFileLock( true, deadline );
+            }
+            else if ( !joinSharedFileLock( deadline ) )
+            {
+                boolean acquired = false;
+                try
+                {
+                    acquireFileLock( false, deadline );
+                    acquired = true;
+                }
+                finally
+                {
+                    sharedFileLockAcquired( acquired );
+                }
+            }
+        }
+        catch ( FileLockTimeoutException | IOException | InterruptedException | RuntimeException e )
+        {
+            stampedLock.unlock( stamp );
+            throw e;
+        }
+        return stamp;
+    }
+
+    /**
+     * Releases the lock, that was acquired with the given stamp.
+     */
+    void unlock( long stamp, boolean write )
+        throws IOException
+    {
+        try
+        {
+            synchronized ( this )
+            {
+                if ( write || --readers == 0 )
+                {
+                    releaseFileLock( );
+                }
+            }
+        }
+        finally
+        {
+            stampedLock.unlock( stamp );
+        }
+    }
+
+    synchronized boolean isValid( )
+    {
+        return fileLock != null && fileLock.isValid( );
+    }
+
+    /**
+     * Joins the readers, that hold the shared file lock. If no reader holds it, the caller must acquire it and report
+     * the result by {@link #sharedFileLockAcquired(boolean)}.
+     *
+     * @return <code>true</code>, if the shared file lock is held already
+     */
+    private synchronized boolean joinSharedFileLock( long deadline )
+        throws FileLockTimeoutException, InterruptedException
+    {
+        while ( acquiringSharedLock )
+        {
+            if ( deadline == 0 )
+            {
+                wait( );
+            }
+            else
+            {
+                long remaining = deadline - System.nanoTime( );
+                if ( remaining <= 0 )
+                {
+                    throw new FileLockTimeoutException( );
+                }
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+            }
+        }
+        if ( readers > 0 )
+        {
+            readers++;
+            return true;
+        }
+        acquiringSharedLock = true;
+        return false;
+    }
+
+    private synchronized void sharedFileLockAcquired( boolean acquired )
+    {
+        if ( acquired )
+        {
+            readers = 1;
+        }
+        acquiringSharedLock = false;
+        notifyAll( );
+    }
+
+    /**
+     * Acquires the file system lock. This is called without holding the monitor, as the lock may wait for other
+     * processes. Only one thread calls it at a time: a writer holds the exclusive stamp and a reader only, if no
+     * other reader holds the shared file lock.
+     */
+    private void acquireFileLock( boolean write, long deadline )
+        throws IOException, FileLockTimeoutException
+    {
+        FileChannel channel = openChannel( write );
+        FileLock lock;
+        try
+        {
+            if ( deadline == 0 )
+            {
+                lock = channel.lock( 0L, Long.MAX_VALUE, !write );
+            }
+            else
+            {
+                // FileChannel has no timed lock, so try with increasing backoff
+                long backoff = TimeUnit.MILLISECONDS.toNanos( 1 );
+                while ( ( lock = channel.tryLock( 0L, Long.MAX_VALUE, !write ) ) == null )
+                {
+                    long remaining = deadline - System.nanoTime( );
+                    if ( remaining <= 0 )
+                    {
+                        throw new FileLockTimeoutException( );
+                    }
+                    LockSupport.parkNanos( Math.min( backoff, remaining ) );
+                    backoff = Math.min( backoff * 2, MAX_BACKOFF_NANOS );
+                }
+            }
+        }
+        catch ( FileLockTimeoutException | IOException | RuntimeException e )
+        {
+            try
+            {
+                channel.close( );
+            }
+            catch ( IOException ce )
+            {
+                // ignore
+            }
+            throw e;
+        }
+        synchronized ( this )
+        {
+            fileChannel = channel;
+            fileLock = lock;
+        }
+    }
+
+    private FileChannel openChannel( boolean write )
+        throws IOException
+    {
+        try
+        {
+            createNewFileQuietly( );
+            return open( write );
+        }
+        catch ( NoSuchFileException e )
+        {
+            // The file was deleted by another process in the meantime
+            createNewFileQuietly( );
+            return open( write );
+        }
+    }
+
+    private FileChannel open( boolean write )
+        throws IOException
+    {
+        return write
+            ? FileChannel.open( file, StandardOpenOption.WRITE, StandardOpenOption.READ )
+            : FileChannel.open( file, StandardOpenOption.READ );
+    }
+
+    private void createNewFileQuietly( )
+    {
+        try
+        {
+            Files.createFile( file );
+        }
+        catch ( IOException e )
+        {
+            // skip that
+        }
+    }
+
+    private void releaseFileLock( )
+        throws IOException
+    {
+        try
+        {
+            if ( fileLock != null && fileLock.isValid( ) )
+            {
+                fileLock.release( );
+            }
+        }
+        finally
+        {
+            closeQuietly( );
+        }
+    }
+
+    private void closeQuietly( )
+    {
+        fileLock = null;
+        if ( fileChannel != null )
+        {
+            try
+            {
+                fileChannel.close( );
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+            fileChannel = null;
+        }
+    }
+}
@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +36,9 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Olivier Lamy
@@ -91,4 +95,46 @@ public void testTimeout()
 
     }
 
+    @Test
+    public void testSharedReadLocks()
+        throws Throwable
+    {
+        Path file = Paths.get( System.getProperty( "buildDirectory" ), "shared.txt" );
+        Files.deleteIfExists( file );
+        fileLockManager.setTimeout( 1000 );
+
+        Lock readLock = fileLockManager.readFileLock( file );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // Readers do not wait for each other
+            Lock otherReadLock = executor.submit( () -> fileLockManager.readFileLock( file ) ).get();
+            Assert.assertTrue( readLock.isShared() );
+            Assert.assertTrue( otherReadLock.isShared() );
+            fileLockManager.release( otherReadLock );
+
+            // Writers wait until all readers released the file
+            try
+            {
+                executor.submit( () -> fileLockManager.writeFileLock( file ) ).get();
+                Assert.fail( "Write lock acquired, while the file is read" );
+            }
+            catch ( ExecutionException e )
+            {
+                Assert.assertTrue( e.getCause() instanceof FileLockTimeoutException );
+            }
+
+            fileLockManager.release( readLock );
+            Lock writeLock = executor.submit( () -> fileLockManager.writeFileLock( file ) ).get();
+            Assert.assertTrue( writeLock.isValid() );
+            Assert.assertFalse( writeLock.isShared() );
+            fileLockManager.release( writeLock );
+            Assert.assertFalse( writeLock.isValid() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
 }
@@ -33,6 +33,7 @@
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -168,6 +169,21 @@ public void applyPolicy( PolicyOption policySetting, Properties request, Storage
             "Unable to process checksum policy of [" + policySetting + "], please file a bug report." );
     }
 
+    /**
+     * Returns the checksum algorithms, that are validated by this policy with the given setting.
+     *
+     * @param policySetting the setting of the policy
+     * @return the validated algorithms, or an empty list, if the checksums are not validated
+     */
+    public List<ChecksumAlgorithm> getValidatedAlgorithms( PolicyOption policySetting )
+    {
+        if ( IGNORE.equals( policySetting ) || !options.contains( policySetting ) )
+        {
+            return Collections.emptyList( );
+        }
+        return algorithms;
+    }
+
     @Override
     public PolicyOption getDefaultOption()
     {
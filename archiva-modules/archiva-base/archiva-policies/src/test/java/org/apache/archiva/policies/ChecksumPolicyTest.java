@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.common.filelock.DefaultFileLockManager;
 import org.apache.archiva.repository.storage.fs.FilesystemStorage;
 import org.apache.archiva.repository.storage.StorageAsset;
@@ -209,6 +210,17 @@ public void testIgnore()
         policy.applyPolicy( ChecksumPolicy.IGNORE, request, localFile );
     }
 
+    @Test
+    public void testValidatedAlgorithms()
+        throws Exception
+    {
+        ChecksumPolicy policy = (ChecksumPolicy) lookupPolicy();
+
+        assertTrue( policy.getValidatedAlgorithms( ChecksumPolicy.IGNORE ).isEmpty() );
+        assertTrue( policy.getValidatedAlgorithms( ChecksumPolicy.FAIL ).contains( ChecksumAlgorithm.SHA1 ) );
+        assertTrue( policy.getValidatedAlgorithms( ChecksumPolicy.FIX ).contains( ChecksumAlgorithm.MD5 ) );
+    }
+
     private void assertFailSetting( boolean expectedResult, String md5State, String sha1State )
         throws Exception
     {
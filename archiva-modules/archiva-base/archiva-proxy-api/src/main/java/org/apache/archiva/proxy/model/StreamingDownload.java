@@ -0,0 +1,333 @@
+package org.apache.archiva.proxy.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A proxy download, that can be read by a client while it is transferred from the remote repository.
+ * <p>
+ * The proxy handler writes the remote file into a temporary file and reports the progress to the download,
+ * that is bound to the downloading thread by {@link #activate()}. The client reads the temporary file
+ * by the stream returned from {@link #openStream()}, while it grows. The last byte is held back, until the
+ * handler has committed the file to the managed repository. If the post download policies fail, the stream
+ * throws an exception, so the client never gets a complete file, that was rejected.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class StreamingDownload
+{
+    private static final ThreadLocal<StreamingDownload> ACTIVE_DOWNLOAD = new ThreadLocal<>( );
+
+    private static final long POLL_INTERVAL = 50;
+
+    private enum State
+    {
+        WAITING, STREAMING, COMMITTED, FAILED, FINISHED
+    }
+
+    private State state = State.WAITING;
+
+    private Path file;
+
+    private Path committedFile;
+
+    private long contentLength = -1;
+
+    private long lastModified;
+
+    private Exception failure;
+
+    /**
+     * Returns the download that is bound to the current thread, or <code>null</code>, if there is none.
+     */
+    public static StreamingDownload getActiveDownload( )
+    {
+        return ACTIVE_DOWNLOAD.get( );
+    }
+
+    /**
+     * Binds this download to the current thread.
+     *
+     * @return the download that was active before, or <code>null</code>. Should be restored by {@link #deactivate(StreamingDownload)}
+     */
+    public StreamingDownload activate( )
+    {
+        StreamingDownload previous = ACTIVE_DOWNLOAD.get( );
+        ACTIVE_DOWNLOAD.set( this );
+        return previous;
+    }
+
+    /**
+     * Removes this download from the current thread and restores the given download.
+     *
+     * @param previous the download returned by {@link #activate()}
+     */
+    public void deactivate( StreamingDownload previous )
+    {
+        if ( previous == null )
+        {
+            ACTIVE_DOWNLOAD.remove( );
+        }
+        else
+        {
+            ACTIVE_DOWNLOAD.set( previous );
+        }
+    }
+
+    /**
+     * Called by the proxy handler, if the remote repository started to send the file.
+     *
+     * @param file          the temporary file, the content is written to
+     * @param contentLength the size of the file, or -1, if unknown
+     * @param lastModified  the modification time reported by the remote repository, or 0
+     */
+    public synchronized void transferStarted( Path file, long contentLength, long lastModified )
+    {
+        if ( state == State.WAITING )
+        {
+            this.file = file;
+            this.contentLength = contentLength;
+            this.lastModified = lastModified;
+            this.state = State.STREAMING;
+            notifyAll( );
+        }
+    }
+
+    /**
+     * Called by the proxy handler, if new data was received.
+     */
+    public synchronized void transferProgress( )
+    {
+        notifyAll( );
+    }
+
+    /**
+     * Called by the proxy handler, if the file passed the policies and was moved to the managed repository.
+     *
+     * @param committedFile the file in the managed repository
+     */
+    public synchronized void committed( Path committedFile )
+    {
+        if ( state == State.STREAMING )
+        {
+            this.committedFile = committedFile;
+            this.state = State.COMMITTED;
+            notifyAll( );
+        }
+    }
+
+    /**
+     * Called by the proxy handler, if the transfer failed, or the file was rejected by a policy.
+     * Failures before the transfer started are ignored, because the handler may try further remote repositories.
+     */
+    public synchronized void failed( Exception failure )
+    {
+        if ( state == State.STREAMING )
+        {
+            this.failure = failure;
+            this.state = State.FAILED;
+            notifyAll( );
+        }
+    }
+
+    /**
+     * Called by the client, if the fetch from the proxies returned.
+     */
+    public synchronized void finished( )
+    {
+        if ( state == State.WAITING )
+        {
+            state = State.FINISHED;
+        }
+        else if ( state == State.STREAMING )
+        {
+            failure = new IOException( "The download of " + file + " ended without result" );
+            state = State.FAILED;
+        }
+        notifyAll( );
+    }
+
+    /**
+     * Waits until the remote repository starts to send the file, or the fetch has finished without streaming.
+     *
+     * @return <code>true</code>, if the file can be streamed, <code>false</code> if the result of the fetch
+     * should be used
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public synchronized boolean awaitStart( )
+        throws InterruptedException
+    {
+        while ( state == State.WAITING )
+        {
+            wait( );
+        }
+        return state == State.STREAMING || state == State.COMMITTED;
+    }
+
+    /**
+     * Returns <code>true</code>, if the remote repository started to send the file, even if the transfer
+     * failed afterwards.
+     */
+    public synchronized boolean isStarted( )
+    {
+        return state == State.STREAMING || state == State.COMMITTED || ( state == State.FAILED && file != null );
+    }
+
+    public synchronized long getContentLength( )
+    {
+        return contentLength;
+    }
+
+    public synchronized long getLastModified( )
+    {
+        return lastModified;
+    }
+
+    /**
+     * Returns a stream, that reads the file while it is downloaded.
+     */
+    public InputStream openStream( )
+    {
+        return new DownloadInputStream( );
+    }
+
+    private synchronized State getState( )
+        throws IOException
+    {
+        if ( state == State.FAILED )
+        {
+            throw new IOException( "Download failed: " + failure.getMessage( ), failure );
+        }
+        return state;
+    }
+
+    private synchronized void awaitProgress( )
+        throws InterruptedIOException
+    {
+        try
+        {
+            // Not every progress is reported, so do not wait too long
+            wait( POLL_INTERVAL );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new InterruptedIOException( "Interrupted while waiting for the download of " + file );
+        }
+    }
+
+    private class DownloadInputStream
+        extends InputStream
+    {
+        private FileChannel channel;
+
+        private long position = 0;
+
+        @Override
+        public int read( )
+            throws IOException
+        {
+            byte[] b = new byte[1];
+            int n = read( b, 0, 1 );
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            while ( true )
+            {
+                State current = getState( );
+                if ( open( current ) )
+                {
+                    // Hold back the last byte, until the file is committed
+                    long readable = current == State.COMMITTED ? channel.size( ) : channel.size( ) - 1;
+                    if ( position < readable )
+                    {
+                        int n = channel.read( ByteBuffer.wrap( b, off, (int) Math.min( len, readable - position ) ), position );
+                        if ( n > 0 )
+                        {
+                            position += n;
+                            return n;
+                        }
+                    }
+                    else if ( current == State.COMMITTED )
+                    {
+                        return -1;
+                    }
+                }
+                awaitProgress( );
+            }
+        }
+
+        private boolean open( State current )
+            throws IOException
+        {
+            if ( channel != null )
+            {
+                return true;
+            }
+            Path source;
+            synchronized ( StreamingDownload.this )
+            {
+                source = current == State.COMMITTED ? committedFile : file;
+            }
+            try
+            {
+                channel = FileChannel.open( source, StandardOpenOption.READ );
+                return true;
+            }
+            catch ( NoSuchFileException e )
+            {
+                if ( current == State.COMMITTED )
+                {
+                    throw e;
+                }
+                // Not created yet, or already moved to the repository
+                return false;
+            }
+        }
+
+        @Override
+        public void close( )
+            throws IOException
+        {
+            if ( channel != null )
+            {
+                channel.close( );
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.apache.archiva.proxy.model;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class StreamingDownloadTest
+{
+    private Path directory;
+
+    private Path tmpFile;
+
+    private Path committedFile;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp( )
+        throws IOException
+    {
+        directory = Paths.get( "target/streaming-download/test-" + System.nanoTime( ) );
+        Files.createDirectories( directory.resolve( "repository" ) );
+        tmpFile = directory.resolve( "artifact-1.0.jar.tmp" );
+        committedFile = directory.resolve( "repository/artifact-1.0.jar" );
+        executor = Executors.newSingleThreadExecutor( );
+    }
+
+    @After
+    public void tearDown( )
+        throws IOException
+    {
+        executor.shutdownNow( );
+        for ( Path file : new Path[]{ tmpFile, committedFile, directory.resolve( "repository" ), directory } )
+        {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    @Test
+    public void clientReadsTheFileWhileItIsDownloaded( )
+        throws Exception
+    {
+        StreamingDownload download = new StreamingDownload( );
+        download.transferStarted( tmpFile, 11, 1000L );
+        assertTrue( download.awaitStart( ) );
+        assertTrue( download.isStarted( ) );
+        assertEquals( 11, download.getContentLength( ) );
+        assertEquals( 1000L, download.getLastModified( ) );
+
+        try ( InputStream is = download.openStream( ) )
+        {
+            append( "hello" );
+            download.transferProgress( );
+            byte[] buffer = new byte[16];
+            // the last byte is held back, until the file is committed
+            assertEquals( 4, is.read( buffer ) );
+            assertEquals( "hell", new String( buffer, 0, 4, StandardCharsets.UTF_8 ) );
+
+            Future<String> rest = executor.submit( ( ) -> read( is ) );
+            append( " world" );
+            download.transferProgress( );
+            assertNotDone( rest );
+
+            // the handler moves the file to the repository, before it is committed
+            Files.move( tmpFile, committedFile );
+            download.committed( committedFile );
+
+            assertEquals( "o world", rest.get( 10, TimeUnit.SECONDS ) );
+        }
+    }
+
+    @Test
+    public void clientStartingAfterCommitReadsTheCommittedFile( )
+        throws Exception
+    {
+        StreamingDownload download = new StreamingDownload( );
+        download.transferStarted( tmpFile, -1, 0 );
+        append( "hello world" );
+        Files.move( tmpFile, committedFile );
+        download.committed( committedFile );
+        download.finished( );
+
+        assertTrue( download.awaitStart( ) );
+        try ( InputStream is = download.openStream( ) )
+        {
+            assertEquals( "hello world", read( is ) );
+        }
+    }
+
+    @Test
+    public void failedDownloadIsReportedToTheClient( )
+        throws Exception
+    {
+        StreamingDownload download = new StreamingDownload( );
+        download.transferStarted( tmpFile, 11, 0 );
+        append( "hello" );
+
+        try ( InputStream is = download.openStream( ) )
+        {
+            Future<String> content = executor.submit( ( ) -> read( is ) );
+            assertNotDone( content );
+
+            download.failed( new IOException( "Checksum policy failed" ) );
+            try
+            {
+                content.get( 10, TimeUnit.SECONDS );
+                fail( "The client must not get the rejected file" );
+            }
+            catch ( ExecutionException e )
+            {
+                assertTrue( e.getCause( ) instanceof IOException );
+                assertTrue( e.getCause( ).getMessage( ).contains( "Checksum policy failed" ) );
+            }
+        }
+        assertTrue( download.isStarted( ) );
+    }
+
+    @Test
+    public void downloadEndingWithoutCommitIsReportedToTheClient( )
+        throws Exception
+    {
+        StreamingDownload download = new StreamingDownload( );
+        download.transferStarted( tmpFile, 11, 0 );
+        append( "hello world" );
+        download.finished( );
+
+        try ( InputStream is = download.openStream( ) )
+        {
+            read( is );
+            fail( "The client must not get a file, that was not committed" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void fetchWithoutTransferIsNotStreamed( )
+        throws Exception
+    {
+        StreamingDownload download = new StreamingDownload( );
+        // failures before the transfer started are ignored, the next remote repository may have the file
+        download.failed( new IOException( "Not found" ) );
+        download.finished( );
+
+        assertFalse( download.awaitStart( ) );
+        assertFalse( download.isStarted( ) );
+    }
+
+    @Test
+    public void downloadIsBoundToTheThread( )
+    {
+        StreamingDownload outer = new StreamingDownload( );
+        StreamingDownload inner = new StreamingDownload( );
+        assertNull( StreamingDownload.getActiveDownload( ) );
+
+        StreamingDownload previous = outer.activate( );
+        assertSame( outer, StreamingDownload.getActiveDownload( ) );
+        StreamingDownload outerPrevious = inner.activate( );
+        assertSame( inner, StreamingDownload.getActiveDownload( ) );
+
+        inner.deactivate( outerPrevious );
+        assertSame( outer, StreamingDownload.getActiveDownload( ) );
+        outer.deactivate( previous );
+        assertNull( StreamingDownload.getActiveDownload( ) );
+    }
+
+    private void append( String content )
+        throws IOException
+    {
+        Files.write( tmpFile, content.getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.CREATE,
+                     StandardOpenOption.APPEND );
+    }
+
+    private static String read( InputStream is )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( );
+        byte[] buffer = new byte[4];
+        int n;
+        while ( ( n = is.read( buffer ) ) != -1 )
+        {
+            out.write( buffer, 0, n );
+        }
+        return new String( out.toByteArray( ), StandardCharsets.UTF_8 );
+    }
+
+    private static void assertNotDone( Future<?> future )
+        throws Exception
+    {
+        try
+        {
+            future.get( 200, TimeUnit.MILLISECONDS );
+            fail( "The read should wait for the rest of the download" );
+        }
+        catch ( TimeoutException e )
+        {
+            // expected
+        }
+    }
+}
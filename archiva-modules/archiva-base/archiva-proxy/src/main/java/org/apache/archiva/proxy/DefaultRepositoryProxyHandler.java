@@ -20,6 +20,7 @@
  */
 
 import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumContext;
 import org.apache.archiva.checksum.ChecksumUtil;
 import org.apache.archiva.common.filelock.FileLockManager;
 import org.apache.archiva.common.utils.PathUtil;
@@ -28,6 +29,7 @@
 import org.apache.archiva.configuration.ProxyConnectorRuleConfiguration;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.model.Keys;
+import org.apache.archiva.policies.ChecksumPolicy;
 import org.apache.archiva.policies.DownloadErrorPolicy;
 import org.apache.archiva.policies.DownloadPolicy;
 import org.apache.archiva.policies.Policy;
@@ -42,6 +44,7 @@
 import org.apache.archiva.proxy.model.ProxyConnector;
 import org.apache.archiva.proxy.model.ProxyFetchResult;
 import org.apache.archiva.proxy.model.RepositoryProxyHandler;
+import org.apache.archiva.proxy.model.StreamingDownload;
 import org.apache.archiva.components.taskqueue.TaskQueueException;
 import org.apache.archiva.repository.ManagedRepository;
 import org.apache.archiva.repository.RemoteRepository;
@@ -78,6 +81,7 @@
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 public abstract class DefaultRepositoryProxyHandler implements RepositoryProxyHandler {
 
@@ -108,6 +112,12 @@ public abstract class DefaultRepositoryProxyHandler implements RepositoryProxyHa
     private Map<String, NetworkProxy> networkProxyMap = new ConcurrentHashMap<>();
     private List<ChecksumAlgorithm> checksumAlgorithms;
 
+    /**
+     * Concurrent fetches of the same file wait for the running transfer instead of starting their own.
+     */
+    private final InFlightDownloads<StorageAsset> inFlightDownloads = new InFlightDownloads<>();
+    private final InFlightDownloads<ProxyFetchResult> inFlightMetadataDownloads = new InFlightDownloads<>();
+
     @PostConstruct
     public void initialize()
     {
@@ -142,7 +152,22 @@ public StorageAsset fetchFromProxies( ManagedRepository repository, ArtifactRefe
         throws ProxyDownloadException
     {
         StorageAsset localFile = toLocalFile( repository, artifact );
+        try
+        {
+            return inFlightDownloads.execute( getDownloadKey( repository, localFile ),
+                () -> fetchArtifactFromProxies( repository, artifact, localFile ), ProxyDownloadException.class );
+        }
+        catch ( ProxyException e )
+        {
+            throw new ProxyDownloadException( "Failure while waiting for the running download",
+                                              repository.getId(), e );
+        }
+    }
 
+    private StorageAsset fetchArtifactFromProxies( ManagedRepository repository, ArtifactReference artifact,
+                                                   StorageAsset localFile )
+        throws ProxyDownloadException
+    {
         Properties requestProperties = new Properties();
         requestProperties.setProperty( "filetype", "artifact" );
         requestProperties.setProperty( "version", artifact.getVersion() );
@@ -219,6 +244,20 @@ public StorageAsset fetchFromProxies( ManagedRepository repository, String path
             return null;
         }
 
+        try
+        {
+            return inFlightDownloads.execute( getDownloadKey( repository, localFile ),
+                () -> fetchResourceFromProxies( repository, path, localFile ), RuntimeException.class );
+        }
+        catch ( ProxyException e )
+        {
+            log.warn( "Resource {} not available: {}", path, e.getMessage() );
+            return null;
+        }
+    }
+
+    private StorageAsset fetchResourceFromProxies( ManagedRepository repository, String path, StorageAsset localFile )
+    {
         Properties requestProperties = new Properties();
         requestProperties.setProperty( "filetype", "resource" );
         requestProperties.setProperty( "managedRepositoryId", repository.getId() );
@@ -280,7 +319,21 @@ public StorageAsset fetchFromProxies( ManagedRepository repository, String path
     public ProxyFetchResult fetchMetadataFromProxies( ManagedRepository repository, String logicalPath )
     {
         StorageAsset localFile = repository.getAsset( logicalPath );
+        try
+        {
+            return inFlightMetadataDownloads.execute( getDownloadKey( repository, localFile ),
+                () -> fetchMetadataFromProxies( repository, logicalPath, localFile ), RuntimeException.class );
+        }
+        catch ( ProxyException e )
+        {
+            log.warn( "Metadata {} not updated: {}", logicalPath, e.getMessage() );
+            return fileExists( localFile ) ? new ProxyFetchResult( localFile, false ) : new ProxyFetchResult( null, false );
+        }
+    }
 
+    private ProxyFetchResult fetchMetadataFromProxies( ManagedRepository repository, String logicalPath,
+                                                       StorageAsset localFile )
+    {
         Properties requestProperties = new Properties();
         requestProperties.setProperty( "filetype", "metadata" );
         boolean metadataNeedsUpdating = false;
@@ -358,6 +411,11 @@ public ProxyFetchResult fetchMetadataFromProxies( ManagedRepository repository,
         return new ProxyFetchResult( null, false );
     }
 
+    private String getDownloadKey( ManagedRepository repository, StorageAsset localFile )
+    {
+        return repository.getId() + ":" + localFile.getPath();
+    }
+
     private long getLastModified(StorageAsset file )
     {
         if ( !file.exists() || file.isContainer() )
@@ -511,12 +569,18 @@ protected StorageAsset transferFile( ProxyConnector connector, RemoteRepository
             throw new ProxyException( "Could not create tmp storage" );
         }
         StorageAsset tmpResource = tmpStorage.getAsset( resource.getName( ) );
-        StorageAsset[] tmpChecksumFiles = new StorageAsset[checksumAlgorithms.size()];
-        for(int i=0; i<checksumAlgorithms.size(); i++) {
-            ChecksumAlgorithm alg = checksumAlgorithms.get( i );
+        List<ChecksumAlgorithm> validatedAlgorithms = getValidatedChecksumAlgorithms( connector );
+        StorageAsset[] tmpChecksumFiles = new StorageAsset[validatedAlgorithms.size()];
+        for(int i=0; i<validatedAlgorithms.size(); i++) {
+            ChecksumAlgorithm alg = validatedAlgorithms.get( i );
             tmpChecksumFiles[i] = tmpStorage.getAsset( resource.getName() + "." + alg.getDefaultExtension() );
         }
 
+        // The checksums of the downloaded file are shared with the checksum policy
+        List<ChecksumAlgorithm> policyAlgorithms = getPolicyChecksumAlgorithms( connector );
+        ChecksumContext checksumContext = new ChecksumContext( policyAlgorithms == null ? checksumAlgorithms : policyAlgorithms );
+        ChecksumContext previousContext = checksumContext.activate( );
+        StreamingDownload streamingDownload = StreamingDownload.getActiveDownload( );
         try
         {
 
@@ -547,11 +611,29 @@ protected StorageAsset transferFile( ProxyConnector connector, RemoteRepository
                         moveFileIfExists( tmpChecksumFiles[i], directory );
                     }
                     moveFileIfExists( tmpResource, directory );
+                    if ( streamingDownload != null && resource.isFileBased( ) )
+                    {
+                        streamingDownload.committed( resource.getFilePath( ) );
+                    }
                 }
             }
+            if ( streamingDownload != null )
+            {
+                // Ignored, if the file was committed. Otherwise the clients reading the download must not get it.
+                streamingDownload.failed( new ProxyException( "Transfer invalidated from " + url ) );
+            }
+        }
+        catch ( ProxyException | RuntimeException e )
+        {
+            if ( streamingDownload != null )
+            {
+                streamingDownload.failed( e );
+            }
+            throw e;
         }
         finally
         {
+            checksumContext.deactivate( previousContext );
             org.apache.archiva.common.utils.FileUtils.deleteQuietly( workingDirectory );
         }
 
@@ -565,6 +647,45 @@ protected StorageAsset transferFile( ProxyConnector connector, RemoteRepository
         return resource;
     }
 
+    /**
+     * Returns the configured checksum algorithms, whose checksum files are downloaded with the artifact.
+     * If the checksum policy of the connector validates checksums, only the files of the validated algorithms
+     * are downloaded, because nobody would look at the others. If the policy ignores the checksums, all
+     * configured checksum files are passed through unchecked.
+     *
+     * @param connector the proxy connector
+     * @return the checksum algorithms, whose checksum files should be downloaded
+     */
+    protected List<ChecksumAlgorithm> getValidatedChecksumAlgorithms( ProxyConnector connector )
+    {
+        List<ChecksumAlgorithm> validated = getPolicyChecksumAlgorithms( connector );
+        if ( validated == null || validated.isEmpty( ) )
+        {
+            return checksumAlgorithms;
+        }
+        return checksumAlgorithms.stream( ).filter( validated::contains ).collect( Collectors.toList( ) );
+    }
+
+    /**
+     * Returns the checksum algorithms, the checksum policy of the connector validates.
+     *
+     * @param connector the proxy connector
+     * @return the checksum algorithms, or <code>null</code>, if there is no checksum policy
+     */
+    protected List<ChecksumAlgorithm> getPolicyChecksumAlgorithms( ProxyConnector connector )
+    {
+        for ( PostDownloadPolicy policy : postDownloadPolicies.values( ) )
+        {
+            if ( policy instanceof ChecksumPolicy )
+            {
+                Map<Policy, PolicyOption> settings = connector.getPolicies( );
+                PolicyOption option = settings != null && settings.containsKey( policy ) ? settings.get( policy ) : policy.getDefaultOption( );
+                return ( (ChecksumPolicy) policy ).getValidatedAlgorithms( option );
+            }
+        }
+        return null;
+    }
+
     protected abstract void transferResources( ProxyConnector connector, RemoteRepository remoteRepository,
                                                StorageAsset tmpResource, StorageAsset[] checksumFiles, String url, String remotePath, StorageAsset resource, Path workingDirectory,
                                                ManagedRepository repository ) throws ProxyException;
@@ -822,6 +943,11 @@ protected String addParameters(String path, RemoteRepository remoteRepository )
         return res.toString();
     }
 
+    protected ArchivaConfiguration getArchivaConfiguration()
+    {
+        return archivaConfiguration;
+    }
+
     public void setArchivaConfiguration(ArchivaConfiguration archivaConfiguration )
     {
         this.archivaConfiguration = archivaConfiguration;
@@ -0,0 +1,159 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Registry of the downloads, that are currently running. If a download for the same key is already
+ * running, the caller does not start a new download, but waits for the result of the running one.
+ * So concurrent requests for the same uncached file result in a single remote transfer.
+ * <p>
+ * Waiting callers give up after the wait timeout, so a stalled download does not block all
+ * requests for the same file.
+ * </p>
+ *
+ * @param <T> the result type of the downloads
+ * @since 3.0
+ */
+class InFlightDownloads<T>
+{
+    private static final Logger log = LoggerFactory.getLogger( InFlightDownloads.class );
+
+    /**
+     * The default time in minutes, that a caller waits for the running download.
+     */
+    static final long DEFAULT_WAIT_TIMEOUT = 10;
+
+    private final ConcurrentMap<String, CompletableFuture<T>> downloads = new ConcurrentHashMap<>( );
+
+    private final long waitTimeout;
+
+    private final TimeUnit waitTimeoutUnit;
+
+    InFlightDownloads( )
+    {
+        this( DEFAULT_WAIT_TIMEOUT, TimeUnit.MINUTES );
+    }
+
+    InFlightDownloads( long waitTimeout, TimeUnit waitTimeoutUnit )
+    {
+        this.waitTimeout = waitTimeout;
+        this.waitTimeoutUnit = waitTimeoutUnit;
+    }
+
+    /**
+     * A download, that may throw a checked exception.
+     */
+    @FunctionalInterface
+    interface Download<T, E extends Exception>
+    {
+        T execute( ) throws E;
+    }
+
+    /**
+     * Runs the download, if there is no running download for the given key. Otherwise waits for the
+     * running download and returns its result or throws its exception.
+     *
+     * @param key           the key of the download, e.g. repository id and path
+     * @param download      the download to run
+     * @param exceptionType the checked exception type of the download
+     * @return the result of the download
+     * @throws E              the exception thrown by the download
+     * @throws ProxyException  if the wait for the running download timed out or has been interrupted
+     */
+    <E extends Exception> T execute( String key, Download<T, E> download, Class<E> exceptionType )
+        throws E, ProxyException
+    {
+        CompletableFuture<T> future = new CompletableFuture<>( );
+        CompletableFuture<T> running = downloads.putIfAbsent( key, future );
+        if ( running != null )
+        {
+            log.debug( "Waiting for running download of {}", key );
+            return await( key, running, exceptionType );
+        }
+        try
+        {
+            T result = download.execute( );
+            future.complete( result );
+            return result;
+        }
+        catch ( Exception | Error e )
+        {
+            future.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            downloads.remove( key, future );
+        }
+    }
+
+    private <E extends Exception> T await( String key, CompletableFuture<T> future, Class<E> exceptionType )
+        throws E, ProxyException
+    {
+        try
+        {
+            return future.get( waitTimeout, waitTimeoutUnit );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new ProxyException( "Interrupted while waiting for the running download of " + key, e );
+        }
+        catch ( TimeoutException e )
+        {
+            throw new ProxyException( "Timeout while waiting for the running download of " + key, e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause( );
+            if ( exceptionType.isInstance( cause ) )
+            {
+                throw exceptionType.cast( cause );
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new ProxyException( "The running download of " + key + " failed", cause );
+        }
+    }
+
+    /**
+     * Returns the number of running downloads.
+     */
+    int size( )
+    {
+        return downloads.size( );
+    }
+}
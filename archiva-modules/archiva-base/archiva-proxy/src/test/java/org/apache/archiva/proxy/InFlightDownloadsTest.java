@@ -0,0 +1,287 @@
+package org.apache.archiva.proxy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class InFlightDownloadsTest
+{
+    private static final String KEY = "internal:org/apache/archiva/archiva-common/1.0/archiva-common-1.0.jar";
+
+    private final AtomicInteger downloadCount = new AtomicInteger( );
+
+    private final CountDownLatch leaderStarted = new CountDownLatch( 1 );
+
+    private final CountDownLatch releaseLeader = new CountDownLatch( 1 );
+
+    @After
+    public void tearDown( )
+    {
+        releaseLeader.countDown( );
+    }
+
+    @Test
+    public void concurrentDownloadsOfTheSameKeyAreExecutedOnce( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( );
+        AtomicReference<Object> leaderResult = new AtomicReference<>( );
+        Thread leader = startLeader( downloads, ( ) -> {
+            awaitRelease( );
+            return "content";
+        }, leaderResult );
+
+        AtomicReference<Object> waiterResult = new AtomicReference<>( );
+        Thread waiter = startWaiter( downloads, waiterResult );
+        awaitWaiting( waiter );
+        assertEquals( 1, downloads.size( ) );
+
+        releaseLeader.countDown( );
+        leader.join( );
+        waiter.join( );
+
+        assertEquals( "content", leaderResult.get( ) );
+        assertEquals( "content", waiterResult.get( ) );
+        assertEquals( 1, downloadCount.get( ) );
+        assertEquals( 0, downloads.size( ) );
+    }
+
+    @Test
+    public void failureOfTheRunningDownloadIsThrownToWaiters( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( );
+        IOException failure = new IOException( "connection reset" );
+        AtomicReference<Object> leaderResult = new AtomicReference<>( );
+        Thread leader = startLeader( downloads, ( ) -> {
+            awaitRelease( );
+            throw failure;
+        }, leaderResult );
+
+        AtomicReference<Object> waiterResult = new AtomicReference<>( );
+        Thread waiter = startWaiter( downloads, waiterResult );
+        awaitWaiting( waiter );
+
+        releaseLeader.countDown( );
+        leader.join( );
+        waiter.join( );
+
+        assertSame( failure, leaderResult.get( ) );
+        assertSame( failure, waiterResult.get( ) );
+        assertEquals( 1, downloadCount.get( ) );
+        assertEquals( 0, downloads.size( ) );
+    }
+
+    @Test
+    public void downloadIsExecutedAgainAfterCompletion( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( );
+        try
+        {
+            downloads.execute( KEY, ( ) -> {
+                downloadCount.incrementAndGet( );
+                throw new IOException( "not available" );
+            }, IOException.class );
+            fail( "The download should have failed" );
+        }
+        catch ( IOException e )
+        {
+            assertEquals( "not available", e.getMessage( ) );
+        }
+        assertEquals( 0, downloads.size( ) );
+
+        assertEquals( "content", downloads.execute( KEY, ( ) -> {
+            downloadCount.incrementAndGet( );
+            return "content";
+        }, IOException.class ) );
+        assertEquals( 0, downloads.size( ) );
+        assertEquals( 2, downloadCount.get( ) );
+    }
+
+    @Test
+    public void waiterGivesUpAfterTimeout( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( 100, TimeUnit.MILLISECONDS );
+        Thread leader = startLeader( downloads, ( ) -> {
+            awaitRelease( );
+            return "content";
+        }, new AtomicReference<>( ) );
+
+        try
+        {
+            downloads.execute( KEY, ( ) -> {
+                downloadCount.incrementAndGet( );
+                return "other content";
+            }, IOException.class );
+            fail( "The wait for the running download should time out" );
+        }
+        catch ( ProxyException e )
+        {
+            assertTrue( e.getMessage( ).contains( KEY ) );
+        }
+        assertEquals( 1, downloadCount.get( ) );
+
+        releaseLeader.countDown( );
+        leader.join( );
+        assertEquals( 0, downloads.size( ) );
+    }
+
+    @Test
+    public void interruptedWaiterKeepsInterruptFlag( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( );
+        Thread leader = startLeader( downloads, ( ) -> {
+            awaitRelease( );
+            return "content";
+        }, new AtomicReference<>( ) );
+
+        AtomicReference<Object> waiterResult = new AtomicReference<>( );
+        AtomicReference<Boolean> interrupted = new AtomicReference<>( );
+        Thread waiter = new Thread( ( ) -> {
+            try
+            {
+                waiterResult.set( downloads.execute( KEY, ( ) -> "other content", IOException.class ) );
+            }
+            catch ( Exception e )
+            {
+                waiterResult.set( e );
+            }
+            interrupted.set( Thread.currentThread( ).isInterrupted( ) );
+        } );
+        waiter.start( );
+        awaitWaiting( waiter );
+        waiter.interrupt( );
+        waiter.join( );
+
+        assertTrue( waiterResult.get( ) instanceof ProxyException );
+        assertTrue( interrupted.get( ) );
+
+        releaseLeader.countDown( );
+        leader.join( );
+        assertEquals( 0, downloads.size( ) );
+    }
+
+    @Test
+    public void downloadsOfDifferentKeysAreIndependent( )
+        throws Exception
+    {
+        InFlightDownloads<String> downloads = new InFlightDownloads<>( );
+        Thread leader = startLeader( downloads, ( ) -> {
+            awaitRelease( );
+            return "content";
+        }, new AtomicReference<>( ) );
+
+        assertEquals( "pom", downloads.execute( KEY + ".pom", ( ) -> "pom", IOException.class ) );
+        assertEquals( 1, downloads.size( ) );
+
+        releaseLeader.countDown( );
+        leader.join( );
+        assertEquals( 0, downloads.size( ) );
+    }
+
+    private Thread startLeader( InFlightDownloads<String> downloads,
+                                InFlightDownloads.Download<String, IOException> download,
+                                AtomicReference<Object> result )
+        throws InterruptedException
+    {
+        Thread thread = new Thread( ( ) -> {
+            try
+            {
+                result.set( downloads.execute( KEY, ( ) -> {
+                    downloadCount.incrementAndGet( );
+                    leaderStarted.countDown( );
+                    return download.execute( );
+                }, IOException.class ) );
+            }
+            catch ( Exception e )
+            {
+                result.set( e );
+            }
+        } );
+        thread.start( );
+        assertTrue( leaderStarted.await( 10, TimeUnit.SECONDS ) );
+        return thread;
+    }
+
+    private Thread startWaiter( InFlightDownloads<String> downloads, AtomicReference<Object> result )
+    {
+        Thread thread = new Thread( ( ) -> {
+            try
+            {
+                result.set( downloads.execute( KEY, ( ) -> {
+                    downloadCount.incrementAndGet( );
+                    return "other content";
+                }, IOException.class ) );
+            }
+            catch ( Exception e )
+            {
+                result.set( e );
+            }
+        } );
+        thread.start( );
+        return thread;
+    }
+
+    private void awaitRelease( )
+    {
+        try
+        {
+            releaseLeader.await( );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    /**
+     * Waits, until the thread is blocked on the running download.
+     */
+    private static void awaitWaiting( Thread thread )
+        throws InterruptedException
+    {
+        long end = System.currentTimeMillis( ) + 10000;
+        while ( thread.getState( ) != Thread.State.TIMED_WAITING && thread.getState( ) != Thread.State.WAITING )
+        {
+            assertFalse( "Waiter did not block", System.currentTimeMillis( ) > end );
+            assertFalse( "Waiter finished", thread.getState( ) == Thread.State.TERMINATED );
+            Thread.sleep( 10 );
+        }
+    }
+}
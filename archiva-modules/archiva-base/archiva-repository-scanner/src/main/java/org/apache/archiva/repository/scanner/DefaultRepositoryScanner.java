@@ -19,7 +19,11 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumUtil;
+import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.FileTypes;
+import org.apache.archiva.configuration.RepositoryScanningConfiguration;
 import org.apache.archiva.consumers.ConsumerException;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
 import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
@@ -32,9 +36,9 @@
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -55,6 +59,12 @@
     @Inject
     private RepositoryContentConsumers repositoryContentConsumers;
 
+    @Inject
+    @Named( value = "archivaConfiguration#default" )
+    private ArchivaConfiguration archivaConfiguration;
+
+    private static final String SCAN_JOURNAL_DIRECTORY = "scan-journal";
+
     private Set<RepositoryScannerInstance> inProgressScans = new LinkedHashSet<>();
 
     @Override
@@ -130,12 +140,15 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
 
         scannerInstance.setFileNameIncludePattern(allIncludes);
         scannerInstance.setFileNameExcludePattern(allExcludes);
+        scannerInstance.setParallelism( getScanParallelism( repository ) );
+        scannerInstance.setScanJournal( openScanJournal( repository ) );
+        scannerInstance.setChecksumAlgorithms( getChecksumAlgorithms( ) );
         inProgressScans.add( scannerInstance );
 
         RepositoryScanStatistics stats = null;
         try
         {
-            Files.walkFileTree(repositoryBase.getFilePath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, scannerInstance);
+            scannerInstance.scan( repositoryBase.getFilePath() );
 
             stats = scannerInstance.getStatistics();
 
@@ -151,6 +164,69 @@ public RepositoryScanStatistics scan( ManagedRepository repository,
         return stats;
     }
 
+    /**
+     * Returns the number of scan threads for the given repository. The repository specific value
+     * has precedence over the default value of the scanning configuration.
+     */
+    private int getScanParallelism( ManagedRepository repository )
+    {
+        if ( archivaConfiguration == null || archivaConfiguration.getConfiguration( ) == null )
+        {
+            return 1;
+        }
+        RepositoryScanningConfiguration scanningConfiguration = archivaConfiguration.getConfiguration( ).getRepositoryScanning( );
+        if ( scanningConfiguration == null )
+        {
+            return 1;
+        }
+        int parallelism = scanningConfiguration.getScanParallelism( );
+        Object repositoryValue = scanningConfiguration.getRepositoryScanParallelism( ).get( repository.getId( ) );
+        if ( repositoryValue != null )
+        {
+            try
+            {
+                parallelism = Integer.parseInt( repositoryValue.toString( ).trim( ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                log.warn( "Invalid scan parallelism value for repository {}: {}", repository.getId( ), repositoryValue );
+            }
+        }
+        return Math.max( 1, parallelism );
+    }
+
+    /**
+     * Returns the checksum algorithms, that are calculated in one pass for each scanned file. These are
+     * the configured checksum types and the algorithms used for the artifact metadata.
+     */
+    private List<ChecksumAlgorithm> getChecksumAlgorithms( )
+    {
+        Set<ChecksumAlgorithm> algorithms = EnumSet.of( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 );
+        if ( archivaConfiguration != null && archivaConfiguration.getConfiguration( ) != null
+            && archivaConfiguration.getConfiguration( ).getArchivaRuntimeConfiguration( ) != null )
+        {
+            algorithms.addAll( ChecksumUtil.getAlgorithms(
+                archivaConfiguration.getConfiguration( ).getArchivaRuntimeConfiguration( ).getChecksumTypes( ) ) );
+        }
+        return new ArrayList<>( algorithms );
+    }
+
+    /**
+     * Opens the scan journal of the repository, if scan journals are enabled by the configuration.
+     */
+    private ScanJournal openScanJournal( ManagedRepository repository )
+    {
+        if ( archivaConfiguration == null || archivaConfiguration.getConfiguration( ) == null
+            || archivaConfiguration.getConfiguration( ).getRepositoryScanning( ) == null
+            || !archivaConfiguration.getConfiguration( ).getRepositoryScanning( ).isScanJournal( ) )
+        {
+            return null;
+        }
+        Path journalFile = archivaConfiguration.getDataDirectory( ).resolve( SCAN_JOURNAL_DIRECTORY )
+            .resolve( repository.getId( ) + ".journal" );
+        return ScanJournal.open( journalFile );
+    }
+
     private List<String> gatherIds( List<? extends RepositoryContentConsumer> consumers )
     {
         List<String> ids = new ArrayList<>();
@@ -0,0 +1,202 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.consumers.functors.ConsumerWantsFilePredicate;
+import org.apache.archiva.repository.scanner.functors.ConsumerProcessFileClosure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that scans a single directory of the repository. The files of the directory
+ * are processed by the current thread, each sub directory is forked as a new task.
+ * Counters and consumer timings are collected per task and merged, when the tasks are joined.
+ *
+ * @since 3.0
+ */
+class ParallelScanTask
+    extends RecursiveTask<ParallelScanTask.Result>
+{
+    private static final Logger log = LoggerFactory.getLogger( ParallelScanTask.class );
+
+    private final RepositoryScannerInstance scanner;
+
+    private final Path directory;
+
+    private final long lastModified;
+
+    /**
+     * The file keys of the visited directories. Used to detect cycles, because links are followed.
+     */
+    private final Set<Object> visitedDirectories;
+
+    ParallelScanTask( RepositoryScannerInstance scanner, Path baseDir, BasicFileAttributes attrs )
+    {
+        this( scanner, baseDir, attrs.lastModifiedTime( ).toMillis( ), ConcurrentHashMap.newKeySet( ) );
+        if ( attrs.fileKey( ) != null )
+        {
+            visitedDirectories.add( attrs.fileKey( ) );
+        }
+    }
+
+    private ParallelScanTask( RepositoryScannerInstance scanner, Path directory, long lastModified,
+                              Set<Object> visitedDirectories )
+    {
+        this.scanner = scanner;
+        this.directory = directory;
+        this.lastModified = lastModified;
+        this.visitedDirectories = visitedDirectories;
+    }
+
+    @Override
+    protected Result compute( )
+    {
+        Result result = new Result( );
+        long skippedFileCount = 0;
+        boolean complete = true;
+        List<ParallelScanTask> subTasks = new ArrayList<>( );
+        ConsumerWantsFilePredicate wantsFile = scanner.createWantsFilePredicate( );
+        ConsumerProcessFileClosure processFile =
+            scanner.createProcessFileClosure( result.consumerTimings, result.consumerCounts );
+
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( directory ) )
+        {
+            for ( Path entry : stream )
+            {
+                BasicFileAttributes attrs;
+                try
+                {
+                    // Follows links, like the serial walk
+                    attrs = Files.readAttributes( entry, BasicFileAttributes.class );
+                }
+                catch ( IOException e )
+                {
+                    log.error( "Error occured at {}: {}", entry, e.getMessage( ), e );
+                    continue;
+                }
+                if ( attrs.isDirectory( ) )
+                {
+                    if ( scanner.isUnchangedDirectory( entry ) )
+                    {
+                        skippedFileCount += scanner.skipUnchangedDirectory( entry );
+                    }
+                    // Without file key we cannot detect cycles, but this is the same as for the serial walk
+                    else if ( attrs.fileKey( ) == null || visitedDirectories.add( attrs.fileKey( ) ) )
+                    {
+                        ParallelScanTask task =
+                            new ParallelScanTask( scanner, entry, attrs.lastModifiedTime( ).toMillis( ), visitedDirectories );
+                        task.fork( );
+                        subTasks.add( task );
+                    }
+                    else
+                    {
+                        log.warn( "Directory cycle detected at {}", entry );
+                    }
+                }
+                else if ( scanner.isIncluded( entry ) )
+                {
+                    result.fileCount++;
+                    try
+                    {
+                        if ( scanner.consumeFile( entry, wantsFile, processFile ) )
+                        {
+                            result.newFileCount++;
+                        }
+                    }
+                    catch ( IOException e )
+                    {
+                        log.error( "Error occured at {}: {}", entry, e.getMessage( ), e );
+                    }
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( "Could not read directory {}: {}", directory, e.getMessage( ), e );
+            complete = false;
+        }
+
+        if ( complete )
+        {
+            scanner.recordDirectory( directory, lastModified, result.fileCount );
+        }
+        result.fileCount += skippedFileCount;
+        for ( ParallelScanTask task : subTasks )
+        {
+            result.merge( task.join( ) );
+        }
+        return result;
+    }
+
+    /**
+     * The counters of a directory subtree.
+     */
+    static class Result
+    {
+        private long fileCount = 0;
+
+        private long newFileCount = 0;
+
+        private final Map<String, Long> consumerTimings = new HashMap<>( );
+
+        private final Map<String, Long> consumerCounts = new HashMap<>( );
+
+        void merge( Result other )
+        {
+            this.fileCount += other.fileCount;
+            this.newFileCount += other.newFileCount;
+            other.consumerTimings.forEach( ( id, value ) -> consumerTimings.merge( id, value, Long::sum ) );
+            other.consumerCounts.forEach( ( id, value ) -> consumerCounts.merge( id, value, Long::sum ) );
+        }
+
+        long getFileCount( )
+        {
+            return fileCount;
+        }
+
+        long getNewFileCount( )
+        {
+            return newFileCount;
+        }
+
+        Map<String, Long> getConsumerTimings( )
+        {
+            return consumerTimings;
+        }
+
+        Map<String, Long> getConsumerCounts( )
+        {
+            return consumerCounts;
+        }
+    }
+}
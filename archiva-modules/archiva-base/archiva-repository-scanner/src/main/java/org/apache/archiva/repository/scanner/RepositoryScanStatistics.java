@@ -105,6 +105,16 @@ public void increaseNewFileCount()
         this.newFileCount += 1;
     }
 
+    public void addFileCount( long count )
+    {
+        this.totalFileCount += count;
+    }
+
+    public void addNewFileCount( long count )
+    {
+        this.newFileCount += count;
+    }
+
     public void setKnownConsumers( List<String> consumers )
     {
         knownConsumers = consumers;
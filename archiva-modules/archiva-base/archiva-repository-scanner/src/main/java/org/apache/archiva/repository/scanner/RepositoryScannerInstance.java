@@ -19,6 +19,8 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumContext;
 import org.apache.archiva.common.utils.BaseFile;
 import org.apache.archiva.common.utils.PathUtil;
 import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
@@ -40,17 +42,23 @@
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -94,6 +102,17 @@
 
     private boolean isRunning = false;
 
+    private int parallelism = 1;
+
+    private ScanJournal scanJournal;
+
+    private List<ChecksumAlgorithm> checksumAlgorithms = Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 );
+
+    /**
+     * Modification time and file count of the directories currently visited by the serial walk.
+     */
+    private final Deque<long[]> directoryStack = new ArrayDeque<>( );
+
     Path basePath = null;
 
     public RepositoryScannerInstance( ManagedRepository repository,
@@ -113,6 +132,7 @@ public RepositoryScannerInstance( ManagedRepository repository,
         consumerProcessFile.setExecuteOnEntireRepo( true );
         consumerProcessFile.setConsumerTimings( consumerTimings );
         consumerProcessFile.setConsumerCounts( consumerCounts );
+        consumerProcessFile.setChecksumContext( new ChecksumContext( checksumAlgorithms ) );
 
         this.consumerWantsFile = new ConsumerWantsFilePredicate( repository );
 
@@ -173,6 +193,164 @@ public long getChangesSince()
         return changesSince;
     }
 
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used for scanning. If the value is greater than 1, the directory tree
+     * is split up and scanned by a fork/join pool. Consumers that are not thread safe are still called serially.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
+    /**
+     * Scans the given directory and sends all files to the consumers.
+     *
+     * @param baseDir the base directory of the repository
+     * @throws IOException if the base directory could not be read
+     */
+    public void scan( Path baseDir ) throws IOException
+    {
+        if ( scanJournal != null )
+        {
+            prepareScanJournal( baseDir );
+        }
+        if ( parallelism > 1 )
+        {
+            parallelScan( baseDir );
+        }
+        else
+        {
+            Files.walkFileTree( baseDir, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE, this );
+        }
+    }
+
+    private void parallelScan( Path baseDir ) throws IOException
+    {
+        BasicFileAttributes attrs = Files.readAttributes( baseDir, BasicFileAttributes.class );
+        startWalk( baseDir );
+        ForkJoinPool pool = new ForkJoinPool( parallelism );
+        try
+        {
+            if ( isUnchangedDirectory( baseDir ) )
+            {
+                stats.addFileCount( skipUnchangedDirectory( baseDir ) );
+            }
+            else
+            {
+                ParallelScanTask.Result result = pool.invoke( new ParallelScanTask( this, baseDir, attrs ) );
+                stats.addFileCount( result.getFileCount( ) );
+                stats.addNewFileCount( result.getNewFileCount( ) );
+                mergeCounters( consumerTimings, result.getConsumerTimings( ) );
+                mergeCounters( consumerCounts, result.getConsumerCounts( ) );
+            }
+        }
+        finally
+        {
+            pool.shutdown( );
+            finishWalk( );
+        }
+    }
+
+    public List<ChecksumAlgorithm> getChecksumAlgorithms( )
+    {
+        return checksumAlgorithms;
+    }
+
+    /**
+     * Sets the checksum algorithms, that are calculated together, when a consumer requests a checksum
+     * of the scanned file. Each file is read only once for all these algorithms.
+     *
+     * @param checksumAlgorithms the algorithms
+     */
+    public void setChecksumAlgorithms( List<ChecksumAlgorithm> checksumAlgorithms )
+    {
+        this.checksumAlgorithms = checksumAlgorithms;
+        consumerProcessFile.setChecksumContext( new ChecksumContext( checksumAlgorithms ) );
+    }
+
+    public ScanJournal getScanJournal( )
+    {
+        return scanJournal;
+    }
+
+    /**
+     * Sets the journal, that is used to skip unchanged directories on incremental scans. The journal
+     * is updated and saved at the end of the scan.
+     *
+     * @param scanJournal the journal of the repository, or <code>null</code>, if no journal should be used
+     */
+    public void setScanJournal( ScanJournal scanJournal )
+    {
+        this.scanJournal = scanJournal;
+    }
+
+    private void prepareScanJournal( Path baseDir )
+    {
+        if ( changesSince <= 0 )
+        {
+            // Fresh scans visit all files and only record the journal
+            return;
+        }
+        if ( knownConsumers.stream( ).anyMatch( RepositoryContentConsumer::isProcessUnmodified ) )
+        {
+            log.info( "Not skipping unchanged directories of [{}], because some consumers process unmodified files",
+                this.repository.getId( ) );
+            return;
+        }
+        scanJournal.computeUnchangedDirectories( baseDir, changesSince );
+    }
+
+    boolean isUnchangedDirectory( Path dir )
+    {
+        return scanJournal != null && scanJournal.isUnchanged( getJournalPath( dir ) );
+    }
+
+    /**
+     * Skips the unchanged directory and returns the number of files recorded for its subtree.
+     */
+    long skipUnchangedDirectory( Path dir )
+    {
+        log.debug( "Skipping unchanged directory {}", dir );
+        return scanJournal.skipDirectory( getJournalPath( dir ) );
+    }
+
+    void recordDirectory( Path dir, long lastModified, long fileCount )
+    {
+        if ( scanJournal != null )
+        {
+            scanJournal.recordDirectory( getJournalPath( dir ), lastModified, fileCount );
+        }
+    }
+
+    private String getJournalPath( Path dir )
+    {
+        StringBuilder path = new StringBuilder( );
+        for ( Path name : basePath.relativize( dir ) )
+        {
+            if ( path.length( ) > 0 )
+            {
+                path.append( '/' );
+            }
+            path.append( name.toString( ) );
+        }
+        return path.toString( );
+    }
+
+    private static void mergeCounters( Map<String, Long> target, Map<String, Long> source )
+    {
+        for ( Map.Entry<String, Long> entry : source.entrySet( ) )
+        {
+            target.merge( entry.getKey( ), entry.getValue( ), Long::sum );
+        }
+    }
+
     public List<String> getFileNameIncludePattern() {
         return fileNameIncludePattern;
     }
@@ -213,46 +391,112 @@ public void addFileNameExcludePattern(String fileNamePattern) {
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
         if (!isRunning) {
-            isRunning = true;
-            this.basePath = dir;
-            log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
-            stats.triggerStart();
+            startWalk( dir );
+        }
+        if ( scanJournal != null )
+        {
+            if ( isUnchangedDirectory( dir ) )
+            {
+                stats.addFileCount( skipUnchangedDirectory( dir ) );
+                if ( dir.equals( basePath ) )
+                {
+                    // postVisitDirectory is not called for skipped directories
+                    finishWalk( );
+                }
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            directoryStack.push( new long[]{ attrs.lastModifiedTime( ).toMillis( ), 0 } );
         }
         return FileVisitResult.CONTINUE;
     }
 
+    private void startWalk( Path dir )
+    {
+        isRunning = true;
+        this.basePath = dir;
+        log.info( "Walk Started: [{}] {}", this.repository.getId(), this.repository.getLocation() );
+        stats.triggerStart();
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        final Path relativeFile = basePath.relativize( file );
-        if (excludeMatcher.stream().noneMatch(m -> m.matches(relativeFile)) && includeMatcher.stream().allMatch(m -> m.matches(relativeFile))) {
-            log.debug( "Walk Step: {}, {}", file );
-
+        if (isIncluded(file)) {
             stats.increaseFileCount();
+            if ( scanJournal != null && !directoryStack.isEmpty( ) )
+            {
+                directoryStack.peek( )[1]++;
+            }
 
-            // consume files regardless - the predicate will check the timestamp
-            Path repoPath = PathUtil.getPathFromUri( repository.getLocation() );
-            BaseFile basefile = new BaseFile( repoPath.toString(), file.toFile() );
-
-            // Timestamp finished points to the last successful scan, not this current one.
-            if ( Files.getLastModifiedTime(file).toMillis() >= changesSince )
+            if ( consumeFile( file, consumerWantsFile, consumerProcessFile ) )
             {
                 stats.increaseNewFileCount();
             }
+        }
+        return FileVisitResult.CONTINUE;
+    }
 
-            consumerProcessFile.setBasefile( basefile );
-            consumerWantsFile.setBasefile( basefile );
+    boolean isIncluded( Path file )
+    {
+        final Path relativeFile = basePath.relativize( file );
+        return excludeMatcher.stream().noneMatch(m -> m.matches(relativeFile)) && includeMatcher.stream().allMatch(m -> m.matches(relativeFile));
+    }
 
-            Closure<RepositoryContentConsumer> processIfWanted = IfClosure.ifClosure( consumerWantsFile, consumerProcessFile );
-            IterableUtils.forEach( this.knownConsumers, processIfWanted );
+    /**
+     * Sends the file to all known consumers that want it, or to the invalid consumers, if no
+     * known consumer wants it.
+     *
+     * @return <code>true</code>, if the file is new or changed since the last scan
+     */
+    boolean consumeFile( Path file, ConsumerWantsFilePredicate wantsFile, ConsumerProcessFileClosure processFile ) throws IOException
+    {
+        log.debug( "Walk Step: {}", file );
 
-            if ( consumerWantsFile.getWantedFileCount() <= 0 )
-            {
-                // Nothing known processed this file.  It is invalid!
-                IterableUtils.forEach( this.invalidConsumers, consumerProcessFile );
-            }
+        // consume files regardless - the predicate will check the timestamp
+        Path repoPath = PathUtil.getPathFromUri( repository.getLocation() );
+        BaseFile basefile = new BaseFile( repoPath.toString(), file.toFile() );
+
+        // Timestamp finished points to the last successful scan, not this current one.
+        boolean isNew = Files.getLastModifiedTime(file).toMillis() >= changesSince;
+
+        processFile.setBasefile( basefile );
+        wantsFile.setBasefile( basefile );
 
+        Closure<RepositoryContentConsumer> processIfWanted = IfClosure.ifClosure( wantsFile, processFile );
+        IterableUtils.forEach( this.knownConsumers, processIfWanted );
+
+        if ( wantsFile.getWantedFileCount() <= 0 )
+        {
+            // Nothing known processed this file.  It is invalid!
+            IterableUtils.forEach( this.invalidConsumers, processFile );
         }
-        return FileVisitResult.CONTINUE;
+        return isNew;
+    }
+
+    /**
+     * Creates a new predicate instance for a scanning thread. The predicate keeps state per file,
+     * so it must not be shared between threads.
+     */
+    ConsumerWantsFilePredicate createWantsFilePredicate( )
+    {
+        ConsumerWantsFilePredicate predicate = new ConsumerWantsFilePredicate( repository );
+        predicate.setChangesSince( changesSince );
+        predicate.setCaseSensitive( consumerWantsFile.isCaseSensitive( ) );
+        return predicate;
+    }
+
+    /**
+     * Creates a new closure instance for a scanning thread. Timings and counts are collected in
+     * the given maps and merged after the scan.
+     */
+    ConsumerProcessFileClosure createProcessFileClosure( Map<String, Long> timings, Map<String, Long> counts )
+    {
+        ConsumerProcessFileClosure closure = new ConsumerProcessFileClosure( );
+        closure.setExecuteOnEntireRepo( true );
+        closure.setConsumerTimings( timings );
+        closure.setConsumerCounts( counts );
+        closure.setSerializeUnsafeConsumers( true );
+        closure.setChecksumContext( new ChecksumContext( checksumAlgorithms ) );
+        return closure;
     }
 
     @Override
@@ -273,6 +517,14 @@ public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOExce
 
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if ( scanJournal != null && !directoryStack.isEmpty( ) )
+        {
+            long[] directory = directoryStack.pop( );
+            if ( exc == null )
+            {
+                recordDirectory( dir, directory[0], directory[1] );
+            }
+        }
         if (Files.isSameFile(dir, basePath)) {
             finishWalk();
         }
@@ -288,6 +540,18 @@ private void finishWalk() {
         stats.setConsumerTimings( consumerTimings );
         stats.setConsumerCounts( consumerCounts );
 
+        if ( scanJournal != null )
+        {
+            try
+            {
+                scanJournal.save( );
+            }
+            catch ( IOException e )
+            {
+                log.error( "Could not save scan journal {}: {}", scanJournal.getJournalFile( ), e.getMessage( ), e );
+            }
+        }
+
         log.info( "Walk Finished: [{}] {}", this.repository.getId(), this.repository.getLocation() );
         stats.triggerFinished();
         this.basePath = null;
@@ -0,0 +1,353 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent journal of the directories of a repository, that is written by each scan and used by
+ * the next incremental scan to skip directory subtrees that did not change.
+ * <p>
+ * For each directory the journal stores the modification time and the number of scanned files.
+ * A directory subtree is unchanged, if the modification time of each directory in the subtree
+ * is the same as recorded by the last scan and older than the incremental scan threshold.
+ * The modification time of a directory changes, if entries are created, removed or renamed. So this
+ * assumes, that files in the repository are not modified in place, which is true for deployments and
+ * files written by Archiva. Fresh scans always visit all files.
+ * </p>
+ * <p>
+ * The journal is stored in a compact binary format with a trailing CRC32 checksum. If the
+ * journal file cannot be read or the checksum does not match, it is discarded and rebuilt by the
+ * next scan.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class ScanJournal
+{
+    private static final Logger log = LoggerFactory.getLogger( ScanJournal.class );
+
+    private static final int MAGIC = 0x41534a4c;
+
+    private static final int VERSION = 1;
+
+    private static final String ROOT = "";
+
+    private final Path journalFile;
+
+    /**
+     * The entries of the last scan, read from the journal file.
+     */
+    private final Map<String, Entry> previous;
+
+    /**
+     * The children of each directory of the last scan.
+     */
+    private final Map<String, List<String>> previousChildren = new HashMap<>( );
+
+    /**
+     * The entries of the current scan.
+     */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>( );
+
+    private Set<String> unchangedDirectories = Collections.emptySet( );
+
+    private ScanJournal( Path journalFile, Map<String, Entry> previous )
+    {
+        this.journalFile = journalFile;
+        this.previous = previous;
+        for ( String path : previous.keySet( ) )
+        {
+            if ( !ROOT.equals( path ) )
+            {
+                previousChildren.computeIfAbsent( getParent( path ), k -> new ArrayList<>( ) ).add( path );
+            }
+        }
+    }
+
+    /**
+     * Opens the journal stored in the given file. If the file does not exist or is corrupt, an empty
+     * journal is returned and the file will be rewritten by the next {@link #save()}.
+     *
+     * @param journalFile the path of the journal file
+     * @return the journal instance
+     */
+    public static ScanJournal open( Path journalFile )
+    {
+        Map<String, Entry> entries = Collections.emptyMap( );
+        if ( Files.exists( journalFile ) )
+        {
+            try
+            {
+                entries = read( journalFile );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                log.warn( "Scan journal {} is corrupt and will be rebuilt: {}", journalFile, e.getMessage( ) );
+                try
+                {
+                    Files.deleteIfExists( journalFile );
+                }
+                catch ( IOException ex )
+                {
+                    log.error( "Could not delete corrupt scan journal {}: {}", journalFile, ex.getMessage( ) );
+                }
+            }
+        }
+        return new ScanJournal( journalFile, entries );
+    }
+
+    public Path getJournalFile( )
+    {
+        return journalFile;
+    }
+
+    /**
+     * Returns the number of directories recorded by the last scan.
+     */
+    public int getDirectoryCount( )
+    {
+        return previous.size( );
+    }
+
+    /**
+     * Checks the recorded directories against the file system and determines the unchanged subtrees.
+     * Only the recorded directories are checked, the directories are not listed.
+     *
+     * @param baseDir      the base directory of the repository
+     * @param changesSince the threshold of the incremental scan
+     */
+    public void computeUnchangedDirectories( Path baseDir, long changesSince )
+    {
+        Set<String> unchanged = new HashSet<>( );
+        if ( previous.containsKey( ROOT ) )
+        {
+            checkUnchanged( baseDir, ROOT, changesSince, unchanged );
+        }
+        this.unchangedDirectories = unchanged;
+        log.debug( "Scan journal {}: {} of {} directories unchanged", journalFile, unchanged.size( ), previous.size( ) );
+    }
+
+    private boolean checkUnchanged( Path baseDir, String path, long changesSince, Set<String> unchanged )
+    {
+        boolean isUnchanged = true;
+        for ( String child : previousChildren.getOrDefault( path, Collections.emptyList( ) ) )
+        {
+            // No short cut, because the unchanged subtrees of changed directories are needed too
+            isUnchanged &= checkUnchanged( baseDir, child, changesSince, unchanged );
+        }
+        if ( isUnchanged )
+        {
+            long recordedTime = previous.get( path ).lastModified;
+            try
+            {
+                long lastModified = Files.getLastModifiedTime( ROOT.equals( path ) ? baseDir : baseDir.resolve( path ) ).toMillis( );
+                isUnchanged = lastModified == recordedTime && lastModified < changesSince;
+            }
+            catch ( IOException e )
+            {
+                // Directory was removed or is not readable
+                isUnchanged = false;
+            }
+        }
+        if ( isUnchanged )
+        {
+            unchanged.add( path );
+        }
+        return isUnchanged;
+    }
+
+    /**
+     * Returns <code>true</code>, if the directory and all its sub directories did not change since the last scan.
+     *
+     * @param path the directory path relative to the repository base directory, separated by '/'
+     */
+    public boolean isUnchanged( String path )
+    {
+        return unchangedDirectories.contains( path );
+    }
+
+    /**
+     * Takes over the recorded entries of the given unchanged subtree into the current journal.
+     *
+     * @param path the directory path relative to the repository base directory, separated by '/'
+     * @return the number of files in the subtree
+     */
+    public long skipDirectory( String path )
+    {
+        Entry entry = previous.get( path );
+        if ( entry == null )
+        {
+            return 0;
+        }
+        current.put( path, entry );
+        long fileCount = entry.fileCount;
+        for ( String child : previousChildren.getOrDefault( path, Collections.emptyList( ) ) )
+        {
+            fileCount += skipDirectory( child );
+        }
+        return fileCount;
+    }
+
+    /**
+     * Records a scanned directory.
+     *
+     * @param path         the directory path relative to the repository base directory, separated by '/'
+     * @param lastModified the modification time of the directory before it was listed
+     * @param fileCount    the number of scanned files in the directory, without sub directories
+     */
+    public void recordDirectory( String path, long lastModified, long fileCount )
+    {
+        current.put( path, new Entry( lastModified, fileCount ) );
+    }
+
+    /**
+     * Writes the entries of the current scan to the journal file. The file is replaced atomically.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void save( ) throws IOException
+    {
+        // Sorting guarantees, that each parent is written before its children
+        TreeMap<String, Entry> sorted = new TreeMap<>( current );
+        Map<String, Integer> indexes = new HashMap<>( sorted.size( ) );
+        Files.createDirectories( journalFile.toAbsolutePath( ).getParent( ) );
+        Path tmpFile = journalFile.resolveSibling( journalFile.getFileName( ) + ".tmp" );
+        try ( CheckedOutputStream checkedOut = new CheckedOutputStream(
+            new BufferedOutputStream( Files.newOutputStream( tmpFile ) ), new CRC32( ) );
+              DataOutputStream out = new DataOutputStream( checkedOut ) )
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( sorted.size( ) );
+            int index = 0;
+            for ( Map.Entry<String, Entry> item : sorted.entrySet( ) )
+            {
+                String path = item.getKey( );
+                String parent = ROOT.equals( path ) ? null : getParent( path );
+                Integer parentIndex = parent == null ? null : indexes.get( parent );
+                if ( parent != null && parentIndex == null )
+                {
+                    // Parent was not recorded, e.g. because of a read error. Store the full path.
+                    out.writeInt( -1 );
+                    out.writeUTF( path );
+                }
+                else
+                {
+                    out.writeInt( parentIndex == null ? -1 : parentIndex );
+                    out.writeUTF( parent == null ? path : path.substring( parent.isEmpty( ) ? 0 : parent.length( ) + 1 ) );
+                }
+                out.writeLong( item.getValue( ).lastModified );
+                out.writeLong( item.getValue( ).fileCount );
+                indexes.put( path, index++ );
+            }
+            out.flush( );
+            out.writeLong( checkedOut.getChecksum( ).getValue( ) );
+        }
+        Files.move( tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private static Map<String, Entry> read( Path journalFile ) throws IOException
+    {
+        try ( CheckedInputStream checkedIn = new CheckedInputStream(
+            new BufferedInputStream( Files.newInputStream( journalFile ) ), new CRC32( ) );
+              DataInputStream in = new DataInputStream( checkedIn ) )
+        {
+            if ( in.readInt( ) != MAGIC || in.readInt( ) != VERSION )
+            {
+                throw new IOException( "Unknown journal format" );
+            }
+            int size = in.readInt( );
+            if ( size < 0 )
+            {
+                throw new IOException( "Bad entry count " + size );
+            }
+            Map<String, Entry> entries = new HashMap<>( );
+            String[] paths = new String[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                int parentIndex = in.readInt( );
+                String name = in.readUTF( );
+                if ( parentIndex >= i )
+                {
+                    throw new IOException( "Bad parent index " + parentIndex );
+                }
+                String path;
+                if ( parentIndex < 0 )
+                {
+                    path = name;
+                }
+                else
+                {
+                    path = paths[parentIndex].isEmpty( ) ? name : paths[parentIndex] + "/" + name;
+                }
+                paths[i] = path;
+                entries.put( path, new Entry( in.readLong( ), in.readLong( ) ) );
+            }
+            long checksum = checkedIn.getChecksum( ).getValue( );
+            if ( in.readLong( ) != checksum )
+            {
+                throw new IOException( "Checksum mismatch" );
+            }
+            return entries;
+        }
+    }
+
+    private static String getParent( String path )
+    {
+        int idx = path.lastIndexOf( '/' );
+        return idx < 0 ? ROOT : path.substring( 0, idx );
+    }
+
+    private static final class Entry
+    {
+        final long lastModified;
+
+        final long fileCount;
+
+        Entry( long lastModified, long fileCount )
+        {
+            this.lastModified = lastModified;
+            this.fileCount = fileCount;
+        }
+    }
+}
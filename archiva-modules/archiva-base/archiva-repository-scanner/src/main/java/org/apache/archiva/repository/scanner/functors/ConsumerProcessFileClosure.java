@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumContext;
 import org.apache.archiva.common.utils.BaseFile;
 import org.apache.archiva.consumers.RepositoryContentConsumer;
 import org.apache.commons.collections4.Closure;
@@ -43,11 +44,47 @@
 
     private Map<String, Long> consumerCounts;
 
+    private boolean serializeUnsafeConsumers = false;
+
+    private ChecksumContext checksumContext;
+
     @Override
     public void execute( RepositoryContentConsumer input )
     {
         RepositoryContentConsumer consumer = (RepositoryContentConsumer) input;
 
+        ChecksumContext previousContext = checksumContext == null ? null : checksumContext.activate( );
+        try
+        {
+            executeConsumer( consumer );
+        }
+        finally
+        {
+            if ( checksumContext != null )
+            {
+                checksumContext.deactivate( previousContext );
+            }
+        }
+    }
+
+    private void executeConsumer( RepositoryContentConsumer consumer )
+    {
+        if ( serializeUnsafeConsumers && !consumer.isThreadSafe( ) )
+        {
+            // Consumers that are not thread safe must never see two files at the same time
+            synchronized ( consumer )
+            {
+                processFile( consumer );
+            }
+        }
+        else
+        {
+            processFile( consumer );
+        }
+    }
+
+    private void processFile( RepositoryContentConsumer consumer )
+    {
         String id = consumer.getId( );
         try
         {
@@ -110,6 +147,39 @@ public void setConsumerCounts( Map<String, Long> consumerCounts )
         this.consumerCounts = consumerCounts;
     }
 
+    public boolean isSerializeUnsafeConsumers( )
+    {
+        return serializeUnsafeConsumers;
+    }
+
+    /**
+     * If set to <code>true</code>, consumers that are not thread safe are synchronized,
+     * so that they are called only by one thread at a time.
+     *
+     * @param serializeUnsafeConsumers <code>true</code>, if the closure is used by concurrent threads.
+     */
+    public void setSerializeUnsafeConsumers( boolean serializeUnsafeConsumers )
+    {
+        this.serializeUnsafeConsumers = serializeUnsafeConsumers;
+    }
+
+    public ChecksumContext getChecksumContext( )
+    {
+        return checksumContext;
+    }
+
+    /**
+     * Sets the checksum context, that is active while the consumers process a file. So checksums
+     * calculated by one consumer are reused by the following consumers of the same file.
+     * The context must not be shared between threads.
+     *
+     * @param checksumContext the context, or <code>null</code>
+     */
+    public void setChecksumContext( ChecksumContext checksumContext )
+    {
+        this.checksumContext = checksumContext;
+    }
+
     public Logger getLogger( )
     {
         return log;
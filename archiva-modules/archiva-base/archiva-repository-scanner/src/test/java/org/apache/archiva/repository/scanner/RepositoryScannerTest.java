@@ -292,6 +292,56 @@ public void testDefaultRepositoryScanner()
         assertThat( paths, is( expected ) );
     }
 
+    @Test
+    public void testParallelDefaultRepositoryScanner()
+        throws Exception
+    {
+        ManagedRepository repository = createDefaultRepository();
+
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<>();
+        KnownScanConsumer consumer = new KnownScanConsumer();
+        consumer.setIncludes(
+            new String[]{ "**/*.jar", "**/*.war", "**/*.pom", "**/maven-metadata.xml", "**/*-site.xml", "**/*.zip",
+                "**/*.tar.gz", "**/*.sha1", "**/*.md5" }
+        );
+        knownConsumers.add( consumer );
+
+        List<InvalidRepositoryContentConsumer> invalidConsumers = new ArrayList<>();
+        InvalidScanConsumer badconsumer = new InvalidScanConsumer();
+        invalidConsumers.add( badconsumer );
+
+        RepositoryScannerInstance serialInstance =
+            new RepositoryScannerInstance( repository, knownConsumers, invalidConsumers, RepositoryScanner.FRESH_SCAN );
+        serialInstance.setFileNameExcludePattern( getIgnoreList() );
+        serialInstance.scan( repository.getAsset( "" ).getFilePath() );
+        RepositoryScanStatistics serialStats = serialInstance.getStatistics();
+        int serialProcessCount = consumer.getProcessCount();
+        consumer.setProcessCount( 0 );
+
+        List<InvalidRepositoryContentConsumer> parallelInvalidConsumers = new ArrayList<>();
+        InvalidScanConsumer parallelBadconsumer = new InvalidScanConsumer();
+        parallelInvalidConsumers.add( parallelBadconsumer );
+
+        RepositoryScannerInstance parallelInstance =
+            new RepositoryScannerInstance( repository, knownConsumers, parallelInvalidConsumers, RepositoryScanner.FRESH_SCAN );
+        parallelInstance.setFileNameExcludePattern( getIgnoreList() );
+        parallelInstance.setParallelism( 4 );
+        parallelInstance.scan( repository.getAsset( "" ).getFilePath() );
+        RepositoryScanStatistics parallelStats = parallelInstance.getStatistics();
+
+        assertEquals( "Stats.totalFileCount", serialStats.getTotalFileCount(), parallelStats.getTotalFileCount() );
+        assertEquals( "Stats.newFileCount", serialStats.getNewFileCount(), parallelStats.getNewFileCount() );
+        assertEquals( "Processed Count", serialProcessCount, consumer.getProcessCount() );
+        List<String> paths = new ArrayList<>( parallelBadconsumer.getPaths() );
+        paths.sort( Comparator.naturalOrder() );
+        List<String> serialPaths = new ArrayList<>( badconsumer.getPaths() );
+        serialPaths.sort( Comparator.naturalOrder() );
+        assertThat( paths, is( serialPaths ) );
+        assertEquals( "Consumer Count", Long.valueOf( serialProcessCount ),
+                      parallelInstance.getConsumerCounts().get( consumer.getId() ) );
+        assertNotNull( "Stats.whenGathered", parallelStats.getWhenGathered() );
+    }
+
     @Test
     public void testDefaultRepositoryArtifactScanner()
         throws Exception
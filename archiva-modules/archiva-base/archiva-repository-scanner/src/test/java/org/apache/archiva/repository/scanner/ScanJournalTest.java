@@ -0,0 +1,197 @@
+package org.apache.archiva.repository.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.filelock.DefaultFileLockManager;
+import org.apache.archiva.consumers.InvalidRepositoryContentConsumer;
+import org.apache.archiva.consumers.KnownRepositoryContentConsumer;
+import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.base.BasicManagedRepository;
+import org.apache.archiva.repository.scanner.mock.ManagedRepositoryContentMock;
+import org.apache.archiva.repository.storage.fs.FilesystemStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the scan journal with incremental scans.
+ */
+public class ScanJournalTest
+{
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private Path repoDir;
+
+    private Path journalFile;
+
+    private long oldTime;
+
+    @Before
+    public void setUp( )
+        throws Exception
+    {
+        repoDir = Paths.get( System.getProperty( "basedir", "." ), "target/test-repos/journal-repository" );
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory( repoDir );
+        journalFile = Paths.get( System.getProperty( "basedir", "." ), "target/test-journal/journal-repository.journal" );
+        Files.deleteIfExists( journalFile );
+
+        oldTime = System.currentTimeMillis( ) - 24 * HOUR;
+        createFile( "org/apache/test/a/1.0/a-1.0.jar" );
+        createFile( "org/apache/test/a/1.0/a-1.0.pom" );
+        createFile( "org/apache/test/b/1.0/b-1.0.jar" );
+        createFile( "org/apache/test/b/2.0/b-2.0.jar" );
+        setOldTimes( repoDir );
+    }
+
+    private void createFile( String path ) throws IOException
+    {
+        Path file = repoDir.resolve( path );
+        Files.createDirectories( file.getParent( ) );
+        Files.write( file, path.getBytes( StandardCharsets.UTF_8 ) );
+        Files.setLastModifiedTime( file, FileTime.fromMillis( oldTime ) );
+    }
+
+    private void setOldTimes( Path dir ) throws IOException
+    {
+        try ( java.util.stream.Stream<Path> stream = Files.walk( dir ) )
+        {
+            List<Path> dirs = new ArrayList<>( );
+            stream.filter( Files::isDirectory ).forEach( dirs::add );
+            for ( Path d : dirs )
+            {
+                Files.setLastModifiedTime( d, FileTime.fromMillis( oldTime ) );
+            }
+        }
+    }
+
+    private ManagedRepository createRepository( ) throws IOException
+    {
+        FilesystemStorage storage = new FilesystemStorage( repoDir.toAbsolutePath( ), new DefaultFileLockManager( ) );
+        BasicManagedRepository repo = new BasicManagedRepository( "journal-repository", "Journal Repository", storage );
+        repo.setLocation( repoDir.toAbsolutePath( ).toUri( ) );
+        repo.setContent( new ManagedRepositoryContentMock( repo ) );
+        return repo;
+    }
+
+    private RepositoryScanStatistics scan( ManagedRepository repository, KnownScanConsumer consumer, long changesSince,
+                                           int parallelism )
+        throws IOException
+    {
+        List<KnownRepositoryContentConsumer> knownConsumers = new ArrayList<>( );
+        knownConsumers.add( consumer );
+        List<InvalidRepositoryContentConsumer> invalidConsumers = new ArrayList<>( );
+        RepositoryScannerInstance instance =
+            new RepositoryScannerInstance( repository, knownConsumers, invalidConsumers, changesSince );
+        instance.setParallelism( parallelism );
+        instance.setScanJournal( ScanJournal.open( journalFile ) );
+        instance.scan( repoDir.toAbsolutePath( ) );
+        return instance.getStatistics( );
+    }
+
+    private KnownScanConsumer createConsumer( )
+    {
+        KnownScanConsumer consumer = new KnownScanConsumer( );
+        consumer.setIncludes( new String[]{ "**/*.jar", "**/*.pom" } );
+        return consumer;
+    }
+
+    @Test
+    public void testSkipUnchangedDirectories( ) throws Exception
+    {
+        ManagedRepository repository = createRepository( );
+        KnownScanConsumer consumer = createConsumer( );
+
+        RepositoryScanStatistics stats = scan( repository, consumer, RepositoryScanner.FRESH_SCAN, 1 );
+        assertEquals( 4, stats.getTotalFileCount( ) );
+        assertEquals( 4, consumer.getProcessCount( ) );
+        assertTrue( Files.exists( journalFile ) );
+
+        long changesSince = System.currentTimeMillis( ) - HOUR;
+        createFile( "org/apache/test/b/2.0/b-2.0.pom" );
+        Files.setLastModifiedTime( repoDir.resolve( "org/apache/test/b/2.0/b-2.0.pom" ),
+            FileTime.fromMillis( System.currentTimeMillis( ) ) );
+
+        consumer = createConsumer( );
+        stats = scan( repository, consumer, changesSince, 1 );
+        assertEquals( 5, stats.getTotalFileCount( ) );
+        assertEquals( 1, stats.getNewFileCount( ) );
+        assertEquals( 1, consumer.getProcessCount( ) );
+
+        // Nothing changed, the whole tree is skipped
+        consumer = createConsumer( );
+        stats = scan( repository, consumer, System.currentTimeMillis( ) + 1000, 1 );
+        assertEquals( 5, stats.getTotalFileCount( ) );
+        assertEquals( 0, stats.getNewFileCount( ) );
+        assertEquals( 0, consumer.getProcessCount( ) );
+        assertNotNull( stats.getWhenGathered( ) );
+    }
+
+    @Test
+    public void testSkipUnchangedDirectoriesParallel( ) throws Exception
+    {
+        ManagedRepository repository = createRepository( );
+        KnownScanConsumer consumer = createConsumer( );
+
+        RepositoryScanStatistics stats = scan( repository, consumer, RepositoryScanner.FRESH_SCAN, 3 );
+        assertEquals( 4, stats.getTotalFileCount( ) );
+
+        long changesSince = System.currentTimeMillis( ) - HOUR;
+        createFile( "org/apache/test/c/1.0/c-1.0.jar" );
+        Files.setLastModifiedTime( repoDir.resolve( "org/apache/test/c/1.0/c-1.0.jar" ),
+            FileTime.fromMillis( System.currentTimeMillis( ) ) );
+
+        consumer = createConsumer( );
+        stats = scan( repository, consumer, changesSince, 3 );
+        assertEquals( 5, stats.getTotalFileCount( ) );
+        assertEquals( 1, consumer.getProcessCount( ) );
+    }
+
+    @Test
+    public void testCorruptJournalIsRebuilt( ) throws Exception
+    {
+        ManagedRepository repository = createRepository( );
+        scan( repository, createConsumer( ), RepositoryScanner.FRESH_SCAN, 1 );
+
+        byte[] content = Files.readAllBytes( journalFile );
+        content[content.length / 2] ^= 0x5a;
+        Files.write( journalFile, content );
+
+        ScanJournal journal = ScanJournal.open( journalFile );
+        assertEquals( 0, journal.getDirectoryCount( ) );
+
+        // Without journal every file is visited again
+        KnownScanConsumer consumer = createConsumer( );
+        consumer.setProcessUnmodified( true );
+        RepositoryScanStatistics stats = scan( repository, consumer, System.currentTimeMillis( ), 1 );
+        assertEquals( 4, stats.getTotalFileCount( ) );
+        assertEquals( 4, consumer.getProcessCount( ) );
+        assertTrue( ScanJournal.open( journalFile ).getDirectoryCount( ) > 0 );
+    }
+}
@@ -0,0 +1,143 @@
+package org.apache.archiva.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the checksum calculation of {@link ChecksumUtil} with the former implementation, that
+ * mapped a new 32 KB buffer for each chunk of the file.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class ChecksumBenchmark
+{
+    private static final int LEGACY_BUFFER_SIZE = 32768;
+
+    private static final List<ChecksumAlgorithm> ALGORITHMS =
+        Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1, ChecksumAlgorithm.SHA256 );
+
+    @Param( { "1024", "1048576", "1073741824" } )
+    public long fileSize;
+
+    private Path file;
+
+    @Setup( Level.Trial )
+    public void createFile( )
+        throws IOException
+    {
+        file = Files.createTempFile( "archiva-checksum-benchmark", ".bin" );
+        byte[] content = new byte[(int) Math.min( fileSize, 1024 * 1024 )];
+        new Random( 42 ).nextBytes( content );
+        try ( OutputStream out = Files.newOutputStream( file ) )
+        {
+            long written = 0;
+            while ( written < fileSize )
+            {
+                int size = (int) Math.min( content.length, fileSize - written );
+                out.write( content, 0, size );
+                written += size;
+            }
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void deleteFile( )
+        throws IOException
+    {
+        Files.deleteIfExists( file );
+    }
+
+    @Benchmark
+    public List<Checksum> currentImplementation( )
+        throws IOException
+    {
+        return ChecksumUtil.initializeChecksums( file, ALGORITHMS );
+    }
+
+    @Benchmark
+    public List<Checksum> legacyImplementation( )
+        throws IOException
+    {
+        List<Checksum> checksums = ChecksumUtil.newChecksums( ALGORITHMS );
+        legacyUpdate( checksums, file );
+        return checksums;
+    }
+
+    /**
+     * The implementation of <code>ChecksumUtil.update(List, Path)</code> before the rework.
+     */
+    private static void legacyUpdate( List<Checksum> checksumList, Path file )
+        throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            long fileSize = channel.size( );
+            long pos = 0;
+            while ( pos < fileSize )
+            {
+                long bufferSize = Math.min( LEGACY_BUFFER_SIZE, fileSize - pos );
+                MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, pos, bufferSize );
+                for ( Checksum checksum : checksumList )
+                {
+                    checksum.update( buffer );
+                    buffer.rewind( );
+                }
+                fileSize = channel.size( );
+                pos += LEGACY_BUFFER_SIZE;
+            }
+            for ( Checksum checksum : checksumList )
+            {
+                checksum.finish( );
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.apache.archiva.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.maven.model.MavenArtifactFacet;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.repository.storage.RepositoryPathTranslator;
+import org.apache.archiva.model.ArtifactReference;
+import org.apache.archiva.repository.LayoutException;
+import org.apache.archiva.repository.content.ItemSelector;
+import org.apache.archiva.repository.content.PathParser;
+import org.apache.archiva.repository.maven.content.DefaultPathParser;
+import org.apache.archiva.repository.maven.metadata.storage.ArtifactMappingProvider;
+import org.apache.archiva.repository.maven.metadata.storage.DefaultArtifactMappingProvider;
+import org.apache.archiva.repository.maven.metadata.storage.Maven2RepositoryPathTranslator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the parsing of maven 2 paths by {@link DefaultPathParser} with the former implementation, that
+ * delegated to the {@link Maven2RepositoryPathTranslator}.
+ * <p>
+ * The allocated bytes per operation are reported with the gc profiler:
+ * <code>java -jar target/benchmarks.jar PathParserBenchmark -prof gc</code> (<code>gc.alloc.rate.norm</code>).
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class PathParserBenchmark
+{
+    @Param( { "typical", "snapshot", "classifier" } )
+    public String kind;
+
+    private String path;
+
+    private final PathParser pathParser = new DefaultPathParser( );
+
+    private final RepositoryPathTranslator pathTranslator = new Maven2RepositoryPathTranslator(
+        Collections.<ArtifactMappingProvider>singletonList( new DefaultArtifactMappingProvider( ) ) );
+
+    @Setup
+    public void selectPath( )
+    {
+        switch ( kind )
+        {
+            case "typical":
+                path = "org/apache/archiva/archiva-common/2.2.5/archiva-common-2.2.5.jar";
+                break;
+            case "snapshot":
+                path = "org/apache/archiva/archiva-common/3.0.0-SNAPSHOT/archiva-common-3.0.0-20200918.125045-3.pom";
+                break;
+            case "classifier":
+                path = "org/apache/archiva/archiva-common/2.2.5/archiva-common-2.2.5-sources.jar";
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown path kind " + kind );
+        }
+    }
+
+    @Benchmark
+    public ArtifactReference currentArtifactReference( )
+        throws LayoutException
+    {
+        return pathParser.toArtifactReference( path );
+    }
+
+    @Benchmark
+    public ItemSelector currentItemSelector( )
+        throws LayoutException
+    {
+        return pathParser.toItemSelector( path );
+    }
+
+    @Benchmark
+    public ArtifactReference legacyArtifactReference( )
+    {
+        ArtifactMetadata metadata = pathTranslator.getArtifactForPath( null, path );
+        ArtifactReference artifact = new ArtifactReference( );
+        artifact.setGroupId( metadata.getNamespace( ) );
+        artifact.setArtifactId( metadata.getProject( ) );
+        artifact.setVersion( metadata.getVersion( ) );
+        MavenArtifactFacet facet = (MavenArtifactFacet) metadata.getFacet( MavenArtifactFacet.FACET_ID );
+        if ( facet != null )
+        {
+            artifact.setClassifier( facet.getClassifier( ) );
+            artifact.setType( facet.getType( ) );
+        }
+        return artifact;
+    }
+}
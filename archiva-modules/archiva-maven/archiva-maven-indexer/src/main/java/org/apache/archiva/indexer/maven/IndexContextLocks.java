@@ -0,0 +1,259 @@
+package org.apache.archiva.indexer.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Registry of the locks for the index contexts.
+ * <p>
+ * Each index has a fair read write lock. Operations that modify the index take the write lock, operations that
+ * only read the index, like packing or merging, take the read lock, so they can run in parallel. Packing writes the
+ * packed files, so packs of the same index are serialized by a separate lock, that does not block the readers.
+ * </p>
+ * <p>
+ * The locks are removed from the registry, if they are not used anymore. The registry counts the lock acquisitions
+ * and the time spent waiting for and holding the locks.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class IndexContextLocks
+{
+    private static final Logger log = LoggerFactory.getLogger( IndexContextLocks.class );
+
+    /**
+     * Waits longer than this are logged as warning
+     */
+    private static final long WAIT_WARN_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+    public enum Mode
+    {
+        READ, WRITE, PACK
+    }
+
+    private final Map<String, ContextLock> locks = new ConcurrentHashMap<>( );
+
+    private final LongAdder acquired = new LongAdder( );
+
+    private final LongAdder timeouts = new LongAdder( );
+
+    private final LongAdder waitNanos = new LongAdder( );
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator( Long::max, 0 );
+
+    private final LongAdder holdNanos = new LongAdder( );
+
+    private final LongAccumulator maxHoldNanos = new LongAccumulator( Long::max, 0 );
+
+    /**
+     * A lock, that is held by the current thread. It must be released by calling {@link #close()}.
+     */
+    public final class Handle
+        implements AutoCloseable
+    {
+        private final String key;
+
+        private final ContextLock contextLock;
+
+        private final Lock[] heldLocks;
+
+        private final long acquiredAt;
+
+        private boolean closed = false;
+
+        private Handle( String key, ContextLock contextLock, Lock[] heldLocks, long acquiredAt )
+        {
+            this.key = key;
+            this.contextLock = contextLock;
+            this.heldLocks = heldLocks;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public void close( )
+        {
+            if ( closed )
+            {
+                return;
+            }
+            closed = true;
+            for ( int i = heldLocks.length - 1; i >= 0; i-- )
+            {
+                heldLocks[i].unlock( );
+            }
+            long hold = System.nanoTime( ) - acquiredAt;
+            holdNanos.add( hold );
+            maxHoldNanos.accumulate( hold );
+            release( key, contextLock );
+        }
+    }
+
+    /**
+     * Acquires the lock for the given index.
+     *
+     * @param key     the key of the index, usually the absolute path of the index directory
+     * @param mode    the lock mode
+     * @param timeout the maximum time to wait for the lock
+     * @param unit    the time unit of the timeout
+     * @return the handle of the lock or <code>null</code>, if the lock could not be acquired in the given time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public Handle acquire( String key, Mode mode, long timeout, TimeUnit unit )
+        throws InterruptedException
+    {
+        ContextLock contextLock = locks.compute( key, ( k, current ) -> {
+            ContextLock lock = current == null ? new ContextLock( ) : current;
+            lock.users++;
+            return lock;
+        } );
+        long start = System.nanoTime( );
+        long deadline = start + unit.toNanos( timeout );
+        Lock[] required = getLocks( contextLock, mode );
+        int count = 0;
+        try
+        {
+            for ( Lock lock : required )
+            {
+                if ( !lock.tryLock( Math.max( 0, deadline - System.nanoTime( ) ), TimeUnit.NANOSECONDS ) )
+                {
+                    break;
+                }
+                count++;
+            }
+        }
+        finally
+        {
+            if ( count < required.length )
+            {
+                for ( int i = count - 1; i >= 0; i-- )
+                {
+                    required[i].unlock( );
+                }
+                release( key, contextLock );
+            }
+        }
+        long acquiredAt = System.nanoTime( );
+        long wait = acquiredAt - start;
+        waitNanos.add( wait );
+        maxWaitNanos.accumulate( wait );
+        if ( count < required.length )
+        {
+            timeouts.increment( );
+            log.warn( "Timeout after {} ms while waiting for the {} lock of index {}",
+                TimeUnit.NANOSECONDS.toMillis( wait ), mode, key );
+            return null;
+        }
+        acquired.increment( );
+        if ( wait > WAIT_WARN_NANOS )
+        {
+            log.warn( "Waited {} ms for the {} lock of index {}", TimeUnit.NANOSECONDS.toMillis( wait ), mode, key );
+        }
+        else
+        {
+            log.debug( "Waited {} ms for the {} lock of index {}", TimeUnit.NANOSECONDS.toMillis( wait ), mode, key );
+        }
+        return new Handle( key, contextLock, required, acquiredAt );
+    }
+
+    private static Lock[] getLocks( ContextLock contextLock, Mode mode )
+    {
+        switch ( mode )
+        {
+            case WRITE:
+                return new Lock[]{ contextLock.readWriteLock.writeLock( ) };
+            case PACK:
+                return new Lock[]{ contextLock.packLock, contextLock.readWriteLock.readLock( ) };
+            default:
+                return new Lock[]{ contextLock.readWriteLock.readLock( ) };
+        }
+    }
+
+    private void release( String key, ContextLock contextLock )
+    {
+        locks.computeIfPresent( key, ( k, current ) -> {
+            if ( current == contextLock && --current.users == 0 )
+            {
+                return null;
+            }
+            return current;
+        } );
+    }
+
+    /**
+     * Returns the number of indexes, that have a lock in use.
+     */
+    public int getActiveLocks( )
+    {
+        return locks.size( );
+    }
+
+    public long getAcquiredCount( )
+    {
+        return acquired.sum( );
+    }
+
+    public long getTimeoutCount( )
+    {
+        return timeouts.sum( );
+    }
+
+    public long getTotalWaitTime( TimeUnit unit )
+    {
+        return unit.convert( waitNanos.sum( ), TimeUnit.NANOSECONDS );
+    }
+
+    public long getMaxWaitTime( TimeUnit unit )
+    {
+        return unit.convert( maxWaitNanos.get( ), TimeUnit.NANOSECONDS );
+    }
+
+    public long getTotalHoldTime( TimeUnit unit )
+    {
+        return unit.convert( holdNanos.sum( ), TimeUnit.NANOSECONDS );
+    }
+
+    public long getMaxHoldTime( TimeUnit unit )
+    {
+        return unit.convert( maxHoldNanos.get( ), TimeUnit.NANOSECONDS );
+    }
+
+    private static final class ContextLock
+    {
+        final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock( true );
+
+        final ReentrantLock packLock = new ReentrantLock( true );
+
+        /**
+         * Number of threads holding or waiting for the lock, guarded by the map
+         */
+        int users;
+    }
+}
@@ -89,19 +89,21 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * Maven implementation of index manager.
  * The index manager is a singleton, so we try to make sure, that index operations are not running
- * parallel by synchronizing on the index path.
+ * parallel by locking the index path. Modifying operations are exclusive, packing may run in parallel
+ * to other reading operations.
  * A update operation waits for parallel running methods to finish before starting, but after a certain
- * time of retries a IndexUpdateFailedException is thrown.
+ * time a IndexUpdateFailedException is thrown.
  */
 @Service( "archivaIndexManager#maven" )
 public class MavenIndexManager implements ArchivaIndexManager {
@@ -139,10 +141,9 @@ public class MavenIndexManager implements ArchivaIndexManager {
     private ProxyRegistry proxyRegistry;
 
 
-    private ConcurrentSkipListSet<StorageAsset> activeContexts = new ConcurrentSkipListSet<>( );
+    private final IndexContextLocks contextLocks = new IndexContextLocks( );
 
-    private static final int WAIT_TIME = 100;
-    private static final int MAX_WAIT = 10;
+    private static final long LOCK_TIMEOUT_MINUTES = 10;
 
 
     public static IndexingContext getMvnContext( ArchivaIndexingContext context ) throws UnsupportedBaseContextException
@@ -177,6 +178,12 @@ private StorageAsset getIndexPath( ArchivaIndexingContext ctx )
      * method is running on the same index.
      */
     private void executeUpdateFunction( ArchivaIndexingContext context, IndexUpdateConsumer function ) throws IndexUpdateFailedException
+    {
+        executeUpdateFunction( context, IndexContextLocks.Mode.WRITE, function );
+    }
+
+    private void executeUpdateFunction( ArchivaIndexingContext context, IndexContextLocks.Mode mode,
+                                        IndexUpdateConsumer function ) throws IndexUpdateFailedException
     {
         if (context==null) {
             throw new IndexUpdateFailedException( "Given context is null" );
@@ -190,42 +197,94 @@ private void executeUpdateFunction( ArchivaIndexingContext context, IndexUpdateC
         {
             throw new IndexUpdateFailedException( "Maven index is not supported by this context", e );
         }
+        final String lockKey = getLockKey( context );
+        IndexContextLocks.Handle lock;
+        try
+        {
+            lock = contextLocks.acquire( lockKey, mode, LOCK_TIMEOUT_MINUTES, TimeUnit.MINUTES );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new IndexUpdateFailedException( "Interrupted while waiting for index release on context " + context.getId( ), e );
+        }
+        if ( lock == null )
+        {
+            throw new IndexUpdateFailedException( "Timeout while waiting for index release on context " + context.getId( ) );
+        }
+        try
+        {
+            function.accept( indexingContext );
+        }
+        finally
+        {
+            lock.close( );
+        }
+    }
+
+    private String getLockKey( ArchivaIndexingContext context )
+    {
         final StorageAsset ctxPath = getIndexPath( context );
-        int loop = MAX_WAIT;
-        boolean active = false;
-        while ( loop-- > 0 && !active )
+        // The relative path is not unique, because most indexes are stored in the .indexer directory of the repository
+        return ctxPath.isFileBased( ) ? ctxPath.getFilePath( ).toAbsolutePath( ).toString( ) : context.getId( );
+    }
+
+    /**
+     * Acquires the read locks of the given contexts in the order of their keys, so that the members of a merge
+     * are not modified while they are read.
+     */
+    private List<IndexContextLocks.Handle> acquireReadLocks( List<ArchivaIndexingContext> contexts )
+        throws IndexCreationFailedException
+    {
+        List<String> lockKeys = contexts.stream( ).filter( ctx -> ctx.supports( IndexingContext.class ) )
+            .map( this::getLockKey ).distinct( ).sorted( ).collect( Collectors.toList( ) );
+        List<IndexContextLocks.Handle> handles = new ArrayList<>( lockKeys.size( ) );
+        try
         {
-            active = activeContexts.add( ctxPath );
-            try
-            {
-                Thread.currentThread( ).sleep( WAIT_TIME );
-            }
-            catch ( InterruptedException e )
+            for ( String lockKey : lockKeys )
             {
-                // Ignore this
+                IndexContextLocks.Handle lock = contextLocks.acquire( lockKey, IndexContextLocks.Mode.READ, LOCK_TIMEOUT_MINUTES, TimeUnit.MINUTES );
+                if ( lock == null )
+                {
+                    throw new IndexCreationFailedException( "Timeout while waiting for index release on " + lockKey );
+                }
+                handles.add( lock );
             }
         }
-        if ( active )
+        catch ( InterruptedException e )
         {
-            try
-            {
-                function.accept( indexingContext );
-            }
-            finally
-            {
-                activeContexts.remove( ctxPath );
-            }
+            Thread.currentThread( ).interrupt( );
+            releaseLocks( handles );
+            throw new IndexCreationFailedException( "Interrupted while waiting for index release", e );
         }
-        else
+        catch ( IndexCreationFailedException e )
         {
-            throw new IndexUpdateFailedException( "Timeout while waiting for index release on context " + context.getId( ) );
+            releaseLocks( handles );
+            throw e;
         }
+        return handles;
+    }
+
+    private static void releaseLocks( List<IndexContextLocks.Handle> handles )
+    {
+        for ( int i = handles.size( ) - 1; i >= 0; i-- )
+        {
+            handles.get( i ).close( );
+        }
+    }
+
+    /**
+     * Returns the registry of the index locks, that provides statistics about the lock usage.
+     */
+    public IndexContextLocks getContextLocks( )
+    {
+        return contextLocks;
     }
 
     @Override
     public void pack( final ArchivaIndexingContext context ) throws IndexUpdateFailedException
     {
-        executeUpdateFunction( context, indexingContext -> {
+        executeUpdateFunction( context, IndexContextLocks.Mode.PACK, indexingContext -> {
                 try
                 {
                     IndexPackingRequest request = new IndexPackingRequest( indexingContext,
@@ -559,6 +618,7 @@ public ArchivaIndexingContext mergeContexts(Repository destinationRepo, List<Arc
 
         String tempRepoId = mergedIndexDirectory.getFileName().toString();
 
+        List<IndexContextLocks.Handle> readLocks = acquireReadLocks( contexts );
         try
         {
             Path indexLocation = destinationPath.getFilePath();
@@ -591,6 +651,10 @@ public ArchivaIndexingContext mergeContexts(Repository destinationRepo, List<Arc
         {
             throw new IndexCreationFailedException( "IO Error during index merge: "+ e.getMessage(), e );
         }
+        finally
+        {
+            releaseLocks( readLocks );
+        }
     }
 
     private StorageAsset getIndexPath(URI indexDirUri, RepositoryStorage repoStorage, String defaultDir) throws IOException
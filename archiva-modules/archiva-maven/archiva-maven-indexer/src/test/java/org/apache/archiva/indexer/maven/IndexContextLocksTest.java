@@ -0,0 +1,85 @@
+package org.apache.archiva.indexer.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class IndexContextLocksTest
+{
+    private final IndexContextLocks locks = new IndexContextLocks( );
+
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor( );
+
+    @After
+    public void tearDown( )
+    {
+        otherThread.shutdownNow( );
+    }
+
+    private IndexContextLocks.Handle acquireInOtherThread( String key, IndexContextLocks.Mode mode )
+        throws Exception
+    {
+        Future<IndexContextLocks.Handle> handle = otherThread.submit( ( ) -> locks.acquire( key, mode, 50, TimeUnit.MILLISECONDS ) );
+        return handle.get( 10, TimeUnit.SECONDS );
+    }
+
+    @Test
+    public void testWriteLockIsExclusive( ) throws Exception
+    {
+        try ( IndexContextLocks.Handle write = locks.acquire( "/repo/.indexer", IndexContextLocks.Mode.WRITE, 1, TimeUnit.SECONDS ) )
+        {
+            assertNotNull( write );
+            assertNull( acquireInOtherThread( "/repo/.indexer", IndexContextLocks.Mode.WRITE ) );
+            assertNull( acquireInOtherThread( "/repo/.indexer", IndexContextLocks.Mode.READ ) );
+            IndexContextLocks.Handle other = acquireInOtherThread( "/other/.indexer", IndexContextLocks.Mode.WRITE );
+            assertNotNull( other );
+            otherThread.submit( other::close ).get( );
+        }
+        assertEquals( 2, locks.getTimeoutCount( ) );
+        assertEquals( 0, locks.getActiveLocks( ) );
+    }
+
+    @Test
+    public void testReadersDoNotWaitForPack( ) throws Exception
+    {
+        try ( IndexContextLocks.Handle pack = locks.acquire( "/repo/.indexer", IndexContextLocks.Mode.PACK, 1, TimeUnit.SECONDS ) )
+        {
+            assertNotNull( pack );
+            IndexContextLocks.Handle read = acquireInOtherThread( "/repo/.indexer", IndexContextLocks.Mode.READ );
+            assertNotNull( read );
+            otherThread.submit( read::close ).get( );
+            assertNull( acquireInOtherThread( "/repo/.indexer", IndexContextLocks.Mode.PACK ) );
+            assertNull( acquireInOtherThread( "/repo/.indexer", IndexContextLocks.Mode.WRITE ) );
+        }
+        assertEquals( 2, locks.getAcquiredCount( ) );
+        assertEquals( 0, locks.getActiveLocks( ) );
+    }
+}
@@ -0,0 +1,116 @@
+package org.apache.archiva.proxy.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumContext;
+import org.apache.archiva.checksum.ChecksumUtil;
+import org.apache.archiva.proxy.model.StreamingDownload;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Observes the transfer of an artifact. The checksums of the artifact are calculated from the received data,
+ * so that the checksum policy need not read the file again. If a client reads the artifact while it is
+ * downloaded, the streaming download is notified about the progress.
+ *
+ * @since 3.0
+ */
+class ArtifactTransferObserver
+    extends AbstractTransferListener
+{
+    private final Path destFile;
+
+    private final List<ChecksumAlgorithm> algorithms;
+
+    private final StreamingDownload streamingDownload;
+
+    private List<Checksum> checksums;
+
+    private long transferred;
+
+    /**
+     * @param destFile          the file, the artifact is written to
+     * @param algorithms        the checksums to calculate
+     * @param streamingDownload the download, that is read by a client, or <code>null</code>
+     */
+    ArtifactTransferObserver( Path destFile, List<ChecksumAlgorithm> algorithms, StreamingDownload streamingDownload )
+    {
+        this.destFile = destFile;
+        this.algorithms = algorithms;
+        this.streamingDownload = streamingDownload;
+    }
+
+    @Override
+    public void transferStarted( TransferEvent transferEvent )
+    {
+        checksums = ChecksumUtil.newChecksums( algorithms );
+        transferred = 0;
+        if ( streamingDownload != null )
+        {
+            streamingDownload.transferStarted( destFile, transferEvent.getResource( ).getContentLength( ),
+                transferEvent.getResource( ).getLastModified( ) );
+        }
+    }
+
+    @Override
+    public void transferProgress( TransferEvent transferEvent, byte[] buffer, int length )
+    {
+        if ( checksums != null )
+        {
+            for ( Checksum checksum : checksums )
+            {
+                checksum.update( buffer, 0, length );
+            }
+            transferred += length;
+        }
+        if ( streamingDownload != null )
+        {
+            streamingDownload.transferProgress( );
+        }
+    }
+
+    /**
+     * Adds the calculated checksums to the given context. The checksums are only used, if they cover the
+     * whole file, e.g. they are not, if the wagon did not report the progress.
+     *
+     * @param context the checksum context, may be <code>null</code>
+     */
+    void shareChecksums( ChecksumContext context )
+        throws IOException
+    {
+        if ( context == null || checksums == null || checksums.isEmpty( ) || !Files.exists( destFile )
+            || Files.size( destFile ) != transferred )
+        {
+            return;
+        }
+        for ( Checksum checksum : checksums )
+        {
+            checksum.finish( );
+        }
+        context.putChecksums( destFile, checksums );
+    }
+}
@@ -0,0 +1,198 @@
+package org.apache.archiva.proxy.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.proxy.ProxyException;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The checksum downloads that belong to an artifact download. The checksums are downloaded in parallel to the
+ * artifact. They are started, as soon as the remote repository has answered the artifact request. So no checksum
+ * requests are sent for artifacts, that do not exist on the remote side.
+ * <p>
+ * The instance is registered as transfer listener on the wagon of the artifact. If the wagon does not send
+ * transfer events, the checksum downloads are started by {@link #await()} after the artifact download.
+ * </p>
+ *
+ * @since 3.0
+ */
+class ChecksumDownloads
+    extends AbstractTransferListener
+{
+    /**
+     * A single checksum download.
+     */
+    @FunctionalInterface
+    interface Download
+    {
+        void execute( ) throws ProxyException;
+    }
+
+    private final Executor executor;
+
+    private final List<Download> downloads;
+
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>( );
+
+    private final AtomicBoolean started = new AtomicBoolean( false );
+
+    ChecksumDownloads( Executor executor, List<Download> downloads )
+    {
+        this.executor = executor;
+        this.downloads = downloads;
+    }
+
+    @Override
+    public void transferStarted( TransferEvent transferEvent )
+    {
+        start( );
+    }
+
+    /**
+     * Starts the checksum downloads, if they are not started yet.
+     */
+    void start( )
+    {
+        if ( !started.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        synchronized ( futures )
+        {
+            for ( Download download : downloads )
+            {
+                futures.add( submit( download ) );
+            }
+        }
+    }
+
+    /**
+     * Starts the checksum downloads, if necessary, and waits until all of them are finished.
+     *
+     * @throws ProxyException if a checksum download failed
+     */
+    void await( )
+        throws ProxyException
+    {
+        start( );
+        ProxyException failure = null;
+        for ( CompletableFuture<Void> future : getFutures( ) )
+        {
+            try
+            {
+                future.join( );
+            }
+            catch ( CompletionException e )
+            {
+                if ( failure != null )
+                {
+                    continue;
+                }
+                Throwable cause = e.getCause( );
+                if ( cause instanceof ProxyException )
+                {
+                    failure = (ProxyException) cause;
+                }
+                else if ( cause instanceof RuntimeException )
+                {
+                    throw (RuntimeException) cause;
+                }
+                else
+                {
+                    throw e;
+                }
+            }
+        }
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for the checksum downloads that were already started, without reporting their errors.
+     * Used, if the artifact download failed.
+     */
+    void abort( )
+    {
+        started.set( true );
+        for ( CompletableFuture<Void> future : getFutures( ) )
+        {
+            try
+            {
+                future.join( );
+            }
+            catch ( CompletionException e )
+            {
+                // The artifact download failed, so the checksums are not used
+            }
+        }
+    }
+
+    private List<CompletableFuture<Void>> getFutures( )
+    {
+        synchronized ( futures )
+        {
+            return new ArrayList<>( futures );
+        }
+    }
+
+    private CompletableFuture<Void> submit( Download download )
+    {
+        Runnable task = ( ) -> {
+            try
+            {
+                download.execute( );
+            }
+            catch ( ProxyException e )
+            {
+                throw new CompletionException( e );
+            }
+        };
+        try
+        {
+            return CompletableFuture.runAsync( task, executor );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // The executor was shut down, download in the calling thread
+            CompletableFuture<Void> future = new CompletableFuture<>( );
+            try
+            {
+                task.run( );
+                future.complete( null );
+            }
+            catch ( RuntimeException ex )
+            {
+                future.completeExceptionally( ex instanceof CompletionException ? ex.getCause( ) : ex );
+            }
+            return future;
+        }
+    }
+}
@@ -19,6 +19,10 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumContext;
+import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.NetworkConfiguration;
 import org.apache.archiva.model.RepositoryURL;
 import org.apache.archiva.proxy.DefaultRepositoryProxyHandler;
 import org.apache.archiva.proxy.NotFoundException;
@@ -27,6 +31,7 @@
 import org.apache.archiva.proxy.model.NetworkProxy;
 import org.apache.archiva.proxy.model.ProxyConnector;
 import org.apache.archiva.proxy.model.RepositoryProxyHandler;
+import org.apache.archiva.proxy.model.StreamingDownload;
 import org.apache.archiva.repository.*;
 import org.apache.archiva.repository.base.PasswordCredentials;
 import org.apache.archiva.repository.storage.StorageAsset;
@@ -43,15 +48,24 @@
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DefaultRepositoryProxyHandler
@@ -74,6 +88,14 @@ public class MavenRepositoryProxyHandler extends DefaultRepositoryProxyHandler {
 
     private ConcurrentMap<String, ProxyInfo> networkProxyMap = new ConcurrentHashMap<>();
 
+    private static final int DEFAULT_MAX_WAGONS_PER_ROUTE = 30;
+
+    private final WagonPool wagonPool = new WagonPool();
+
+    private static final int CHECKSUM_DOWNLOAD_THREADS = 16;
+
+    private ExecutorService checksumExecutor;
+
     @Override
     public void initialize() {
         super.initialize();
@@ -120,7 +142,8 @@ protected void transferResources( ProxyConnector connector, RemoteRepository rem
                                       StorageAsset tmpResource, StorageAsset[] checksumFiles, String url, String remotePath, StorageAsset resource,
                                       Path workingDirectory, ManagedRepository repository )
             throws ProxyException, NotModifiedException {
-        Wagon wagon = null;
+        WagonPool.PooledWagon pooledWagon = null;
+        boolean reusable = false;
         try {
             RepositoryURL repoUrl = remoteRepository.getContent().getURL();
             String protocol = repoUrl.getProtocol();
@@ -139,49 +162,186 @@ protected void transferResources( ProxyConnector connector, RemoteRepository rem
             } else {
                 wagonFactoryRequest = wagonFactoryRequest.networkProxy(networkProxy);
             }
-            wagon = wagonFactory.getWagon(wagonFactoryRequest);
-            if (wagon == null) {
-                throw new ProxyException("Unsupported target repository protocol: " + protocol);
-            }
-
-            if (wagon == null) {
-                throw new ProxyException("Unsupported target repository protocol: " + protocol);
-            }
-
-            boolean connected = connectToRepository(connector, wagon, remoteRepository);
-            if (connected) {
-                transferArtifact(wagon, remoteRepository, remotePath, repository, resource.getFilePath(), workingDirectory,
-                        tmpResource);
-
-                // TODO: these should be used to validate the download based on the policies, not always downloaded
-                // to
-                // save on connections since md5 is rarely used
-                for (int i=0; i<checksumFiles.length; i++) {
-                    String ext = "."+StringUtils.substringAfterLast(checksumFiles[i].getName( ), "." );
-                    transferChecksum(wagon, remoteRepository, remotePath, repository, resource.getFilePath(), ext,
-                        checksumFiles[i].getFilePath());
+            final WagonFactoryRequest request = wagonFactoryRequest;
+            WagonPool.WagonConnector wagonConnector = () -> {
+                Wagon wagon;
+                try {
+                    wagon = wagonFactory.getWagon(request);
+                } catch (WagonFactoryException e) {
+                    throw new ProxyException(e.getMessage(), e);
+                }
+                if (wagon == null) {
+                    throw new ProxyException("Unsupported target repository protocol: " + protocol);
+                }
+                if (connectToRepository(connector, wagon, remoteRepository)) {
+                    return wagon;
+                }
+                disconnectQuietly(wagon);
+                return null;
+            };
+
+            String routeKey = remoteRepository.getId() + "@" + StringUtils.defaultString(proxyId);
+            pooledWagon = borrowWagon(routeKey, connector, remoteRepository, wagonConnector);
+
+            if (pooledWagon != null) {
+                Wagon wagon = pooledWagon.getWagon();
+                // The checksums are downloaded with separate wagons in parallel to the artifact.
+                List<ChecksumDownloads.Download> downloads = new ArrayList<>(checksumFiles.length);
+                for (StorageAsset checksumFile : checksumFiles) {
+                    String ext = "." + StringUtils.substringAfterLast(checksumFile.getName(), ".");
+                    downloads.add(() -> transferChecksum(routeKey, connector, remoteRepository, wagonConnector,
+                            remotePath, repository, resource.getFilePath(), ext, checksumFile.getFilePath()));
+                }
+                ChecksumDownloads checksumDownloads = new ChecksumDownloads(getChecksumExecutor(), downloads);
+                List<ChecksumAlgorithm> policyAlgorithms = getPolicyChecksumAlgorithms(connector);
+                ArtifactTransferObserver transferObserver = new ArtifactTransferObserver(tmpResource.getFilePath(),
+                        policyAlgorithms == null ? Collections.emptyList() : policyAlgorithms,
+                        StreamingDownload.getActiveDownload());
+                wagon.addTransferListener(checksumDownloads);
+                wagon.addTransferListener(transferObserver);
+                boolean transferred = false;
+                try {
+                    transferArtifact(wagon, remoteRepository, remotePath, repository, resource.getFilePath(), workingDirectory,
+                            tmpResource);
+                    transferred = true;
+                    reusable = true;
+                } catch (NotFoundException | NotModifiedException e) {
+                    reusable = true;
+                    throw e;
+                } finally {
+                    wagon.removeTransferListener(transferObserver);
+                    wagon.removeTransferListener(checksumDownloads);
+                    // The checksum downloads borrow wagons of the same route. The wagon is given back before
+                    // waiting for them, otherwise concurrent artifact downloads could hold all wagons of the route.
+                    wagonPool.release(pooledWagon, reusable);
+                    pooledWagon = null;
+                    if (!transferred) {
+                        checksumDownloads.abort();
+                    }
                 }
+                try {
+                    transferObserver.shareChecksums(ChecksumContext.getActiveContext());
+                } catch (IOException e) {
+                    log.debug("Could not share the checksums of {}: {}", tmpResource, e.getMessage());
+                }
+                checksumDownloads.await();
             }
         } catch (NotFoundException e) {
+            reusable = true;
             urlFailureCache.cacheFailure(url);
             throw e;
         } catch (NotModifiedException e) {
+            reusable = true;
             // Do not cache url here.
             throw e;
         } catch (ProxyException e) {
             urlFailureCache.cacheFailure(url);
             throw e;
-        } catch (WagonFactoryException e) {
-            throw new ProxyException(e.getMessage(), e);
         } finally {
-            if (wagon != null) {
-                try {
-                    wagon.disconnect();
-                } catch (ConnectionException e) {
-                    log.warn("Unable to disconnect wagon.", e);
+            wagonPool.release(pooledWagon, reusable);
+        }
+    }
+
+    private WagonPool.PooledWagon borrowWagon(String routeKey, ProxyConnector connector, RemoteRepository remoteRepository,
+                                              WagonPool.WagonConnector wagonConnector) throws ProxyException {
+        NetworkConfiguration networkConfiguration = getNetworkConfiguration();
+        if (networkConfiguration == null || networkConfiguration.isUsePooling()) {
+            int maxPerRoute = networkConfiguration == null ? DEFAULT_MAX_WAGONS_PER_ROUTE : networkConfiguration.getMaxTotalPerHost();
+            return wagonPool.borrow(routeKey, getConnectionSignature(connector, remoteRepository),
+                    new Repository(remoteRepository.getId(), remoteRepository.getLocation().toString()),
+                    maxPerRoute, remoteRepository.getTimeout().toMillis(), wagonConnector);
+        } else {
+            Wagon wagon = wagonConnector.connect();
+            return wagon == null ? null : new WagonPool.PooledWagon(wagon, null, null);
+        }
+    }
+
+    /**
+     * Transfers a checksum file with a wagon of its own, so that it can run in parallel to the artifact download.
+     */
+    private void transferChecksum(String routeKey, ProxyConnector connector, RemoteRepository remoteRepository,
+                                  WagonPool.WagonConnector wagonConnector, String remotePath,
+                                  ManagedRepository repository, Path resource, String ext, Path destFile)
+            throws ProxyException {
+        WagonPool.PooledWagon pooledWagon = borrowWagon(routeKey, connector, remoteRepository, wagonConnector);
+        if (pooledWagon == null) {
+            log.debug("Could not connect to {} for checksum {}", remoteRepository.getId(), remotePath + ext);
+            return;
+        }
+        boolean reusable = false;
+        try {
+            transferChecksum(pooledWagon.getWagon(), remoteRepository, remotePath, repository, resource, ext, destFile);
+            reusable = true;
+        } finally {
+            wagonPool.release(pooledWagon, reusable);
+        }
+    }
+
+    private synchronized ExecutorService getChecksumExecutor() {
+        if (checksumExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(CHECKSUM_DOWNLOAD_THREADS, CHECKSUM_DOWNLOAD_THREADS,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "archiva-checksum-download-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
                 }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            checksumExecutor = executor;
+        }
+        return checksumExecutor;
+    }
+
+    /**
+     * Returns the settings used for connecting the wagon. Pooled wagons are only reused, if the settings did not change.
+     */
+    private String getConnectionSignature(ProxyConnector connector, RemoteRepository remoteRepository) {
+        StringBuilder signature = new StringBuilder(remoteRepository.getLocation().toString());
+        signature.append('|').append(remoteRepository.getTimeout().toMillis());
+        RepositoryCredentials repCred = remoteRepository.getLoginCredentials();
+        if (repCred instanceof PasswordCredentials) {
+            PasswordCredentials pwdCred = (PasswordCredentials) repCred;
+            signature.append('|').append(pwdCred.getUsername());
+            signature.append('|').append(pwdCred.getPassword() == null ? 0 : Arrays.hashCode(pwdCred.getPassword()));
+        }
+        signature.append('|').append(remoteRepository.getExtraHeaders());
+        ProxyInfo proxyInfo = connector.getProxyId() == null ? null : this.networkProxyMap.get(connector.getProxyId());
+        if (proxyInfo != null) {
+            signature.append('|').append(proxyInfo.getHost()).append(':').append(proxyInfo.getPort())
+                    .append(':').append(proxyInfo.getUserName()).append(':')
+                    .append(proxyInfo.getPassword() == null ? 0 : proxyInfo.getPassword().hashCode());
+        }
+        return signature.toString();
+    }
+
+    private NetworkConfiguration getNetworkConfiguration() {
+        ArchivaConfiguration archivaConfiguration = getArchivaConfiguration();
+        if (archivaConfiguration == null || archivaConfiguration.getConfiguration() == null) {
+            return null;
+        }
+        return archivaConfiguration.getConfiguration().getNetworkConfiguration();
+    }
+
+    private void disconnectQuietly(Wagon wagon) {
+        try {
+            wagon.disconnect();
+        } catch (ConnectionException e) {
+            log.warn("Unable to disconnect wagon.", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            if (checksumExecutor != null) {
+                checksumExecutor.shutdown();
             }
         }
+        wagonPool.close();
     }
 
     protected void transferArtifact(Wagon wagon, RemoteRepository remoteRepository, String remotePath,
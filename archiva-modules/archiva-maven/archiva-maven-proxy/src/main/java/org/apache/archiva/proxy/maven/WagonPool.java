@@ -0,0 +1,344 @@
+package org.apache.archiva.proxy.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.proxy.ProxyException;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.repository.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of connected wagons. The wagons are pooled per route, that is the remote repository and the network
+ * proxy used for the connection. So consecutive transfers from the same remote repository reuse the
+ * connection and do not need a new handshake.
+ * <p>
+ * The number of wagons per route is limited. If all wagons of a route are in use, the caller waits for a free
+ * wagon. If none is released within the wait time, a wagon outside of the pool is used, so that the transfer
+ * is not failed only because of the limit.
+ * </p>
+ * <p>
+ * Idle wagons are disconnected after the idle timeout. Before a wagon is reused, it is checked that it is
+ * still connected to the same repository and that the connection settings did not change.
+ * </p>
+ *
+ * @since 3.0
+ */
+class WagonPool
+{
+    private static final Logger log = LoggerFactory.getLogger( WagonPool.class );
+
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis( 60 );
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>( );
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private volatile long lastEviction = System.currentTimeMillis( );
+
+    /**
+     * Creates a new wagon and connects it to the remote repository.
+     */
+    @FunctionalInterface
+    interface WagonConnector
+    {
+        /**
+         * @return the connected wagon, or <code>null</code>, if the connection could not be established
+         */
+        Wagon connect( ) throws ProxyException;
+    }
+
+    /**
+     * A wagon borrowed from the pool.
+     */
+    static class PooledWagon
+    {
+        private final Wagon wagon;
+
+        private final Route route;
+
+        private final String signature;
+
+        private long lastUsed;
+
+        PooledWagon( Wagon wagon, Route route, String signature )
+        {
+            this.wagon = wagon;
+            this.route = route;
+            this.signature = signature;
+        }
+
+        Wagon getWagon( )
+        {
+            return wagon;
+        }
+
+        boolean isPooled( )
+        {
+            return route != null;
+        }
+    }
+
+    private static class Route
+    {
+        private final Semaphore permits;
+
+        private final int maxSize;
+
+        private final Deque<PooledWagon> idle = new ArrayDeque<>( );
+
+        Route( int maxSize )
+        {
+            this.maxSize = maxSize;
+            this.permits = new Semaphore( maxSize, true );
+        }
+    }
+
+    /**
+     * Returns a connected wagon for the given route.
+     *
+     * @param routeKey    the key of the route, e.g. the repository id and the network proxy id
+     * @param signature   the connection settings. Idle wagons with different settings are not reused.
+     * @param repository  the repository, the wagon must be connected to
+     * @param maxPerRoute the maximum number of wagons of the route
+     * @param maxWait     the time in milliseconds to wait for a free wagon
+     * @param connector   creates and connects a new wagon, if no idle wagon is available
+     * @return the wagon, or <code>null</code>, if the connection could not be established
+     * @throws ProxyException if the wagon could not be created
+     */
+    PooledWagon borrow( String routeKey, String signature, Repository repository, int maxPerRoute, long maxWait,
+                        WagonConnector connector )
+        throws ProxyException
+    {
+        Route route = getRoute( routeKey, Math.max( 1, maxPerRoute ) );
+        boolean acquired;
+        try
+        {
+            acquired = route.permits.tryAcquire( maxWait, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            acquired = false;
+        }
+        if ( !acquired )
+        {
+            log.debug( "No free wagon for {} within {} ms, using a new connection", routeKey, maxWait );
+            Wagon wagon = connector.connect( );
+            return wagon == null ? null : new PooledWagon( wagon, null, signature );
+        }
+
+        try
+        {
+            PooledWagon pooledWagon;
+            while ( ( pooledWagon = pollIdle( route ) ) != null )
+            {
+                if ( isReusable( pooledWagon, signature, repository ) )
+                {
+                    log.debug( "Reusing connected wagon for {}", routeKey );
+                    return pooledWagon;
+                }
+                disconnect( pooledWagon.wagon );
+            }
+            Wagon wagon = connector.connect( );
+            if ( wagon == null )
+            {
+                route.permits.release( );
+                return null;
+            }
+            return new PooledWagon( wagon, route, signature );
+        }
+        catch ( ProxyException | RuntimeException e )
+        {
+            route.permits.release( );
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the wagon back to the pool. Wagons that are not reusable, e.g. because a transfer failed, are
+     * disconnected.
+     *
+     * @param pooledWagon the borrowed wagon, may be <code>null</code>
+     * @param reusable    <code>true</code>, if the wagon can be used for further transfers
+     */
+    void release( PooledWagon pooledWagon, boolean reusable )
+    {
+        if ( pooledWagon == null )
+        {
+            return;
+        }
+        if ( !pooledWagon.isPooled( ) )
+        {
+            disconnect( pooledWagon.wagon );
+            return;
+        }
+        Route route = pooledWagon.route;
+        try
+        {
+            if ( reusable && pooledWagon.wagon.getRepository( ) != null && routes.containsValue( route ) )
+            {
+                pooledWagon.lastUsed = System.currentTimeMillis( );
+                synchronized ( route )
+                {
+                    route.idle.push( pooledWagon );
+                }
+            }
+            else
+            {
+                disconnect( pooledWagon.wagon );
+            }
+        }
+        finally
+        {
+            route.permits.release( );
+        }
+        evictIdleIfNeeded( );
+    }
+
+    /**
+     * Disconnects all idle wagons, that were not used within the idle timeout.
+     */
+    void evictIdle( )
+    {
+        long now = System.currentTimeMillis( );
+        lastEviction = now;
+        for ( Route route : routes.values( ) )
+        {
+            List<PooledWagon> expired = new ArrayList<>( );
+            synchronized ( route )
+            {
+                Iterator<PooledWagon> it = route.idle.iterator( );
+                while ( it.hasNext( ) )
+                {
+                    PooledWagon pooledWagon = it.next( );
+                    if ( now - pooledWagon.lastUsed >= idleTimeout )
+                    {
+                        it.remove( );
+                        expired.add( pooledWagon );
+                    }
+                }
+            }
+            expired.forEach( w -> disconnect( w.wagon ) );
+        }
+    }
+
+    /**
+     * Disconnects all idle wagons. Wagons that are currently used are disconnected, when they are released.
+     */
+    void close( )
+    {
+        List<Route> closed = new ArrayList<>( routes.values( ) );
+        routes.clear( );
+        closed.forEach( this::disconnectIdle );
+    }
+
+    long getIdleTimeout( )
+    {
+        return idleTimeout;
+    }
+
+    void setIdleTimeout( long idleTimeout )
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    private Route getRoute( String routeKey, int maxPerRoute )
+    {
+        Route route = routes.computeIfAbsent( routeKey, k -> new Route( maxPerRoute ) );
+        if ( route.maxSize != maxPerRoute )
+        {
+            // The limit was changed by the configuration
+            Route newRoute = new Route( maxPerRoute );
+            if ( routes.replace( routeKey, route, newRoute ) )
+            {
+                disconnectIdle( route );
+            }
+            route = routes.get( routeKey );
+        }
+        return route;
+    }
+
+    private PooledWagon pollIdle( Route route )
+    {
+        synchronized ( route )
+        {
+            return route.idle.poll( );
+        }
+    }
+
+    private boolean isReusable( PooledWagon pooledWagon, String signature, Repository repository )
+    {
+        if ( System.currentTimeMillis( ) - pooledWagon.lastUsed >= idleTimeout )
+        {
+            return false;
+        }
+        if ( !Objects.equals( pooledWagon.signature, signature ) )
+        {
+            return false;
+        }
+        Repository connected = pooledWagon.wagon.getRepository( );
+        return connected != null && Objects.equals( connected.getId( ), repository.getId( ) )
+            && Objects.equals( connected.getUrl( ), repository.getUrl( ) );
+    }
+
+    private void disconnectIdle( Route route )
+    {
+        List<PooledWagon> idle;
+        synchronized ( route )
+        {
+            idle = new ArrayList<>( route.idle );
+            route.idle.clear( );
+        }
+        idle.forEach( w -> disconnect( w.wagon ) );
+    }
+
+    private void evictIdleIfNeeded( )
+    {
+        if ( System.currentTimeMillis( ) - lastEviction >= idleTimeout / 2 )
+        {
+            evictIdle( );
+        }
+    }
+
+    private static void disconnect( Wagon wagon )
+    {
+        try
+        {
+            wagon.disconnect( );
+        }
+        catch ( ConnectionException e )
+        {
+            log.warn( "Unable to disconnect wagon.", e );
+        }
+    }
+}
@@ -20,13 +20,16 @@
  */
 
 import org.apache.archiva.common.utils.FileUtils;
+import org.apache.archiva.configuration.NetworkConfiguration;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.policies.CachedFailuresPolicy;
 import org.apache.archiva.policies.ChecksumPolicy;
 import org.apache.archiva.policies.ReleasesPolicy;
 import org.apache.archiva.policies.SnapshotsPolicy;
 import org.apache.archiva.repository.storage.StorageAsset;
+import org.apache.maven.wagon.AbstractWagon;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.TransferFailedException;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
@@ -35,9 +38,20 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * ChecksumTransferTest
@@ -553,4 +567,216 @@ public void testGetAlwaysBadChecksumPresentLocallyAbsentRemoteUsingFixSetting()
         assertChecksums( expectedFile, "96a08dc80a108cba8efd3b20aec91b32a0b2cbd4  get-bad-local-checksum-1.0.jar",
                          "46fdd6ca55bf1d7a7eb0c858f41e0ccd  get-bad-local-checksum-1.0.jar" );
     }
+
+    @Test
+    public void testGetChecksumBothCorrectUsingFixSetting()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-checksum-both-right/1.0/get-checksum-both-right-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory( expectedFile.getParent() );
+        assertFalse( Files.exists(expectedFile) );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "proxied1", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        StorageAsset downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository.getRepository(), artifact );
+
+        Path proxied1File = Paths.get( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile.getFilePath(), proxied1File );
+        assertNoTempFiles( expectedFile );
+        assertChecksums( expectedFile, "066d76e459f7782c312c31e8a11b3c0f1e3e43a7 *get-checksum-both-right-1.0.jar",
+                         "e58f30c6a150a2e843552438d18e15cb *get-checksum-both-right-1.0.jar" );
+    }
+
+    @Test
+    public void testGetChecksumCorrectSha1NoMd5UsingFailSetting()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-checksum-sha1-only/1.0/get-checksum-sha1-only-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        FileUtils.deleteDirectory( expectedFile.getParent() );
+        assertFalse( Files.exists(expectedFile) );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "proxied1", ChecksumPolicy.FAIL, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        StorageAsset downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository.getRepository(), artifact );
+
+        Path proxied1File = Paths.get( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile.getFilePath(), proxied1File );
+        assertNoTempFiles( expectedFile );
+        assertChecksums( expectedFile, "748a3a013bf5eacf2bbb40a2ac7d37889b728837 *get-checksum-sha1-only-1.0.jar",
+                         null );
+    }
+
+    @Test
+    public void testGetChecksumNoSha1CorrectMd5UsingFailSetting()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-checksum-md5-only/1.0/get-checksum-md5-only-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        FileUtils.deleteDirectory( expectedFile.getParent() );
+        assertFalse( Files.exists(expectedFile) );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "proxied1", ChecksumPolicy.FAIL, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        StorageAsset downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository.getRepository(), artifact );
+
+        Path proxied1File = Paths.get( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile.getFilePath(), proxied1File );
+        assertNoTempFiles( expectedFile );
+        assertChecksums( expectedFile, null, "f3af5201bf8da801da37db8842846e1c *get-checksum-md5-only-1.0.jar" );
+    }
+
+    @Test
+    public void testGetNotValidatedChecksumUsingFixSetting()
+        throws Exception
+    {
+        String path = "org/apache/maven/test/get-default-layout/1.0/get-default-layout-1.0.jar";
+        setupTestableManagedRepository( path );
+
+        Path expectedFile = managedDefaultDir.resolve( path );
+        ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+
+        FileUtils.deleteDirectory( expectedFile.getParent() );
+        assertFalse( Files.exists(expectedFile) );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "proxied1", ChecksumPolicy.FIX, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        StorageAsset downloadedFile = proxyHandler.fetchFromProxies( managedDefaultRepository.getRepository(), artifact );
+
+        Path proxied1File = Paths.get( REPOPATH_PROXIED1, path );
+        assertFileEquals( expectedFile, downloadedFile.getFilePath(), proxied1File );
+        assertNoTempFiles( expectedFile );
+        // The checksum policy does not validate signatures, so the remote .asc file is not downloaded
+        assertFalse( Files.exists( expectedFile.resolveSibling( expectedFile.getFileName() + ".asc" ) ) );
+    }
+
+    @Test
+    public void testGetChecksumsOfConcurrentDownloadsWithSmallWagonPool()
+        throws Exception
+    {
+        String[] paths = { "org/apache/maven/test/get-checksum-both-right/1.0/get-checksum-both-right-1.0.jar",
+            "org/apache/maven/test/get-checksum-sha1-only/1.0/get-checksum-sha1-only-1.0.jar" };
+        for ( String path : paths )
+        {
+            setupTestableManagedRepository( path );
+            FileUtils.deleteDirectory( managedDefaultDir.resolve( path ).getParent() );
+        }
+
+        saveRemoteRepositoryConfig( "badproxied", "Bad Proxied", "http://bad.machine.com/repo/", "default" );
+
+        // Configure Connector (usually done within archiva.xml configuration)
+        saveConnector( ID_DEFAULT_MANAGED, "badproxied", ChecksumPolicy.IGNORE, ReleasesPolicy.ALWAYS,
+                       SnapshotsPolicy.ALWAYS, CachedFailuresPolicy.NO, false );
+
+        // The pool has a wagon for each artifact, but not for their checksums. The artifact downloads wait for
+        // each other, so that both wagons are in use, when the checksums are requested.
+        NetworkConfiguration networkConfiguration = new NetworkConfiguration();
+        networkConfiguration.setMaxTotalPerHost( paths.length );
+        config.getConfiguration().setNetworkConfiguration( networkConfiguration );
+        delegate.setDelegate( new ArtifactBarrierWagon( new CyclicBarrier( paths.length ) ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( paths.length );
+        try
+        {
+            List<Future<StorageAsset>> downloads = new ArrayList<>();
+            for ( String path : paths )
+            {
+                ArtifactReference artifact = managedDefaultRepository.toArtifactReference( path );
+                downloads.add( executor.submit(
+                    () -> proxyHandler.fetchFromProxies( managedDefaultRepository.getRepository(), artifact ) ) );
+            }
+            for ( int i = 0; i < paths.length; i++ )
+            {
+                // Far below the connection timeout of 60 seconds, the checksums would wait for a free wagon
+                StorageAsset downloadedFile = downloads.get( i ).get( 20, TimeUnit.SECONDS );
+                assertNotNull( downloadedFile );
+                Path expectedFile = managedDefaultDir.resolve( paths[i] );
+                assertTrue( Files.exists( expectedFile.resolveSibling( expectedFile.getFileName() + ".sha1" ) ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            config.getConfiguration().setNetworkConfiguration( null );
+        }
+    }
+
+    /**
+     * Wagon, that returns artifact downloads only after the given number of artifact downloads has been started.
+     * The {@link WagonDelegate} creates the downloaded files.
+     */
+    private static class ArtifactBarrierWagon
+        extends AbstractWagon
+    {
+        private final CyclicBarrier artifactDownloads;
+
+        ArtifactBarrierWagon( CyclicBarrier artifactDownloads )
+        {
+            this.artifactDownloads = artifactDownloads;
+        }
+
+        @Override
+        public void get( String resourceName, File destination )
+            throws TransferFailedException
+        {
+            if ( resourceName.endsWith( ".jar" ) )
+            {
+                try
+                {
+                    artifactDownloads.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException | BrokenBarrierException | TimeoutException e )
+                {
+                    throw new TransferFailedException( "Artifact downloads did not run concurrently", e );
+                }
+            }
+        }
+
+        @Override
+        public boolean getIfNewer( String resourceName, File destination, long timestamp )
+            throws TransferFailedException
+        {
+            get( resourceName, destination );
+            return true;
+        }
+
+        @Override
+        public void put( File source, String destination )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void openConnectionInternal()
+        {
+            // nothing to open
+        }
+
+        @Override
+        protected void closeConnection()
+        {
+            // nothing to close
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package org.apache.archiva.proxy.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.proxy.ProxyException;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.maven.wagon.AbstractWagon;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.repository.Repository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class WagonPoolTest
+{
+    private static final String ROUTE = "central:no-proxy";
+
+    private final Repository repository = new Repository( "central", "https://repo.maven.apache.org/maven2" );
+
+    private final List<FakeWagon> connected = new ArrayList<>( );
+
+    private final WagonPool pool = new WagonPool( );
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor( );
+
+    @After
+    public void tearDown( )
+    {
+        executor.shutdownNow( );
+        pool.close( );
+    }
+
+    @Test
+    public void releasedWagonIsReused( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 2, 0 );
+        assertTrue( first.isPooled( ) );
+        pool.release( first, true );
+
+        WagonPool.PooledWagon second = borrow( "settings", repository, 2, 0 );
+        assertSame( first.getWagon( ), second.getWagon( ) );
+        assertEquals( 1, connected.size( ) );
+        assertFalse( connected.get( 0 ).disconnected );
+    }
+
+    @Test
+    public void borrowWaitsForAFreeWagonOfTheRoute( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        Future<WagonPool.PooledWagon> second =
+            executor.submit( ( ) -> borrow( "settings", repository, 1, TimeUnit.SECONDS.toMillis( 10 ) ) );
+
+        Thread.sleep( 100 );
+        assertFalse( second.isDone( ) );
+        pool.release( first, true );
+
+        assertSame( first.getWagon( ), second.get( 10, TimeUnit.SECONDS ).getWagon( ) );
+        assertEquals( 1, connected.size( ) );
+    }
+
+    @Test
+    public void newConnectionIsUsedIfNoWagonIsReleasedInTime( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        WagonPool.PooledWagon second = borrow( "settings", repository, 1, 10 );
+
+        assertTrue( first.isPooled( ) );
+        assertFalse( second.isPooled( ) );
+        assertNotSame( first.getWagon( ), second.getWagon( ) );
+
+        // wagons outside of the pool are not kept
+        pool.release( second, true );
+        assertTrue( connected.get( 1 ).disconnected );
+
+        pool.release( first, true );
+        assertSame( first.getWagon( ), borrow( "settings", repository, 1, 0 ).getWagon( ) );
+    }
+
+    @Test
+    public void routesAreLimitedIndependently( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        WagonPool.PooledWagon other = pool.borrow( "other:no-proxy", "settings", repository, 1, 0, this::connect );
+
+        assertTrue( first.isPooled( ) );
+        assertTrue( other.isPooled( ) );
+        assertEquals( 2, connected.size( ) );
+    }
+
+    @Test
+    public void notReusableWagonIsDisconnected( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        pool.release( first, false );
+        assertTrue( connected.get( 0 ).disconnected );
+
+        // the slot of the route is free again
+        WagonPool.PooledWagon second = borrow( "settings", repository, 1, 0 );
+        assertTrue( second.isPooled( ) );
+        assertNotSame( first.getWagon( ), second.getWagon( ) );
+    }
+
+    @Test
+    public void idleWagonsAreEvicted( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        pool.release( first, true );
+        pool.setIdleTimeout( 0 );
+        pool.evictIdle( );
+        assertTrue( connected.get( 0 ).disconnected );
+
+        pool.setIdleTimeout( WagonPool.DEFAULT_IDLE_TIMEOUT );
+        WagonPool.PooledWagon second = borrow( "settings", repository, 1, 0 );
+        assertNotSame( first.getWagon( ), second.getWagon( ) );
+    }
+
+    @Test
+    public void changedConnectionSettingsInvalidatePooledWagons( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        pool.release( first, true );
+
+        WagonPool.PooledWagon second = borrow( "changed settings", repository, 1, 0 );
+        assertNotSame( first.getWagon( ), second.getWagon( ) );
+        assertTrue( connected.get( 0 ).disconnected );
+    }
+
+    @Test
+    public void changedRepositoryUrlInvalidatesPooledWagons( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 1, 0 );
+        pool.release( first, true );
+
+        Repository moved = new Repository( "central", "https://repo1.maven.org/maven2" );
+        WagonPool.PooledWagon second = borrow( "settings", moved, 1, 0 );
+        assertNotSame( first.getWagon( ), second.getWagon( ) );
+        assertTrue( connected.get( 0 ).disconnected );
+        assertEquals( moved.getUrl( ), second.getWagon( ).getRepository( ).getUrl( ) );
+    }
+
+    @Test
+    public void failedConnectionReleasesTheSlot( )
+        throws Exception
+    {
+        assertNull( pool.borrow( ROUTE, "settings", repository, 1, 0, ( ) -> null ) );
+
+        WagonPool.PooledWagon wagon = borrow( "settings", repository, 1, 0 );
+        assertTrue( wagon.isPooled( ) );
+    }
+
+    @Test
+    public void closeDisconnectsIdleWagons( )
+        throws Exception
+    {
+        WagonPool.PooledWagon first = borrow( "settings", repository, 2, 0 );
+        WagonPool.PooledWagon second = borrow( "settings", repository, 2, 0 );
+        pool.release( first, true );
+
+        pool.close( );
+        assertTrue( connected.get( 0 ).disconnected );
+        assertFalse( connected.get( 1 ).disconnected );
+
+        // wagons in use are disconnected on release
+        pool.release( second, true );
+        assertTrue( connected.get( 1 ).disconnected );
+    }
+
+    private WagonPool.PooledWagon borrow( String signature, Repository repository, int maxPerRoute, long maxWait )
+        throws ProxyException
+    {
+        return pool.borrow( ROUTE, signature, repository, maxPerRoute, maxWait, ( ) -> connect( repository ) );
+    }
+
+    private Wagon connect( )
+        throws ProxyException
+    {
+        return connect( repository );
+    }
+
+    private synchronized Wagon connect( Repository repository )
+        throws ProxyException
+    {
+        FakeWagon wagon = new FakeWagon( );
+        try
+        {
+            wagon.connect( repository );
+        }
+        catch ( Exception e )
+        {
+            throw new ProxyException( "Connection failed", e );
+        }
+        connected.add( wagon );
+        return wagon;
+    }
+
+    /**
+     * Wagon, that only records, if it has been disconnected.
+     */
+    private static class FakeWagon
+        extends AbstractWagon
+    {
+        private volatile boolean disconnected;
+
+        @Override
+        protected void openConnectionInternal( )
+        {
+            // nothing to open
+        }
+
+        @Override
+        protected void closeConnection( )
+            throws ConnectionException
+        {
+            disconnected = true;
+        }
+
+        @Override
+        public void get( String resourceName, File destination )
+        {
+            throw new UnsupportedOperationException( );
+        }
+
+        @Override
+        public boolean getIfNewer( String resourceName, File destination, long timestamp )
+        {
+            throw new UnsupportedOperationException( );
+        }
+
+        @Override
+        public void put( File source, String destination )
+        {
+            throw new UnsupportedOperationException( );
+        }
+    }
+}
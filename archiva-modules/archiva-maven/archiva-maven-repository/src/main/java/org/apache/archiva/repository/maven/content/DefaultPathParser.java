@@ -18,12 +18,6 @@
  * under the License.
  */
 
-import org.apache.archiva.metadata.model.ArtifactMetadata;
-import org.apache.archiva.metadata.maven.model.MavenArtifactFacet;
-import org.apache.archiva.metadata.repository.storage.RepositoryPathTranslator;
-import org.apache.archiva.repository.maven.metadata.storage.ArtifactMappingProvider;
-import org.apache.archiva.repository.maven.metadata.storage.DefaultArtifactMappingProvider;
-import org.apache.archiva.repository.maven.metadata.storage.Maven2RepositoryPathTranslator;
 import org.apache.archiva.model.ArtifactReference;
 import org.apache.archiva.repository.LayoutException;
 import org.apache.archiva.repository.content.ItemSelector;
@@ -32,13 +26,14 @@
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
-
 /**
  * DefaultPathParser is a parser for maven 2 (default layout) paths to ArtifactReference.
  *
- * TODO: remove in favour of path translator, this is just delegating for the most part, but won't accommodate other
- * extensions like NPanday
+ * The path is parsed by {@link MavenPathTokenizer}, that returns the same results as
+ * {@link org.apache.archiva.repository.maven.metadata.storage.Maven2RepositoryPathTranslator#getArtifactForPath(String, String)}
+ * without regular expressions and without the intermediate metadata objects.
+ *
+ * TODO: remove in favour of path translator, this won't accommodate other extensions like NPanday
  *
  *
  */
@@ -46,11 +41,6 @@
 public class DefaultPathParser
     implements PathParser
 {
-    private static final String INVALID_ARTIFACT_PATH = "Invalid path to Artifact: ";
-
-    private RepositoryPathTranslator pathTranslator = new Maven2RepositoryPathTranslator(
-        Collections.<ArtifactMappingProvider>singletonList( new DefaultArtifactMappingProvider() ) );
-
     /**
      * {@inheritDoc}
      *
@@ -65,26 +55,14 @@ public ArtifactReference toArtifactReference( String path )
             throw new LayoutException( "Unable to convert blank path." );
         }
 
-        ArtifactMetadata metadata;
-        try
-        {
-            metadata = pathTranslator.getArtifactForPath( null, path );
-        }
-        catch ( IllegalArgumentException e )
-        {
-            throw new LayoutException( e.getMessage(), e );
-        }
+        MavenPathTokenizer tokens = MavenPathTokenizer.tokenize( path );
 
         ArtifactReference artifact = new ArtifactReference();
-        artifact.setGroupId( metadata.getNamespace() );
-        artifact.setArtifactId( metadata.getProject() );
-        artifact.setVersion( metadata.getVersion() );
-        MavenArtifactFacet facet = (MavenArtifactFacet) metadata.getFacet( MavenArtifactFacet.FACET_ID );
-        if ( facet != null )
-        {
-            artifact.setClassifier( facet.getClassifier() );
-            artifact.setType( facet.getType() );
-        }
+        artifact.setGroupId( tokens.getNamespace() );
+        artifact.setArtifactId( tokens.getProjectId() );
+        artifact.setVersion( tokens.getVersion() );
+        artifact.setClassifier( tokens.getClassifier() );
+        artifact.setType( tokens.getType() );
 
         return artifact;
     }
@@ -97,27 +75,15 @@ public ItemSelector toItemSelector( String path ) throws LayoutException
             throw new LayoutException( "Unable to convert blank path." );
         }
 
-        try
-        {
-            ArtifactMetadata metadata = pathTranslator.getArtifactForPath( null, path );
-            ArchivaItemSelector.Builder builder = ArchivaItemSelector.builder( ).withNamespace( metadata.getNamespace( ) )
-                .withProjectId( metadata.getProject( ) )
-                .withVersion( metadata.getProjectVersion( ) )
-                .withArtifactId( metadata.getProject( ) )
-                .withArtifactVersion( metadata.getVersion( ) );
-            MavenArtifactFacet facet = (MavenArtifactFacet) metadata.getFacet( MavenArtifactFacet.FACET_ID );
-            if ( facet != null )
-            {
-                builder.withClassifier( facet.getClassifier() );
-                builder.withType( facet.getType() );
-            }
-            return builder.build( );
-        }
-        catch ( IllegalArgumentException e )
-        {
-            throw new LayoutException( e.getMessage(), e );
-        }
-
+        MavenPathTokenizer tokens = MavenPathTokenizer.tokenize( path );
+        return ArchivaItemSelector.builder( ).withNamespace( tokens.getNamespace( ) )
+            .withProjectId( tokens.getProjectId( ) )
+            .withVersion( tokens.getProjectVersion( ) )
+            .withArtifactId( tokens.getProjectId( ) )
+            .withArtifactVersion( tokens.getVersion( ) )
+            .withClassifier( tokens.getClassifier( ) )
+            .withType( tokens.getType( ) )
+            .build( );
     }
 
 }
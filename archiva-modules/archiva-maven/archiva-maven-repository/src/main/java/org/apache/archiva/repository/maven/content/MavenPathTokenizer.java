@@ -0,0 +1,327 @@
+package org.apache.archiva.repository.maven.content;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.repository.LayoutException;
+
+/**
+ * Splits a path of the maven 2 (default) layout into the coordinates of the artifact.
+ * <p>
+ * The path is read once from the end without regular expressions. Only the strings, that are returned, are
+ * created. The results and the error messages are the same as the ones of
+ * {@link org.apache.archiva.repository.maven.metadata.storage.Maven2RepositoryPathTranslator#getArtifactForPath(String, String)}
+ * together with the {@link org.apache.archiva.repository.maven.metadata.storage.DefaultArtifactMappingProvider}.
+ * </p>
+ */
+final class MavenPathTokenizer
+{
+    private static final String INVALID_PATH = "Not a valid artifact path in a Maven 2 repository, ";
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    private static final String JAR = "jar";
+
+    // length of "yyyyMMdd.HHmmss"
+    private static final int TIMESTAMP_LENGTH = 15;
+
+    private final String namespace;
+
+    private final String projectId;
+
+    private final String projectVersion;
+
+    private final String version;
+
+    private final String classifier;
+
+    private final String type;
+
+    private MavenPathTokenizer( String namespace, String projectId, String projectVersion, String version,
+                                String classifier, String type )
+    {
+        this.namespace = namespace;
+        this.projectId = projectId;
+        this.projectVersion = projectVersion;
+        this.version = version;
+        this.classifier = classifier;
+        this.type = type;
+    }
+
+    /**
+     * Parses the given path relative to the repository root. Slashes and backslashes are both accepted as separator.
+     *
+     * @param path the relative path of the artifact file
+     * @return the coordinates of the artifact
+     * @throws LayoutException if the path is not a valid artifact path
+     */
+    static MavenPathTokenizer tokenize( String path )
+        throws LayoutException
+    {
+        // trailing separators are ignored, like the empty trailing parts of String.split()
+        int end = path.length( );
+        while ( end > 0 && isSeparator( path.charAt( end - 1 ) ) )
+        {
+            end--;
+        }
+        int fileSeparator = lastSeparator( path, end - 1 );
+        int versionSeparator = lastSeparator( path, fileSeparator - 1 );
+        int projectSeparator = lastSeparator( path, versionSeparator - 1 );
+        if ( projectSeparator < 0 )
+        {
+            throw new LayoutException( INVALID_PATH + "not enough directories: " + path );
+        }
+
+        int idStart = fileSeparator + 1;
+        int projectStart = projectSeparator + 1;
+        int projectLength = versionSeparator - projectStart;
+        if ( idStart + projectLength >= end || path.charAt( idStart + projectLength ) != '-'
+            || !path.regionMatches( idStart, path, projectStart, projectLength ) )
+        {
+            throw new LayoutException(
+                INVALID_PATH + "filename '" + path.substring( idStart, end ) + "' doesn't start with artifact ID '"
+                    + path.substring( projectStart, versionSeparator ) + "'" );
+        }
+
+        String projectVersion = path.substring( versionSeparator + 1, fileSeparator );
+        int versionStart = idStart + projectLength + 1;
+        int versionEnd;
+        String version;
+        if ( versionStart + projectVersion.length( ) <= end && path.startsWith( projectVersion, versionStart )
+            && !isUniqueSnapshot( projectVersion ) )
+        {
+            // non-snapshot versions, or non-timestamped snapshot versions
+            version = projectVersion;
+            versionEnd = versionStart + projectVersion.length( );
+        }
+        else if ( projectVersion.endsWith( SNAPSHOT ) )
+        {
+            // timestamped snapshots
+            int mainVersionLength = projectVersion.length( ) - SNAPSHOT.length( );
+            if ( mainVersionLength == 0 )
+            {
+                throw new LayoutException(
+                    "Timestamped snapshots must contain the main version, filename was '" + path.substring( idStart,
+                        end ) + "'" );
+            }
+            versionEnd = endOfTimestampedVersion( path, versionStart + mainVersionLength, end );
+            if ( versionEnd < 0 )
+            {
+                throw new LayoutException(
+                    INVALID_PATH + "filename '" + path.substring( idStart, end )
+                        + "' doesn't contain a timestamped version matching snapshot '" + projectVersion + "'" );
+            }
+            version = path.substring( versionStart, versionEnd );
+        }
+        else
+        {
+            throw new LayoutException(
+                INVALID_PATH + "filename '" + path.substring( idStart, end ) + "' doesn't contain version '"
+                    + projectVersion + "'" );
+        }
+
+        String classifier = null;
+        String extension = null;
+        if ( versionEnd < end )
+        {
+            char c = path.charAt( versionEnd );
+            if ( c == '-' )
+            {
+                // classifier up until '.'
+                int extensionStart = path.indexOf( '.', versionEnd );
+                if ( extensionStart >= 0 && extensionStart < end )
+                {
+                    classifier = path.substring( versionEnd + 1, extensionStart );
+                    extension = path.substring( extensionStart + 1, end );
+                }
+                else
+                {
+                    classifier = path.substring( versionEnd + 1, end );
+                }
+            }
+            else if ( c == '.' )
+            {
+                // rest is the extension
+                extension = path.substring( versionEnd + 1, end );
+            }
+            else
+            {
+                throw new LayoutException(
+                    INVALID_PATH + "filename '" + path.substring( idStart, end )
+                        + "' expected classifier or extension but got '" + path.substring( versionEnd, end ) + "'" );
+            }
+        }
+
+        String projectId = path.substring( projectStart, versionSeparator );
+        String type = getType( projectId, classifier, extension );
+        if ( type == null )
+        {
+            throw new LayoutException(
+                INVALID_PATH + "filename '" + path.substring( idStart, end ) + "' does not have a type" );
+        }
+
+        // String.replace returns the same instance, if there is nothing to replace
+        String namespace = path.substring( 0, projectSeparator ).replace( '/', '.' ).replace( '\\', '.' );
+        return new MavenPathTokenizer( namespace, projectId, projectVersion, version, classifier, type );
+    }
+
+    /**
+     * The mappings of {@link org.apache.archiva.repository.maven.metadata.storage.DefaultArtifactMappingProvider}
+     * and the maven plugin detection of the path translator.
+     */
+    private static String getType( String projectId, String classifier, String extension )
+    {
+        if ( JAR.equals( extension ) )
+        {
+            if ( classifier != null )
+            {
+                switch ( classifier )
+                {
+                    case "client":
+                        return "ejb-client";
+                    case "sources":
+                        return "java-source";
+                    case "javadoc":
+                        return "javadoc";
+                    case "tests":
+                        return "test-jar";
+                    default:
+                        break;
+                }
+            }
+            if ( isMavenPlugin( projectId ) )
+            {
+                return "maven-plugin";
+            }
+        }
+        return extension;
+    }
+
+    private static boolean isMavenPlugin( String artifactId )
+    {
+        return ( artifactId.startsWith( "maven-" ) && artifactId.endsWith( "-plugin" )
+            && artifactId.length( ) >= "maven--plugin".length( ) ) || artifactId.endsWith( "-maven-plugin" );
+    }
+
+    /**
+     * Returns <code>true</code>, if the version ends with <code>-yyyyMMdd.HHmmss-buildNumber</code>.
+     */
+    private static boolean isUniqueSnapshot( String version )
+    {
+        int buildNumberSeparator = version.lastIndexOf( '-' );
+        int timestampStart = buildNumberSeparator - TIMESTAMP_LENGTH;
+        if ( timestampStart < 1 || buildNumberSeparator == version.length( ) - 1 || version.charAt(
+            timestampStart - 1 ) != '-' || version.charAt( timestampStart + 8 ) != '.' )
+        {
+            return false;
+        }
+        return isDigits( version, buildNumberSeparator + 1, version.length( ) ) && isDigits( version, timestampStart,
+            timestampStart + 8 ) && isDigits( version, timestampStart + 9, buildNumberSeparator );
+    }
+
+    /**
+     * Matches <code>yyyyMMdd?HHmmss-buildNumber</code> at the given offset.
+     *
+     * @return the end of the build number or -1, if the timestamp or build number is missing
+     */
+    private static int endOfTimestampedVersion( String path, int start, int end )
+    {
+        int buildNumberStart = start + TIMESTAMP_LENGTH + 1;
+        if ( buildNumberStart >= end || !isDigits( path, start, start + 8 ) || !isDigits( path, start + 9,
+            start + TIMESTAMP_LENGTH ) || path.charAt( start + TIMESTAMP_LENGTH ) != '-' )
+        {
+            return -1;
+        }
+        int buildNumberEnd = buildNumberStart;
+        long buildNumber = 0;
+        while ( buildNumberEnd < end && isDigit( path.charAt( buildNumberEnd ) ) )
+        {
+            buildNumber = buildNumber * 10 + ( path.charAt( buildNumberEnd ) - '0' );
+            if ( buildNumber > Integer.MAX_VALUE )
+            {
+                return -1;
+            }
+            buildNumberEnd++;
+        }
+        return buildNumberEnd == buildNumberStart ? -1 : buildNumberEnd;
+    }
+
+    private static boolean isDigits( String value, int start, int end )
+    {
+        for ( int i = start; i < end; i++ )
+        {
+            if ( !isDigit( value.charAt( i ) ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit( char c )
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator( char c )
+    {
+        return c == '/' || c == '\\';
+    }
+
+    private static int lastSeparator( String path, int from )
+    {
+        for ( int i = from; i >= 0; i-- )
+        {
+            if ( isSeparator( path.charAt( i ) ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getNamespace( )
+    {
+        return namespace;
+    }
+
+    String getProjectId( )
+    {
+        return projectId;
+    }
+
+    String getProjectVersion( )
+    {
+        return projectVersion;
+    }
+
+    String getVersion( )
+    {
+        return version;
+    }
+
+    String getClassifier( )
+    {
+        return classifier;
+    }
+
+    String getType( )
+    {
+        return type;
+    }
+}
@@ -18,6 +18,7 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.Checksum;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.checksum.ChecksummedFile;
 import org.apache.archiva.common.Try;
@@ -40,6 +41,8 @@
 import org.apache.archiva.proxy.model.RepositoryProxyHandler;
 import org.apache.archiva.repository.*;
 import org.apache.archiva.repository.content.PathParser;
+import org.apache.archiva.repository.event.LifecycleEvent;
+import org.apache.archiva.repository.event.RepositoryRegistryEvent;
 import org.apache.archiva.repository.maven.MavenSystemManager;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
 import org.apache.archiva.repository.storage.StorageAsset;
@@ -63,6 +66,7 @@
 import java.nio.channels.Channels;
 import java.nio.charset.Charset;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -126,11 +130,22 @@
 
     private static final MavenXpp3Reader MAVEN_XPP_3_READER = new MavenXpp3Reader();
 
+    /**
+     * Default limit of the model cache: the total size of the cached POM files
+     */
+    private static final long DEFAULT_MODEL_CACHE_SIZE = 32 * 1024 * 1024;
+
+    // Shared by all callers, i.e. the repository scanner and the browse services
+    private final ProjectModelCache modelCache = new ProjectModelCache(DEFAULT_MODEL_CACHE_SIZE);
+
 
     @PostConstruct
     public void initialize() {
         builder = new DefaultModelBuilderFactory().newInstance();
 
+        repositoryRegistry.registerEventHandler(LifecycleEvent.ANY,
+                event -> modelCache.invalidate(event.getRepository().getId()));
+        repositoryRegistry.registerEventHandler(RepositoryRegistryEvent.RELOADED, event -> modelCache.clear());
     }
 
     @Override
@@ -229,67 +244,83 @@ public ProjectVersionMetadata readProjectVersionMetadata(ReadMetadataRequest rea
             remoteRepositories.addAll(repositoryRegistry.getRemoteRepositories());
         }
 
-        ModelBuildingRequest req =
-                new DefaultModelBuildingRequest().setProcessPlugins(false).setPomFile(file.getFilePath().toFile()).setTwoPhaseBuilding(
-                        false).setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
+        // The parents may be resolved from each of the repositories, so the set is part of the cache key
+        List<String> repositoryIds = new ArrayList<>();
+        repositoryIds.add(managedRepository.getId());
+        remoteRepositories.forEach(remoteRepository -> repositoryIds.add(remoteRepository.getId()));
 
-        //MRM-1607. olamy this will resolve jdk profiles on the current running archiva jvm
-        req.setSystemProperties(System.getProperties());
+        Model model = modelCache.getEffectiveModel(repositoryIds, readMetadataRequest.getNamespace(),
+                readMetadataRequest.getProjectId(), artifactVersion);
+        if (model == null) {
+            ModelBuildingRequest req =
+                    new DefaultModelBuildingRequest().setProcessPlugins(false).setPomFile(file.getFilePath().toFile()).setTwoPhaseBuilding(
+                            false).setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
 
-        // MRM-1411
-        req.setModelResolver(
-                new RepositoryModelResolver(managedRepository, pathTranslator, wagonFactory, remoteRepositories,
-                        networkProxies, managedRepository, mavenSystemManager, metadataReader));
+            //MRM-1607. olamy this will resolve jdk profiles on the current running archiva jvm
+            req.setSystemProperties(System.getProperties());
 
-        Model model;
-        try {
-            model = builder.build(req).getEffectiveModel();
-        } catch (ModelBuildingException e) {
-            String msg = "The artifact's POM file '" + file + "' was invalid: " + e.getMessage();
-
-            List<ModelProblem> modelProblems = e.getProblems();
-            for (ModelProblem problem : modelProblems) {
-                // MRM-1411, related to MRM-1335
-                // this means that the problem was that the parent wasn't resolved!
-                // olamy really hackhish but fail with java profile so use error message
-                // || ( StringUtils.startsWith( problem.getMessage(), "Failed to determine Java version for profile" ) )
-                // but setTwoPhaseBuilding(true) fix that
-                if (((problem.getException() instanceof FileNotFoundException
-                        || problem.getException() instanceof NoSuchFileException
-                ) && e.getModelId() != null &&
-                        !e.getModelId().equals(problem.getModelId()))) {
-                    log.warn("The artifact's parent POM file '{}' cannot be resolved. "
-                            + "Using defaults for project version metadata..", file);
-
-                    ProjectVersionMetadata metadata = new ProjectVersionMetadata();
-                    metadata.setId(readMetadataRequest.getProjectVersion());
-
-                    MavenProjectFacet facet = new MavenProjectFacet();
-                    facet.setGroupId(readMetadataRequest.getNamespace());
-                    facet.setArtifactId(readMetadataRequest.getProjectId());
-                    facet.setPackaging("jar");
-                    metadata.addFacet(facet);
-
-                    String errMsg =
-                            "Error in resolving artifact's parent POM file. " + (problem.getException() == null
-                                    ? problem.getMessage()
-                                    : problem.getException().getMessage());
-                    RepositoryProblemFacet repoProblemFacet = new RepositoryProblemFacet();
-                    repoProblemFacet.setRepositoryId(readMetadataRequest.getRepositoryId());
-                    repoProblemFacet.setId(readMetadataRequest.getRepositoryId());
-                    repoProblemFacet.setMessage(errMsg);
-                    repoProblemFacet.setProblem(errMsg);
-                    repoProblemFacet.setProject(readMetadataRequest.getProjectId());
-                    repoProblemFacet.setVersion(readMetadataRequest.getProjectVersion());
-                    repoProblemFacet.setNamespace(readMetadataRequest.getNamespace());
-
-                    metadata.addFacet(repoProblemFacet);
-
-                    return metadata;
+            // MRM-1411
+            req.setModelResolver(
+                    new RepositoryModelResolver(managedRepository, pathTranslator, wagonFactory, remoteRepositories,
+                            networkProxies, managedRepository, mavenSystemManager, metadataReader));
+            ProjectModelCache.ModelFileLocator modelFileLocator =
+                    (groupId, artifactId, version) -> pathTranslator.toFile(basedir, groupId, artifactId, version,
+                            artifactId + "-" + version + ".pom").getFilePath();
+            req.setModelCache(modelCache.getModelCache(repositoryIds, modelFileLocator));
+
+            try {
+                ModelBuildingResult result = builder.build(req);
+                model = result.getEffectiveModel();
+                modelCache.putEffectiveModel(repositoryIds, readMetadataRequest.getNamespace(),
+                        readMetadataRequest.getProjectId(), artifactVersion, model,
+                        getModelFiles(result, file, modelFileLocator));
+            } catch (ModelBuildingException e) {
+                String msg = "The artifact's POM file '" + file + "' was invalid: " + e.getMessage();
+
+                List<ModelProblem> modelProblems = e.getProblems();
+                for (ModelProblem problem : modelProblems) {
+                    // MRM-1411, related to MRM-1335
+                    // this means that the problem was that the parent wasn't resolved!
+                    // olamy really hackhish but fail with java profile so use error message
+                    // || ( StringUtils.startsWith( problem.getMessage(), "Failed to determine Java version for profile" ) )
+                    // but setTwoPhaseBuilding(true) fix that
+                    if (((problem.getException() instanceof FileNotFoundException
+                            || problem.getException() instanceof NoSuchFileException
+                    ) && e.getModelId() != null &&
+                            !e.getModelId().equals(problem.getModelId()))) {
+                        log.warn("The artifact's parent POM file '{}' cannot be resolved. "
+                                + "Using defaults for project version metadata..", file);
+
+                        ProjectVersionMetadata metadata = new ProjectVersionMetadata();
+                        metadata.setId(readMetadataRequest.getProjectVersion());
+
+                        MavenProjectFacet facet = new MavenProjectFacet();
+                        facet.setGroupId(readMetadataRequest.getNamespace());
+                        facet.setArtifactId(readMetadataRequest.getProjectId());
+                        facet.setPackaging("jar");
+                        metadata.addFacet(facet);
+
+                        String errMsg =
+                                "Error in resolving artifact's parent POM file. " + (problem.getException() == null
+                                        ? problem.getMessage()
+                                        : problem.getException().getMessage());
+                        RepositoryProblemFacet repoProblemFacet = new RepositoryProblemFacet();
+                        repoProblemFacet.setRepositoryId(readMetadataRequest.getRepositoryId());
+                        repoProblemFacet.setId(readMetadataRequest.getRepositoryId());
+                        repoProblemFacet.setMessage(errMsg);
+                        repoProblemFacet.setProblem(errMsg);
+                        repoProblemFacet.setProject(readMetadataRequest.getProjectId());
+                        repoProblemFacet.setVersion(readMetadataRequest.getProjectVersion());
+                        repoProblemFacet.setNamespace(readMetadataRequest.getNamespace());
+
+                        metadata.addFacet(repoProblemFacet);
+
+                        return metadata;
+                    }
                 }
-            }
 
-            throw new RepositoryStorageMetadataInvalidException("invalid-pom", msg, e);
+                throw new RepositoryStorageMetadataInvalidException("invalid-pom", msg, e);
+            }
         }
 
         // Check if the POM is in the correct location
@@ -323,7 +354,8 @@ public ProjectVersionMetadata readProjectVersionMetadata(ReadMetadataRequest rea
         metadata.setOrganization(convertOrganization(model.getOrganization()));
         metadata.setScm(convertScm(model.getScm()));
         metadata.setUrl(model.getUrl());
-        metadata.setProperties(model.getProperties());
+        // the model is shared by the cache, so the metadata gets a snapshot of the properties
+        metadata.setProperties((Properties) model.getProperties().clone());
 
         MavenProjectFacet facet = new MavenProjectFacet();
         facet.setGroupId(model.getGroupId() != null ? model.getGroupId() : model.getParent().getGroupId());
@@ -347,6 +379,25 @@ public void setWagonFactory(WagonFactory wagonFactory) {
         this.wagonFactory = wagonFactory;
     }
 
+    /**
+     * Returns the POM files of the lineage of the built model. The parents are located in the managed repository,
+     * because the resolved parents do not know their files.
+     */
+    private static List<Path> getModelFiles(ModelBuildingResult result, StorageAsset pomFile,
+                                            ProjectModelCache.ModelFileLocator locator) {
+        List<Path> files = new ArrayList<>();
+        files.add(pomFile.getFilePath());
+        List<String> modelIds = result.getModelIds();
+        // the first id is the model itself, the super POM has an empty id
+        for (String modelId : modelIds.subList(1, modelIds.size())) {
+            String[] coordinates = modelId.split(":");
+            if (coordinates.length == 3) {
+                files.add(locator.getModelFile(coordinates[0], coordinates[1], coordinates[2]));
+            }
+        }
+        return files;
+    }
+
     private List<org.apache.archiva.metadata.model.Dependency> convertDependencies(List<Dependency> dependencies) {
         List<org.apache.archiva.metadata.model.Dependency> l = new ArrayList<>();
         for (Dependency dependency : dependencies) {
@@ -407,7 +458,7 @@ private List<org.apache.archiva.metadata.model.MailingList> convertMailingLists(
             newMailingList.setPostAddress(mailingList.getPost());
             newMailingList.setSubscribeAddress(mailingList.getSubscribe());
             newMailingList.setUnsubscribeAddress(mailingList.getUnsubscribe());
-            newMailingList.setOtherArchives(mailingList.getOtherArchives());
+            newMailingList.setOtherArchives(new ArrayList<>(mailingList.getOtherArchives()));
             l.add(newMailingList);
         }
         return l;
@@ -759,14 +810,12 @@ private static void populateArtifactMetadataFromFile(ArtifactMetadata metadata,
         metadata.setFileLastModified(file.getModificationTime().toEpochMilli());
         ChecksummedFile checksummedFile = new ChecksummedFile(file.getFilePath());
         try {
-            metadata.setMd5(checksummedFile.calculateChecksum(ChecksumAlgorithm.MD5));
-        } catch (IOException e) {
-            log.error("Unable to checksum file {}: {},MD5", file, e.getMessage());
-        }
-        try {
-            metadata.setSha1(checksummedFile.calculateChecksum(ChecksumAlgorithm.SHA1));
+            // Both checksums are calculated in a single pass over the file
+            List<Checksum> checksums = checksummedFile.calculateChecksums(Arrays.asList(ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1));
+            metadata.setMd5(checksums.get(0).getChecksum());
+            metadata.setSha1(checksums.get(1).getChecksum());
         } catch (IOException e) {
-            log.error("Unable to checksum file {}: {},SHA1", file, e.getMessage());
+            log.error("Unable to checksum file {}: {},MD5,SHA1", file, e.getMessage());
         }
         metadata.setSize(file.getSize());
     }
@@ -0,0 +1,412 @@
+package org.apache.archiva.repository.maven.metadata.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.common.utils.VersionUtil;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.ModelCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the Maven models, that are built for the project version metadata.
+ * <p>
+ * The cache holds two kinds of entries: the raw parent and import models, that the model builder requests through
+ * the {@link ModelCache} interface, and the effective models of the project versions. The entries are keyed by the
+ * coordinates and the repository set, i.e. the managed repository followed by the remote repositories, that are
+ * used to resolve the parents.
+ * </p>
+ * <p>
+ * Each entry remembers the modification time and size of the POM files it was read from and is dropped on lookup,
+ * if one of them changed. An effective model depends on the POM files of its whole lineage. The entries of a
+ * repository set are dropped, if one of its repositories is updated or removed.
+ * </p>
+ * <p>
+ * The size of the cache is bounded by the total size of the POM files of the entries. The least recently used
+ * entries are evicted first. The cached models are shared, so they must not be modified by the callers.
+ * </p>
+ *
+ * @since 3.0
+ */
+class ProjectModelCache
+{
+    private static final Logger log = LoggerFactory.getLogger( ProjectModelCache.class );
+
+    private static final String EFFECTIVE = "effective";
+
+    /**
+     * Returns the local POM file of the given coordinates.
+     */
+    @FunctionalInterface
+    interface ModelFileLocator
+    {
+        Path getModelFile( String groupId, String artifactId, String version );
+    }
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+    private long maxWeight;
+
+    private long weight = 0;
+
+    private final LongAdder hits = new LongAdder( );
+
+    private final LongAdder misses = new LongAdder( );
+
+    private final LongAdder evictions = new LongAdder( );
+
+    /**
+     * @param maxWeight the maximum total size in bytes of the POM files of the cached models
+     */
+    ProjectModelCache( long maxWeight )
+    {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the view of the cache for the model builder. Only models of release versions, that are read from the
+     * local POM files, are cached.
+     *
+     * @param repositories the ids of the repositories, the parents are resolved from
+     * @param locator      the locator of the local POM files
+     */
+    ModelCache getModelCache( List<String> repositories, ModelFileLocator locator )
+    {
+        return new ModelCache( )
+        {
+            @Override
+            public void put( String groupId, String artifactId, String version, String tag, Object data )
+            {
+                if ( VersionUtil.isSnapshot( version ) )
+                {
+                    // the timestamped snapshot POMs are not tracked
+                    return;
+                }
+                Path file = locator.getModelFile( groupId, artifactId, version );
+                Map<Path, FileStamp> files = getFileStamps( Collections.singletonList( file ) );
+                if ( files != null )
+                {
+                    ProjectModelCache.this.put( new Key( repositories, tag, groupId, artifactId, version ), data,
+                        files );
+                }
+            }
+
+            @Override
+            public Object get( String groupId, String artifactId, String version, String tag )
+            {
+                return ProjectModelCache.this.get( new Key( repositories, tag, groupId, artifactId, version ) );
+            }
+        };
+    }
+
+    /**
+     * Returns the cached effective model or <code>null</code>, if it is not cached or one of its POM files changed.
+     */
+    Model getEffectiveModel( List<String> repositories, String groupId, String artifactId, String version )
+    {
+        return (Model) get( new Key( repositories, EFFECTIVE, groupId, artifactId, version ) );
+    }
+
+    /**
+     * Adds the effective model to the cache.
+     *
+     * @param files the POM files of the lineage of the model
+     */
+    void putEffectiveModel( List<String> repositories, String groupId, String artifactId, String version,
+                            Model model, Collection<Path> files )
+    {
+        Map<Path, FileStamp> stamps = getFileStamps( files );
+        if ( stamps != null )
+        {
+            put( new Key( repositories, EFFECTIVE, groupId, artifactId, version ), model, stamps );
+        }
+    }
+
+    /**
+     * Removes all entries, that depend on the given repository.
+     */
+    synchronized void invalidate( String repositoryId )
+    {
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet( ).iterator( );
+        while ( it.hasNext( ) )
+        {
+            Map.Entry<Key, Entry> entry = it.next( );
+            if ( entry.getKey( ).repositories.contains( repositoryId ) )
+            {
+                weight -= entry.getValue( ).weight;
+                it.remove( );
+                removed++;
+            }
+        }
+        if ( removed > 0 )
+        {
+            log.debug( "Removed {} cached models of repository {}", removed, repositoryId );
+        }
+    }
+
+    synchronized void clear( )
+    {
+        entries.clear( );
+        weight = 0;
+    }
+
+    private Object get( Key key )
+    {
+        Entry entry;
+        synchronized ( this )
+        {
+            entry = entries.get( key );
+        }
+        if ( entry != null && entry.isValid( ) )
+        {
+            hits.increment( );
+            return entry.value;
+        }
+        if ( entry != null )
+        {
+            remove( key, entry );
+        }
+        misses.increment( );
+        return null;
+    }
+
+    private synchronized void put( Key key, Object value, Map<Path, FileStamp> files )
+    {
+        Entry entry = new Entry( value, files );
+        if ( entry.weight > maxWeight )
+        {
+            return;
+        }
+        Entry previous = entries.put( key, entry );
+        if ( previous != null )
+        {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+        Iterator<Entry> it = entries.values( ).iterator( );
+        while ( weight > maxWeight && it.hasNext( ) )
+        {
+            weight -= it.next( ).weight;
+            it.remove( );
+            evictions.increment( );
+        }
+    }
+
+    private synchronized void remove( Key key, Entry entry )
+    {
+        if ( entries.remove( key, entry ) )
+        {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Returns the stamps of the files or <code>null</code>, if one of them cannot be read.
+     */
+    private static Map<Path, FileStamp> getFileStamps( Collection<Path> files )
+    {
+        Map<Path, FileStamp> stamps = new HashMap<>( );
+        for ( Path file : files )
+        {
+            FileStamp stamp = FileStamp.of( file );
+            if ( stamp == null )
+            {
+                return null;
+            }
+            stamps.put( file, stamp );
+        }
+        return stamps;
+    }
+
+    synchronized int getSize( )
+    {
+        return entries.size( );
+    }
+
+    synchronized long getWeight( )
+    {
+        return weight;
+    }
+
+    synchronized long getMaxWeight( )
+    {
+        return maxWeight;
+    }
+
+    synchronized void setMaxWeight( long maxWeight )
+    {
+        this.maxWeight = maxWeight;
+        Iterator<Entry> it = entries.values( ).iterator( );
+        while ( weight > maxWeight && it.hasNext( ) )
+        {
+            weight -= it.next( ).weight;
+            it.remove( );
+            evictions.increment( );
+        }
+    }
+
+    long getHitCount( )
+    {
+        return hits.sum( );
+    }
+
+    long getMissCount( )
+    {
+        return misses.sum( );
+    }
+
+    long getEvictionCount( )
+    {
+        return evictions.sum( );
+    }
+
+    private static final class Key
+    {
+        final List<String> repositories;
+
+        final String tag;
+
+        final String groupId;
+
+        final String artifactId;
+
+        final String version;
+
+        Key( List<String> repositories, String tag, String groupId, String artifactId, String version )
+        {
+            this.repositories = repositories;
+            this.tag = tag;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+            Key key = (Key) o;
+            return tag.equals( key.tag ) && Objects.equals( groupId, key.groupId ) && Objects.equals( artifactId,
+                key.artifactId ) && Objects.equals( version, key.version ) && repositories.equals(
+                key.repositories );
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            return Objects.hash( repositories, tag, groupId, artifactId, version );
+        }
+    }
+
+    private static final class Entry
+    {
+        final Object value;
+
+        final Map<Path, FileStamp> files;
+
+        final long weight;
+
+        Entry( Object value, Map<Path, FileStamp> files )
+        {
+            this.value = value;
+            this.files = files;
+            this.weight = files.values( ).stream( ).mapToLong( stamp -> stamp.size ).sum( );
+        }
+
+        boolean isValid( )
+        {
+            for ( Map.Entry<Path, FileStamp> file : files.entrySet( ) )
+            {
+                if ( !file.getValue( ).equals( FileStamp.of( file.getKey( ) ) ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class FileStamp
+    {
+        final long lastModified;
+
+        final long size;
+
+        private FileStamp( long lastModified, long size )
+        {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        /**
+         * Returns the stamp of the file or <code>null</code>, if it does not exist.
+         */
+        static FileStamp of( Path file )
+        {
+            try
+            {
+                BasicFileAttributes attributes = Files.readAttributes( file, BasicFileAttributes.class );
+                return new FileStamp( attributes.lastModifiedTime( ).toMillis( ), attributes.size( ) );
+            }
+            catch ( IOException e )
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !( o instanceof FileStamp ) )
+            {
+                return false;
+            }
+            FileStamp stamp = (FileStamp) o;
+            return lastModified == stamp.lastModified && size == stamp.size;
+        }
+
+        @Override
+        public int hashCode( )
+        {
+            return Objects.hash( lastModified, size );
+        }
+    }
+}
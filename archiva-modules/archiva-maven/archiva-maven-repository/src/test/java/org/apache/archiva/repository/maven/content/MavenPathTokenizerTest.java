@@ -0,0 +1,233 @@
+package org.apache.archiva.repository.maven.content;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.metadata.maven.model.MavenArtifactFacet;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.repository.LayoutException;
+import org.apache.archiva.repository.maven.metadata.storage.ArtifactMappingProvider;
+import org.apache.archiva.repository.maven.metadata.storage.DefaultArtifactMappingProvider;
+import org.apache.archiva.repository.maven.metadata.storage.Maven2RepositoryPathTranslator;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the results of the {@link MavenPathTokenizer} with the results of the
+ * {@link Maven2RepositoryPathTranslator}, that has been used by the path parser before.
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MavenPathTokenizerTest
+    extends TestCase
+{
+    private static final List<String> PATHS = Arrays.asList(
+        // from DefaultPathParserTest
+        "invalid/invalid/1/invalid-1",
+        "invalid/invalid/1.0-SNAPSHOT/invalid-1.0.jar",
+        "invalid/invalid/1.0-20050611.123456-1/invalid-1.0-20050611.123456-1.jar",
+        "invalid/invalid-1.0.jar",
+        "invalid/invalid/1.0/invalid-2.0.jar",
+        "invalid/invalid/1.0/invalid-1.0b.jar",
+        "org/apache/maven/test/1.0-SNAPSHOT/wrong-artifactId-1.0-20050611.112233-1.jar",
+        "org/project/example-presentation/3.2/example-presentation-3.2.xml.zip",
+        "org/project/example-presentation/3.2/example-presentation-3.2-extras.xml.zip",
+        "org/project/example-distribution/1.3/example-distribution-1.3.tar.gz",
+        "org/project/example-distribution/1.3/example-distribution-1.3-bin.tar.gz",
+        "ch/ethz/ganymed/ganymed-ssh2/build210/ganymed-ssh2-build210.jar",
+        "javax/comm/3.0-u1/comm-3.0-u1.jar",
+        "javax/persistence/ejb/3.0-public_review/ejb-3.0-public_review.jar",
+        "com/foo/foo-tool/1.0/foo-tool-1.0.jar",
+        "commons-lang/commons-lang/2.1/commons-lang-2.1.jar",
+        "commons-lang\\commons-lang/2.1\\commons-lang-2.1.jar",
+        "test/maven-arch/test-arch/2.0.3-SNAPSHOT/test-arch-2.0.3-SNAPSHOT.pom",
+        "com/company/department/com.company.department/0.2/com.company.department-0.2.pom",
+        "com/foo/lib/foo-lib/2.1-alpha-1/foo-lib-2.1-alpha-1-sources.jar",
+        "org/apache/archiva/test/redonkulous/3.1-beta-1-SNAPSHOT/redonkulous-3.1-beta-1-20050831.101112-42.jar",
+        "a/group/id/artifact-id/1.0-abc-1.1-SNAPSHOT/artifact-id-1.0-abc-1.1-20080221.062205-9.pom",
+        "org/apache/ws/commons/axiom/axiom/SNAPSHOT/axiom-20070912.093446-2.pom",
+        "a/group/id/artifact-id/1.0-SNAPSHOT/artifact-id-1.0-20070219.171202-34-test-sources.jar",
+        "maven/maven-test-plugin/1.8.2/maven-test-plugin-1.8.2.pom",
+        "maven/maven-test-plugin/1.8.2/maven-test-plugin-1.8.2.jar",
+        "org/codehaus/mojo/cobertura-maven-plugin/2.1/cobertura-maven-plugin-2.1.jar",
+        // separators and empty directories
+        "/org/apache/archiva/archiva-common/2.0/archiva-common-2.0.jar",
+        "org/apache/archiva/archiva-common/2.0/archiva-common-2.0.jar/",
+        "org//archiva-common/2.0/archiva-common-2.0.jar",
+        "org/archiva-common//archiva-common-.jar",
+        "org/archiva-common//archiva-common-",
+        "///",
+        "a/b/c",
+        // snapshots
+        "org/example/lib/SNAPSHOT/lib-SNAPSHOT.jar",
+        "org/example/lib/1.0SNAPSHOT/lib-1.0SNAPSHOT.jar",
+        "org/example/lib/1.0SNAPSHOT/lib-1.020200101.101010-1.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-2.0-20200101.101010-1.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101x101010-1.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101.101010-.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101.101010-1",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101.10101-1.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-2020010.101010-1.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101.101010-99999999999.jar",
+        "org/example/lib/1.0-SNAPSHOT/lib-1.0-20200101.101010-12abc.jar",
+        "org/example/lib/1.0.0.0.0-SNAPSHOT/lib-1.jar",
+        "org/example/lib/1.0-20200101.101010-1/lib-1.0-20200101.101010-1.jar",
+        "org/example/lib/20200101.101010-1/lib-20200101.101010-1.jar",
+        "org/example/lib/-20200101.101010-1/lib--20200101.101010-1.jar",
+        // classifiers and extensions
+        "org/example/lib/1.0/lib-1.0",
+        "org/example/lib/1.0/lib-1.0-",
+        "org/example/lib/1.0/lib-1.0.",
+        "org/example/lib/1.0/lib-1.0-.jar",
+        "org/example/lib/1.0/lib-1.0-client.jar",
+        "org/example/lib/1.0/lib-1.0-javadoc.jar",
+        "org/example/lib/1.0/lib-1.0-tests.jar",
+        "org/example/lib/1.0/lib-1.0-sources.zip",
+        "org/example/lib/1.0/lib-1.0-jdk15",
+        "org/example/lib/1.0/lib-1.0_1.jar",
+        "org/example/lib/1.0/lib.jar",
+        "org/example/lib/1.0/lib-1.0.jar.sha1",
+        "org/example/maven-plugin/1.0/maven-plugin-1.0.jar",
+        "org/example/maven--plugin/1.0/maven--plugin-1.0.jar",
+        "org/example/-maven-plugin/1.0/-maven-plugin-1.0.jar",
+        "org/example/maven-foo-plugin/1.0/maven-foo-plugin-1.0-sources.jar",
+        "org/example/maven-foo-plugin/1.0/maven-foo-plugin-1.0.pom" );
+
+    private static final String[] GROUPS = { "org", "org/apache/archiva", "commons-io" };
+
+    private static final String[] ARTIFACTS = { "lib", "archiva-common", "maven-clean-plugin", "foo-maven-plugin" };
+
+    private static final String[] VERSIONS = { "1.0", "2.1-alpha-1", "1.0-SNAPSHOT", "3.0-beta-2-SNAPSHOT" };
+
+    private static final String[] FILE_VERSIONS =
+        { "1.0", "2.1-alpha-1", "1.0-SNAPSHOT", "1.0-20200918.125045-3", "3.0-beta-2-20200101.000000-12" };
+
+    private static final String[] SUFFIXES =
+        { ".jar", ".pom", ".tar.gz", "-sources.jar", "-tests.jar", "-client.jar", "-bin.tar.gz", "-jdk15",
+            ".jar.md5", "" };
+
+    private final Maven2RepositoryPathTranslator pathTranslator = new Maven2RepositoryPathTranslator(
+        Collections.<ArtifactMappingProvider>singletonList( new DefaultArtifactMappingProvider( ) ) );
+
+    @Test
+    public void testSameResultsAsPathTranslator( )
+    {
+        for ( String path : PATHS )
+        {
+            assertSameResult( path );
+        }
+    }
+
+    @Test
+    public void testSameResultsAsPathTranslatorForGeneratedPaths( )
+    {
+        List<String> paths = new ArrayList<>( );
+        for ( String group : GROUPS )
+        {
+            for ( String artifact : ARTIFACTS )
+            {
+                for ( String version : VERSIONS )
+                {
+                    for ( String fileVersion : FILE_VERSIONS )
+                    {
+                        for ( String suffix : SUFFIXES )
+                        {
+                            paths.add( group + "/" + artifact + "/" + version + "/" + artifact + "-" + fileVersion
+                                           + suffix );
+                        }
+                    }
+                }
+            }
+        }
+        for ( String path : paths )
+        {
+            assertSameResult( path );
+            assertSameResult( path.replace( '/', '\\' ) );
+        }
+    }
+
+    @Test
+    public void testErrorMessage( )
+    {
+        String path = "org/example/lib/1.0/lib-2.0.jar";
+        try
+        {
+            MavenPathTokenizer.tokenize( path );
+            fail( "Should have failed due to a version mismatch" );
+        }
+        catch ( LayoutException e )
+        {
+            assertEquals( getLegacyError( path ), e.getMessage( ) );
+        }
+    }
+
+    private void assertSameResult( String path )
+    {
+        String expected = getLegacyResult( path );
+        String actual;
+        try
+        {
+            MavenPathTokenizer tokens = MavenPathTokenizer.tokenize( path );
+            actual = tokens.getNamespace( ) + ":" + tokens.getProjectId( ) + ":" + tokens.getProjectVersion( ) + ":"
+                + tokens.getVersion( ) + ":" + tokens.getClassifier( ) + ":" + tokens.getType( );
+        }
+        catch ( LayoutException e )
+        {
+            actual = null;
+        }
+        assertEquals( "Result of " + path, expected, actual );
+    }
+
+    /**
+     * Returns the coordinates returned by the path translator or <code>null</code>, if the path is rejected.
+     */
+    private String getLegacyResult( String path )
+    {
+        try
+        {
+            ArtifactMetadata metadata = pathTranslator.getArtifactForPath( null, path );
+            MavenArtifactFacet facet = (MavenArtifactFacet) metadata.getFacet( MavenArtifactFacet.FACET_ID );
+            return metadata.getNamespace( ) + ":" + metadata.getProject( ) + ":" + metadata.getProjectVersion( ) + ":"
+                + metadata.getVersion( ) + ":" + facet.getClassifier( ) + ":" + facet.getType( );
+        }
+        catch ( RuntimeException e )
+        {
+            // the translator fails with an index exception on some invalid snapshot paths
+            return null;
+        }
+    }
+
+    private String getLegacyError( String path )
+    {
+        try
+        {
+            pathTranslator.getArtifactForPath( null, path );
+            return null;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return e.getMessage( );
+        }
+    }
+}
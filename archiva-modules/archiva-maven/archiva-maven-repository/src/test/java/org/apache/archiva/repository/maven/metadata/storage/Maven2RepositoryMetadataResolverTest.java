@@ -228,6 +228,21 @@ public void testGetProjectVersionMetadata()
         assertEquals( "http://www.apache.org/images/asf_logo_wide.gif", metadata.getProperties().get("organization.logo") );
     }
 
+    @Test
+    public void testCachedModelIsNotSharedWithTheMetadata()
+        throws Exception
+    {
+        ReadMetadataRequest request = new ReadMetadataRequest( TEST_REPO_ID, "org.apache.archiva", "archiva-common", "1.2.1" );
+        ProjectVersionMetadata first = storage.readProjectVersionMetadata( request );
+        first.getProperties().put( "organization.logo", "changed" );
+        first.getProperties().put( "added", "value" );
+
+        ProjectVersionMetadata second = storage.readProjectVersionMetadata( request );
+        assertNotSame( first.getProperties(), second.getProperties() );
+        assertEquals( 8, second.getProperties().size() );
+        assertEquals( "http://www.apache.org/images/asf_logo_wide.gif", second.getProperties().get( "organization.logo" ) );
+    }
+
     @Test
     public void testGetArtifactMetadata()
         throws Exception
@@ -0,0 +1,149 @@
+package org.apache.archiva.repository.maven.metadata.storage;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.ModelCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class ProjectModelCacheTest
+    extends TestCase
+{
+    private static final List<String> REPOSITORIES = Arrays.asList( "internal", "central" );
+
+    private Path baseDir;
+
+    private final ProjectModelCache cache = new ProjectModelCache( 1024 );
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        baseDir = Files.createTempDirectory( "model-cache" );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteQuietly( baseDir.toFile() );
+        super.tearDown();
+    }
+
+    private Path createPom( String name, int size )
+        throws Exception
+    {
+        Path pom = baseDir.resolve( name + ".pom" );
+        Files.write( pom, new byte[size] );
+        return pom;
+    }
+
+    @Test
+    public void testEffectiveModelIsDroppedIfParentChanges()
+        throws Exception
+    {
+        Path pom = createPom( "child", 100 );
+        Path parent = createPom( "parent", 100 );
+        Model model = new Model();
+        cache.putEffectiveModel( REPOSITORIES, "org.example", "child", "1.0", model, Arrays.asList( pom, parent ) );
+
+        assertSame( model, cache.getEffectiveModel( REPOSITORIES, "org.example", "child", "1.0" ) );
+        assertNull( cache.getEffectiveModel( Collections.singletonList( "internal" ), "org.example", "child", "1.0" ) );
+
+        Files.setLastModifiedTime( parent, FileTime.fromMillis( System.currentTimeMillis() + 60000 ) );
+        assertNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "child", "1.0" ) );
+        assertEquals( 0, cache.getSize() );
+        assertEquals( 0, cache.getWeight() );
+    }
+
+    @Test
+    public void testRawModelsAreTrackedByTheirLocalFile()
+        throws Exception
+    {
+        Path parent = createPom( "parent", 100 );
+        ModelCache modelCache = cache.getModelCache( REPOSITORIES, ( groupId, artifactId, version ) -> parent );
+        Object data = new Object();
+        modelCache.put( "org.example", "parent", "1.0", "raw", data );
+        modelCache.put( "org.example", "parent", "1.0-SNAPSHOT", "raw", data );
+
+        assertSame( data, modelCache.get( "org.example", "parent", "1.0", "raw" ) );
+        assertNull( modelCache.get( "org.example", "parent", "1.0", "import" ) );
+        assertNull( modelCache.get( "org.example", "parent", "1.0-SNAPSHOT", "raw" ) );
+
+        Files.delete( parent );
+        assertNull( modelCache.get( "org.example", "parent", "1.0", "raw" ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedModelsAreEvicted()
+        throws Exception
+    {
+        Path first = createPom( "first", 400 );
+        Path second = createPom( "second", 400 );
+        Path third = createPom( "third", 400 );
+        cache.putEffectiveModel( REPOSITORIES, "org.example", "first", "1.0", new Model(),
+                                 Collections.singletonList( first ) );
+        cache.putEffectiveModel( REPOSITORIES, "org.example", "second", "1.0", new Model(),
+                                 Collections.singletonList( second ) );
+        assertNotNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "first", "1.0" ) );
+        cache.putEffectiveModel( REPOSITORIES, "org.example", "third", "1.0", new Model(),
+                                 Collections.singletonList( third ) );
+
+        assertNotNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "first", "1.0" ) );
+        assertNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "second", "1.0" ) );
+        assertNotNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "third", "1.0" ) );
+        assertEquals( 800, cache.getWeight() );
+        assertEquals( 1, cache.getEvictionCount() );
+    }
+
+    @Test
+    public void testInvalidateRemovesModelsOfTheRepository()
+        throws Exception
+    {
+        Path pom = createPom( "child", 100 );
+        cache.putEffectiveModel( REPOSITORIES, "org.example", "child", "1.0", new Model(),
+                                 Collections.singletonList( pom ) );
+        cache.putEffectiveModel( Collections.singletonList( "internal" ), "org.example", "child", "1.0", new Model(),
+                                 Collections.singletonList( pom ) );
+
+        cache.invalidate( "central" );
+
+        assertNull( cache.getEffectiveModel( REPOSITORIES, "org.example", "child", "1.0" ) );
+        assertNotNull(
+            cache.getEffectiveModel( Collections.singletonList( "internal" ), "org.example", "child", "1.0" ) );
+        assertEquals( 1, cache.getSize() );
+    }
+}
@@ -26,6 +26,9 @@
 import org.apache.archiva.components.taskqueue.execution.TaskExecutionException;
 import org.apache.archiva.components.taskqueue.execution.TaskExecutor;
 import org.apache.archiva.repository.ManagedRepository;
+import org.apache.archiva.repository.RepositoryRegistry;
+import org.apache.archiva.repository.event.LifecycleEvent;
+import org.apache.archiva.repository.event.RepositoryRegistryEvent;
 import org.apache.archiva.repository.features.IndexCreationFeature;
 import org.apache.archiva.scheduler.indexing.ArtifactIndexingTask;
 import org.apache.maven.index.ArtifactContext;
@@ -49,6 +52,8 @@
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -57,6 +62,7 @@
  * ArchivaIndexingTaskExecutor Executes all indexing tasks. Adding, updating and removing artifacts from the index are
  * all performed by this executor. Add and update artifact in index tasks are added in the indexing task queue by the
  * NexusIndexerConsumer while remove artifact from index tasks are added by the LuceneCleanupRemoveIndexedConsumer.
+ * The changes are committed in batches by the {@link IndexCommitScheduler}.
  */
 @Service( "taskExecutor#indexing" )
 public class ArchivaIndexingTaskExecutor
@@ -79,6 +85,29 @@
     @Inject
     IndexerEngine indexerEngine;
 
+    @Inject
+    RepositoryRegistry repositoryRegistry;
+
+    private final IndexCommitScheduler commitScheduler = new IndexCommitScheduler( this::packIndex );
+
+    @PostConstruct
+    public void initialize( )
+    {
+        // the indexing context of a repository is closed or replaced, if the repository is updated or removed
+        repositoryRegistry.registerEventHandler( LifecycleEvent.UNREGISTERED,
+            event -> commitScheduler.remove( event.getRepository( ).getId( ) ) );
+        repositoryRegistry.registerEventHandler( LifecycleEvent.UPDATED,
+            event -> commitScheduler.remove( event.getRepository( ).getId( ) ) );
+        repositoryRegistry.registerEventHandler( RepositoryRegistryEvent.RELOADED,
+            event -> commitScheduler.removeAll( ) );
+    }
+
+    @PreDestroy
+    public void shutdown( )
+    {
+        commitScheduler.shutdown( );
+    }
+
     /**
      * depending on current {@link Task} you have.
      * If {@link org.apache.archiva.scheduler.indexing.ArtifactIndexingTask.Action#FINISH} &amp;&amp; isExecuteOnEntireRepo:
@@ -111,6 +140,7 @@ public void executeTask( Task task )
             long start = System.currentTimeMillis( );
             try
             {
+                commitScheduler.flush( context );
                 context.updateTimestamp( );
                 DefaultScannerListener listener = new DefaultScannerListener( context, indexerEngine, true, null );
                 ScanningRequest request = new ScanningRequest( context, listener );
@@ -216,21 +246,20 @@ public void executeTask( Task task )
                                 // TODO check if update exists !!
                                 indexerEngine.update( context, ac );
                             }
-
-                            context.updateTimestamp( );
-                            context.commit( );
-
-
                         }
                         else
                         {
                             log.debug( "Removing artifact '{}' from index..", ac.getArtifactInfo( ) );
                             indexerEngine.remove( context, ac );
                         }
+                        // The changes are committed in batches. If this is not a repo scan request, there is no
+                        // finish task, so the packed index is updated after the batch.
+                        commitScheduler.changed( repository, context, !indexingTask.isExecuteOnEntireRepo( ) );
                     }
                 }
-                // close the context if not a repo scan request
-                if ( !indexingTask.isExecuteOnEntireRepo( ) )
+                // pack the index now, if a finish task is sent for a single resource
+                if ( !indexingTask.isExecuteOnEntireRepo( )
+                    && ArtifactIndexingTask.Action.FINISH.equals( indexingTask.getAction( ) ) )
                 {
                     log.debug( "Finishing indexing task on resource file : {}", indexingTask.getResourceFile( ) != null
                         ? indexingTask.getResourceFile( )
@@ -255,42 +284,47 @@ private void finishIndexingTask( ArtifactIndexingTask indexingTask, ManagedRepos
     {
         try
         {
-
             log.debug( "Finishing indexing" );
-            context.optimize( );
+            commitScheduler.pack( repository, context );
+        }
+        catch ( IOException e )
+        {
+            log.error( "Error occurred while executing indexing task '{}': {}", indexingTask, e.getMessage( ) );
+            throw new TaskExecutionException( "Error occurred while executing indexing task '" + indexingTask + "'",
+                e );
+        }
+    }
 
-            if ( repository.supportsFeature( IndexCreationFeature.class ) )
+    private void packIndex( ManagedRepository repository, IndexingContext context )
+        throws IOException
+    {
+        context.optimize( );
+
+        if ( repository.supportsFeature( IndexCreationFeature.class ) )
+        {
+            IndexCreationFeature icf = repository.getFeature( IndexCreationFeature.class ).get( );
+            if ( !icf.isSkipPackedIndexCreation( ) && icf.getLocalPackedIndexPath( ) != null && icf.getLocalIndexPath().getFilePath()!=null )
             {
-                IndexCreationFeature icf = repository.getFeature( IndexCreationFeature.class ).get( );
-                if ( !icf.isSkipPackedIndexCreation( ) && icf.getLocalPackedIndexPath( ) != null && icf.getLocalIndexPath().getFilePath()!=null )
-                {
 
-                    log.debug( "Creating packed index from {} on {}", context.getIndexDirectoryFile( ), icf.getLocalPackedIndexPath( ) );
-                    IndexPackingRequest request = new IndexPackingRequest( context, //
-                        context.acquireIndexSearcher( ).getIndexReader( ),
-                        //
-                        icf.getLocalPackedIndexPath( ).getFilePath().toFile( ) );
+                log.debug( "Creating packed index from {} on {}", context.getIndexDirectoryFile( ), icf.getLocalPackedIndexPath( ) );
+                IndexPackingRequest request = new IndexPackingRequest( context, //
+                    context.acquireIndexSearcher( ).getIndexReader( ),
+                    //
+                    icf.getLocalPackedIndexPath( ).getFilePath().toFile( ) );
 
-                    indexPacker.packIndex( request );
-                    context.updateTimestamp( true );
+                indexPacker.packIndex( request );
+                context.updateTimestamp( true );
 
-                    log.debug( "Index file packed at '{}'.", icf.getLocalPackedIndexPath( ) );
-                }
-                else
-                {
-                    log.debug( "skip packed index creation" );
-                }
+                log.debug( "Index file packed at '{}'.", icf.getLocalPackedIndexPath( ) );
             }
             else
             {
                 log.debug( "skip packed index creation" );
             }
         }
-        catch ( IOException e )
+        else
         {
-            log.error( "Error occurred while executing indexing task '{}': {}", indexingTask, e.getMessage( ) );
-            throw new TaskExecutionException( "Error occurred while executing indexing task '" + indexingTask + "'",
-                e );
+            log.debug( "skip packed index creation" );
         }
     }
 
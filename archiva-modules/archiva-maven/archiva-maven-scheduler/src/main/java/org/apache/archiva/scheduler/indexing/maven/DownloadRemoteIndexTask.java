@@ -31,8 +31,8 @@
 import org.apache.maven.index.updater.IndexUpdateRequest;
 import org.apache.maven.index.updater.IndexUpdateResult;
 import org.apache.maven.index.updater.IndexUpdater;
-import org.apache.maven.index.updater.ResourceFetcher;
 import org.apache.maven.index_shaded.lucene.index.IndexNotFoundException;
+import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
 import org.apache.maven.wagon.StreamWagon;
 import org.apache.maven.wagon.TransferFailedException;
@@ -51,10 +51,12 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -79,6 +81,15 @@
 
     private IndexUpdater indexUpdater;
 
+    private int maxParallelDownloads;
+
+    /**
+     * The connected wagons, that are not used by a download at the moment. A new wagon is only connected, if all
+     * wagons are in use, so there are not more wagons than downloads running at the same time.
+     */
+    private final Deque<Wagon> idleWagons = new ArrayDeque<>();
+
+    private boolean wagonsClosed = false;
 
     public DownloadRemoteIndexTask( DownloadRemoteIndexTaskRequest downloadRemoteIndexTaskRequest,
                                     List<String> runningRemoteDownloadIds )
@@ -89,6 +100,7 @@ public DownloadRemoteIndexTask( DownloadRemoteIndexTaskRequest downloadRemoteInd
         this.fullDownload = downloadRemoteIndexTaskRequest.isFullDownload();
         this.runningRemoteDownloadIds = runningRemoteDownloadIds;
         this.indexUpdater = downloadRemoteIndexTaskRequest.getIndexUpdater();
+        this.maxParallelDownloads = downloadRemoteIndexTaskRequest.getMaxParallelDownloads();
     }
 
     @Override
@@ -128,57 +140,10 @@ public void run()
             tempIndexDirectory = Paths.get(indexingContext.getIndexDirectoryFile().getParent(), ".tmpIndex" );
             Path indexCacheDirectory = Paths.get( indexingContext.getIndexDirectoryFile().getParent(), ".indexCache" );
             Files.createDirectories( indexCacheDirectory );
-            if ( Files.exists(tempIndexDirectory) )
-            {
-                org.apache.archiva.common.utils.FileUtils.deleteDirectory( tempIndexDirectory );
-            }
+            // the files of an interrupted update are kept in the temp directory and reused by the fetcher
             Files.createDirectories( tempIndexDirectory );
-            tempIndexDirectory.toFile().deleteOnExit();
             String baseIndexUrl = indexingContext.getIndexUpdateUrl();
 
-            String wagonProtocol = this.remoteRepository.getLocation().getScheme();
-
-            final StreamWagon wagon = (StreamWagon) wagonFactory.getWagon(
-                new WagonFactoryRequest( wagonProtocol, this.remoteRepository.getExtraHeaders() ).networkProxy(
-                    this.networkProxy )
-            );
-            // FIXME olamy having 2 config values
-            wagon.setReadTimeout( (int)rif.getDownloadTimeout().toMillis());
-            wagon.setTimeout( (int)remoteRepository.getTimeout().toMillis());
-
-            if ( wagon instanceof AbstractHttpClientWagon )
-            {
-                HttpConfiguration httpConfiguration = new HttpConfiguration();
-                HttpMethodConfiguration httpMethodConfiguration = new HttpMethodConfiguration();
-                httpMethodConfiguration.setUsePreemptive( true );
-                httpMethodConfiguration.setReadTimeout( (int)rif.getDownloadTimeout().toMillis() );
-                httpConfiguration.setGet( httpMethodConfiguration );
-                AbstractHttpClientWagon.class.cast( wagon ).setHttpConfiguration( httpConfiguration );
-            }
-
-            wagon.addTransferListener( new DownloadListener() );
-            ProxyInfo proxyInfo = null;
-            if ( this.networkProxy != null )
-            {
-                proxyInfo = new ProxyInfo();
-                proxyInfo.setType( this.networkProxy.getProtocol() );
-                proxyInfo.setHost( this.networkProxy.getHost() );
-                proxyInfo.setPort( this.networkProxy.getPort() );
-                proxyInfo.setUserName( this.networkProxy.getUsername() );
-                proxyInfo.setPassword( new String(this.networkProxy.getPassword()) );
-            }
-            AuthenticationInfo authenticationInfo = null;
-            if ( this.remoteRepository.getLoginCredentials()!=null && this.remoteRepository.getLoginCredentials() instanceof PasswordCredentials )
-            {
-                PasswordCredentials creds = (PasswordCredentials) this.remoteRepository.getLoginCredentials();
-                authenticationInfo = new AuthenticationInfo();
-                authenticationInfo.setUserName( creds.getUsername());
-                authenticationInfo.setPassword( new String(creds.getPassword()) );
-            }
-            log.debug("Connection to {}, authInfo={}", this.remoteRepository.getId(), authenticationInfo);
-            wagon.connect( new Repository( this.remoteRepository.getId(), baseIndexUrl ), authenticationInfo,
-                           proxyInfo );
-
             Path indexDirectory = indexingContext.getIndexDirectoryFile().toPath();
             if ( !Files.exists(indexDirectory) )
             {
@@ -187,13 +152,24 @@ public void run()
             log.debug("Downloading index file to {}", indexDirectory);
             log.debug("Index cache dir {}", indexCacheDirectory);
 
-            ResourceFetcher resourceFetcher =
-                new WagonResourceFetcher( log, tempIndexDirectory, wagon, remoteRepository );
+            RemoteIndexFetcher resourceFetcher =
+                new RemoteIndexFetcher( this.remoteRepository.getId(), tempIndexDirectory,
+                                        ( name, destination ) -> download( rif, baseIndexUrl, name, destination ),
+                                        this.maxParallelDownloads );
             IndexUpdateRequest request = new IndexUpdateRequest( indexingContext, resourceFetcher );
             request.setForceFullUpdate( this.fullDownload );
             request.setLocalIndexCacheDir( indexCacheDirectory.toFile() );
 
-            IndexUpdateResult result = this.indexUpdater.fetchAndUpdateIndex(request);
+            IndexUpdateResult result;
+            try
+            {
+                result = this.indexUpdater.fetchAndUpdateIndex( request );
+            }
+            finally
+            {
+                resourceFetcher.shutdown();
+                closeWagons( baseIndexUrl );
+            }
             log.debug("Update result success: {}", result.isSuccessful());
             stopWatch.stop();
             log.info( "time update index from remote for repository {}: {}ms", this.remoteRepository.getId(),
@@ -204,6 +180,10 @@ public void run()
             //    new IndexPackingRequest( indexingContext, indexingContext.getIndexDirectoryFile() );
             //indexPacker.packIndex( indexPackingRequest );
             indexingContext.updateTimestamp( true );
+            if ( result.isSuccessful() )
+            {
+                deleteDirectoryQuiet( tempIndexDirectory );
+            }
 
         }
         catch ( Exception e )
@@ -213,12 +193,157 @@ public void run()
         }
         finally
         {
-            deleteDirectoryQuiet( tempIndexDirectory );
             this.runningRemoteDownloadIds.remove( this.remoteRepository.getId() );
         }
         log.info( "end download remote index for remote repository {}", this.remoteRepository.getId() );
     }
 
+    /**
+     * Downloads a single file of the remote index. The files are downloaded in parallel, each download borrows an idle
+     * wagon or connects a new one, if all wagons are in use.
+     */
+    private void download( RemoteIndexFeature rif, String baseIndexUrl, String name, Path destination )
+        throws IOException
+    {
+        Wagon wagon;
+        try
+        {
+            wagon = borrowWagon( rif, baseIndexUrl );
+        }
+        catch ( Exception e )
+        {
+            throw new IOException( "Could not connect to the remote index of " + remoteRepository.getId() + ": "
+                                       + e.getMessage(), e );
+        }
+        boolean reusable = false;
+        try
+        {
+            wagon.get( addParameters( name, this.remoteRepository ), destination.toFile() );
+            reusable = true;
+        }
+        catch ( AuthorizationException | TransferFailedException e )
+        {
+            throw new IOException( e.getMessage(), e );
+        }
+        catch ( ResourceDoesNotExistException e )
+        {
+            // a missing file, e.g. a checksum, does not break the connection
+            reusable = true;
+            FileNotFoundException fnfe = new FileNotFoundException( e.getMessage() );
+            fnfe.initCause( e );
+            throw fnfe;
+        }
+        finally
+        {
+            releaseWagon( wagon, reusable, baseIndexUrl );
+        }
+    }
+
+    private Wagon borrowWagon( RemoteIndexFeature rif, String baseIndexUrl )
+        throws Exception
+    {
+        synchronized ( idleWagons )
+        {
+            Wagon wagon = idleWagons.poll();
+            if ( wagon != null )
+            {
+                return wagon;
+            }
+        }
+        return connectWagon( rif, baseIndexUrl );
+    }
+
+    private void releaseWagon( Wagon wagon, boolean reusable, String baseIndexUrl )
+    {
+        synchronized ( idleWagons )
+        {
+            if ( reusable && !wagonsClosed )
+            {
+                idleWagons.push( wagon );
+                return;
+            }
+        }
+        disconnectQuiet( wagon, baseIndexUrl );
+    }
+
+    /**
+     * Disconnects the idle wagons. The wagons of downloads, that are still running, are disconnected on release.
+     */
+    private void closeWagons( String baseIndexUrl )
+    {
+        List<Wagon> wagons;
+        synchronized ( idleWagons )
+        {
+            wagonsClosed = true;
+            wagons = new ArrayList<>( idleWagons );
+            idleWagons.clear();
+        }
+        for ( Wagon wagon : wagons )
+        {
+            disconnectQuiet( wagon, baseIndexUrl );
+        }
+    }
+
+    private void disconnectQuiet( Wagon wagon, String baseIndexUrl )
+    {
+        try
+        {
+            wagon.disconnect();
+        }
+        catch ( ConnectionException e )
+        {
+            log.warn( "skip error disconnect from {} : {}", baseIndexUrl, e.getMessage() );
+        }
+    }
+
+    private Wagon connectWagon( RemoteIndexFeature rif, String baseIndexUrl )
+        throws Exception
+    {
+        String wagonProtocol = this.remoteRepository.getLocation().getScheme();
+
+        final StreamWagon wagon = (StreamWagon) wagonFactory.getWagon(
+            new WagonFactoryRequest( wagonProtocol, this.remoteRepository.getExtraHeaders() ).networkProxy(
+                this.networkProxy )
+        );
+        // FIXME olamy having 2 config values
+        wagon.setReadTimeout( (int)rif.getDownloadTimeout().toMillis());
+        wagon.setTimeout( (int)remoteRepository.getTimeout().toMillis());
+
+        if ( wagon instanceof AbstractHttpClientWagon )
+        {
+            HttpConfiguration httpConfiguration = new HttpConfiguration();
+            HttpMethodConfiguration httpMethodConfiguration = new HttpMethodConfiguration();
+            httpMethodConfiguration.setUsePreemptive( true );
+            httpMethodConfiguration.setReadTimeout( (int)rif.getDownloadTimeout().toMillis() );
+            httpConfiguration.setGet( httpMethodConfiguration );
+            AbstractHttpClientWagon.class.cast( wagon ).setHttpConfiguration( httpConfiguration );
+        }
+
+        wagon.addTransferListener( new DownloadListener() );
+        ProxyInfo proxyInfo = null;
+        if ( this.networkProxy != null )
+        {
+            proxyInfo = new ProxyInfo();
+            proxyInfo.setType( this.networkProxy.getProtocol() );
+            proxyInfo.setHost( this.networkProxy.getHost() );
+            proxyInfo.setPort( this.networkProxy.getPort() );
+            proxyInfo.setUserName( this.networkProxy.getUsername() );
+            proxyInfo.setPassword( new String(this.networkProxy.getPassword()) );
+        }
+        AuthenticationInfo authenticationInfo = null;
+        if ( this.remoteRepository.getLoginCredentials()!=null && this.remoteRepository.getLoginCredentials() instanceof PasswordCredentials )
+        {
+            PasswordCredentials creds = (PasswordCredentials) this.remoteRepository.getLoginCredentials();
+            authenticationInfo = new AuthenticationInfo();
+            authenticationInfo.setUserName( creds.getUsername());
+            authenticationInfo.setPassword( new String(creds.getPassword()) );
+        }
+        log.debug("Connection to {}, authInfo={}", this.remoteRepository.getId(), authenticationInfo);
+        wagon.connect( new Repository( this.remoteRepository.getId(), baseIndexUrl ), authenticationInfo,
+                       proxyInfo );
+        return wagon;
+    }
+
     private void deleteDirectoryQuiet( Path f )
     {
         try
@@ -231,6 +356,29 @@ private void deleteDirectoryQuiet( Path f )
         }
     }
 
+    // FIXME remove crappy copy/paste
+    protected String addParameters( String path, RemoteRepository remoteRepository )
+    {
+        if ( remoteRepository.getExtraParameters().isEmpty() )
+        {
+            return path;
+        }
+
+        boolean question = false;
+
+        StringBuilder res = new StringBuilder( path == null ? "" : path );
+
+        for ( Map.Entry<String, String> entry : remoteRepository.getExtraParameters().entrySet() )
+        {
+            if ( !question )
+            {
+                res.append( '?' ).append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+            }
+        }
+
+        return res.toString();
+    }
+
 
     private static final class DownloadListener
         implements TransferListener
@@ -290,91 +438,5 @@ public void debug( String message )
         }
     }
 
-    private static class WagonResourceFetcher
-        implements ResourceFetcher
-    {
-
-        Logger log;
-
-        Path tempIndexDirectory;
-
-        Wagon wagon;
-
-        RemoteRepository remoteRepository;
-
-        private WagonResourceFetcher( Logger log, Path tempIndexDirectory, Wagon wagon,
-                                      RemoteRepository remoteRepository )
-        {
-            this.log = log;
-            this.tempIndexDirectory = tempIndexDirectory;
-            this.wagon = wagon;
-            this.remoteRepository = remoteRepository;
-        }
-
-        @Override
-        public void connect( String id, String url )
-            throws IOException
-        {
-            //no op  
-        }
-
-        @Override
-        public void disconnect()
-            throws IOException
-        {
-            // no op
-        }
-
-        @Override
-        public InputStream retrieve( String name )
-            throws IOException, FileNotFoundException
-        {
-            try
-            {
-                log.info( "index update retrieve file, name:{}", name );
-                Path file = tempIndexDirectory.resolve( name );
-                Files.deleteIfExists( file );
-                file.toFile().deleteOnExit();
-                wagon.get( addParameters( name, this.remoteRepository ), file.toFile() );
-                return Files.newInputStream( file );
-            }
-            catch ( AuthorizationException | TransferFailedException e )
-            {
-                throw new IOException( e.getMessage(), e );
-            }
-            catch ( ResourceDoesNotExistException e )
-            {
-                FileNotFoundException fnfe = new FileNotFoundException( e.getMessage() );
-                fnfe.initCause( e );
-                throw fnfe;
-            }
-        }
-
-        // FIXME remove crappy copy/paste
-        protected String addParameters( String path, RemoteRepository remoteRepository )
-        {
-            if ( remoteRepository.getExtraParameters().isEmpty() )
-            {
-                return path;
-            }
-
-            boolean question = false;
-
-            StringBuilder res = new StringBuilder( path == null ? "" : path );
-
-            for ( Map.Entry<String, String> entry : remoteRepository.getExtraParameters().entrySet() )
-            {
-                if ( !question )
-                {
-                    res.append( '?' ).append( entry.getKey() ).append( '=' ).append( entry.getValue() );
-                }
-            }
-
-            return res.toString();
-        }
-
-    }
-
 
 }
-
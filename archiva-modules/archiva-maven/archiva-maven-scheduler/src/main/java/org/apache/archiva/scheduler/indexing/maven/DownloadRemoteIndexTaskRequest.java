@@ -42,6 +42,8 @@
 
     private IndexPacker indexPacker;
 
+    private int maxParallelDownloads = 4;
+
     public DownloadRemoteIndexTaskRequest()
     {
         // no op
@@ -113,4 +115,19 @@ public DownloadRemoteIndexTaskRequest setIndexPacker( IndexPacker indexPacker )
         this.indexPacker = indexPacker;
         return this;
     }
+
+    /**
+     * @return the maximum number of index files, that are downloaded in parallel
+     * @since 3.0
+     */
+    public int getMaxParallelDownloads()
+    {
+        return maxParallelDownloads;
+    }
+
+    public DownloadRemoteIndexTaskRequest setMaxParallelDownloads( int maxParallelDownloads )
+    {
+        this.maxParallelDownloads = maxParallelDownloads;
+        return this;
+    }
 }
@@ -0,0 +1,413 @@
+package org.apache.archiva.scheduler.indexing.maven;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.repository.ManagedRepository;
+import org.apache.maven.index.context.IndexingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the changes of the indexing tasks and commits them in batches.
+ * <p>
+ * The changes of a context are committed, if {@link #maxBatchSize} changes are pending, or
+ * {@link #commitDelayMillis} after the first uncommitted change. Searches see the uncommitted changes, because
+ * the indexing context uses a near real time searcher, so only the durability of the last changes is delayed.
+ * </p>
+ * <p>
+ * Packing the index is debounced: the index is packed, if no change was committed for
+ * {@link #packDelayMillis}, but at latest {@link #maxPackDelayMillis} after the first change, that was not packed.
+ * </p>
+ * <p>
+ * The state of a context is dropped by {@link #remove(String)}, if its repository is updated or removed, so
+ * no scheduled commit or packing runs against a closed context.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class IndexCommitScheduler
+{
+    private static final Logger log = LoggerFactory.getLogger( IndexCommitScheduler.class );
+
+    /**
+     * Optimizes and packs the index of a repository.
+     */
+    @FunctionalInterface
+    public interface Packer
+    {
+        void pack( ManagedRepository repository, IndexingContext context )
+            throws IOException;
+    }
+
+    private final Map<String, PendingChanges> pendingChanges = new ConcurrentHashMap<>( );
+
+    private final Packer packer;
+
+    private int maxBatchSize = 100;
+
+    private long commitDelayMillis = 1000;
+
+    private long packDelayMillis = 30000;
+
+    private long maxPackDelayMillis = 300000;
+
+    private ScheduledExecutorService executor;
+
+    public IndexCommitScheduler( Packer packer )
+    {
+        this.packer = packer;
+    }
+
+    /**
+     * Registers a change of the index, that is not committed yet.
+     *
+     * @param repository the repository of the index
+     * @param context    the changed context
+     * @param pack       <code>true</code>, if the packed index should be updated after the commit
+     * @throws IOException if the batch is full and the commit failed
+     */
+    public void changed( ManagedRepository repository, IndexingContext context, boolean pack )
+        throws IOException
+    {
+        PendingChanges pending = getPendingChanges( repository, context );
+        boolean commitNow;
+        synchronized ( pending )
+        {
+            pending.changes++;
+            pending.pack |= pack;
+            commitNow = pending.changes >= maxBatchSize;
+            if ( !commitNow && pending.commit == null )
+            {
+                pending.commit = getExecutor( ).schedule( ( ) -> commitQuietly( pending ), commitDelayMillis,
+                    TimeUnit.MILLISECONDS );
+            }
+        }
+        if ( commitNow )
+        {
+            commit( pending );
+        }
+    }
+
+    /**
+     * Commits the pending changes of the context immediately.
+     */
+    public void flush( IndexingContext context )
+        throws IOException
+    {
+        PendingChanges pending = pendingChanges.get( context.getId( ) );
+        if ( pending != null && pending.context == context )
+        {
+            commit( pending );
+        }
+    }
+
+    /**
+     * Commits the pending changes and packs the index immediately. A scheduled packing of the index is cancelled.
+     */
+    public void pack( ManagedRepository repository, IndexingContext context )
+        throws IOException
+    {
+        PendingChanges pending = getPendingChanges( repository, context );
+        synchronized ( context )
+        {
+            commit( pending );
+            synchronized ( pending )
+            {
+                pending.packRequested = 0;
+                if ( pending.packing != null )
+                {
+                    pending.packing.cancel( false );
+                    pending.packing = null;
+                }
+            }
+            packer.pack( repository, context );
+        }
+    }
+
+    /**
+     * Commits all pending changes and stops the background tasks. Scheduled packing is not done.
+     */
+    public void shutdown( )
+    {
+        for ( PendingChanges pending : pendingChanges.values( ) )
+        {
+            commitQuietly( pending );
+        }
+        pendingChanges.clear( );
+        synchronized ( this )
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow( );
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the pending changes of the contexts of the given repository and cancels their scheduled commits and
+     * packing. The changes are not committed, because the context may be closed already. Closing the context
+     * commits them.
+     */
+    public void remove( String repositoryId )
+    {
+        for ( Map.Entry<String, PendingChanges> entry : pendingChanges.entrySet( ) )
+        {
+            PendingChanges pending = entry.getValue( );
+            if ( repositoryId.equals( pending.repository.getId( ) ) && pendingChanges.remove( entry.getKey( ),
+                pending ) )
+            {
+                discard( pending );
+            }
+        }
+    }
+
+    /**
+     * Drops the pending changes of all contexts.
+     */
+    public void removeAll( )
+    {
+        for ( Map.Entry<String, PendingChanges> entry : pendingChanges.entrySet( ) )
+        {
+            if ( pendingChanges.remove( entry.getKey( ), entry.getValue( ) ) )
+            {
+                discard( entry.getValue( ) );
+            }
+        }
+    }
+
+    private void discard( PendingChanges pending )
+    {
+        synchronized ( pending )
+        {
+            log.debug( "Dropping {} pending changes of index {}", pending.changes, pending.context.getId( ) );
+            pending.removed = true;
+            pending.changes = 0;
+            pending.pack = false;
+            pending.packRequested = 0;
+            if ( pending.commit != null )
+            {
+                pending.commit.cancel( false );
+                pending.commit = null;
+            }
+            if ( pending.packing != null )
+            {
+                pending.packing.cancel( false );
+                pending.packing = null;
+            }
+        }
+    }
+
+    private PendingChanges getPendingChanges( ManagedRepository repository, IndexingContext context )
+    {
+        PendingChanges pending = pendingChanges.compute( context.getId( ), ( id, current ) ->
+            // the context is replaced, if the repository is updated
+            current == null || current.context != context ? new PendingChanges( repository, context ) : current );
+        pending.repository = repository;
+        return pending;
+    }
+
+    private void commit( PendingChanges pending )
+        throws IOException
+    {
+        // The lock serializes commits and packing of the same context
+        synchronized ( pending.context )
+        {
+            int changes;
+            boolean pack;
+            synchronized ( pending )
+            {
+                if ( pending.removed )
+                {
+                    return;
+                }
+                changes = pending.changes;
+                pack = pending.pack;
+                pending.changes = 0;
+                pending.pack = false;
+                if ( pending.commit != null )
+                {
+                    pending.commit.cancel( false );
+                    pending.commit = null;
+                }
+            }
+            if ( changes > 0 && pending.context.getIndexDirectory( ) != null )
+            {
+                log.debug( "Committing {} changes of index {}", changes, pending.context.getId( ) );
+                pending.context.updateTimestamp( );
+                pending.context.commit( );
+            }
+            if ( pack )
+            {
+                schedulePacking( pending );
+            }
+        }
+    }
+
+    private void commitQuietly( PendingChanges pending )
+    {
+        try
+        {
+            commit( pending );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            log.error( "Could not commit the index {}: {}", pending.context.getId( ), e.getMessage( ), e );
+        }
+    }
+
+    private void schedulePacking( PendingChanges pending )
+    {
+        synchronized ( pending )
+        {
+            long now = System.currentTimeMillis( );
+            if ( pending.packRequested == 0 )
+            {
+                pending.packRequested = now;
+            }
+            long delay = Math.min( packDelayMillis,
+                Math.max( 0, pending.packRequested + maxPackDelayMillis - now ) );
+            if ( pending.packing != null )
+            {
+                pending.packing.cancel( false );
+            }
+            pending.packing = getExecutor( ).schedule( ( ) -> packQuietly( pending ), delay, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    private void packQuietly( PendingChanges pending )
+    {
+        synchronized ( pending.context )
+        {
+            synchronized ( pending )
+            {
+                if ( pending.removed )
+                {
+                    return;
+                }
+                pending.packing = null;
+                pending.packRequested = 0;
+            }
+            if ( pending.context.getIndexDirectory( ) == null )
+            {
+                return;
+            }
+            try
+            {
+                packer.pack( pending.repository, pending.context );
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                log.error( "Could not pack the index {}: {}", pending.context.getId( ), e.getMessage( ), e );
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService getExecutor( )
+    {
+        if ( executor == null )
+        {
+            ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor( 1, runnable -> {
+                Thread thread = new Thread( runnable, "archiva-index-commit" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            newExecutor.setRemoveOnCancelPolicy( true );
+            executor = newExecutor;
+        }
+        return executor;
+    }
+
+    public int getMaxBatchSize( )
+    {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize( int maxBatchSize )
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getCommitDelayMillis( )
+    {
+        return commitDelayMillis;
+    }
+
+    public void setCommitDelayMillis( long commitDelayMillis )
+    {
+        this.commitDelayMillis = commitDelayMillis;
+    }
+
+    public long getPackDelayMillis( )
+    {
+        return packDelayMillis;
+    }
+
+    public void setPackDelayMillis( long packDelayMillis )
+    {
+        this.packDelayMillis = packDelayMillis;
+    }
+
+    public long getMaxPackDelayMillis( )
+    {
+        return maxPackDelayMillis;
+    }
+
+    public void setMaxPackDelayMillis( long maxPackDelayMillis )
+    {
+        this.maxPackDelayMillis = maxPackDelayMillis;
+    }
+
+    private static final class PendingChanges
+    {
+        final IndexingContext context;
+
+        volatile ManagedRepository repository;
+
+        int changes;
+
+        boolean pack;
+
+        ScheduledFuture<?> commit;
+
+        long packRequested;
+
+        ScheduledFuture<?> packing;
+
+        /**
+         * <code>true</code>, if the context was closed or replaced. Nothing is committed or packed anymore.
+         */
+        boolean removed;
+
+        PendingChanges( ManagedRepository repository, IndexingContext context )
+        {
+            this.repository = repository;
+            this.context = context;
+        }
+    }
+}
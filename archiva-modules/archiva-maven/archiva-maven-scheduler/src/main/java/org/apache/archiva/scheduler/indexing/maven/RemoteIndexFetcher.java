@@ -0,0 +1,388 @@
+package org.apache.archiva.scheduler.indexing.maven;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.checksum.ChecksumUtil;
+import org.apache.archiva.checksum.ChecksummedFile;
+import org.apache.maven.index.updater.ResourceFetcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches the files of a remote index for the index updater.
+ * <p>
+ * The updater requests the incremental chunks one after the other and merges each chunk into the index, before it
+ * requests the next one. If a chunk is requested, the following chunks of the remote index properties are
+ * downloaded in parallel, so they are available, when the updater has merged the current chunk.
+ * </p>
+ * <p>
+ * Each file is verified with the SHA1 checksum of the remote repository, if it exists. The files are kept in the
+ * download directory and recorded in a progress file. If an update is interrupted, the next update reuses the
+ * recorded files, as long as the chain id of the remote index is the same. The full index file is reused only, if
+ * the timestamp of the remote index did not change.
+ * </p>
+ */
+class RemoteIndexFetcher
+    implements ResourceFetcher
+{
+    private static final Logger log = LoggerFactory.getLogger( RemoteIndexFetcher.class );
+
+    static final String INDEX_FILE_PREFIX = "nexus-maven-repository-index";
+
+    static final String REMOTE_PROPERTIES_FILE = INDEX_FILE_PREFIX + ".properties";
+
+    static final String PROGRESS_FILE = ".download-progress.properties";
+
+    private static final String CHAIN_ID = "nexus.index.chain-id";
+
+    private static final String TIMESTAMP = "nexus.index.timestamp";
+
+    private static final String INCREMENTAL_PREFIX = "nexus.index.incremental-";
+
+    private static final String FILE_PREFIX = "file.";
+
+    private static final Pattern CHUNK_PATTERN = Pattern.compile( Pattern.quote( INDEX_FILE_PREFIX ) + "\\.(\\d+)\\.gz" );
+
+    /**
+     * Downloads a single file of the remote index.
+     */
+    @FunctionalInterface
+    interface Transfer
+    {
+        /**
+         * @param name        the name of the file relative to the index url
+         * @param destination the local file
+         * @throws FileNotFoundException if the file does not exist in the remote repository
+         * @throws IOException           if the download fails
+         */
+        void download( String name, Path destination )
+            throws IOException;
+    }
+
+    private final String repositoryId;
+
+    private final Path downloadDirectory;
+
+    private final Transfer transfer;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, Future<Path>> downloads = new ConcurrentHashMap<>( );
+
+    private final Properties progress = new Properties( );
+
+    private boolean progressValidated = false;
+
+    private Properties remoteProperties;
+
+    /**
+     * @param repositoryId         the id of the remote repository
+     * @param downloadDirectory    the directory of the downloaded files, that is kept until the update is complete
+     * @param transfer             the download of a single file
+     * @param maxParallelDownloads the maximum number of parallel downloads
+     */
+    RemoteIndexFetcher( String repositoryId, Path downloadDirectory, Transfer transfer, int maxParallelDownloads )
+        throws IOException
+    {
+        this.repositoryId = repositoryId;
+        this.downloadDirectory = downloadDirectory;
+        this.transfer = transfer;
+        Files.createDirectories( downloadDirectory );
+        Path progressFile = downloadDirectory.resolve( PROGRESS_FILE );
+        if ( Files.exists( progressFile ) )
+        {
+            try ( InputStream is = Files.newInputStream( progressFile ) )
+            {
+                progress.load( is );
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger( );
+        this.executor = new ThreadPoolExecutor( maxParallelDownloads, maxParallelDownloads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>( ), r -> {
+            Thread thread = new Thread( r, "archiva-index-download-" + repositoryId + "-" + threadCount.getAndIncrement( ) );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        this.executor.allowCoreThreadTimeOut( true );
+    }
+
+    @Override
+    public void connect( String id, String url )
+    {
+        // no op
+    }
+
+    @Override
+    public void disconnect( )
+    {
+        // no op, the pool is stopped by shutdown()
+    }
+
+    @Override
+    public InputStream retrieve( String name )
+        throws IOException
+    {
+        log.info( "index update retrieve file, name:{}", name );
+        if ( REMOTE_PROPERTIES_FILE.equals( name ) )
+        {
+            // the properties are downloaded for each update, they decide, which of the recorded files are still valid
+            Path file = downloadDirectory.resolve( name );
+            Files.deleteIfExists( file );
+            transfer.download( name, file );
+            loadRemoteProperties( file );
+            return Files.newInputStream( file );
+        }
+
+        Future<Path> download = submit( name );
+        Matcher chunk = CHUNK_PATTERN.matcher( name );
+        if ( chunk.matches( ) )
+        {
+            prefetchFollowingChunks( Long.parseLong( chunk.group( 1 ) ) );
+        }
+        try
+        {
+            return Files.newInputStream( download.get( ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new InterruptedIOException( "Interrupted while downloading " + name );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause( ) instanceof IOException )
+            {
+                throw (IOException) e.getCause( );
+            }
+            throw new IOException( e.getCause( ).getMessage( ), e.getCause( ) );
+        }
+    }
+
+    /**
+     * Stops the downloads, that are not started yet. The files, that are downloaded completely, are kept.
+     */
+    void shutdown( )
+    {
+        executor.shutdownNow( );
+    }
+
+    private Future<Path> submit( String name )
+    {
+        return downloads.computeIfAbsent( name, n -> executor.submit( ( ) -> download( n ) ) );
+    }
+
+    private void prefetchFollowingChunks( long current )
+    {
+        Properties properties;
+        synchronized ( this )
+        {
+            properties = remoteProperties;
+        }
+        if ( properties == null )
+        {
+            return;
+        }
+        TreeSet<Long> chunks = new TreeSet<>( );
+        for ( String key : properties.stringPropertyNames( ) )
+        {
+            if ( key.startsWith( INCREMENTAL_PREFIX ) )
+            {
+                try
+                {
+                    chunks.add( Long.parseLong( properties.getProperty( key ).trim( ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    log.warn( "Bad incremental chunk {}={} in the index of {}", key, properties.getProperty( key ),
+                        repositoryId );
+                }
+            }
+        }
+        for ( Long chunk : chunks.tailSet( current, false ) )
+        {
+            submit( INDEX_FILE_PREFIX + "." + chunk + ".gz" );
+        }
+    }
+
+    private Path download( String name )
+        throws IOException
+    {
+        Path file = downloadDirectory.resolve( name );
+        if ( isRecorded( name ) && Files.exists( file ) )
+        {
+            log.info( "Reusing {} of the remote index of {} from a previous download", name, repositoryId );
+            return file;
+        }
+        boolean verified = false;
+        for ( int attempt = 1; ; attempt++ )
+        {
+            Path checksumFile = file.resolveSibling( name + ".sha1" );
+            Files.deleteIfExists( file );
+            Files.deleteIfExists( checksumFile );
+            transfer.download( name, file );
+            try
+            {
+                transfer.download( name + ".sha1", checksumFile );
+            }
+            catch ( FileNotFoundException e )
+            {
+                log.debug( "No checksum for {} of the remote index of {}", name, repositoryId );
+                break;
+            }
+            if ( isValidChecksum( file, checksumFile ) )
+            {
+                verified = true;
+                break;
+            }
+            if ( attempt > 1 )
+            {
+                throw new IOException( "Checksum mismatch of " + name + " in the remote index of " + repositoryId );
+            }
+            log.warn( "Checksum mismatch of {} in the remote index of {}, downloading it again", name, repositoryId );
+        }
+        record( name, verified );
+        return file;
+    }
+
+    private boolean isValidChecksum( Path file, Path checksumFile )
+        throws IOException
+    {
+        // the checksum files of the index contain only the value, that is not accepted by ChecksummedFile.isValidChecksum()
+        String expected = new ChecksummedFile( file ).parseChecksumFile( checksumFile, ChecksumAlgorithm.SHA1,
+            StandardCharsets.UTF_8 ).getChecksum( );
+        Checksum checksum = new Checksum( ChecksumAlgorithm.SHA1 );
+        ChecksumUtil.update( checksum, file );
+        try
+        {
+            return checksum.compare( expected );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            log.warn( "Bad checksum {} of {}: {}", expected, file, e.getMessage( ) );
+            return false;
+        }
+    }
+
+    private synchronized void loadRemoteProperties( Path file )
+        throws IOException
+    {
+        Properties properties = new Properties( );
+        try ( InputStream is = Files.newInputStream( file ) )
+        {
+            properties.load( is );
+        }
+        String chainId = properties.getProperty( CHAIN_ID );
+        String timestamp = properties.getProperty( TIMESTAMP );
+        if ( !Objects.equals( chainId, progress.getProperty( CHAIN_ID ) ) )
+        {
+            // the remote index was rebuilt, the chunks are not valid any more
+            discardRecorded( false );
+        }
+        else if ( !Objects.equals( timestamp, progress.getProperty( TIMESTAMP ) ) )
+        {
+            // only the incremental chunks are kept, the full index file is replaced on each publish
+            discardRecorded( true );
+        }
+        setOrRemove( CHAIN_ID, chainId );
+        setOrRemove( TIMESTAMP, timestamp );
+        storeProgress( );
+        remoteProperties = properties;
+        progressValidated = true;
+    }
+
+    private void discardRecorded( boolean keepChunks )
+        throws IOException
+    {
+        for ( String key : progress.stringPropertyNames( ) )
+        {
+            if ( key.startsWith( FILE_PREFIX ) )
+            {
+                String name = key.substring( FILE_PREFIX.length( ) );
+                if ( !keepChunks || !CHUNK_PATTERN.matcher( name ).matches( ) )
+                {
+                    progress.remove( key );
+                    Files.deleteIfExists( downloadDirectory.resolve( name ) );
+                    Files.deleteIfExists( downloadDirectory.resolve( name + ".sha1" ) );
+                }
+            }
+        }
+    }
+
+    private void setOrRemove( String key, String value )
+    {
+        if ( value == null )
+        {
+            progress.remove( key );
+        }
+        else
+        {
+            progress.setProperty( key, value );
+        }
+    }
+
+    private synchronized boolean isRecorded( String name )
+    {
+        // the recorded files are only valid, if they belong to the current remote index
+        return progressValidated && progress.containsKey( FILE_PREFIX + name );
+    }
+
+    private synchronized void record( String name, boolean verified )
+        throws IOException
+    {
+        progress.setProperty( FILE_PREFIX + name, verified ? "verified" : "unverified" );
+        storeProgress( );
+    }
+
+    private void storeProgress( )
+        throws IOException
+    {
+        Path progressFile = downloadDirectory.resolve( PROGRESS_FILE );
+        Path tmpFile = downloadDirectory.resolve( PROGRESS_FILE + ".tmp" );
+        try ( OutputStream os = Files.newOutputStream( tmpFile ) )
+        {
+            progress.store( os, "Download progress of the remote index of " + repositoryId );
+        }
+        Files.move( tmpFile, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+}
@@ -207,6 +207,39 @@ public void testUpdateArtifactInIndex()
         assertEquals( 1, topDocs.totalHits );
     }
 
+    @Test
+    public void testBatchedChangesAreSearchable()
+        throws Exception
+    {
+        Path basePath = repo.getAsset("").getFilePath();
+        Path artifactFile = basePath.resolve(
+                                      "org/apache/archiva/archiva-index-methods-jar-test/1.0/archiva-index-methods-jar-test-1.0.jar" );
+
+        // deploy requests, the commit is done in the background
+        ArtifactIndexingTask task =
+            new ArtifactIndexingTask( repo, artifactFile, ArtifactIndexingTask.Action.ADD,
+                                      repo.getIndexingContext(), false );
+        indexingExecutor.executeTask( task );
+        indexingExecutor.executeTask( task );
+
+        BooleanQuery.Builder qb = new BooleanQuery.Builder();
+        qb.add( indexer.constructQuery( MAVEN.GROUP_ID, new SourcedSearchExpression( "org.apache.archiva" ) ),
+               BooleanClause.Occur.MUST );
+        qb.add( indexer.constructQuery( MAVEN.ARTIFACT_ID,
+                                       new SourcedSearchExpression( "archiva-index-methods-jar-test" ) ),
+               BooleanClause.Occur.MUST );
+
+        FlatSearchResponse response = indexer.searchFlat( new FlatSearchRequest( qb.build(), getIndexingContext() ) );
+        assertEquals( 1, response.getTotalHitsCount() );
+
+        task = new ArtifactIndexingTask( repo, artifactFile, ArtifactIndexingTask.Action.DELETE,
+                                         repo.getIndexingContext(), false );
+        indexingExecutor.executeTask( task );
+
+        response = indexer.searchFlat( new FlatSearchRequest( qb.build(), getIndexingContext() ) );
+        assertEquals( 0, response.getTotalHitsCount() );
+    }
+
     @Test
     public void testRemoveArtifactFromIndex()
         throws Exception
@@ -0,0 +1,303 @@
+package org.apache.archiva.scheduler.indexing.maven;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.checksum.Checksum;
+import org.apache.archiva.checksum.ChecksumAlgorithm;
+import org.apache.archiva.common.utils.FileUtils;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class RemoteIndexFetcherTest
+{
+    private static final String CHUNK_1 = "nexus-maven-repository-index.1.gz";
+
+    private static final String CHUNK_2 = "nexus-maven-repository-index.2.gz";
+
+    private static final String CHUNK_3 = "nexus-maven-repository-index.3.gz";
+
+    private static final String FULL_INDEX = "nexus-maven-repository-index.gz";
+
+    private final Map<String, String> remoteFiles = new ConcurrentHashMap<>( );
+
+    private final Map<String, AtomicInteger> downloadCount = new ConcurrentHashMap<>( );
+
+    private final Map<String, CountDownLatch> blockedTransfers = new ConcurrentHashMap<>( );
+
+    private Path downloadDirectory;
+
+    @Before
+    public void initialize( )
+    {
+        downloadDirectory = Paths.get( "target/index-download/test-" + System.currentTimeMillis( ) );
+        setRemoteProperties( "chain-1", "20200101" );
+        remoteFiles.put( CHUNK_1, "chunk 1" );
+        remoteFiles.put( CHUNK_2, "chunk 2" );
+        remoteFiles.put( CHUNK_3, "chunk 3" );
+        remoteFiles.put( FULL_INDEX, "full index" );
+    }
+
+    @After
+    public void tearDown( )
+        throws IOException
+    {
+        FileUtils.deleteDirectory( downloadDirectory );
+    }
+
+    @Test
+    public void retrievePrefetchesFollowingChunks( )
+        throws Exception
+    {
+        CountDownLatch currentChunk = new CountDownLatch( 1 );
+        blockedTransfers.put( CHUNK_1, currentChunk );
+        ExecutorService updater = Executors.newSingleThreadExecutor( );
+        RemoteIndexFetcher fetcher = createFetcher( );
+        try
+        {
+            retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+            Future<String> current = updater.submit( ( ) -> retrieve( fetcher, CHUNK_1 ) );
+
+            // the following chunks are requested, while the transfer of the current chunk is still running
+            awaitDownload( CHUNK_2 );
+            awaitDownload( CHUNK_3 );
+            assertThat( current.isDone( ) ).isFalse( );
+
+            currentChunk.countDown( );
+            assertThat( current.get( 10, TimeUnit.SECONDS ) ).isEqualTo( "chunk 1" );
+            assertThat( retrieve( fetcher, CHUNK_2 ) ).isEqualTo( "chunk 2" );
+            assertThat( retrieve( fetcher, CHUNK_3 ) ).isEqualTo( "chunk 3" );
+        }
+        finally
+        {
+            currentChunk.countDown( );
+            updater.shutdownNow( );
+            fetcher.shutdown( );
+        }
+        assertThat( getDownloadCount( CHUNK_1 ) ).isEqualTo( 1 );
+        assertThat( getDownloadCount( CHUNK_2 ) ).isEqualTo( 1 );
+        assertThat( getDownloadCount( CHUNK_3 ) ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void interruptedUpdateIsResumed( )
+        throws Exception
+    {
+        RemoteIndexFetcher fetcher = createFetcher( );
+        retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+        retrieve( fetcher, CHUNK_3 );
+        retrieve( fetcher, FULL_INDEX );
+        fetcher.shutdown( );
+
+        fetcher = createFetcher( );
+        try
+        {
+            retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+            assertThat( retrieve( fetcher, CHUNK_3 ) ).isEqualTo( "chunk 3" );
+            assertThat( retrieve( fetcher, FULL_INDEX ) ).isEqualTo( "full index" );
+        }
+        finally
+        {
+            fetcher.shutdown( );
+        }
+        assertThat( getDownloadCount( CHUNK_3 ) ).isEqualTo( 1 );
+        assertThat( getDownloadCount( FULL_INDEX ) ).isEqualTo( 1 );
+        assertThat( getDownloadCount( RemoteIndexFetcher.REMOTE_PROPERTIES_FILE ) ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void recordedFilesAreDiscardedIfTheRemoteIndexChanged( )
+        throws Exception
+    {
+        RemoteIndexFetcher fetcher = createFetcher( );
+        retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+        retrieve( fetcher, CHUNK_3 );
+        retrieve( fetcher, FULL_INDEX );
+        fetcher.shutdown( );
+
+        // a new publish keeps the chunks, but replaces the full index
+        setRemoteProperties( "chain-1", "20200102" );
+        remoteFiles.put( FULL_INDEX, "new full index" );
+        fetcher = createFetcher( );
+        retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+        assertThat( retrieve( fetcher, CHUNK_3 ) ).isEqualTo( "chunk 3" );
+        assertThat( retrieve( fetcher, FULL_INDEX ) ).isEqualTo( "new full index" );
+        fetcher.shutdown( );
+        assertThat( getDownloadCount( CHUNK_3 ) ).isEqualTo( 1 );
+        assertThat( getDownloadCount( FULL_INDEX ) ).isEqualTo( 2 );
+
+        // a new chain replaces all chunks
+        setRemoteProperties( "chain-2", "20200103" );
+        remoteFiles.put( CHUNK_3, "new chunk 3" );
+        fetcher = createFetcher( );
+        try
+        {
+            retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+            assertThat( retrieve( fetcher, CHUNK_3 ) ).isEqualTo( "new chunk 3" );
+        }
+        finally
+        {
+            fetcher.shutdown( );
+        }
+        assertThat( getDownloadCount( CHUNK_3 ) ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void checksumIsVerified( )
+        throws Exception
+    {
+        remoteFiles.put( CHUNK_3 + ".sha1", sha1( "chunk 3" ) );
+        remoteFiles.put( FULL_INDEX + ".sha1", sha1( "another content" ) );
+        RemoteIndexFetcher fetcher = createFetcher( );
+        try
+        {
+            retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+            assertThat( retrieve( fetcher, CHUNK_3 ) ).isEqualTo( "chunk 3" );
+            try
+            {
+                retrieve( fetcher, FULL_INDEX );
+                fail( "The checksum of the full index does not match" );
+            }
+            catch ( IOException e )
+            {
+                assertThat( e.getMessage( ) ).contains( "Checksum mismatch" );
+            }
+        }
+        finally
+        {
+            fetcher.shutdown( );
+        }
+        // the mismatch is downloaded again once
+        assertThat( getDownloadCount( FULL_INDEX ) ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void missingFileIsReported( )
+        throws Exception
+    {
+        remoteFiles.remove( CHUNK_3 );
+        RemoteIndexFetcher fetcher = createFetcher( );
+        try
+        {
+            retrieve( fetcher, RemoteIndexFetcher.REMOTE_PROPERTIES_FILE );
+            retrieve( fetcher, CHUNK_3 );
+            fail( "The chunk does not exist" );
+        }
+        catch ( FileNotFoundException e )
+        {
+            // expected
+        }
+        finally
+        {
+            fetcher.shutdown( );
+        }
+    }
+
+    private RemoteIndexFetcher createFetcher( )
+        throws IOException
+    {
+        return new RemoteIndexFetcher( "test-repo", downloadDirectory, ( name, destination ) -> {
+            downloadCount.computeIfAbsent( name, n -> new AtomicInteger( ) ).incrementAndGet( );
+            CountDownLatch blocked = blockedTransfers.get( name );
+            if ( blocked != null )
+            {
+                try
+                {
+                    blocked.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                }
+            }
+            String content = remoteFiles.get( name );
+            if ( content == null )
+            {
+                throw new FileNotFoundException( name );
+            }
+            Files.write( destination, content.getBytes( StandardCharsets.UTF_8 ) );
+        }, 2 );
+    }
+
+    private void setRemoteProperties( String chainId, String timestamp )
+    {
+        remoteFiles.put( RemoteIndexFetcher.REMOTE_PROPERTIES_FILE,
+            "nexus.index.chain-id=" + chainId + "\nnexus.index.timestamp=" + timestamp
+                + "\nnexus.index.incremental-0=3\nnexus.index.incremental-1=2\nnexus.index.incremental-2=1\n" );
+    }
+
+    private int getDownloadCount( String name )
+    {
+        AtomicInteger count = downloadCount.get( name );
+        return count == null ? 0 : count.get( );
+    }
+
+    private void awaitDownload( String name )
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( 10 );
+        while ( getDownloadCount( name ) == 0 )
+        {
+            if ( System.currentTimeMillis( ) > deadline )
+            {
+                fail( name + " was not requested" );
+            }
+            Thread.sleep( 10 );
+        }
+    }
+
+    private static String retrieve( RemoteIndexFetcher fetcher, String name )
+        throws IOException
+    {
+        try ( InputStream is = fetcher.retrieve( name ) )
+        {
+            return new BufferedReader( new InputStreamReader( is, StandardCharsets.UTF_8 ) ).readLine( );
+        }
+    }
+
+    private static String sha1( String content )
+    {
+        byte[] bytes = content.getBytes( StandardCharsets.UTF_8 );
+        return new Checksum( ChecksumAlgorithm.SHA1 ).update( bytes, 0, bytes.length ).finish( ).getChecksum( );
+    }
+}
@@ -32,6 +32,11 @@
 
     private String checksum;
 
+    /**
+     * @since 3.0
+     */
+    private boolean firstMatchOnly;
+
     public ChecksumSearch()
     {
         // nope
@@ -63,12 +68,26 @@ public void setChecksum( String checksum )
         this.checksum = checksum;
     }
 
+    /**
+     * If <code>true</code>, the search stops at the first repository with a match and returns only its artifacts.
+     */
+    public boolean isFirstMatchOnly()
+    {
+        return firstMatchOnly;
+    }
+
+    public void setFirstMatchOnly( boolean firstMatchOnly )
+    {
+        this.firstMatchOnly = firstMatchOnly;
+    }
+
     @Override
     public String toString()
     {
         return "ChecksumSearch{" +
             "repositories=" + repositories +
             ", checksum='" + checksum + '\'' +
+            ", firstMatchOnly=" + firstMatchOnly +
             '}';
     }
 }
@@ -23,12 +23,14 @@
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 import org.apache.archiva.security.common.ArchivaRoleConstants;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.util.Date;
 import java.util.List;
 
@@ -61,4 +63,26 @@ List<RepositoryProblemFacet> getHealthReport( @PathParam( "repository" ) String
                                                          @PathParam( "rowCount" ) int rowCount )
         throws ArchivaRestServiceException;
 
+    /**
+     * Returns a page of the problems of the repository, or of all observable repositories for <code>all</code>, as
+     * JSON object with the fields <code>problems</code> and <code>nextCursor</code>. The problems are ordered by
+     * repository and name and are written while they are read, so large reports do not have to fit in memory.
+     * <p>
+     * The next page is requested by passing the <code>nextCursor</code> of the previous page as <code>cursor</code>.
+     * The cursor is <code>null</code> on the last page. The offset is applied after the cursor.
+     * </p>
+     *
+     * @since 3.0
+     */
+    @Path( "getHealthReportStream/{repository}" )
+    @GET
+    @Produces( { MediaType.APPLICATION_JSON } )
+    @RedbackAuthorization( permissions = ArchivaRoleConstants.OPERATION_MANAGE_CONFIGURATION )
+    Response getHealthReportStream( @PathParam( "repository" ) String repository,
+                                    @QueryParam( "groupId" ) String groupId,
+                                    @QueryParam( "cursor" ) String cursor,
+                                    @QueryParam( "offset" ) long offset,
+                                    @QueryParam( "limit" ) @DefaultValue( "1000" ) int limit )
+        throws ArchivaRestServiceException;
+
 }
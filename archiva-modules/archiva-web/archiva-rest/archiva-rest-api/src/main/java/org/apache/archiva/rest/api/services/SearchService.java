@@ -137,6 +137,8 @@ Response redirectToArtifactFile( @QueryParam( "r" ) String repositoryId, //
     /**
      * If searchRequest contains repositories, the search will be done only on those repositories.
      * <b>if no repositories, the search will be apply on all repositories the current user has karma</b>
+     * The repositories are searched in parallel. If firstMatchOnly is set, only the artifacts of the first repository
+     * with a match are returned.
      */
     @Path( "artifactsByChecksum" )
     @POST
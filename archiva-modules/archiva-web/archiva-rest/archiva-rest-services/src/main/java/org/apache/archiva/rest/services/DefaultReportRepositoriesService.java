@@ -18,6 +18,9 @@
  * under the License.
  */
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.archiva.metadata.QueryParameter;
 import org.apache.archiva.metadata.model.facets.RepositoryProblemFacet;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
@@ -30,10 +33,19 @@
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * DefaultReportRepositoriesService
@@ -49,9 +61,16 @@
 
     private static final String ALL_REPOSITORIES = "all";
 
+    private static final char CURSOR_SEPARATOR = ':';
+
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
     @Inject
     private RepositoryStatisticsManager repositoryStatisticsManager;
 
+    @Inject
+    private ObjectMapper objectMapper;
+
     @Override
     public List<RepositoryStatistics> getStatisticsReport( List<String> repositoriesId, int rowCount, Date startDate,
                                                            Date endDate )
@@ -145,56 +164,173 @@ private List<RepositoryStatistics> getUniqueRepositoryReport( String repositoryI
     public List<RepositoryProblemFacet> getHealthReport( String repository, String groupId, int rowCount )
         throws ArchivaRestServiceException
     {
-        RepositorySession repositorySession = null;
-        try
+        List<String> repositories = getReportRepositories( repository );
+        List<RepositoryProblemFacet> problemArtifacts = new ArrayList<>();
+        try ( RepositorySession repositorySession = repositorySessionFactory.createSession() )
         {
-            repositorySession = repositorySessionFactory.createSession();
+            readProblems( repositorySession, repositories, groupId, null, null, 0,
+                          rowCount > 0 ? rowCount : Integer.MAX_VALUE, problemArtifacts::add );
+            return problemArtifacts;
         }
         catch ( MetadataRepositoryException e )
         {
-            e.printStackTrace( );
+            throw new ArchivaRestServiceException( e.getMessage(), e );
         }
-        try
+    }
+
+    @Override
+    public Response getHealthReportStream( String repository, String groupId, String cursor, long offset, int limit )
+        throws ArchivaRestServiceException
+    {
+        // the repositories of the user are read before the response is written
+        List<String> repositories = getReportRepositories( repository );
+        String cursorRepository = null;
+        String cursorName = null;
+        if ( StringUtils.isNotEmpty( cursor ) )
         {
-            List<String> observableRepositories = getObservableRepos();
-            if ( !ALL_REPOSITORIES.equals( repository ) && !observableRepositories.contains( repository ) )
+            int separator = cursor.indexOf( CURSOR_SEPARATOR );
+            if ( separator <= 0 )
             {
-                throw new ArchivaRestServiceException(
-                    "${$.i18n.prop('report.repository.illegal-access', " + repository + ")}", "repositoryId",
-                    new IllegalAccessException() );
+                throw new ArchivaRestServiceException( "Invalid cursor " + cursor, null );
             }
+            cursorRepository = cursor.substring( 0, separator );
+            cursorName = cursor.substring( separator + 1 );
+        }
+        final String startRepository = cursorRepository;
+        final String startAfter = cursorName;
+        final int pageSize = limit > 0 ? limit : DEFAULT_PAGE_SIZE;
 
-            if ( !ALL_REPOSITORIES.equals( repository ) )
+        StreamingOutput output = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator( out );
+            generator.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+            try ( RepositorySession repositorySession = repositorySessionFactory.createSession() )
             {
-                observableRepositories = Collections.singletonList( repository );
+                generator.writeStartObject();
+                generator.writeArrayFieldStart( "problems" );
+                String nextCursor =
+                    readProblems( repositorySession, repositories, groupId, startRepository, startAfter, offset,
+                                  pageSize, problem -> {
+                            try
+                            {
+                                generator.writeObject( problem );
+                            }
+                            catch ( IOException e )
+                            {
+                                throw new UncheckedIOException( e );
+                            }
+                        } );
+                generator.writeEndArray();
+                generator.writeStringField( "nextCursor", nextCursor );
+                generator.writeEndObject();
             }
-
-            List<RepositoryProblemFacet> problemArtifacts = new ArrayList<>();
-            MetadataRepository metadataRepository = repositorySession.getRepository();
-            for ( String repoId : observableRepositories )
+            catch ( UncheckedIOException e )
             {
-                for ( String name : metadataRepository.getMetadataFacets(repositorySession , repoId, RepositoryProblemFacet.FACET_ID ) )
-                {
-                    RepositoryProblemFacet metadataFacet =
-                        (RepositoryProblemFacet) metadataRepository.getMetadataFacet(repositorySession ,
-                            repoId,
-                            RepositoryProblemFacet.FACET_ID, name );
-                    if ( StringUtils.isEmpty( groupId ) || groupId.equals( metadataFacet.getNamespace() ) )
-                    {
-                        problemArtifacts.add( metadataFacet );
-                    }
-                }
+                throw e.getCause();
             }
+            catch ( MetadataRepositoryException e )
+            {
+                log.error( "Could not read the problems of {}: {}", repository, e.getMessage(), e );
+                throw new WebApplicationException( e );
+            }
+            finally
+            {
+                generator.close();
+            }
+        };
+        return Response.ok( output, MediaType.APPLICATION_JSON_TYPE ).build();
+    }
 
-            return problemArtifacts;
+    private List<String> getReportRepositories( String repository )
+        throws ArchivaRestServiceException
+    {
+        List<String> observableRepositories = getObservableRepos();
+        if ( !ALL_REPOSITORIES.equals( repository ) && !observableRepositories.contains( repository ) )
+        {
+            throw new ArchivaRestServiceException(
+                "${$.i18n.prop('report.repository.illegal-access', " + repository + ")}", "repositoryId",
+                new IllegalAccessException() );
         }
-        catch ( MetadataRepositoryException e )
+
+        if ( !ALL_REPOSITORIES.equals( repository ) )
         {
-            throw new ArchivaRestServiceException( e.getMessage(), e );
+            return Collections.singletonList( repository );
         }
-        finally
+        // the cursor relies on the order of the repositories
+        List<String> repositories = new ArrayList<>( observableRepositories );
+        Collections.sort( repositories );
+        return repositories;
+    }
+
+    /**
+     * Reads the problems of the repositories in the given order. The namespace is filtered by the metadata
+     * repository, so only the matching problems are read.
+     *
+     * @param startRepository the repository of the cursor or <code>null</code> to start with the first repository
+     * @param startAfter      the name of the last problem of the previous page in the start repository
+     * @param offset          the number of problems to skip
+     * @param limit           the maximum number of problems
+     * @return the cursor of the last problem, if the limit is reached, otherwise <code>null</code>
+     */
+    private String readProblems( RepositorySession repositorySession, List<String> repositories, String groupId,
+                                 String startRepository, String startAfter, long offset, int limit,
+                                 Consumer<RepositoryProblemFacet> consumer )
+        throws MetadataRepositoryException
+    {
+        MetadataRepository metadataRepository = repositorySession.getRepository();
+        // the names of the problems start with the namespace
+        String namePrefix = StringUtils.isEmpty( groupId ) ? null : groupId + "/";
+        long skip = offset;
+        int count = 0;
+        String lastCursor = null;
+        for ( String repoId : repositories )
         {
-            repositorySession.close();
+            String after = null;
+            if ( startRepository != null )
+            {
+                int order = repoId.compareTo( startRepository );
+                if ( order < 0 )
+                {
+                    continue;
+                }
+                after = order == 0 ? startAfter : null;
+            }
+
+            QueryParameter queryParameter;
+            if ( repositories.size() == 1 )
+            {
+                queryParameter = new QueryParameter( skip, limit );
+                skip = 0;
+            }
+            else
+            {
+                // the number of problems per repository is unknown, so the offset is skipped here
+                queryParameter = new QueryParameter( 0, skip + limit - count );
+            }
+
+            try ( Stream<RepositoryProblemFacet> problems =
+                      metadataRepository.getMetadataFacetStream( repositorySession, repoId,
+                                                                 RepositoryProblemFacet.class, namePrefix, after,
+                                                                 queryParameter ) )
+            {
+                Iterator<RepositoryProblemFacet> it = problems.iterator();
+                while ( count < limit && it.hasNext() )
+                {
+                    RepositoryProblemFacet problem = it.next();
+                    if ( skip > 0 )
+                    {
+                        skip--;
+                        continue;
+                    }
+                    consumer.accept( problem );
+                    count++;
+                    lastCursor = repoId + CURSOR_SEPARATOR + problem.getName();
+                }
+            }
+            if ( count >= limit )
+            {
+                return lastCursor;
+            }
         }
+        return null;
     }
 }
@@ -28,9 +28,8 @@
 import org.apache.archiva.indexer.search.SearchResults;
 import org.apache.archiva.maven2.model.Artifact;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
-import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
-import org.apache.archiva.metadata.repository.RepositorySession;
+import org.apache.archiva.metadata.repository.MultiRepositoryQueryExecutor;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.rest.api.model.ChecksumSearch;
 import org.apache.archiva.rest.api.model.GroupIdList;
@@ -42,15 +41,17 @@
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.ws.rs.core.Response;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -65,12 +66,22 @@
 
     private static final String LATEST_KEYWORD = "LATEST";
 
+    /**
+     * The default number of the parallel queries of a checksum search. The queries of all searches share the
+     * threads, so it limits the load of the checksum searches on the metadata store.
+     */
+    private static final int DEFAULT_MAX_PARALLEL_QUERIES = 4;
+
     @Inject
     private RepositorySearch repositorySearch;
 
     @Inject
     private RepositorySessionFactory repositorySessionFactory;
 
+    private int maxParallelQueries = DEFAULT_MAX_PARALLEL_QUERIES;
+
+    private MultiRepositoryQueryExecutor checksumQueryExecutor;
+
     @Override
     public List<Artifact> quickSearch( String queryString )
         throws ArchivaRestServiceException
@@ -215,43 +226,62 @@ public List<Artifact> getArtifactByChecksum( ChecksumSearch checksumSearch )
             checksumSearch.setRepositories( getObservableRepos() );
         }
 
-        RepositorySession repositorySession = null;
-        try
-        {
-            repositorySession = repositorySessionFactory.createSession();
-        }
-        catch ( MetadataRepositoryException e )
-        {
-            e.printStackTrace( );
-        }
-
-        MetadataRepository metadataRepository = repositorySession.getRepository();
-
-        Set<Artifact> artifactSet = new HashSet<>();
-
         try
         {
-            for ( String repoId : checksumSearch.getRepositories() )
+            List<ArtifactMetadata> artifactMetadatas = getChecksumQueryExecutor().getArtifactsByChecksum(
+                checksumSearch.getRepositories(), checksumSearch.getChecksum(), checksumSearch.isFirstMatchOnly() );
+            Map<String, List<ArtifactMetadata>> repositoryArtifacts = new LinkedHashMap<>();
+            for ( ArtifactMetadata artifactMetadata : artifactMetadatas )
             {
-                Collection<ArtifactMetadata> artifactMetadatas =
-                    metadataRepository.getArtifactsByChecksum( repositorySession, repoId, checksumSearch.getChecksum() );
-                artifactSet.addAll( buildArtifacts( artifactMetadatas, repoId ) );
+                repositoryArtifacts.computeIfAbsent( artifactMetadata.getRepositoryId(),
+                                                     repoId -> new ArrayList<>() ).add( artifactMetadata );
+            }
+            Set<Artifact> artifactSet = new HashSet<>();
+            for ( Map.Entry<String, List<ArtifactMetadata>> entry : repositoryArtifacts.entrySet() )
+            {
+                artifactSet.addAll( buildArtifacts( entry.getValue(), entry.getKey() ) );
             }
-
             return new ArrayList<>( artifactSet );
-
         }
         catch ( MetadataRepositoryException e )
         {
             log.error( e.getMessage(), e );
             throw new ArchivaRestServiceException( e.getMessage(), e );
         }
-        finally
+    }
+
+    private synchronized MultiRepositoryQueryExecutor getChecksumQueryExecutor()
+    {
+        if ( checksumQueryExecutor == null )
+        {
+            checksumQueryExecutor = new MultiRepositoryQueryExecutor( repositorySessionFactory, maxParallelQueries );
+        }
+        return checksumQueryExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        if ( checksumQueryExecutor != null )
         {
-            repositorySession.closeQuietly();
+            checksumQueryExecutor.shutdown();
+            checksumQueryExecutor = null;
         }
+    }
 
+    /**
+     * Returns the maximum number of the repositories, that are searched in parallel by a checksum search.
+     */
+    public int getMaxParallelQueries()
+    {
+        return maxParallelQueries;
+    }
 
+    public synchronized void setMaxParallelQueries( int maxParallelQueries )
+    {
+        this.maxParallelQueries = maxParallelQueries;
+        // searches, that are running, finish on the previous executor, its threads time out, when they are idle
+        checksumQueryExecutor = null;
     }
 
     @Override
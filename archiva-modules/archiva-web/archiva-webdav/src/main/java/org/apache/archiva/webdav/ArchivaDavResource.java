@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.repository.LayoutException;
 import org.apache.archiva.repository.storage.RepositoryStorage;
@@ -27,9 +28,12 @@
 import org.apache.archiva.scheduler.ArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.scheduler.repository.model.RepositoryTask;
+import org.apache.archiva.webdav.util.FileTransfer;
+import org.apache.archiva.webdav.util.HttpRange;
 import org.apache.archiva.webdav.util.IndexWriter;
 import org.apache.archiva.webdav.util.MimeTypes;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.util.Text;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavResource;
@@ -60,13 +64,19 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -106,6 +116,12 @@
 
     private Logger log = LoggerFactory.getLogger( ArchivaDavResource.class );
 
+    private static final ChecksumAlgorithm[] ETAG_ALGORITHMS = { ChecksumAlgorithm.SHA256, ChecksumAlgorithm.SHA1 };
+
+    private static final int MAX_CHECKSUM_FILE_SIZE = 512;
+
+    private static final Pattern HEX_PATTERN = Pattern.compile( "[0-9a-fA-F]{32,128}" );
+
     private StorageAsset asset;
 
     public ArchivaDavResource( StorageAsset localResource, String logicalResource, RepositoryStorage repositoryStorage,
@@ -208,7 +224,11 @@ public void spool( OutputContext outputContext )
             outputContext.setContentType( mimeTypes.getMimeType( asset.getName() ) );
         }
 
-        if ( !isCollection() && outputContext.hasStream() )
+        if ( !isCollection() && outputContext.hasStream() && asset.isFileBased() )
+        {
+            repositoryStorage.consumeDataFromChannel( asset, channel -> {transferChannel(channel, outputContext.getOutputStream());}, true );
+        }
+        else if ( !isCollection() && outputContext.hasStream() )
         {
             repositoryStorage.consumeData( asset, is -> {copyStream(is, outputContext.getOutputStream());}, true );
         }
@@ -219,6 +239,100 @@ else if ( outputContext.hasStream() )
         }
     }
 
+    /**
+     * Returns the mime type of the file.
+     */
+    public String getContentType()
+    {
+        return mimeTypes.getMimeType( asset.getName() );
+    }
+
+    /**
+     * Returns true, if parts of the file can be sent by {@link #spoolRange(OutputStream, HttpRange)}.
+     */
+    public boolean isRangeSupported()
+    {
+        return exists() && !isCollection() && asset.isFileBased();
+    }
+
+    /**
+     * Writes the given byte range of the file to the output stream.
+     *
+     * @param os    the output stream
+     * @param range the range to write
+     * @throws IOException if the file could not be read
+     */
+    public void spoolRange( OutputStream os, HttpRange range )
+        throws IOException
+    {
+        repositoryStorage.consumeDataFromChannel( asset, channel -> {
+            try
+            {
+                if ( channel instanceof FileChannel )
+                {
+                    FileTransfer.transfer( (FileChannel) channel, os, range.getStart(), range.getLength() );
+                }
+                else
+                {
+                    InputStream is = Channels.newInputStream( channel );
+                    IOUtils.skipFully( is, range.getStart() );
+                    IOUtils.copyLarge( is, os, 0, range.getLength() );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Transfer failed "+e.getMessage(), e );
+            }
+        }, true );
+    }
+
+    /**
+     * Returns the entity tag of the file. A strong tag is built from the stored SHA256 or SHA1 checksum of the file,
+     * if the checksum file was written after the file itself. Otherwise the checksum may belong to a previous version
+     * of the file and a weak tag is built from the size and the modification time.
+     *
+     * @return the entity tag, or <code>null</code>, if the resource is a collection or does not exist
+     */
+    public String getETag()
+    {
+        if ( !exists() || isCollection() )
+        {
+            return null;
+        }
+        Instant modificationTime = asset.getModificationTime();
+        for ( ChecksumAlgorithm algorithm : ETAG_ALGORITHMS )
+        {
+            String checksum = readStoredChecksum( algorithm, modificationTime );
+            if ( checksum != null )
+            {
+                return "\"" + checksum + "\"";
+            }
+        }
+        return "W/\"" + Long.toHexString( asset.getSize() ) + "-" + Long.toHexString( modificationTime.toEpochMilli() ) + "\"";
+    }
+
+    private String readStoredChecksum( ChecksumAlgorithm algorithm, Instant modificationTime )
+    {
+        StorageAsset checksumAsset = asset.getStorage().getAsset( asset.getPath() + "." + algorithm.getDefaultExtension() );
+        if ( checksumAsset == null || !checksumAsset.exists()
+            || checksumAsset.getModificationTime().isBefore( modificationTime ) )
+        {
+            return null;
+        }
+        try ( InputStream is = checksumAsset.getReadStream() )
+        {
+            byte[] buffer = new byte[MAX_CHECKSUM_FILE_SIZE];
+            int n = IOUtils.read( is, buffer );
+            String checksum = StringUtils.substringBefore( new String( buffer, 0, n, StandardCharsets.US_ASCII ).trim(), " " ).trim();
+            return HEX_PATTERN.matcher( checksum ).matches() ? checksum.toLowerCase() : null;
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not read checksum file {}: {}", checksumAsset.getPath(), e.getMessage() );
+            return null;
+        }
+    }
+
     private void copyStream(InputStream is, OutputStream os) throws RuntimeException {
         try
         {
@@ -230,6 +344,22 @@ private void copyStream(InputStream is, OutputStream os) throws RuntimeException
         }
     }
 
+    private void transferChannel( ReadableByteChannel channel, OutputStream os ) throws RuntimeException {
+        if ( !( channel instanceof FileChannel ) )
+        {
+            copyStream( Channels.newInputStream( channel ), os );
+            return;
+        }
+        try
+        {
+            FileTransfer.transfer( (FileChannel) channel, os );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Transfer failed "+e.getMessage(), e );
+        }
+    }
+
     @Override
     public DavPropertyName[] getPropertyNames()
     {
@@ -688,6 +818,12 @@ protected DavPropertySet initProperties()
 
         properties.add( new DefaultDavProperty<>( DavPropertyName.GETCONTENTLENGTH, asset.getSize() ) );
 
+        String etag = getETag();
+        if ( etag != null )
+        {
+            properties.add( new DefaultDavProperty<>( DavPropertyName.GETETAG, etag ) );
+        }
+
         this.properties = properties;
 
         return properties;
@@ -22,15 +22,16 @@
 import org.apache.archiva.admin.model.managed.ManagedRepositoryAdmin;
 import org.apache.archiva.admin.model.remote.RemoteRepositoryAdmin;
 import org.apache.archiva.audit.Auditable;
+import org.apache.archiva.checksum.Checksum;
 import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.checksum.ChecksumUtil;
-import org.apache.archiva.checksum.StreamingChecksum;
 import org.apache.archiva.common.filelock.DefaultFileLockManager;
 import org.apache.archiva.common.filelock.FileLockManager;
 import org.apache.archiva.common.plexusbridge.PlexusSisuBridgeException;
 import org.apache.archiva.common.utils.PathUtil;
 import org.apache.archiva.common.utils.VersionUtil;
 import org.apache.archiva.configuration.ArchivaConfiguration;
+import org.apache.archiva.configuration.NetworkConfiguration;
 import org.apache.archiva.indexer.ArchivaIndexingContext;
 import org.apache.archiva.indexer.merger.IndexMerger;
 import org.apache.archiva.indexer.merger.IndexMergerException;
@@ -48,6 +49,7 @@
 import org.apache.archiva.policies.ProxyDownloadException;
 import org.apache.archiva.proxy.ProxyRegistry;
 import org.apache.archiva.proxy.model.RepositoryProxyHandler;
+import org.apache.archiva.proxy.model.StreamingDownload;
 import org.apache.archiva.redback.authentication.AuthenticationException;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authorization.AuthorizationException;
@@ -62,12 +64,14 @@
 import org.apache.archiva.repository.ManagedRepository;
 import org.apache.archiva.repository.ManagedRepositoryContent;
 import org.apache.archiva.repository.ReleaseScheme;
+import org.apache.archiva.repository.Repository;
 import org.apache.archiva.repository.RepositoryGroup;
 import org.apache.archiva.repository.RepositoryRegistry;
 import org.apache.archiva.repository.RepositoryRequestInfo;
 import org.apache.archiva.repository.storage.fs.FilesystemStorage;
 import org.apache.archiva.repository.storage.StorageAsset;
 import org.apache.archiva.metadata.audit.AuditListener;
+import org.apache.archiva.repository.event.LifecycleEvent;
 import org.apache.archiva.repository.features.IndexCreationFeature;
 import org.apache.archiva.repository.metadata.base.MetadataTools;
 import org.apache.archiva.repository.metadata.RepositoryMetadataException;
@@ -76,7 +80,6 @@
 import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
 import org.apache.archiva.security.ServletAuthenticator;
 import org.apache.archiva.webdav.util.MimeTypes;
-import org.apache.archiva.webdav.util.TemporaryGroupIndexSessionCleaner;
 import org.apache.archiva.webdav.util.WebdavMethodUtil;
 import org.apache.archiva.xml.XMLException;
 import org.apache.commons.io.FilenameUtils;
@@ -98,24 +101,31 @@
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -129,6 +139,13 @@
 
     private static final String HTTP_PUT_METHOD = "PUT";
 
+    private static final String HTTP_GET_METHOD = "GET";
+
+    /**
+     * Maximum number of downloads, that are streamed to the client at the same time
+     */
+    private static final int MAX_STREAMING_DOWNLOADS = 32;
+
     private Logger log = LoggerFactory.getLogger( ArchivaDavResourceFactory.class );
 
     @Inject
@@ -182,6 +199,12 @@
 
     private ApplicationContext applicationContext;
 
+    private ExecutorService streamingExecutor;
+
+    private final MergedMetadataCache mergedMetadataCache = new MergedMetadataCache();
+
+    private final MergedGroupIndexCache mergedGroupIndexCache =
+        new MergedGroupIndexCache( index -> indexMerger.cleanTemporaryGroupIndex( index ) );
 
     @Inject
     public ArchivaDavResourceFactory( ApplicationContext applicationContext, ArchivaConfiguration archivaConfiguration )
@@ -195,7 +218,7 @@ public ArchivaDavResourceFactory( ApplicationContext applicationContext, Archiva
     @PostConstruct
     public void initialize() throws IOException
     {
-
+        repositoryRegistry.registerEventHandler( LifecycleEvent.ANY, mergedMetadataCache );
     }
 
 
@@ -307,7 +330,16 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                 // for MRM-872 handle checksums of the merged metadata files
                 if ( repositoryRequestInfo.isSupportFile( requestedResource ) )
                 {
-                    String metadataChecksumPath = newPath + "." + StringUtils.substringAfterLast( requestedResource, "." );
+                    String checksumExtension = "." + StringUtils.substringAfterLast( requestedResource, "." );
+                    if ( resourcesInAbsolutePath != null && resourcesInAbsolutePath.size() > 1 )
+                    {
+                        // make sure, that the checksum belongs to the current merged metadata
+                        List<String> metadataFiles = resourcesInAbsolutePath.stream()
+                            .map( checksumFile -> StringUtils.removeEnd( checksumFile, checksumExtension ) )
+                            .collect( Collectors.toList() );
+                        getMergedMetadata( repoGroup, metadataFiles, newPath );
+                    }
+                    String metadataChecksumPath = newPath + checksumExtension;
                     StorageAsset metadataChecksum = repoGroup.getAsset( metadataChecksumPath );
                     if ( repoGroup.getAsset( metadataChecksumPath ).exists() )
                     {
@@ -333,32 +365,9 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                     if ( resourcesInAbsolutePath != null && resourcesInAbsolutePath.size() > 1 )
                     {
                         // merge the metadata of all repos under group
-                        ArchivaRepositoryMetadata mergedMetadata = new ArchivaRepositoryMetadata();
-                        for ( String resourceAbsPath : resourcesInAbsolutePath )
-                        {
-                            try
-                            {
-                                Path metadataFile = Paths.get( resourceAbsPath );
-                                FilesystemStorage storage = new FilesystemStorage( metadataFile.getParent( ), new DefaultFileLockManager( ) );
-                                ArchivaRepositoryMetadata repoMetadata = repositoryRegistry.getMetadataReader( repoGroup.getType( ) ).read( storage.getAsset( metadataFile.getFileName().toString() ) );
-                                mergedMetadata = RepositoryMetadataMerge.merge( mergedMetadata, repoMetadata );
-                            }
-                            catch ( RepositoryMetadataException r )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                        "Error occurred while merging metadata file." );
-                            }
-                            catch ( IOException e )
-                            {
-                                throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                    "Error occurred while merging metadata file." );
-                            }
-                        }
-
+                        StorageAsset resourceFile = getMergedMetadata( repoGroup, resourcesInAbsolutePath, newPath );
                         try
                         {
-                            StorageAsset resourceFile = writeMergedMetadataToFile( repoGroup, mergedMetadata, newPath );
-
                             LogicalResource logicalResource =
                                 new LogicalResource( getLogicalResource( archivaLocator, null, false ) );
 
@@ -368,16 +377,6 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
                                                         request.getDavSession(), archivaLocator, this, mimeTypes,
                                                         auditListeners, scheduler);
                         }
-                        catch ( RepositoryMetadataException r )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while writing metadata file." );
-                        }
-                        catch ( IOException ie )
-                        {
-                            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                                                    "Error occurred while generating checksum files." );
-                        }
                         catch ( LayoutException e )
                         {
                             log.error("Incompatible layout: {}", e.getMessage(), e);
@@ -591,7 +590,9 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
                     {
                         boolean previouslyExisted = repoAsset.exists();
 
-                        boolean fromProxy = fetchContentFromProxies( managedRepository, request, logicalResource );
+                        StreamingDownload streamingDownload = isStreamingDownload( request ) ? new StreamingDownload() : null;
+
+                        boolean fromProxy = fetchContentFromProxies( managedRepository, request, logicalResource, streamingDownload );
 
                         StorageAsset resourceAsset=null;
                         // At this point the incoming request can either be in default or
@@ -602,12 +603,25 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
                             // repository expected path.
                             // String localResourcePath = managedRepository.getRequestInfo().toNativePath( logicalResource.getPath() );
                             resourceAsset = managedRepository.getAsset( logicalResource.getPath() );
-                            resource =
-                                new ArchivaDavResource( resourceAsset, logicalResource.getPath(),
-                                                        managedRepository,
-                                                        request.getRemoteAddr(), activePrincipal,
-                                                        request.getDavSession(), archivaLocator, this, mimeTypes,
-                                                        auditListeners, scheduler );
+                            if ( streamingDownload != null && streamingDownload.isStarted() )
+                            {
+                                resource =
+                                    new ArchivaStreamingDavResource( resourceAsset, logicalResource.getPath(),
+                                                                     managedRepository,
+                                                                     request.getRemoteAddr(), activePrincipal,
+                                                                     request.getDavSession(), archivaLocator, this,
+                                                                     mimeTypes, auditListeners, scheduler,
+                                                                     streamingDownload );
+                            }
+                            else
+                            {
+                                resource =
+                                    new ArchivaDavResource( resourceAsset, logicalResource.getPath(),
+                                                            managedRepository,
+                                                            request.getRemoteAddr(), activePrincipal,
+                                                            request.getDavSession(), archivaLocator, this, mimeTypes,
+                                                            auditListeners, scheduler );
+                            }
                         }
                         catch ( LayoutException e )
                         {
@@ -629,7 +643,7 @@ private DavResource processRepository( final DavServletRequest request, ArchivaD
                                                logicalResource.getPath(), action, activePrincipal );
                         }
 
-                        if ( !resourceAsset.exists() )
+                        if ( !resource.exists() )
                         {
                             throw new DavException( HttpServletResponse.SC_NOT_FOUND, "Resource does not exist" );
                         }
@@ -751,7 +765,7 @@ public DavResource createResource( final DavResourceLocator locator, final DavSe
     }
 
     private boolean fetchContentFromProxies( ManagedRepository managedRepository, DavServletRequest request,
-                                             LogicalResource resource )
+                                             LogicalResource resource, StreamingDownload streamingDownload )
         throws DavException
     {
         String path = resource.getPath();
@@ -796,14 +810,22 @@ private boolean fetchContentFromProxies( ManagedRepository managedRepository, Da
                     this.applicationContext.getBean( "repositoryStorage#" + repositoryLayout, RepositoryStorage.class );
                 repositoryStorage.applyServerSideRelocation( managedRepository, artifact );
 
-                StorageAsset proxiedFile = proxyHandler.fetchFromProxies( managedRepository, artifact );
+                StorageAsset proxiedFile;
+                if ( streamingDownload != null )
+                {
+                    proxiedFile = fetchStreamingFromProxies( proxyHandler, managedRepository, artifact, streamingDownload );
+                }
+                else
+                {
+                    proxiedFile = proxyHandler.fetchFromProxies( managedRepository, artifact );
+                }
 
                 resource.setPath( managedRepository.getContent().toPath( artifact ) );
 
                 log.debug( "Proxied artifact '{}:{}:{}'", artifact.getGroupId(), artifact.getArtifactId(),
                            artifact.getVersion() );
 
-                return ( proxiedFile != null );
+                return ( proxiedFile != null || ( streamingDownload != null && streamingDownload.isStarted() ) );
             }
         }
         catch ( LayoutException e )
@@ -819,6 +841,97 @@ private boolean fetchContentFromProxies( ManagedRepository managedRepository, Da
         return false;
     }
 
+    /**
+     * Fetches the artifact in a separate thread. If the remote repository starts to send the file, the method
+     * returns immediately with <code>null</code> and the file is read from the streaming download. Otherwise the
+     * result of the fetch is returned.
+     */
+    private StorageAsset fetchStreamingFromProxies( RepositoryProxyHandler proxyHandler,
+                                                    ManagedRepository managedRepository, ArtifactReference artifact,
+                                                    StreamingDownload streamingDownload )
+        throws DavException, ProxyDownloadException
+    {
+        Future<StorageAsset> result;
+        try
+        {
+            result = getStreamingExecutor().submit( () -> {
+                StreamingDownload previous = streamingDownload.activate();
+                try
+                {
+                    return proxyHandler.fetchFromProxies( managedRepository, artifact );
+                }
+                finally
+                {
+                    streamingDownload.deactivate( previous );
+                    streamingDownload.finished();
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            return proxyHandler.fetchFromProxies( managedRepository, artifact );
+        }
+
+        try
+        {
+            if ( streamingDownload.awaitStart() )
+            {
+                return null;
+            }
+            return result.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Interrupted while fetching artifact resource." );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof ProxyDownloadException )
+            {
+                throw (ProxyDownloadException) e.getCause();
+            }
+            log.error( e.getMessage(), e );
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Unable to fetch artifact resource." );
+        }
+    }
+
+    private boolean isStreamingDownload( DavServletRequest request )
+    {
+        NetworkConfiguration networkConfiguration = archivaConfiguration.getConfiguration().getNetworkConfiguration();
+        return networkConfiguration != null && networkConfiguration.isStreamingDownloads()
+            && HTTP_GET_METHOD.equals( request.getMethod() );
+    }
+
+    private synchronized ExecutorService getStreamingExecutor()
+    {
+        if ( streamingExecutor == null )
+        {
+            AtomicInteger threadCount = new AtomicInteger( 0 );
+            // no queue: if all threads are busy, the request is rejected and falls back to the non streaming fetch
+            streamingExecutor = new ThreadPoolExecutor( 0, MAX_STREAMING_DOWNLOADS, 60L, TimeUnit.SECONDS,
+                                                        new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread( runnable, "archiva-streaming-download-" + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return streamingExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        if ( streamingExecutor != null )
+        {
+            streamingExecutor.shutdown();
+            streamingExecutor = null;
+        }
+        mergedGroupIndexCache.shutdown();
+    }
+
     // TODO: remove?
 
     private void triggerAuditEvent( String remoteIP, String repositoryId, String resource, String action,
@@ -855,8 +968,15 @@ private void setHeaders( DavServletResponse response, DavResourceLocator locator
                              boolean group )
     {
         // [MRM-503] - Metadata file need Pragma:no-cache response
-        // header.
-        if ( locator.getResourcePath().endsWith( "/maven-metadata.xml" ) || ( resource instanceof ArchivaDavResource
+        // header. no-cache lets clients revalidate with the real modification time and the ETag.
+        if ( locator.getResourcePath().endsWith( "/maven-metadata.xml" ) && resource instanceof ArchivaDavResource
+            && resource.exists() && !resource.isCollection() )
+        {
+            response.setHeader( "Pragma", "no-cache" );
+            response.setHeader( "Cache-Control", "no-cache" );
+            response.setDateHeader( "Last-Modified", resource.getModificationTime() );
+        }
+        else if ( locator.getResourcePath().endsWith( "/maven-metadata.xml" ) || ( resource instanceof ArchivaDavResource
             && ( ArchivaDavResource.class.cast( resource ).getAsset().isContainer() ) ) )
         {
             response.setHeader( "Pragma", "no-cache" );
@@ -886,7 +1006,6 @@ else if ( group )
             // We need to specify this so connecting wagons can work correctly
             response.setDateHeader( "Last-Modified", resource.getModificationTime() );
         }
-        // TODO: [MRM-524] determine http caching options for other types of files (artifacts, sha1, md5, snapshots)
     }
 
     private ArchivaDavResourceLocator checkLocatorIsInstanceOfRepositoryLocator( DavResourceLocator locator )
@@ -1246,40 +1365,76 @@ private boolean isAllowedToContinue( DavServletRequest request, List<ManagedRepo
         return allow;
     }
 
+    /**
+     * Returns the merged metadata of the given member files. The files are only read and merged again, if one of them
+     * has changed since the last merge.
+     */
+    private StorageAsset getMergedMetadata( RepositoryGroup repoGroup, List<String> resourcesInAbsolutePath,
+                                            String outputFilename )
+        throws DavException
+    {
+        List<Path> metadataFiles = resourcesInAbsolutePath.stream().map( Paths::get ).collect( Collectors.toList() );
+        try
+        {
+            List<String> memberIds =
+                repoGroup.getRepositories().stream().map( ManagedRepository::getId ).collect( Collectors.toList() );
+            return mergedMetadataCache.getMergedMetadata( repoGroup.getId(), memberIds, outputFilename, metadataFiles,
+                                                          () -> mergeMetadata( repoGroup, metadataFiles, outputFilename ) );
+        }
+        catch ( RepositoryMetadataException r )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while merging metadata file." );
+        }
+        catch ( IOException ie )
+        {
+            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                                    "Error occurred while generating checksum files." );
+        }
+    }
+
+    private StorageAsset mergeMetadata( RepositoryGroup repoGroup, List<Path> metadataFiles, String outputFilename )
+        throws RepositoryMetadataException, IOException
+    {
+        ArchivaRepositoryMetadata mergedMetadata = new ArchivaRepositoryMetadata();
+        for ( Path metadataFile : metadataFiles )
+        {
+            FilesystemStorage storage = new FilesystemStorage( metadataFile.getParent( ), new DefaultFileLockManager( ) );
+            ArchivaRepositoryMetadata repoMetadata = repositoryRegistry.getMetadataReader( repoGroup.getType( ) ).read( storage.getAsset( metadataFile.getFileName().toString() ) );
+            mergedMetadata = RepositoryMetadataMerge.merge( mergedMetadata, repoMetadata );
+        }
+        return writeMergedMetadataToFile( repoGroup, mergedMetadata, outputFilename );
+    }
+
     private StorageAsset writeMergedMetadataToFile( RepositoryGroup repoGroup, ArchivaRepositoryMetadata mergedMetadata, String outputFilename )
         throws RepositoryMetadataException, IOException
     {
-        StorageAsset asset = repoGroup.addAsset( outputFilename, false );
-        OutputStream stream = asset.getWriteStream( true );
-        OutputStreamWriter sw = new OutputStreamWriter( stream, "UTF-8" );
+        StringWriter sw = new StringWriter();
         RepositoryMetadataWriter.write( mergedMetadata, sw );
+        byte[] content = sw.toString().getBytes( StandardCharsets.UTF_8 );
 
-        createChecksumFiles( repoGroup, outputFilename );
+        StorageAsset asset = repoGroup.addAsset( outputFilename, false );
+        try ( OutputStream stream = asset.getWriteStream( true ) )
+        {
+            stream.write( content );
+        }
+
+        createChecksumFiles( repoGroup, outputFilename, content );
         return asset;
     }
 
 
-    private void createChecksumFiles(RepositoryGroup repo, String path) {
+    private void createChecksumFiles( RepositoryGroup repo, String path, byte[] content )
+        throws IOException
+    {
         List<ChecksumAlgorithm> algorithms = ChecksumUtil.getAlgorithms( archivaConfiguration.getConfiguration( ).getArchivaRuntimeConfiguration( ).getChecksumTypes( ) );
-        List<OutputStream> outStreams = algorithms.stream( ).map( algo -> {
-            String ext = algo.getDefaultExtension( );
-            try
-            {
-                return repo.getAsset( path + "." + ext ).getWriteStream( true );
-            }
-            catch ( IOException e )
+        for ( Checksum checksum : ChecksumUtil.newChecksums( algorithms ) )
+        {
+            checksum.update( content, 0, content.length ).finish( );
+            try ( OutputStream os = repo.getAsset( path + "." + checksum.getAlgorithm( ).getDefaultExtension( ) ).getWriteStream( true ) )
             {
-                e.printStackTrace( );
-                return null;
+                os.write( checksum.getChecksum( ).getBytes( ) );
             }
-        } ).filter( Objects::nonNull ).collect( Collectors.toList( ) );
-        try
-        {
-            StreamingChecksum.updateChecksums( repo.getAsset(path).getReadStream(), algorithms, outStreams );
-        }
-        catch ( IOException e )
-        {
-            e.printStackTrace( );
         }
     }
 
@@ -1307,35 +1462,7 @@ protected StorageAsset buildMergedIndexDirectory( String activePrincipal,
         try
         {
             final List<ManagedRepository> repositories = repositoryGroup.getRepositories();
-            HttpSession session = request.getSession();
-
-            @SuppressWarnings( "unchecked" ) Map<String, TemporaryGroupIndex> temporaryGroupIndexMap =
-                (Map<String, TemporaryGroupIndex>) session.getAttribute(
-                    TemporaryGroupIndexSessionCleaner.TEMPORARY_INDEX_SESSION_KEY );
-            if ( temporaryGroupIndexMap == null )
-            {
-                temporaryGroupIndexMap = new HashMap<>();
-            }
-
             final String id = repositoryGroup.getId();
-            TemporaryGroupIndex tmp = temporaryGroupIndexMap.get(id);
-
-            if ( tmp != null && tmp.getDirectory() != null && tmp.getDirectory().exists())
-            {
-                if ( System.currentTimeMillis() - tmp.getCreationTime() > (
-                    repositoryGroup.getMergedIndexTTL() * 60 * 1000 ) )
-                {
-                    log.debug( MarkerFactory.getMarker( "group.merged.index" ),
-                               "tmp group index '{}' is too old so delete it", id);
-                    indexMerger.cleanTemporaryGroupIndex( tmp );
-                }
-                else
-                {
-                    log.debug( MarkerFactory.getMarker( "group.merged.index" ),
-                               "merged index for group '{}' found in cache", id);
-                    return tmp.getDirectory();
-                }
-            }
 
             Set<String> authzRepos = new HashSet<String>();
 
@@ -1361,40 +1488,14 @@ protected StorageAsset buildMergedIndexDirectory( String activePrincipal,
 
             }
 
-            log.info( "generate temporary merged index for repository group '{}' for repositories '{}'",
-                    id, authzRepos );
-
             IndexCreationFeature indexCreationFeature = repositoryGroup.getFeature( IndexCreationFeature.class ).get();
             Path indexPath = indexCreationFeature.getLocalIndexPath().getFilePath();
             if (indexPath!=null)
             {
-                Path tempRepoFile = Files.createTempDirectory( "temp" );
-                tempRepoFile.toFile( ).deleteOnExit( );
-                FilesystemStorage storage = new FilesystemStorage(tempRepoFile, new DefaultFileLockManager());
-                StorageAsset tmpAsset = storage.getAsset("");
-
-                IndexMergerRequest indexMergerRequest =
-                    new IndexMergerRequest( authzRepos, true, id,
-                        indexPath.toString( ),
-                        repositoryGroup.getMergedIndexTTL( ) ).mergedIndexDirectory(
-                        tmpAsset ).temporary( true );
-
-                MergedRemoteIndexesTaskRequest taskRequest =
-                    new MergedRemoteIndexesTaskRequest( indexMergerRequest, indexMerger );
-
-                MergedRemoteIndexesTask job = new MergedRemoteIndexesTask( taskRequest );
-
-                ArchivaIndexingContext indexingContext = job.execute( ).getIndexingContext( );
-
-                StorageAsset mergedRepoDir = indexingContext.getPath( );
-                TemporaryGroupIndex temporaryGroupIndex =
-                    new TemporaryGroupIndex( mergedRepoDir, indexingContext.getId( ), id,
-                        repositoryGroup.getMergedIndexTTL( ) ) //
-                        .setCreationTime( new Date( ).getTime( ) );
-                temporaryGroupIndexMap.put( id, temporaryGroupIndex );
-                session.setAttribute( TemporaryGroupIndexSessionCleaner.TEMPORARY_INDEX_SESSION_KEY,
-                    temporaryGroupIndexMap );
-                return mergedRepoDir;
+                // the merged index is shared by all users, that are allowed to read the same repositories
+                return mergedGroupIndexCache.getMergedIndex( id, authzRepos, getIndexDirectories( authzRepos ),
+                    repositoryGroup.getMergedIndexTTL( ) * 60 * 1000L,
+                    ( ) -> mergeIndex( repositoryGroup, authzRepos, indexPath ) );
             } else {
                 log.error("Local index path for repository group {} does not exist.", repositoryGroup.getId());
                 throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
@@ -1408,10 +1509,59 @@ protected StorageAsset buildMergedIndexDirectory( String activePrincipal,
         {
             throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
         }
-        catch ( IOException e )
+    }
+
+    private TemporaryGroupIndex mergeIndex( RepositoryGroup repositoryGroup, Set<String> authzRepos, Path indexPath )
+        throws IndexMergerException, IOException
+    {
+        String id = repositoryGroup.getId();
+        log.info( "generate temporary merged index for repository group '{}' for repositories '{}'",
+                id, authzRepos );
+
+        Path tempRepoFile = Files.createTempDirectory( "temp" );
+        tempRepoFile.toFile( ).deleteOnExit( );
+        FilesystemStorage storage = new FilesystemStorage(tempRepoFile, new DefaultFileLockManager());
+        StorageAsset tmpAsset = storage.getAsset("");
+
+        IndexMergerRequest indexMergerRequest =
+            new IndexMergerRequest( authzRepos, true, id,
+                indexPath.toString( ),
+                repositoryGroup.getMergedIndexTTL( ) ).mergedIndexDirectory(
+                tmpAsset ).temporary( true );
+
+        MergedRemoteIndexesTaskRequest taskRequest =
+            new MergedRemoteIndexesTaskRequest( indexMergerRequest, indexMerger );
+
+        MergedRemoteIndexesTask job = new MergedRemoteIndexesTask( taskRequest );
+
+        ArchivaIndexingContext indexingContext = job.execute( ).getIndexingContext( );
+        if ( indexingContext == null )
         {
-            throw new DavException( HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e );
+            // the merger skips groups, that are currently merged
+            return null;
+        }
+
+        return new TemporaryGroupIndex( indexingContext.getPath( ), indexingContext.getId( ), id,
+            repositoryGroup.getMergedIndexTTL( ) ) //
+            .setCreationTime( new Date( ).getTime( ) );
+    }
+
+    /**
+     * Returns the local index directories of the given repositories, which are checked for changes of the
+     * merged group index.
+     */
+    private List<Path> getIndexDirectories( Set<String> repositoryIds )
+    {
+        List<Path> directories = new ArrayList<>( repositoryIds.size( ) );
+        for ( String repositoryId : new TreeSet<>( repositoryIds ) )
+        {
+            Repository repository = repositoryRegistry.getRepository( repositoryId );
+            ArchivaIndexingContext context = repository == null ? null : repository.getIndexingContext( );
+            StorageAsset indexDirectory = context == null ? null : context.getPath( );
+            directories.add( indexDirectory != null && indexDirectory.isFileBased( )
+                                 ? indexDirectory.getFilePath( ) : null );
         }
+        return directories;
     }
 
 
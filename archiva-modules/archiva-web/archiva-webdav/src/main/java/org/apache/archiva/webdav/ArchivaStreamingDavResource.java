@@ -0,0 +1,122 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.audit.AuditListener;
+import org.apache.archiva.proxy.model.StreamingDownload;
+import org.apache.archiva.repository.LayoutException;
+import org.apache.archiva.repository.storage.RepositoryStorage;
+import org.apache.archiva.repository.storage.StorageAsset;
+import org.apache.archiva.scheduler.repository.model.RepositoryArchivaTaskScheduler;
+import org.apache.archiva.webdav.util.MimeTypes;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.webdav.DavResourceFactory;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.apache.jackrabbit.webdav.io.OutputContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * DavResource for an artifact, that is sent to the client while it is downloaded from a remote repository.
+ * The content is read from the {@link StreamingDownload}, the asset does not exist before the download
+ * is finished.
+ *
+ * @since 3.0
+ */
+public class ArchivaStreamingDavResource
+    extends ArchivaDavResource
+{
+    private final StreamingDownload download;
+
+    private final MimeTypes mimeTypes;
+
+    public ArchivaStreamingDavResource( StorageAsset localResource, String logicalResource,
+                                        RepositoryStorage repositoryStorage, String remoteAddr, String principal,
+                                        DavSession session, ArchivaDavResourceLocator locator,
+                                        DavResourceFactory factory, MimeTypes mimeTypes,
+                                        List<AuditListener> auditListeners,
+                                        RepositoryArchivaTaskScheduler scheduler, StreamingDownload download )
+        throws LayoutException
+    {
+        super( localResource, logicalResource, repositoryStorage, remoteAddr, principal, session, locator, factory,
+               mimeTypes, auditListeners, scheduler );
+        this.download = download;
+        this.mimeTypes = mimeTypes;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isCollection()
+    {
+        return false;
+    }
+
+    @Override
+    public long getModificationTime()
+    {
+        long lastModified = download.getLastModified();
+        return lastModified > 0 ? lastModified : System.currentTimeMillis();
+    }
+
+    /**
+     * The file is not complete before the download has finished, so parts of it cannot be sent.
+     */
+    @Override
+    public boolean isRangeSupported()
+    {
+        return false;
+    }
+
+    /**
+     * The checksums are not stored before the download has finished, so no entity tag is available.
+     */
+    @Override
+    public String getETag()
+    {
+        return null;
+    }
+
+    @Override
+    public void spool( OutputContext outputContext )
+        throws IOException
+    {
+        long contentLength = download.getContentLength();
+        if ( contentLength >= 0 )
+        {
+            outputContext.setContentLength( contentLength );
+        }
+        outputContext.setContentType( mimeTypes.getMimeType( getAsset().getName() ) );
+
+        if ( outputContext.hasStream() )
+        {
+            try ( InputStream is = download.openStream() )
+            {
+                IOUtils.copy( is, outputContext.getOutputStream() );
+            }
+        }
+    }
+}
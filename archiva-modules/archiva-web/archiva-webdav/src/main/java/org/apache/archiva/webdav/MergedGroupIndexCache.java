@@ -0,0 +1,354 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.indexer.merger.IndexMergerException;
+import org.apache.archiva.indexer.merger.TemporaryGroupIndex;
+import org.apache.archiva.repository.storage.StorageAsset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Server wide cache for the merged indexes of repository groups.
+ * <p>
+ * A merged index is built for a group and the set of member repositories the user is allowed to read. All
+ * users with the same set of readable repositories share the same index, independent of their HTTP session.
+ * Concurrent requests for an index that does not exist yet wait for a single merge.
+ * </p>
+ * <p>
+ * If the time to live of the group is exceeded, or the index directory of a member has been modified, the
+ * index is merged again in the background. The old index is served until the new one is available, and it is
+ * deleted after a grace period, so running downloads can finish. Indexes that are not requested within their
+ * time to live are removed.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class MergedGroupIndexCache
+{
+    private static final Logger log = LoggerFactory.getLogger( MergedGroupIndexCache.class );
+
+    private static final int MERGE_THREADS = 2;
+
+    private static final long RETIRED_INDEX_GRACE_MINUTES = 10;
+
+    private static final long SWEEP_INTERVAL_MINUTES = 1;
+
+    /**
+     * Merges the index of a group.
+     */
+    @FunctionalInterface
+    public interface Merger
+    {
+        /**
+         * @return the merged index or <code>null</code>, if the group is currently merged by another task
+         */
+        TemporaryGroupIndex merge( )
+            throws IndexMergerException, IOException;
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>( );
+
+    private final Map<String, Object> groupLocks = new ConcurrentHashMap<>( );
+
+    private final Consumer<TemporaryGroupIndex> cleaner;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param cleaner deletes a merged index, that is no longer used
+     */
+    public MergedGroupIndexCache( Consumer<TemporaryGroupIndex> cleaner )
+    {
+        this.cleaner = cleaner;
+    }
+
+    /**
+     * Returns the directory of the merged index. If there is no index for the group and repositories yet, the
+     * calling thread waits until the merge is finished.
+     *
+     * @param groupId              the id of the repository group
+     * @param repositoryIds        the ids of the repositories, that are part of the merged index
+     * @param memberIndexDirectories the index directories of the repositories, that are checked for changes
+     * @param ttlMillis            the time to live of a merged index in milliseconds
+     * @param merger               creates the merged index
+     * @return the directory of the merged index
+     * @throws IndexMergerException if the index could not be merged
+     */
+    public StorageAsset getMergedIndex( String groupId, Collection<String> repositoryIds,
+                                        List<Path> memberIndexDirectories, long ttlMillis, Merger merger )
+        throws IndexMergerException
+    {
+        String key = groupId + ":" + String.join( ",", new TreeSet<>( repositoryIds ) );
+        CompletableFuture<TemporaryGroupIndex> pending = null;
+        while ( pending == null )
+        {
+            Entry entry = entries.computeIfAbsent( key, k -> new Entry( groupId ) );
+            synchronized ( entry )
+            {
+                if ( entry.removed )
+                {
+                    continue;
+                }
+                long now = System.currentTimeMillis( );
+                entry.lastAccess = now;
+                entry.ttlMillis = ttlMillis;
+                long[] state = getState( memberIndexDirectories );
+                TemporaryGroupIndex current = entry.index;
+                if ( current != null && current.getDirectory( ) != null && current.getDirectory( ).exists( ) )
+                {
+                    if ( now - current.getCreationTime( ) > ttlMillis || !Arrays.equals( entry.state, state ) )
+                    {
+                        log.debug( "Merged index for {} is outdated, merging again in the background", key );
+                        startMerge( key, entry, state, merger );
+                    }
+                    return current.getDirectory( );
+                }
+                pending = startMerge( key, entry, state, merger );
+            }
+        }
+        try
+        {
+            return pending.get( ).getDirectory( );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new IndexMergerException( "Interrupted while waiting for the merged index of " + groupId, e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause( ) instanceof CompletionException ? e.getCause( ).getCause( ) : e.getCause( );
+            if ( cause instanceof IndexMergerException )
+            {
+                throw (IndexMergerException) cause;
+            }
+            throw new IndexMergerException( "Could not merge the index of " + groupId + ": " + cause.getMessage( ),
+                cause );
+        }
+    }
+
+    /**
+     * Stops the background merges and deletes all cached indexes.
+     */
+    public void shutdown( )
+    {
+        synchronized ( this )
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow( );
+                executor = null;
+            }
+        }
+        for ( Entry entry : new ArrayList<>( entries.values( ) ) )
+        {
+            synchronized ( entry )
+            {
+                entry.removed = true;
+                if ( entry.index != null )
+                {
+                    cleaner.accept( entry.index );
+                    entry.index = null;
+                }
+            }
+        }
+        entries.clear( );
+    }
+
+    private CompletableFuture<TemporaryGroupIndex> startMerge( String key, Entry entry, long[] state, Merger merger )
+    {
+        if ( entry.merge == null )
+        {
+            entry.merge = CompletableFuture.supplyAsync( ( ) -> merge( key, entry, state, merger ), getExecutor( ) );
+        }
+        return entry.merge;
+    }
+
+    private TemporaryGroupIndex merge( String key, Entry entry, long[] state, Merger merger )
+    {
+        TemporaryGroupIndex index = null;
+        try
+        {
+            // Merges of the same group use the same index location, so they must not run in parallel
+            synchronized ( groupLocks.computeIfAbsent( entry.groupId, id -> new Object( ) ) )
+            {
+                log.debug( "Merging index for {}", key );
+                index = merger.merge( );
+            }
+            if ( index == null )
+            {
+                throw new IndexMergerException( "The index of group " + entry.groupId + " is currently merged", null );
+            }
+            return index;
+        }
+        catch ( IndexMergerException | IOException e )
+        {
+            log.error( "Could not merge index for {}: {}", key, e.getMessage( ), e );
+            throw new CompletionException( e );
+        }
+        finally
+        {
+            TemporaryGroupIndex retired = null;
+            boolean removed;
+            synchronized ( entry )
+            {
+                entry.merge = null;
+                removed = entry.removed;
+                if ( index != null && !removed )
+                {
+                    retired = entry.index;
+                    entry.index = index;
+                    entry.state = state;
+                }
+            }
+            if ( removed && index != null )
+            {
+                // the cache has been shut down or the entry was removed during the merge
+                cleaner.accept( index );
+            }
+            else if ( retired != null )
+            {
+                retire( retired );
+            }
+        }
+    }
+
+    private void retire( TemporaryGroupIndex index )
+    {
+        try
+        {
+            getExecutor( ).schedule( ( ) -> cleaner.accept( index ), RETIRED_INDEX_GRACE_MINUTES, TimeUnit.MINUTES );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            cleaner.accept( index );
+        }
+    }
+
+    /**
+     * Removes the indexes that have not been requested within their time to live.
+     */
+    void removeUnused( )
+    {
+        long now = System.currentTimeMillis( );
+        for ( Map.Entry<String, Entry> mapEntry : entries.entrySet( ) )
+        {
+            Entry entry = mapEntry.getValue( );
+            synchronized ( entry )
+            {
+                if ( entry.merge == null && now - entry.lastAccess > entry.ttlMillis
+                    && entries.remove( mapEntry.getKey( ), entry ) )
+                {
+                    entry.removed = true;
+                    log.debug( "Removing unused merged index {}", mapEntry.getKey( ) );
+                    if ( entry.index != null )
+                    {
+                        cleaner.accept( entry.index );
+                        entry.index = null;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService getExecutor( )
+    {
+        if ( executor == null )
+        {
+            AtomicInteger threadCount = new AtomicInteger( 0 );
+            ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor( MERGE_THREADS, runnable -> {
+                Thread thread = new Thread( runnable, "archiva-group-index-merge-" + threadCount.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            newExecutor.scheduleWithFixedDelay( this::removeUnused, SWEEP_INTERVAL_MINUTES, SWEEP_INTERVAL_MINUTES,
+                TimeUnit.MINUTES );
+            executor = newExecutor;
+        }
+        return executor;
+    }
+
+    private static long[] getState( List<Path> directories )
+    {
+        long[] state = new long[directories.size( )];
+        int i = 0;
+        for ( Path directory : directories )
+        {
+            long modified = -1;
+            try
+            {
+                // New index segments are new files, so the modification time of the directory changes
+                if ( directory != null )
+                {
+                    modified = Files.getLastModifiedTime( directory ).toMillis( );
+                }
+            }
+            catch ( IOException e )
+            {
+                // handled as changed state
+            }
+            state[i++] = modified;
+        }
+        return state;
+    }
+
+    private static final class Entry
+    {
+        final String groupId;
+
+        TemporaryGroupIndex index;
+
+        long[] state;
+
+        CompletableFuture<TemporaryGroupIndex> merge;
+
+        long lastAccess;
+
+        long ttlMillis;
+
+        boolean removed;
+
+        Entry( String groupId )
+        {
+            this.groupId = groupId;
+        }
+    }
+}
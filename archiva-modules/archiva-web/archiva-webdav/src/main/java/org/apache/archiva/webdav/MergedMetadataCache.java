@@ -0,0 +1,211 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.event.EventHandler;
+import org.apache.archiva.repository.event.LifecycleEvent;
+import org.apache.archiva.repository.metadata.RepositoryMetadataException;
+import org.apache.archiva.repository.storage.StorageAsset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache for the merged <code>maven-metadata.xml</code> files of repository groups.
+ * <p>
+ * The merged file and its checksum files are only written again, if the metadata files of the group members
+ * have changed. Each entry remembers the size and modification time of the member files, that were merged.
+ * So a request for unchanged metadata costs a file status check per member, instead of reading and
+ * merging the member files and writing the result.
+ * </p>
+ * <p>
+ * The number of entries is bounded, the least recently used entries are evicted first. If a repository is
+ * registered, updated or removed, only the entries of the groups, that are this repository or contain it as
+ * member, are dropped.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class MergedMetadataCache
+    implements EventHandler<LifecycleEvent>
+{
+    private static final Logger log = LoggerFactory.getLogger( MergedMetadataCache.class );
+
+    /**
+     * Creates the merged metadata file of the group.
+     */
+    @FunctionalInterface
+    public interface Merger
+    {
+        StorageAsset merge( )
+            throws RepositoryMetadataException, IOException;
+    }
+
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries;
+
+    public MergedMetadataCache( )
+    {
+        this( DEFAULT_MAX_ENTRIES );
+    }
+
+    /**
+     * @param maxEntries the maximum number of merged files, that are cached
+     */
+    MergedMetadataCache( int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Entry> eldest )
+            {
+                return size( ) > MergedMetadataCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the merged metadata file. If there is no valid entry for the given files, the merger is called
+     * and the result is cached.
+     *
+     * @param groupId     the id of the repository group
+     * @param memberIds   the ids of the member repositories of the group
+     * @param path        the path of the merged metadata file in the group
+     * @param memberFiles the metadata files of the group members, that are merged
+     * @param merger      creates the merged file
+     * @return the merged metadata file
+     */
+    public StorageAsset getMergedMetadata( String groupId, List<String> memberIds, String path, List<Path> memberFiles,
+                                           Merger merger )
+        throws RepositoryMetadataException, IOException
+    {
+        Entry entry;
+        synchronized ( entries )
+        {
+            entry = entries.computeIfAbsent( groupId + ":" + path, key -> new Entry( ) );
+            entry.repositories = new HashSet<>( memberIds );
+            entry.repositories.add( groupId );
+        }
+        synchronized ( entry )
+        {
+            // Read the state before merging, so changes during the merge invalidate the entry
+            long[] state = getState( memberFiles );
+            if ( entry.asset != null && entry.asset.exists( ) && entry.files.equals( memberFiles )
+                && Arrays.equals( entry.state, state ) )
+            {
+                return entry.asset;
+            }
+            log.debug( "Merging metadata {} of group {}", path, groupId );
+            entry.asset = merger.merge( );
+            entry.files = memberFiles;
+            entry.state = state;
+            return entry.asset;
+        }
+    }
+
+    /**
+     * Removes all entries of the groups, that are the given repository or contain it as member.
+     */
+    public void invalidate( String repositoryId )
+    {
+        synchronized ( entries )
+        {
+            entries.values( ).removeIf( entry -> entry.repositories.contains( repositoryId ) );
+        }
+    }
+
+    public void clear( )
+    {
+        synchronized ( entries )
+        {
+            entries.clear( );
+        }
+    }
+
+    int size( )
+    {
+        synchronized ( entries )
+        {
+            return entries.size( );
+        }
+    }
+
+    @Override
+    public void handle( LifecycleEvent event )
+    {
+        if ( event.getRepository( ) == null )
+        {
+            clear( );
+        }
+        else
+        {
+            invalidate( event.getRepository( ).getId( ) );
+        }
+    }
+
+    private static long[] getState( List<Path> files )
+    {
+        long[] state = new long[files.size( ) * 2];
+        int i = 0;
+        for ( Path file : files )
+        {
+            try
+            {
+                BasicFileAttributes attrs = Files.readAttributes( file, BasicFileAttributes.class );
+                state[i++] = attrs.size( );
+                state[i++] = attrs.lastModifiedTime( ).toMillis( );
+            }
+            catch ( IOException e )
+            {
+                state[i++] = -1;
+                state[i++] = -1;
+            }
+        }
+        return state;
+    }
+
+    private static final class Entry
+    {
+        /**
+         * The group and its members. Only modified while holding the lock of the entries.
+         */
+        Set<String> repositories;
+
+        StorageAsset asset;
+
+        List<Path> files;
+
+        long[] state;
+    }
+}
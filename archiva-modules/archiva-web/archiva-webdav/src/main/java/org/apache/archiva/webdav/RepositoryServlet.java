@@ -28,6 +28,8 @@
 import org.apache.archiva.repository.ManagedRepository;
 import org.apache.archiva.repository.RepositoryRegistry;
 import org.apache.archiva.security.ServletAuthenticator;
+import org.apache.archiva.webdav.util.HttpRange;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavLocatorFactory;
 import org.apache.jackrabbit.webdav.DavMethods;
@@ -51,6 +53,10 @@
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -228,6 +234,171 @@ protected boolean isPreconditionValid( final WebdavRequest request, final DavRes
         return true;
     }
 
+    @Override
+    protected void doGet( WebdavRequest request, WebdavResponse response, DavResource resource )
+        throws IOException, DavException
+    {
+        if ( !spoolFile( request, response, resource, true ) )
+        {
+            super.doGet( request, response, resource );
+        }
+    }
+
+    @Override
+    protected void doHead( WebdavRequest request, WebdavResponse response, DavResource resource )
+        throws IOException
+    {
+        if ( !spoolFile( request, response, resource, false ) )
+        {
+            super.doHead( request, response, resource );
+        }
+    }
+
+    /**
+     * Sends a file with support for conditional requests (If-None-Match, If-Modified-Since) and
+     * range requests (Range, If-Range).
+     *
+     * @return <code>false</code>, if the resource is not a file and must be handled by the default implementation
+     */
+    private boolean spoolFile( WebdavRequest request, WebdavResponse response, DavResource resource,
+                               boolean sendContent )
+        throws IOException
+    {
+        if ( !( resource instanceof ArchivaDavResource ) || resource instanceof ArchivaStreamingDavResource
+            || !resource.exists() || resource.isCollection() )
+        {
+            return false;
+        }
+        ArchivaDavResource fileResource = (ArchivaDavResource) resource;
+        String etag = fileResource.getETag();
+        long modificationTime = fileResource.getModificationTime();
+        if ( etag != null )
+        {
+            response.setHeader( "ETag", etag );
+        }
+        if ( isNotModified( request, etag, modificationTime ) )
+        {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return true;
+        }
+
+        long size = fileResource.getAsset().getSize();
+        List<HttpRange> ranges = null;
+        if ( fileResource.isRangeSupported() )
+        {
+            response.setHeader( "Accept-Ranges", "bytes" );
+            if ( sendContent && isRangeValid( request, etag, modificationTime ) )
+            {
+                ranges = HttpRange.parse( request.getHeader( "Range" ), size );
+            }
+        }
+
+        if ( ranges == null )
+        {
+            OutputStream out = sendContent ? response.getOutputStream() : null;
+            resource.spool( getOutputContext( response, out ) );
+            response.flushBuffer();
+        }
+        else if ( ranges.isEmpty() )
+        {
+            response.setHeader( "Content-Range", "bytes */" + size );
+            response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+        }
+        else if ( ranges.size() == 1 )
+        {
+            HttpRange range = ranges.get( 0 );
+            response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+            response.setContentType( fileResource.getContentType() );
+            response.setHeader( "Content-Range", range.getContentRange( size ) );
+            response.setHeader( "Content-Length", String.valueOf( range.getLength() ) );
+            fileResource.spoolRange( response.getOutputStream(), range );
+            response.flushBuffer();
+        }
+        else
+        {
+            String boundary = Long.toHexString( ThreadLocalRandom.current().nextLong() );
+            response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+            response.setContentType( "multipart/byteranges; boundary=" + boundary );
+            OutputStream out = response.getOutputStream();
+            for ( HttpRange range : ranges )
+            {
+                String partHeader = "\r\n--" + boundary + "\r\nContent-Type: " + fileResource.getContentType()
+                    + "\r\nContent-Range: " + range.getContentRange( size ) + "\r\n\r\n";
+                out.write( partHeader.getBytes( StandardCharsets.US_ASCII ) );
+                fileResource.spoolRange( out, range );
+            }
+            out.write( ( "\r\n--" + boundary + "--\r\n" ).getBytes( StandardCharsets.US_ASCII ) );
+            response.flushBuffer();
+        }
+        return true;
+    }
+
+    private boolean isNotModified( WebdavRequest request, String etag, long modificationTime )
+    {
+        String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            // If-None-Match takes precedence over If-Modified-Since and uses the weak comparison
+            return etag != null && matchesETag( ifNoneMatch, etag, false );
+        }
+        long ifModifiedSince = getDateHeader( request, "If-Modified-Since" );
+        // the header has only second precision
+        return ifModifiedSince != -1 && modificationTime / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    private boolean isRangeValid( WebdavRequest request, String etag, long modificationTime )
+    {
+        String ifRange = request.getHeader( "If-Range" );
+        if ( ifRange == null )
+        {
+            return true;
+        }
+        if ( ifRange.startsWith( "\"" ) || ifRange.startsWith( "W/" ) )
+        {
+            return etag != null && matchesETag( ifRange, etag, true );
+        }
+        long date = getDateHeader( request, "If-Range" );
+        return date != -1 && modificationTime / 1000 * 1000 == date;
+    }
+
+    private static boolean matchesETag( String header, String etag, boolean strong )
+    {
+        if ( strong && etag.startsWith( "W/" ) )
+        {
+            return false;
+        }
+        String opaqueTag = StringUtils.removeStart( etag, "W/" );
+        for ( String candidate : StringUtils.split( header, ',' ) )
+        {
+            candidate = candidate.trim();
+            if ( "*".equals( candidate ) )
+            {
+                return !strong;
+            }
+            if ( strong && candidate.startsWith( "W/" ) )
+            {
+                continue;
+            }
+            if ( opaqueTag.equals( StringUtils.removeStart( candidate, "W/" ) ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader( WebdavRequest request, String name )
+    {
+        try
+        {
+            return request.getDateHeader( name );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return -1;
+        }
+    }
+
     @Override
     public DavSessionProvider getDavSessionProvider()
     {
@@ -0,0 +1,195 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang3.SystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the content of a file channel to a servlet output stream, avoiding the copy through a heap buffer
+ * where the container allows it:
+ * <ul>
+ *     <li>If the output stream is a {@link WritableByteChannel}, {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ *     is used, which is done by the operating system (sendfile).</li>
+ *     <li>If the output stream provides a <code>sendContent(ByteBuffer)</code> method, like the Jetty
+ *     <code>HttpOutput</code>, the file is mapped into memory and written from the mapped buffer. This is only
+ *     done, if the whole remaining file is sent, because the method completes the response.</li>
+ *     <li>Otherwise the file is copied by a buffer.</li>
+ * </ul>
+ *
+ * @since 3.0
+ */
+public class FileTransfer
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SEND_CONTENT_METHOD = "sendContent";
+
+    private static final Map<Class<?>, Optional<Method>> SEND_CONTENT_METHODS = new ConcurrentHashMap<>( );
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial( ( ) -> new byte[BUFFER_SIZE] );
+
+    private FileTransfer( )
+    {
+    }
+
+    /**
+     * Writes the content of the channel from its current position to the output stream.
+     *
+     * @param channel the file channel
+     * @param os      the output stream
+     * @return the number of bytes written
+     * @throws IOException if the file could not be read or the data could not be written
+     */
+    public static long transfer( FileChannel channel, OutputStream os )
+        throws IOException
+    {
+        long position = channel.position( );
+        return transfer( channel, os, position, channel.size( ) - position, true );
+    }
+
+    /**
+     * Writes a part of the channel content to the output stream. The position of the channel is set after the
+     * last byte written. The output stream is not completed, so further data can be written, e.g. for a multipart
+     * response.
+     *
+     * @param channel  the file channel
+     * @param os       the output stream
+     * @param position the position of the first byte
+     * @param count    the number of bytes to write
+     * @return the number of bytes written
+     * @throws IOException if the file could not be read or the data could not be written
+     */
+    public static long transfer( FileChannel channel, OutputStream os, long position, long count )
+        throws IOException
+    {
+        return transfer( channel, os, position, count, false );
+    }
+
+    private static long transfer( FileChannel channel, OutputStream os, long position, long count, boolean last )
+        throws IOException
+    {
+        count = Math.min( count, channel.size( ) - position );
+        if ( count <= 0 )
+        {
+            return 0;
+        }
+        if ( os instanceof WritableByteChannel )
+        {
+            return transferTo( channel, position, count, (WritableByteChannel) os );
+        }
+        // sendContent completes the response, so it can only be used for the last data.
+        // Mapped files cannot be deleted on Windows until the buffer is garbage collected
+        Optional<Method> sendContent = last ? getSendContentMethod( os.getClass( ) ) : Optional.empty( );
+        if ( sendContent.isPresent( ) && count <= Integer.MAX_VALUE && !SystemUtils.IS_OS_WINDOWS )
+        {
+            os.flush( );
+            ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, position, count );
+            invoke( sendContent.get( ), os, buffer );
+            channel.position( position + count );
+            return count;
+        }
+        return copy( channel, os, position, count );
+    }
+
+    private static long transferTo( FileChannel channel, long position, long count, WritableByteChannel target )
+        throws IOException
+    {
+        long written = 0;
+        while ( written < count )
+        {
+            long n = channel.transferTo( position + written, count - written, target );
+            if ( n <= 0 )
+            {
+                break;
+            }
+            written += n;
+        }
+        channel.position( position + written );
+        return written;
+    }
+
+    private static long copy( FileChannel channel, OutputStream os, long position, long count )
+        throws IOException
+    {
+        byte[] buffer = BUFFER.get( );
+        ByteBuffer byteBuffer = ByteBuffer.wrap( buffer );
+        channel.position( position );
+        long written = 0;
+        while ( written < count )
+        {
+            byteBuffer.clear( );
+            byteBuffer.limit( (int) Math.min( buffer.length, count - written ) );
+            int n = channel.read( byteBuffer );
+            if ( n == -1 )
+            {
+                break;
+            }
+            os.write( buffer, 0, n );
+            written += n;
+        }
+        return written;
+    }
+
+    private static Optional<Method> getSendContentMethod( Class<?> outputClass )
+    {
+        return SEND_CONTENT_METHODS.computeIfAbsent( outputClass, clazz -> {
+            try
+            {
+                return Optional.of( clazz.getMethod( SEND_CONTENT_METHOD, ByteBuffer.class ) );
+            }
+            catch ( NoSuchMethodException | SecurityException e )
+            {
+                return Optional.empty( );
+            }
+        } );
+    }
+
+    private static void invoke( Method method, OutputStream os, ByteBuffer buffer )
+        throws IOException
+    {
+        try
+        {
+            method.invoke( os, buffer );
+        }
+        catch ( InvocationTargetException e )
+        {
+            if ( e.getCause( ) instanceof IOException )
+            {
+                throw (IOException) e.getCause( );
+            }
+            throw new IOException( "Could not send content: " + e.getCause( ), e.getCause( ) );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new IOException( "Could not send content: " + e.getMessage( ), e );
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A byte range of a HTTP range request (RFC 7233).
+ *
+ * @since 3.0
+ */
+public class HttpRange
+{
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Requests with more ranges are answered with the complete content
+     */
+    static final int MAX_RANGES = 16;
+
+    private final long start;
+
+    private final long end;
+
+    public HttpRange( long start, long end )
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * The position of the first byte
+     */
+    public long getStart()
+    {
+        return start;
+    }
+
+    /**
+     * The position of the last byte (inclusive)
+     */
+    public long getEnd()
+    {
+        return end;
+    }
+
+    public long getLength()
+    {
+        return end - start + 1;
+    }
+
+    /**
+     * Returns the value of the Content-Range header for this range.
+     */
+    public String getContentRange( long size )
+    {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    /**
+     * Parses the value of a Range header.
+     *
+     * @param header the header value, may be <code>null</code>
+     * @param size   the size of the content
+     * @return the satisfiable ranges in the order of the header. The list is empty, if no range is satisfiable.
+     * <code>null</code> is returned, if the header is missing, invalid or has too many ranges, so the
+     * complete content should be sent.
+     */
+    public static List<HttpRange> parse( String header, long size )
+    {
+        if ( StringUtils.isBlank( header ) || !header.startsWith( BYTES_UNIT ) )
+        {
+            return null;
+        }
+        String[] specs = StringUtils.split( header.substring( BYTES_UNIT.length() ), ',' );
+        if ( specs.length == 0 || specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+        List<HttpRange> ranges = new ArrayList<>( specs.length );
+        for ( String spec : specs )
+        {
+            spec = spec.trim();
+            int dash = spec.indexOf( '-' );
+            if ( dash < 0 )
+            {
+                return null;
+            }
+            try
+            {
+                String first = spec.substring( 0, dash ).trim();
+                String last = spec.substring( dash + 1 ).trim();
+                if ( first.isEmpty() )
+                {
+                    // suffix range: the last n bytes
+                    long suffixLength = Long.parseLong( last );
+                    if ( suffixLength < 0 )
+                    {
+                        return null;
+                    }
+                    if ( suffixLength > 0 && size > 0 )
+                    {
+                        ranges.add( new HttpRange( Math.max( 0, size - suffixLength ), size - 1 ) );
+                    }
+                }
+                else
+                {
+                    long start = Long.parseLong( first );
+                    long end = last.isEmpty() ? size - 1 : Math.min( Long.parseLong( last ), size - 1 );
+                    if ( start < 0 || ( !last.isEmpty() && Long.parseLong( last ) < start ) )
+                    {
+                        return null;
+                    }
+                    if ( start < size )
+                    {
+                        ranges.add( new HttpRange( start, end ) );
+                    }
+                }
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+        return ranges.isEmpty() ? Collections.emptyList() : ranges;
+    }
+}
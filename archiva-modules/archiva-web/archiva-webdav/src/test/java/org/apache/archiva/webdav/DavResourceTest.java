@@ -26,6 +26,7 @@
 import org.apache.archiva.repository.RepositoryRegistry;
 import org.apache.archiva.repository.storage.fs.FilesystemAsset;
 import org.apache.archiva.metadata.audit.AuditListener;
+import org.apache.archiva.proxy.model.StreamingDownload;
 import org.apache.archiva.repository.maven.MavenManagedRepository;
 import org.apache.archiva.test.utils.ArchivaSpringJUnit4ClassRunner;
 import org.apache.archiva.webdav.util.MimeTypes;
@@ -37,6 +38,7 @@
 import org.apache.jackrabbit.webdav.DavServletRequest;
 import org.apache.jackrabbit.webdav.DavServletResponse;
 import org.apache.jackrabbit.webdav.DavSession;
+import org.apache.jackrabbit.webdav.io.OutputContext;
 import org.apache.jackrabbit.webdav.lock.ActiveLock;
 import org.apache.jackrabbit.webdav.lock.LockInfo;
 import org.apache.jackrabbit.webdav.lock.LockManager;
@@ -51,10 +53,20 @@
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @RunWith( ArchivaSpringJUnit4ClassRunner.class )
 @ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
@@ -332,6 +344,142 @@ public void testUnlockThrowsDavExceptionIfResourceNotLocked()
         assertEquals( 0, resource.getLocks().length );
     }
 
+    @Test
+    public void testStreamingResourceSpoolsDownloadUntilCommitted()
+        throws Exception
+    {
+        Path tmpFile = baseDir.resolve( "streaming.jar.tmp" );
+        Path committedFile = baseDir.resolve( "streaming.jar" );
+        StreamingDownload download = new StreamingDownload();
+        download.transferStarted( tmpFile, 11, 0 );
+        Files.write( tmpFile, "hello".getBytes( StandardCharsets.UTF_8 ) );
+        ArchivaStreamingDavResource streamingResource = getStreamingDavResource( "/streaming.jar", committedFile, download );
+        assertTrue( streamingResource.exists() );
+
+        ByteArrayOutputContext outputContext = new ByteArrayOutputContext();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<?> spool = executor.submit( () -> {
+                streamingResource.spool( outputContext );
+                return null;
+            } );
+            Files.write( tmpFile, " world".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+            download.transferProgress();
+            Files.move( tmpFile, committedFile );
+            download.committed( committedFile );
+
+            spool.get( 10, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertEquals( 11, outputContext.contentLength );
+        assertEquals( "hello world", outputContext.getContent() );
+    }
+
+    @Test
+    public void testStreamingResourceReportsFailedDownload()
+        throws Exception
+    {
+        Path tmpFile = baseDir.resolve( "streaming.jar.tmp" );
+        StreamingDownload download = new StreamingDownload();
+        download.transferStarted( tmpFile, 11, 0 );
+        Files.write( tmpFile, "hello".getBytes( StandardCharsets.UTF_8 ) );
+        ArchivaStreamingDavResource streamingResource =
+            getStreamingDavResource( "/streaming.jar", baseDir.resolve( "streaming.jar" ), download );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<?> spool = executor.submit( () -> {
+                streamingResource.spool( new ByteArrayOutputContext() );
+                return null;
+            } );
+            download.failed( new IOException( "Transfer invalidated" ) );
+            try
+            {
+                spool.get( 10, TimeUnit.SECONDS );
+                fail( "Spooling a failed download should fail" );
+            }
+            catch ( ExecutionException e )
+            {
+                assertTrue( e.getCause() instanceof IOException );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private ArchivaStreamingDavResource getStreamingDavResource( String logicalPath, Path file,
+                                                                 StreamingDownload download )
+        throws LayoutException
+    {
+        return new ArchivaStreamingDavResource( new FilesystemAsset( repository, logicalPath, file.toAbsolutePath() ),
+                                                logicalPath, repository, "127.0.0.1", "guest", session,
+                                                resourceLocator, resourceFactory, mimeTypes,
+                                                Collections.<AuditListener> emptyList(), null, download );
+    }
+
+    private static class ByteArrayOutputContext
+        implements OutputContext
+    {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private long contentLength = -1;
+
+        @Override
+        public boolean hasStream()
+        {
+            return true;
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return out;
+        }
+
+        @Override
+        public void setContentLanguage( String contentLanguage )
+        {
+        }
+
+        @Override
+        public void setContentLength( long contentLength )
+        {
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public void setContentType( String contentType )
+        {
+        }
+
+        @Override
+        public void setModificationTime( long modificationTime )
+        {
+        }
+
+        @Override
+        public void setETag( String etag )
+        {
+        }
+
+        @Override
+        public void setProperty( String propertyName, String propertyValue )
+        {
+        }
+
+        String getContent()
+        {
+            return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+        }
+    }
+
     private class RootContextDavResourceFactory
         implements DavResourceFactory
     {
@@ -0,0 +1,192 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.common.filelock.DefaultFileLockManager;
+import org.apache.archiva.indexer.merger.TemporaryGroupIndex;
+import org.apache.archiva.repository.storage.StorageAsset;
+import org.apache.archiva.repository.storage.fs.FilesystemStorage;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MergedGroupIndexCacheTest
+    extends TestCase
+{
+    private static final long TTL = TimeUnit.HOURS.toMillis( 1 );
+
+    private Path baseDir;
+
+    private List<Path> memberIndexDirectories;
+
+    private FilesystemStorage storage;
+
+    private final AtomicInteger merges = new AtomicInteger( 0 );
+
+    private final List<TemporaryGroupIndex> cleaned = new CopyOnWriteArrayList<>();
+
+    private final MergedGroupIndexCache cache = new MergedGroupIndexCache( cleaned::add );
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        baseDir = Files.createTempDirectory( "merged-index" );
+        Path first = Files.createDirectories( baseDir.resolve( "first/.indexer" ) );
+        Path second = Files.createDirectories( baseDir.resolve( "second/.indexer" ) );
+        memberIndexDirectories = Arrays.asList( first, second );
+        storage = new FilesystemStorage( baseDir, new DefaultFileLockManager() );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        cache.shutdown();
+        FileUtils.deleteQuietly( baseDir.toFile() );
+        super.tearDown();
+    }
+
+    private TemporaryGroupIndex merge()
+        throws IOException
+    {
+        StorageAsset directory = storage.getAsset( "merged-" + merges.incrementAndGet() );
+        Files.createDirectories( directory.getFilePath() );
+        return new TemporaryGroupIndex( directory, directory.getName(), "group", 60 );
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneMerge()
+        throws Exception
+    {
+        CountDownLatch mergeStarted = new CountDownLatch( 1 );
+        CountDownLatch releaseMerge = new CountDownLatch( 1 );
+        MergedGroupIndexCache.Merger blockingMerger = () -> {
+            mergeStarted.countDown();
+            try
+            {
+                releaseMerge.await();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IOException( e );
+            }
+            return merge();
+        };
+        ExecutorService requests = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            Future<StorageAsset> first = requests.submit(
+                () -> cache.getMergedIndex( "group", Arrays.asList( "first", "second" ), memberIndexDirectories, TTL,
+                                            blockingMerger ) );
+            assertTrue( mergeStarted.await( 10, TimeUnit.SECONDS ) );
+            Future<StorageAsset> second = requests.submit(
+                () -> cache.getMergedIndex( "group", Arrays.asList( "second", "first" ), memberIndexDirectories, TTL,
+                                            blockingMerger ) );
+            releaseMerge.countDown();
+
+            assertEquals( first.get( 10, TimeUnit.SECONDS ).getPath(), second.get( 10, TimeUnit.SECONDS ).getPath() );
+            assertEquals( 1, merges.get() );
+        }
+        finally
+        {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAuthorizationScopesAreSeparated()
+        throws Exception
+    {
+        StorageAsset all = cache.getMergedIndex( "group", Arrays.asList( "first", "second" ), memberIndexDirectories,
+                                                 TTL, this::merge );
+        StorageAsset restricted = cache.getMergedIndex( "group", Collections.singletonList( "first" ),
+                                                        memberIndexDirectories.subList( 0, 1 ), TTL, this::merge );
+
+        assertFalse( all.getPath().equals( restricted.getPath() ) );
+        assertEquals( 2, merges.get() );
+    }
+
+    @Test
+    public void testChangedMemberIsMergedInTheBackground()
+        throws Exception
+    {
+        StorageAsset first = cache.getMergedIndex( "group", Arrays.asList( "first", "second" ),
+                                                   memberIndexDirectories, TTL, this::merge );
+        Files.setLastModifiedTime( memberIndexDirectories.get( 1 ),
+                                   FileTime.fromMillis( System.currentTimeMillis() + 60000 ) );
+
+        CountDownLatch merged = new CountDownLatch( 1 );
+        StorageAsset stale = cache.getMergedIndex( "group", Arrays.asList( "first", "second" ),
+                                                   memberIndexDirectories, TTL, () -> {
+                TemporaryGroupIndex index = merge();
+                merged.countDown();
+                return index;
+            } );
+        // the old index is served until the new one is merged
+        assertEquals( first.getPath(), stale.getPath() );
+        assertTrue( merged.await( 10, TimeUnit.SECONDS ) );
+
+        StorageAsset current = first;
+        for ( int i = 0; i < 100 && current.getPath().equals( first.getPath() ); i++ )
+        {
+            Thread.sleep( 50 );
+            current = cache.getMergedIndex( "group", Arrays.asList( "first", "second" ), memberIndexDirectories, TTL,
+                                            this::merge );
+        }
+        assertFalse( current.getPath().equals( first.getPath() ) );
+        assertEquals( 2, merges.get() );
+    }
+
+    @Test
+    public void testShutdownCleansIndexes()
+        throws Exception
+    {
+        cache.getMergedIndex( "group", Arrays.asList( "first", "second" ), memberIndexDirectories, TTL, this::merge );
+        cache.shutdown();
+
+        assertEquals( 1, cleaned.size() );
+    }
+}
@@ -0,0 +1,162 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.common.filelock.DefaultFileLockManager;
+import org.apache.archiva.repository.storage.StorageAsset;
+import org.apache.archiva.repository.storage.fs.FilesystemStorage;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MergedMetadataCacheTest
+    extends TestCase
+{
+    private static final List<String> MEMBERS = Arrays.asList( "first", "second" );
+
+    private Path baseDir;
+
+    private List<Path> memberFiles;
+
+    private FilesystemStorage groupStorage;
+
+    private final AtomicInteger merges = new AtomicInteger( 0 );
+
+    private final MergedMetadataCache cache = new MergedMetadataCache();
+
+    private MergedMetadataCache.Merger merger;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        baseDir = Files.createTempDirectory( "merged-metadata" );
+        Path first = baseDir.resolve( "first/maven-metadata.xml" );
+        Path second = baseDir.resolve( "second/maven-metadata.xml" );
+        Files.createDirectories( first.getParent() );
+        Files.createDirectories( second.getParent() );
+        Files.write( first, "<metadata/>".getBytes( StandardCharsets.UTF_8 ) );
+        Files.write( second, "<metadata/>".getBytes( StandardCharsets.UTF_8 ) );
+        memberFiles = Arrays.asList( first, second );
+        groupStorage = new FilesystemStorage( baseDir, new DefaultFileLockManager() );
+        merger = () -> {
+            merges.incrementAndGet();
+            StorageAsset asset = groupStorage.addAsset( "maven-metadata-group.xml", false );
+            asset.create();
+            return asset;
+        };
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteQuietly( baseDir.toFile() );
+        super.tearDown();
+    }
+
+    @Test
+    public void testUnchangedMembersAreNotMergedAgain()
+        throws Exception
+    {
+        StorageAsset first = cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        StorageAsset second = cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+
+        assertEquals( 1, merges.get() );
+        assertSame( first, second );
+    }
+
+    @Test
+    public void testChangedMemberIsMergedAgain()
+        throws Exception
+    {
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        Files.write( memberFiles.get( 1 ), "<metadata><groupId>g</groupId></metadata>".getBytes( StandardCharsets.UTF_8 ) );
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+
+        assertEquals( 2, merges.get() );
+    }
+
+    @Test
+    public void testInvalidate()
+        throws Exception
+    {
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        cache.invalidate( "group" );
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        cache.getMergedMetadata( "other", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+
+        assertEquals( 3, merges.get() );
+    }
+
+    @Test
+    public void testInvalidateMember()
+        throws Exception
+    {
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        cache.getMergedMetadata( "other", Collections.singletonList( "third" ), "maven-metadata-group.xml",
+                                 memberFiles, merger );
+
+        cache.invalidate( "second" );
+        cache.getMergedMetadata( "group", MEMBERS, "maven-metadata-group.xml", memberFiles, merger );
+        cache.getMergedMetadata( "other", Collections.singletonList( "third" ), "maven-metadata-group.xml",
+                                 memberFiles, merger );
+
+        // only the group with the changed member is merged again
+        assertEquals( 3, merges.get() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted()
+        throws Exception
+    {
+        MergedMetadataCache boundedCache = new MergedMetadataCache( 2 );
+        boundedCache.getMergedMetadata( "group", MEMBERS, "a/maven-metadata.xml", memberFiles, merger );
+        boundedCache.getMergedMetadata( "group", MEMBERS, "b/maven-metadata.xml", memberFiles, merger );
+        boundedCache.getMergedMetadata( "group", MEMBERS, "a/maven-metadata.xml", memberFiles, merger );
+        boundedCache.getMergedMetadata( "group", MEMBERS, "c/maven-metadata.xml", memberFiles, merger );
+        assertEquals( 2, boundedCache.size() );
+        assertEquals( 3, merges.get() );
+
+        // b was evicted, a is still cached
+        boundedCache.getMergedMetadata( "group", MEMBERS, "a/maven-metadata.xml", memberFiles, merger );
+        assertEquals( 3, merges.get() );
+        boundedCache.getMergedMetadata( "group", MEMBERS, "b/maven-metadata.xml", memberFiles, merger );
+        assertEquals( 4, merges.get() );
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.archiva.webdav;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import org.apache.archiva.configuration.ProxyConnectorConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the conditional and range requests of the repository servlet.
+ */
+public class RepositoryServletConditionalGetTest
+    extends AbstractRepositoryServletTestCase
+{
+    private static final String ARTIFACT = "org/apache/archiva/test/1.0/test-1.0.jar";
+
+    private static final String ARTIFACT_SHA1 = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        archivaConfiguration.getConfiguration().setProxyConnectors( new ArrayList<ProxyConnectorConfiguration>() );
+        startRepository();
+
+        Path artifactFile = repoRootInternal.resolve( ARTIFACT );
+        Files.createDirectories( artifactFile.getParent() );
+        org.apache.archiva.common.utils.FileUtils.writeStringToFile( artifactFile, Charset.defaultCharset(),
+                                                                     "0123456789abcdefghij" );
+        org.apache.archiva.common.utils.FileUtils.writeStringToFile( repoRootInternal.resolve( ARTIFACT + ".sha1" ),
+                                                                     Charset.defaultCharset(),
+                                                                     ARTIFACT_SHA1 + "  test-1.0.jar" );
+    }
+
+    @Override
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        super.tearDown();
+    }
+
+    @Test
+    public void testETagFromStoredChecksum()
+        throws Exception
+    {
+        WebResponse response = getWebResponse( "/repository/internal/" + ARTIFACT );
+        assertResponseOK( response );
+        assertEquals( "\"" + ARTIFACT_SHA1 + "\"", response.getResponseHeaderValue( "ETag" ) );
+        assertEquals( "bytes", response.getResponseHeaderValue( "Accept-Ranges" ) );
+    }
+
+    @Test
+    public void testWeakETagForStaleChecksum()
+        throws Exception
+    {
+        // the checksum belongs to a previous version of the artifact
+        Path artifactFile = repoRootInternal.resolve( ARTIFACT );
+        FileTime artifactTime = Files.getLastModifiedTime( artifactFile );
+        Files.setLastModifiedTime( repoRootInternal.resolve( ARTIFACT + ".sha1" ),
+                                   FileTime.fromMillis( artifactTime.toMillis() - TimeUnit.MINUTES.toMillis( 1 ) ) );
+
+        WebResponse response = getWebResponse( "/repository/internal/" + ARTIFACT );
+        assertResponseOK( response );
+        String etag = response.getResponseHeaderValue( "ETag" );
+        assertNotNull( etag );
+        assertTrue( etag.startsWith( "W/\"" ) );
+        assertFalse( etag.contains( ARTIFACT_SHA1 ) );
+    }
+
+    @Test
+    public void testIfNoneMatch()
+        throws Exception
+    {
+        WebRequest request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "If-None-Match", "\"other\", \"" + ARTIFACT_SHA1 + "\"" );
+        WebResponse response = getWebResponse( request );
+        assertEquals( HttpServletResponse.SC_NOT_MODIFIED, response.getStatusCode() );
+
+        request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "If-None-Match", "\"other\"" );
+        response = getWebResponse( request );
+        assertResponseOK( response );
+        assertEquals( "0123456789abcdefghij", response.getContentAsString() );
+    }
+
+    @Test
+    public void testSingleRange()
+        throws Exception
+    {
+        WebRequest request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "Range", "bytes=5-9" );
+        WebResponse response = getWebResponse( request );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatusCode() );
+        assertEquals( "bytes 5-9/20", response.getResponseHeaderValue( "Content-Range" ) );
+        assertEquals( "56789", response.getContentAsString() );
+
+        request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "Range", "bytes=-3" );
+        response = getWebResponse( request );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatusCode() );
+        assertEquals( "hij", response.getContentAsString() );
+    }
+
+    @Test
+    public void testMultipleRanges()
+        throws Exception
+    {
+        WebRequest request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "Range", "bytes=0-1,18-" );
+        WebResponse response = getWebResponse( request );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatusCode() );
+        String content = response.getContentAsString();
+        assertTrue( content.contains( "Content-Range: bytes 0-1/20\r\n\r\n01\r\n" ) );
+        assertTrue( content.contains( "Content-Range: bytes 18-19/20\r\n\r\nij\r\n" ) );
+    }
+
+    @Test
+    public void testUnsatisfiableRange()
+        throws Exception
+    {
+        WebRequest request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "Range", "bytes=100-200" );
+        WebResponse response = getWebResponse( request );
+        assertEquals( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode() );
+        assertEquals( "bytes */20", response.getResponseHeaderValue( "Content-Range" ) );
+    }
+
+    @Test
+    public void testIfRangeMismatchSendsCompleteFile()
+        throws Exception
+    {
+        WebRequest request = new GetMethodWebRequest( "http://localhost/repository/internal/" + ARTIFACT );
+        request.setAdditionalHeader( "Range", "bytes=5-9" );
+        request.setAdditionalHeader( "If-Range", "\"other\"" );
+        WebResponse response = getWebResponse( request );
+        assertResponseOK( response );
+        assertEquals( "0123456789abcdefghij", response.getContentAsString() );
+    }
+}
@@ -0,0 +1,148 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class FileTransferTest
+    extends TestCase
+{
+    private Path file;
+
+    private byte[] content;
+
+    @Before
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        content = new byte[200 * 1024 + 17];
+        new Random( 42 ).nextBytes( content );
+        file = Files.createTempFile( "filetransfer", ".jar" );
+        Files.write( file, content );
+    }
+
+    @After
+    @Override
+    public void tearDown()
+        throws Exception
+    {
+        Files.deleteIfExists( file );
+        super.tearDown();
+    }
+
+    @Test
+    public void testCopyToStream()
+        throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            assertEquals( content.length, FileTransfer.transfer( channel, os ) );
+        }
+        assertTrue( Arrays.equals( content, os.toByteArray() ) );
+    }
+
+    @Test
+    public void testTransferToChannel()
+        throws IOException
+    {
+        ChannelOutputStream os = new ChannelOutputStream();
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            channel.position( 10 );
+            assertEquals( content.length - 10, FileTransfer.transfer( channel, os ) );
+        }
+        assertTrue( Arrays.equals( Arrays.copyOfRange( content, 10, content.length ), os.toByteArray() ) );
+        assertTrue( os.channelWrites > 0 );
+    }
+
+    @Test
+    public void testSendContent()
+        throws IOException
+    {
+        SendContentOutputStream os = new SendContentOutputStream();
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            assertEquals( content.length, FileTransfer.transfer( channel, os ) );
+        }
+        assertTrue( Arrays.equals( content, os.toByteArray() ) );
+        assertEquals( SystemUtils.IS_OS_WINDOWS ? 0 : 1, os.sendContentCalls );
+    }
+
+    public static class ChannelOutputStream
+        extends ByteArrayOutputStream
+        implements WritableByteChannel
+    {
+        int channelWrites = 0;
+
+        @Override
+        public int write( ByteBuffer src )
+        {
+            channelWrites++;
+            int n = src.remaining();
+            byte[] data = new byte[n];
+            src.get( data );
+            write( data, 0, n );
+            return n;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+    }
+
+    public static class SendContentOutputStream
+        extends ByteArrayOutputStream
+    {
+        int sendContentCalls = 0;
+
+        public void sendContent( ByteBuffer content )
+        {
+            sendContentCalls++;
+            byte[] data = new byte[content.remaining()];
+            content.get( data );
+            write( data, 0, data.length );
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.apache.archiva.webdav.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ */
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class HttpRangeTest
+    extends TestCase
+{
+    @Test
+    public void testParseSingleRange()
+    {
+        List<HttpRange> ranges = HttpRange.parse( "bytes=10-19", 100 );
+        assertEquals( 1, ranges.size() );
+        assertEquals( 10, ranges.get( 0 ).getStart() );
+        assertEquals( 19, ranges.get( 0 ).getEnd() );
+        assertEquals( 10, ranges.get( 0 ).getLength() );
+        assertEquals( "bytes 10-19/100", ranges.get( 0 ).getContentRange( 100 ) );
+    }
+
+    @Test
+    public void testParseOpenAndSuffixRanges()
+    {
+        List<HttpRange> ranges = HttpRange.parse( "bytes=90-, -5, 95-200", 100 );
+        assertEquals( 3, ranges.size() );
+        assertEquals( 90, ranges.get( 0 ).getStart() );
+        assertEquals( 99, ranges.get( 0 ).getEnd() );
+        assertEquals( 95, ranges.get( 1 ).getStart() );
+        assertEquals( 99, ranges.get( 1 ).getEnd() );
+        assertEquals( 99, ranges.get( 2 ).getEnd() );
+    }
+
+    @Test
+    public void testParseUnsatisfiable()
+    {
+        assertTrue( HttpRange.parse( "bytes=100-", 100 ).isEmpty() );
+        assertTrue( HttpRange.parse( "bytes=-0", 100 ).isEmpty() );
+    }
+
+    @Test
+    public void testParseInvalid()
+    {
+        assertNull( HttpRange.parse( null, 100 ) );
+        assertNull( HttpRange.parse( "items=0-1", 100 ) );
+        assertNull( HttpRange.parse( "bytes=5-1", 100 ) );
+        assertNull( HttpRange.parse( "bytes=a-b", 100 ) );
+        assertNull( HttpRange.parse( "bytes=1", 100 ) );
+        StringBuilder tooMany = new StringBuilder( "bytes=0-0" );
+        for ( int i = 1; i <= HttpRange.MAX_RANGES; i++ )
+        {
+            tooMany.append( ',' ).append( i ).append( '-' ).append( i );
+        }
+        assertNull( HttpRange.parse( tooMany.toString(), 100 ) );
+    }
+}
@@ -27,14 +27,18 @@
 import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.commons.collections4.ComparatorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public abstract class AbstractMetadataRepository
     implements MetadataRepository
 {
+    private static final Logger log = LoggerFactory.getLogger( AbstractMetadataRepository.class );
 
     protected MetadataService metadataService;
 
@@ -354,6 +358,60 @@ public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySess
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Filters the stream of all facets. Implementations should override it to apply the filters in the store.
+     */
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream( RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                       String namePrefix, String startAfter, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        return getMetadataFacetStream( session, repositoryId, facetClazz, new QueryParameter( ) )
+            .filter( facet -> matchesFacetName( facet.getName( ), namePrefix, startAfter ) )
+            .skip( queryParameter.getOffset( ) ).limit( queryParameter.getLimit( ) );
+    }
+
+    /**
+     * Returns <code>true</code>, if the facet name starts with the prefix and is greater than <code>startAfter</code>.
+     * A <code>null</code> value does not restrict the name.
+     */
+    protected static boolean matchesFacetName( String name, String namePrefix, String startAfter )
+    {
+        return name != null && ( namePrefix == null || name.startsWith( namePrefix ) ) && ( startAfter == null
+            || name.compareTo( startAfter ) > 0 );
+    }
+
+    /**
+     * Filters and sorts the stream of all facets. Implementations should override it to read the range from the
+     * store.
+     */
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetRangeStream( RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                            String startName, String endName, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        return getMetadataFacetStream( session, repositoryId, facetClazz, new QueryParameter( ) )
+            .filter( facet -> isInFacetNameRange( facet.getName( ), startName, endName ) )
+            .sorted( getFacetNameComparator( queryParameter.isAscending( ) ) )
+            .skip( queryParameter.getOffset( ) ).limit( queryParameter.getLimit( ) );
+    }
+
+    /**
+     * Returns <code>true</code>, if the facet name is greater than or equal to <code>startName</code> and less than
+     * <code>endName</code>. A <code>null</code> bound does not restrict the name.
+     */
+    protected static boolean isInFacetNameRange( String name, String startName, String endName )
+    {
+        return name != null && ( startName == null || name.compareTo( startName ) >= 0 ) && ( endName == null
+            || name.compareTo( endName ) < 0 );
+    }
+
+    protected static <T extends MetadataFacet> Comparator<T> getFacetNameComparator( boolean ascending )
+    {
+        Comparator<T> comparator = Comparator.comparing( MetadataFacet::getName, Comparator.nullsLast( Comparator.naturalOrder( ) ) );
+        return ascending ? comparator : comparator.reversed( );
+    }
+
     @Override
     public <T extends MetadataFacet> T getMetadataFacet( RepositorySession session, String repositoryId, Class<T> clazz, String name ) throws MetadataRepositoryException
     {
@@ -421,4 +479,76 @@ public Stream<ArtifactMetadata> getArtifactStream( final RepositorySession sessi
         throw new UnsupportedOperationException( );
     }
 
+    /**
+     * Returns <code>true</code>, if there are listeners for the changes. Can be used to avoid reading the previous
+     * metadata, if nobody is interested in the changes.
+     */
+    protected boolean hasMetadataRepositoryListeners( )
+    {
+        return metadataService != null && !metadataService.getMetadataRepositoryListeners( ).isEmpty( );
+    }
+
+    /**
+     * Notifies the listeners about an added or updated artifact. The notification is sent through the session, see
+     * {@link RepositorySession#fireChangeEvent(Runnable)}.
+     *
+     * @param previous the stored metadata before the update or <code>null</code>, if the artifact is new
+     */
+    protected void fireArtifactUpdated( RepositorySession session, String repositoryId, ArtifactMetadata previous,
+                                        ArtifactMetadata artifact )
+    {
+        fireEvent( session, listener -> listener.artifactUpdated( repositoryId, previous, artifact ) );
+    }
+
+    protected void fireArtifactRemoved( RepositorySession session, String repositoryId, ArtifactMetadata artifact )
+    {
+        fireEvent( session, listener -> listener.artifactRemoved( repositoryId, artifact ) );
+    }
+
+    protected void fireProjectRemoved( RepositorySession session, String repositoryId, String namespace,
+                                       String projectId )
+    {
+        fireEvent( session, listener -> listener.projectRemoved( repositoryId, namespace, projectId ) );
+    }
+
+    protected void fireRepositoryChanged( RepositorySession session, String repositoryId )
+    {
+        fireEvent( session, listener -> listener.repositoryChanged( repositoryId ) );
+    }
+
+    private void fireEvent( RepositorySession session, Consumer<MetadataRepositoryListener> event )
+    {
+        if ( metadataService == null )
+        {
+            return;
+        }
+        List<MetadataRepositoryListener> listeners = metadataService.getMetadataRepositoryListeners( );
+        if ( listeners.isEmpty( ) )
+        {
+            return;
+        }
+        Runnable notification = ( ) -> {
+            for ( MetadataRepositoryListener listener : listeners )
+            {
+                try
+                {
+                    event.accept( listener );
+                }
+                catch ( RuntimeException e )
+                {
+                    // a failing listener must not break the change of the metadata
+                    log.error( "Metadata repository listener {} failed: {}", listener, e.getMessage( ), e );
+                }
+            }
+        };
+        if ( session == null )
+        {
+            notification.run( );
+        }
+        else
+        {
+            session.fireChangeEvent( notification );
+        }
+    }
+
 }
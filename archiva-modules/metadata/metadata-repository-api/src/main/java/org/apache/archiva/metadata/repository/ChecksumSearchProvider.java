@@ -0,0 +1,47 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implemented by metadata repositories, that index the checksums of all repositories together and can search
+ * multiple repositories with a single query.
+ *
+ * @since 3.0
+ */
+public interface ChecksumSearchProvider
+{
+    /**
+     * Returns the artifacts of the given repositories with the given checksum.
+     *
+     * @param session       The repository session
+     * @param repositoryIds The ids of the repositories to search
+     * @param checksum      The checksum value
+     * @return The list of artifacts, the repository id of each artifact is set.
+     * @throws MetadataRepositoryException if the query fails
+     */
+    List<ArtifactMetadata> getArtifactsByChecksum( RepositorySession session, Collection<String> repositoryIds,
+                                                   String checksum )
+        throws MetadataRepositoryException;
+}
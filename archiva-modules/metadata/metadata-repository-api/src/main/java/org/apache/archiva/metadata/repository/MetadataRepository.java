@@ -198,6 +198,62 @@ <T extends MetadataFacet> Stream<T> getMetadataFacetStream( RepositorySession se
                                                                 QueryParameter queryParameter )
         throws MetadataRepositoryException;
 
+    /**
+     * Returns a stream of the MetadataFacet elements of the given facet class, whose names start with the given
+     * prefix. The stream is ordered by facet name. The offset and limit of the query parameter are applied after the
+     * filters, so the stream can be read in pages, either by offset or by passing the name of the last facet of the
+     * previous page as <code>startAfter</code>.
+     * <p>
+     * The caller must close the stream.
+     *
+     * @param session        The repository session
+     * @param repositoryId   The repository id
+     * @param facetClazz     The class of the facet
+     * @param namePrefix     The prefix of the facet names, e.g. the namespace followed by a slash. If <code>null</code>,
+     *                       the names are not filtered.
+     * @param startAfter     Only facets with names greater than this name are returned. If <code>null</code>, the stream
+     *                       starts with the first facet.
+     * @param queryParameter The offset and limit of the result. The sort order is always ascending by name.
+     * @param <T>            The facet type
+     * @return A stream of facet objects, or a empty stream if no facet was found.
+     * @throws MetadataRepositoryException if the facet retrieval fails
+     * @since 3.0
+     */
+    <T extends MetadataFacet> Stream<T> getMetadataFacetStream( RepositorySession session,
+                                                                String repositoryId, Class<T> facetClazz,
+                                                                String namePrefix, String startAfter,
+                                                                QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
+    /**
+     * Returns a stream of the MetadataFacet elements of the given facet class, whose names are in the given range.
+     * It is used for facets, whose names start with a sortable timestamp, like the audit events and the repository
+     * statistics, to read a time range or the most recent entries without reading all facets of the repository.
+     * <p>
+     * The stream is ordered by facet name, ascending or descending as given by the query parameter. The offset and
+     * limit are applied after the range and the ordering, i.e. the most recent entries are returned by a descending
+     * query with a limit.
+     * </p>
+     * <p>
+     * The caller must close the stream.
+     *
+     * @param session        The repository session
+     * @param repositoryId   The repository id
+     * @param facetClazz     The class of the facet
+     * @param startName      The lower bound of the names (inclusive). If <code>null</code>, the range is not bounded.
+     * @param endName        The upper bound of the names (exclusive). If <code>null</code>, the range is not bounded.
+     * @param queryParameter The sort order, offset and limit of the result.
+     * @param <T>            The facet type
+     * @return A stream of facet objects, or a empty stream if no facet was found.
+     * @throws MetadataRepositoryException if the facet retrieval fails
+     * @since 3.0
+     */
+    <T extends MetadataFacet> Stream<T> getMetadataFacetRangeStream( RepositorySession session,
+                                                                     String repositoryId, Class<T> facetClazz,
+                                                                     String startName, String endName,
+                                                                     QueryParameter queryParameter )
+        throws MetadataRepositoryException;
+
     /**
      * Returns true, if there is facet data stored for the given facet id on the repository on repository level. The facet data itself
      * may be empty. It's just checking if there is an object stored for the given facet id.
@@ -0,0 +1,71 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+
+/**
+ * Listener for the changes of the artifact metadata in the metadata repository. The listeners are Spring beans and
+ * are notified by the metadata repository implementations through the {@link MetadataService}.
+ * <p>
+ * The events are sent by the session, in which the change was done. Sessions, that can revert their changes, send
+ * the events after the session is saved and drop the events of reverted changes. If a change cannot be described by
+ * the artifact events, the implementation sends {@link #repositoryChanged(String)}.
+ * </p>
+ *
+ * @since 3.0
+ */
+public interface MetadataRepositoryListener
+{
+    /**
+     * The artifact was added or updated.
+     *
+     * @param repositoryId the repository id
+     * @param previous     the stored metadata before the update, or <code>null</code>, if the artifact is new.
+     *                     It may not contain the facets.
+     * @param artifact     the new metadata
+     */
+    void artifactUpdated( String repositoryId, ArtifactMetadata previous, ArtifactMetadata artifact );
+
+    /**
+     * The artifact was removed.
+     *
+     * @param repositoryId the repository id
+     * @param artifact     the removed metadata
+     */
+    void artifactRemoved( String repositoryId, ArtifactMetadata artifact );
+
+    /**
+     * The project was removed. The artifacts of the project are reported before by {@link #artifactRemoved(String,
+     * ArtifactMetadata)}.
+     *
+     * @param repositoryId the repository id
+     * @param namespace    the namespace of the project
+     * @param projectId    the project id
+     */
+    void projectRemoved( String repositoryId, String namespace, String projectId );
+
+    /**
+     * The metadata of the repository was changed in a way, that is not reported by the other events.
+     *
+     * @param repositoryId the repository id
+     */
+    void repositoryChanged( String repositoryId );
+}
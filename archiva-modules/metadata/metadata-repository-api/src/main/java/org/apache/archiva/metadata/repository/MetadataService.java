@@ -25,6 +25,7 @@
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +46,8 @@
 
     private MetadataResolver metadataResolver = null;
 
+    private List<MetadataRepositoryListener> metadataRepositoryListeners = null;
+
     @Inject
     ApplicationContext applicationContext;
 
@@ -97,4 +100,24 @@ public MetadataResolver getMetadataResolver()
         }
         return this.metadataResolver;
     }
+
+    /**
+     * Returns the listeners, that are notified about changes of the artifact metadata.
+     */
+    public List<MetadataRepositoryListener> getMetadataRepositoryListeners()
+    {
+        // Lazy evaluation for the same reason as the resolver
+        if ( this.metadataRepositoryListeners == null )
+        {
+            this.metadataRepositoryListeners = applicationContext == null
+                ? new ArrayList<>( )
+                : new ArrayList<>( applicationContext.getBeansOfType( MetadataRepositoryListener.class ).values( ) );
+        }
+        return this.metadataRepositoryListeners;
+    }
+
+    public void setMetadataRepositoryListeners( List<MetadataRepositoryListener> metadataRepositoryListeners )
+    {
+        this.metadataRepositoryListeners = metadataRepositoryListeners;
+    }
 }
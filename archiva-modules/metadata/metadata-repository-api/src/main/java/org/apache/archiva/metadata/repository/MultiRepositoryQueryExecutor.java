@@ -0,0 +1,269 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs a query on multiple repositories of the metadata store in parallel.
+ * <p>
+ * Each repository is queried in its own session on a thread of a bounded pool, so the number of the parallel queries
+ * on the metadata store is limited, regardless of the number of the callers. The results are merged and
+ * deduplicated in the order of the repositories. If only the first match is requested, the result of the first
+ * repository in this order with a match is returned and the queries of the following repositories are cancelled.
+ * </p>
+ * <p>
+ * The executor must be shut down, if it is no longer used. The threads of the pool time out, if they are idle, so
+ * an executor may also be replaced without shutting it down, while queries are still running on it.
+ * </p>
+ *
+ * @since 3.0
+ */
+public class MultiRepositoryQueryExecutor
+{
+    private static final Logger log = LoggerFactory.getLogger( MultiRepositoryQueryExecutor.class );
+
+    /**
+     * A query on a single repository.
+     */
+    @FunctionalInterface
+    public interface RepositoryQuery<T>
+    {
+        Collection<T> query( RepositorySession session, String repositoryId )
+            throws MetadataRepositoryException;
+    }
+
+    private final RepositorySessionFactory repositorySessionFactory;
+
+    private final int maxParallelQueries;
+
+    private ExecutorService executor;
+
+    /**
+     * @param repositorySessionFactory the factory of the sessions of the metadata store
+     * @param maxParallelQueries       the maximum number of the queries, that run in parallel on the metadata store
+     */
+    public MultiRepositoryQueryExecutor( RepositorySessionFactory repositorySessionFactory, int maxParallelQueries )
+    {
+        this.repositorySessionFactory = repositorySessionFactory;
+        this.maxParallelQueries = maxParallelQueries;
+    }
+
+    /**
+     * Returns the artifacts of the given repositories with the given checksum. If the metadata store implements
+     * {@link ChecksumSearchProvider}, all repositories are searched with a single query.
+     *
+     * @param repositoryIds  the ids of the repositories
+     * @param checksum       the checksum value
+     * @param firstMatchOnly if <code>true</code>, only the artifacts of the first repository with a match are
+     *                       returned
+     * @return the artifacts, the repository id of each artifact is set.
+     * @throws MetadataRepositoryException if one of the queries fails
+     */
+    public List<ArtifactMetadata> getArtifactsByChecksum( Collection<String> repositoryIds, String checksum,
+                                                          boolean firstMatchOnly )
+        throws MetadataRepositoryException
+    {
+        try ( RepositorySession session = repositorySessionFactory.createSession( ) )
+        {
+            MetadataRepository metadataRepository = session.getRepository( );
+            if ( metadataRepository instanceof ChecksumSearchProvider )
+            {
+                List<ArtifactMetadata> artifacts = ( (ChecksumSearchProvider) metadataRepository ).getArtifactsByChecksum(
+                    session, repositoryIds, checksum );
+                if ( firstMatchOnly )
+                {
+                    for ( String repositoryId : repositoryIds )
+                    {
+                        List<ArtifactMetadata> repositoryArtifacts = new ArrayList<>( );
+                        for ( ArtifactMetadata artifact : artifacts )
+                        {
+                            if ( repositoryId.equals( artifact.getRepositoryId( ) ) )
+                            {
+                                repositoryArtifacts.add( artifact );
+                            }
+                        }
+                        if ( !repositoryArtifacts.isEmpty( ) )
+                        {
+                            return repositoryArtifacts;
+                        }
+                    }
+                }
+                return artifacts;
+            }
+        }
+        return query( repositoryIds, ( session, repositoryId ) -> {
+            List<ArtifactMetadata> artifacts =
+                session.getRepository( ).getArtifactsByChecksum( session, repositoryId, checksum );
+            for ( ArtifactMetadata artifact : artifacts )
+            {
+                artifact.setRepositoryId( repositoryId );
+            }
+            return artifacts;
+        }, MultiRepositoryQueryExecutor::getArtifactKey, firstMatchOnly );
+    }
+
+    /**
+     * Runs the query on the given repositories.
+     *
+     * @param repositoryIds  the ids of the repositories
+     * @param query          the query of a single repository
+     * @param key            the key of a result, results with the same key are only returned once
+     * @param firstMatchOnly if <code>true</code>, only the results of the first repository with a result are
+     *                       returned
+     * @return the results in the order of the repositories
+     * @throws MetadataRepositoryException if one of the queries fails
+     */
+    public <T> List<T> query( Collection<String> repositoryIds, RepositoryQuery<T> query, Function<T, ?> key,
+                              boolean firstMatchOnly )
+        throws MetadataRepositoryException
+    {
+        Map<Object, T> results = new LinkedHashMap<>( );
+        if ( repositoryIds.size( ) == 1 )
+        {
+            // no need to hand a single query over to the pool
+            try ( RepositorySession session = repositorySessionFactory.createSession( ) )
+            {
+                addResults( results, query.query( session, repositoryIds.iterator( ).next( ) ), key );
+            }
+            return new ArrayList<>( results.values( ) );
+        }
+
+        ExecutorService executorService = getExecutor( );
+        List<Future<Collection<T>>> futures = new ArrayList<>( repositoryIds.size( ) );
+        try
+        {
+            for ( String repositoryId : repositoryIds )
+            {
+                futures.add( executorService.submit( ( ) -> {
+                    try ( RepositorySession session = repositorySessionFactory.createSession( ) )
+                    {
+                        return query.query( session, repositoryId );
+                    }
+                } ) );
+            }
+            // the futures are read in the order of the repositories, so the first match is the match of the first
+            // repository, even if a later repository answers faster
+            for ( Future<Collection<T>> future : futures )
+            {
+                addResults( results, future.get( ), key );
+                if ( firstMatchOnly && !results.isEmpty( ) )
+                {
+                    break;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new MetadataRepositoryException( "Interrupted while waiting for the repository queries", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause( );
+            if ( cause instanceof MetadataRepositoryException )
+            {
+                throw (MetadataRepositoryException) cause;
+            }
+            throw new MetadataRepositoryException( cause.getMessage( ), cause );
+        }
+        finally
+        {
+            // the running queries are not interrupted, an interrupt closes the file channels of the stores
+            for ( Future<Collection<T>> future : futures )
+            {
+                future.cancel( false );
+            }
+        }
+        return new ArrayList<>( results.values( ) );
+    }
+
+    private static <T> void addResults( Map<Object, T> results, Collection<T> items, Function<T, ?> key )
+    {
+        if ( items != null )
+        {
+            for ( T item : items )
+            {
+                results.putIfAbsent( key.apply( item ), item );
+            }
+        }
+    }
+
+    private static String getArtifactKey( ArtifactMetadata artifact )
+    {
+        return artifact.getRepositoryId( ) + ":" + artifact.getNamespace( ) + ":" + artifact.getProject( ) + ":"
+            + artifact.getProjectVersion( ) + ":" + artifact.getId( );
+    }
+
+    private synchronized ExecutorService getExecutor( )
+    {
+        if ( executor == null )
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor( maxParallelQueries, maxParallelQueries, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>( ), new ThreadFactory( )
+            {
+                private final AtomicInteger counter = new AtomicInteger( );
+
+                @Override
+                public Thread newThread( Runnable r )
+                {
+                    Thread thread = new Thread( r, "archiva-metadata-query-" + counter.getAndIncrement( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            pool.allowCoreThreadTimeOut( true );
+            executor = pool;
+            log.debug( "Created the pool for {} parallel repository queries", maxParallelQueries );
+        }
+        return executor;
+    }
+
+    public int getMaxParallelQueries( )
+    {
+        return maxParallelQueries;
+    }
+
+    public synchronized void shutdown( )
+    {
+        if ( executor != null )
+        {
+            executor.shutdown( );
+            executor = null;
+        }
+    }
+}
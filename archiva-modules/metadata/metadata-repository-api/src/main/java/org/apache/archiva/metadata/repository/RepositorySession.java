@@ -124,6 +124,19 @@ public void markDirty()
         this.dirty = true;
     }
 
+    /**
+     * Sends the event about a change, that was done in this session, to the metadata repository listeners.
+     * The changes of this session are stored immediately, so the event is sent at once. Sessions, that can
+     * revert their changes, override this to send the events after the changes are saved.
+     *
+     * @param event the notification of the listeners
+     * @since 3.0
+     */
+    protected void fireChangeEvent( Runnable event )
+    {
+        event.run();
+    }
+
     public void refresh() throws MetadataSessionException {
 
     }
@@ -959,6 +959,81 @@ public void testGetMetadataFacetsStreamWithOffset( )
         }
     }
 
+    @Test
+    public void testGetMetadataFacetsStreamWithPrefixAndCursor( )
+            throws Exception
+    {
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            for (int i = 0; i<10; i++)
+            {
+                getRepository( ).addMetadataFacet( session, TEST_REPO_ID, new TestMetadataFacet( TEST_FACET_ID, TEST_VALUE, TEST_NAME+"/a/"+String.format("%03d", i) ) );
+                getRepository( ).addMetadataFacet( session, TEST_REPO_ID, new TestMetadataFacet( TEST_FACET_ID, TEST_VALUE, TEST_NAME+"/b/"+String.format("%03d", i) ) );
+            }
+        }
+
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            session.refreshAndDiscard();
+            tryAssert( ( ) -> {
+                Stream<TestMetadataFacet> str = getRepository( ).getMetadataFacetStream( session, TEST_REPO_ID, TestMetadataFacet.class,
+                    TEST_NAME + "/b/", TEST_NAME + "/b/004", new QueryParameter(0, 3));
+                assertNotNull( str );
+                List<TestMetadataFacet> result = str.collect( Collectors.toList( ) );
+                assertEquals( 3, result.size( ) );
+                for (int i=0; i<3; i++) {
+                    assertEquals(TEST_NAME + "/b/" + String.format("%03d",i+5), result.get(i).getName());
+                }
+            }, 5, 500 );
+
+            tryAssert( ( ) -> {
+                Stream<TestMetadataFacet> str = getRepository( ).getMetadataFacetStream( session, TEST_REPO_ID, TestMetadataFacet.class,
+                    TEST_NAME + "/a/", null, new QueryParameter(8, 10));
+                List<TestMetadataFacet> result = str.collect( Collectors.toList( ) );
+                assertEquals( 2, result.size( ) );
+                assertEquals( TEST_NAME + "/a/008", result.get( 0 ).getName( ) );
+                assertEquals( TEST_NAME + "/a/009", result.get( 1 ).getName( ) );
+            }, 5, 500 );
+        }
+    }
+
+    @Test
+    public void testGetMetadataFacetRangeStream( )
+            throws Exception
+    {
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            for (int i = 0; i<10; i++)
+            {
+                getRepository( ).addMetadataFacet( session, TEST_REPO_ID, new TestMetadataFacet( TEST_FACET_ID, TEST_VALUE, "2020/01/"+String.format("%02d", i+1)+"/120000.000" ) );
+            }
+        }
+
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            session.refreshAndDiscard();
+            tryAssert( ( ) -> {
+                Stream<TestMetadataFacet> str = getRepository( ).getMetadataFacetRangeStream( session, TEST_REPO_ID, TestMetadataFacet.class,
+                    "2020/01/03", "2020/01/07", new QueryParameter( ) );
+                assertNotNull( str );
+                List<TestMetadataFacet> result = str.collect( Collectors.toList( ) );
+                assertEquals( 4, result.size( ) );
+                for (int i=0; i<4; i++) {
+                    assertEquals("2020/01/" + String.format("%02d",i+3) + "/120000.000", result.get(i).getName());
+                }
+            }, 5, 500 );
+
+            tryAssert( ( ) -> {
+                Stream<TestMetadataFacet> str = getRepository( ).getMetadataFacetRangeStream( session, TEST_REPO_ID, TestMetadataFacet.class,
+                    null, "2020/01/09", new QueryParameter( false, 1, 2 ) );
+                List<TestMetadataFacet> result = str.collect( Collectors.toList( ) );
+                assertEquals( 2, result.size( ) );
+                assertEquals( "2020/01/07/120000.000", result.get( 0 ).getName( ) );
+                assertEquals( "2020/01/06/120000.000", result.get( 1 ).getName( ) );
+            }, 5, 500 );
+        }
+    }
+
     @Test
     public void testGetArtifactsByDateRangeStreamLowerAndUpperBound( )
             throws Exception
@@ -1622,6 +1697,49 @@ public void testGetProjectVersionsWithOtherNamespacesPresent( )
         }
     }
 
+    @Test
+    public void testGetArtifactsByChecksumInMultipleRepositories( )
+        throws Exception
+    {
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            ArtifactMetadata artifact = createArtifact( );
+            getRepository( ).updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+
+            ArtifactMetadata secondArtifact = createArtifact( );
+            secondArtifact.setRepositoryId( OTHER_REPO_ID );
+            getRepository( ).updateArtifact( session, OTHER_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, secondArtifact );
+            session.save( );
+        }
+
+        MultiRepositoryQueryExecutor executor = new MultiRepositoryQueryExecutor( getSessionFactory( ), 2 );
+        try
+        {
+            tryAssert( ( ) -> {
+                List<ArtifactMetadata> artifacts =
+                    executor.getArtifactsByChecksum( Arrays.asList( TEST_REPO_ID, OTHER_REPO_ID, "unknown-repo" ), TEST_SHA1, false );
+                assertEquals( 2, artifacts.size( ) );
+                assertEquals( new HashSet<>( Arrays.asList( TEST_REPO_ID, OTHER_REPO_ID ) ),
+                    artifacts.stream( ).map( ArtifactMetadata::getRepositoryId ).collect( Collectors.toSet( ) ) );
+            } );
+            tryAssert( ( ) -> {
+                List<ArtifactMetadata> artifacts =
+                    executor.getArtifactsByChecksum( Collections.singletonList( OTHER_REPO_ID ), TEST_MD5, false );
+                assertEquals( 1, artifacts.size( ) );
+                assertEquals( OTHER_REPO_ID, artifacts.get( 0 ).getRepositoryId( ) );
+            } );
+            tryAssert( ( ) -> {
+                List<ArtifactMetadata> artifacts =
+                    executor.getArtifactsByChecksum( Arrays.asList( TEST_REPO_ID, OTHER_REPO_ID ), TEST_SHA1, true );
+                assertEquals( 1, artifacts.size( ) );
+            } );
+        }
+        finally
+        {
+            executor.shutdown( );
+        }
+    }
+
     @Test
     public void testGetArtifactsByChecksumSingleResultSha256( )
         throws Exception
@@ -0,0 +1,196 @@
+package org.apache.archiva.metadata.repository;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith( ArchivaBlockJUnit4ClassRunner.class )
+public class MultiRepositoryQueryExecutorTest
+{
+    private final AtomicInteger openSessions = new AtomicInteger( );
+
+    private final MultiRepositoryQueryExecutor executor =
+        new MultiRepositoryQueryExecutor( new TestRepositorySessionFactory( ), 4 );
+
+    private final CountDownLatch secondAnswered = new CountDownLatch( 1 );
+
+    @After
+    public void tearDown( )
+    {
+        executor.shutdown( );
+    }
+
+    @Test
+    public void firstMatchIsTheMatchOfTheFirstRepository( )
+        throws Exception
+    {
+        // the second repository answers first
+        List<String> results = executor.query( Arrays.asList( "first", "second" ), ( session, repositoryId ) -> {
+            if ( "first".equals( repositoryId ) )
+            {
+                awaitSecondAnswer( );
+                return Collections.singletonList( "first-artifact" );
+            }
+            secondAnswered.countDown( );
+            return Collections.singletonList( "second-artifact" );
+        }, Function.identity( ), true );
+
+        assertEquals( Collections.singletonList( "first-artifact" ), results );
+    }
+
+    @Test
+    public void firstMatchSkipsRepositoriesWithoutResult( )
+        throws Exception
+    {
+        List<String> results = executor.query( Arrays.asList( "first", "second", "third" ), ( session, repositoryId ) ->
+            "first".equals( repositoryId ) ? Collections.<String>emptyList( )
+                : Collections.singletonList( repositoryId + "-artifact" ), Function.identity( ), true );
+
+        assertEquals( Collections.singletonList( "second-artifact" ), results );
+    }
+
+    @Test
+    public void resultsAreMergedInTheOrderOfTheRepositories( )
+        throws Exception
+    {
+        List<String> results = executor.query( Arrays.asList( "first", "second" ), ( session, repositoryId ) -> {
+            if ( "first".equals( repositoryId ) )
+            {
+                awaitSecondAnswer( );
+                return Arrays.asList( "a", "b" );
+            }
+            secondAnswered.countDown( );
+            return Arrays.asList( "b", "c" );
+        }, Function.identity( ), false );
+
+        assertEquals( Arrays.asList( "a", "b", "c" ), results );
+        assertEquals( 0, openSessions.get( ) );
+    }
+
+    @Test
+    public void failedQueryIsThrown( )
+        throws Exception
+    {
+        MetadataRepositoryException failure = new MetadataRepositoryException( "query failed" );
+        try
+        {
+            executor.query( Arrays.asList( "first", "second" ), ( session, repositoryId ) -> {
+                if ( "second".equals( repositoryId ) )
+                {
+                    throw failure;
+                }
+                return Collections.singletonList( "first-artifact" );
+            }, Function.identity( ), false );
+            fail( "The failure of the query should be thrown" );
+        }
+        catch ( MetadataRepositoryException e )
+        {
+            assertSame( failure, e );
+        }
+    }
+
+    @Test
+    public void queriesRunAgainAfterShutdown( )
+        throws Exception
+    {
+        RepositoryQueryOfId query = new RepositoryQueryOfId( );
+        assertEquals( Arrays.asList( "first", "second" ),
+                      executor.query( Arrays.asList( "first", "second" ), query, Function.identity( ), false ) );
+
+        executor.shutdown( );
+        assertEquals( Arrays.asList( "first", "second" ),
+                      executor.query( Arrays.asList( "first", "second" ), query, Function.identity( ), false ) );
+    }
+
+    private void awaitSecondAnswer( )
+    {
+        try
+        {
+            assertTrue( secondAnswered.await( 10, TimeUnit.SECONDS ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    private static class RepositoryQueryOfId
+        implements MultiRepositoryQueryExecutor.RepositoryQuery<String>
+    {
+        @Override
+        public List<String> query( RepositorySession session, String repositoryId )
+        {
+            return Collections.singletonList( repositoryId );
+        }
+    }
+
+    /**
+     * Creates sessions without metadata repository and counts the sessions, that are not closed.
+     */
+    private class TestRepositorySessionFactory
+        implements RepositorySessionFactory
+    {
+        @Override
+        public void open( )
+        {
+        }
+
+        @Override
+        public boolean isOpen( )
+        {
+            return true;
+        }
+
+        @Override
+        public RepositorySession createSession( )
+        {
+            openSessions.incrementAndGet( );
+            return new RepositorySession( null, null )
+            {
+                @Override
+                public void close( )
+                {
+                    openSessions.decrementAndGet( );
+                }
+            };
+        }
+
+        @Override
+        public void close( )
+        {
+        }
+    }
+}
@@ -27,6 +27,7 @@
 import org.apache.archiva.metadata.repository.RepositorySession;
 
 import java.util.Collection;
+import java.util.function.BiConsumer;
 
 /**
  *
@@ -55,12 +56,56 @@ public class RepositoryWalkingStatisticsProvider implements RepositoryStatistics
     public void populateStatistics( RepositorySession repositorySession, MetadataRepository metadataRepository, String repositoryId,
                                     RepositoryStatistics repositoryStatistics )
         throws MetadataRepositoryException
+    {
+        populateStatistics( repositorySession, metadataRepository, repositoryId, repositoryStatistics,
+                            ( ns, projects ) -> { } );
+    }
+
+    /**
+     * Walks each namespace of the given repository id and counts the artifacts. The projects found during the walk
+     * are reported to the given consumer.
+     *
+     * @param repositorySession
+     * @param metadataRepository The repository implementation
+     * @param repositoryId The repository Id
+     * @param repositoryStatistics The statistics object that must be populated
+     * @param projectConsumer Receives the namespaces, that contain projects, and their projects
+     * @throws MetadataRepositoryException Throws the repository exception, if an error occurs while accessing the repository.
+     */
+    public void populateStatistics( RepositorySession repositorySession, MetadataRepository metadataRepository, String repositoryId,
+                                    RepositoryStatistics repositoryStatistics,
+                                    BiConsumer<String, Collection<String>> projectConsumer )
+        throws MetadataRepositoryException
+    {
+        walkRepository( repositorySession, metadataRepository, repositoryId, repositoryStatistics, projectConsumer );
+    }
+
+    /**
+     * Walks the namespaces of the given repository id without visiting the artifacts.
+     *
+     * @param repositorySession
+     * @param metadataRepository The repository implementation
+     * @param repositoryId The repository Id
+     * @param projectConsumer Receives the namespaces, that contain projects, and their projects
+     * @throws MetadataRepositoryException Throws the repository exception, if an error occurs while accessing the repository.
+     */
+    public void walkProjects( RepositorySession repositorySession, MetadataRepository metadataRepository, String repositoryId,
+                              BiConsumer<String, Collection<String>> projectConsumer )
+        throws MetadataRepositoryException
+    {
+        walkRepository( repositorySession, metadataRepository, repositoryId, null, projectConsumer );
+    }
+
+    private void walkRepository( RepositorySession repositorySession, MetadataRepository metadataRepository, String repositoryId,
+                                 RepositoryStatistics repositoryStatistics,
+                                 BiConsumer<String, Collection<String>> projectConsumer )
+        throws MetadataRepositoryException
     {
         try
         {
             for ( String ns : metadataRepository.getRootNamespaces( repositorySession, repositoryId ) )
             {
-                walkRepository( repositorySession, metadataRepository, repositoryStatistics, repositoryId, ns );
+                walkRepository( repositorySession, metadataRepository, repositoryStatistics, projectConsumer, repositoryId, ns );
             }
         }
         catch ( MetadataResolutionException e )
@@ -69,18 +114,24 @@ public void populateStatistics( RepositorySession repositorySession, MetadataRep
         }
     }
 
-    private void walkRepository( RepositorySession repositorySession, MetadataRepository metadataRepository, RepositoryStatistics stats, String repositoryId,
-                                 String ns )
+    private void walkRepository( RepositorySession repositorySession, MetadataRepository metadataRepository, RepositoryStatistics stats,
+                                 BiConsumer<String, Collection<String>> projectConsumer, String repositoryId, String ns )
         throws MetadataResolutionException
     {
         for ( String namespace : metadataRepository.getChildNamespaces( repositorySession , repositoryId, ns ) )
         {
-            walkRepository( repositorySession, metadataRepository, stats, repositoryId, ns + "." + namespace );
+            walkRepository( repositorySession, metadataRepository, stats, projectConsumer, repositoryId, ns + "." + namespace );
         }
 
         Collection<String> projects = metadataRepository.getProjects( repositorySession , repositoryId, ns );
         if ( !projects.isEmpty() )
         {
+            projectConsumer.accept( ns, projects );
+            if ( stats == null )
+            {
+                return;
+            }
+
             stats.setTotalGroupCount( stats.getTotalGroupCount() + 1 );
             stats.setTotalProjectCount( stats.getTotalProjectCount() + projects.size() );
 
@@ -52,10 +52,4 @@ public boolean assignsFacet( Class<?> clazz )
     {
         return false;
     }
-
-    @Override
-    public Class<AuditEvent> getFacetClass( )
-    {
-        return null;
-    }
 }
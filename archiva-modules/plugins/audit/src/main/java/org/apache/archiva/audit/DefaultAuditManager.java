@@ -19,6 +19,7 @@
  * under the License.
  */
 
+import org.apache.archiva.metadata.QueryParameter;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
@@ -29,15 +30,14 @@
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.stream.Stream;
 
 /**
  *
@@ -61,25 +61,17 @@ public List<AuditEvent> getMostRecentAuditEvents( MetadataRepository metadataRep
         throws MetadataRepositoryException
     {
         try(RepositorySession session = repositorySessionFactory.createSession()) {
-            // TODO: consider a more efficient implementation that directly gets the last ten from the content repository
-            List<AuditRecord> records = new ArrayList<>();
+            // the most recent events of each repository are read in descending order of the names
+            QueryParameter queryParameter = new QueryParameter(false, 0, NUM_RECENT_EVENTS);
+            List<AuditEvent> events = new ArrayList<>();
             for (String repositoryId : repositoryIds) {
-                List<String> names = metadataRepository.getMetadataFacets(session, repositoryId, AuditEvent.FACET_ID);
-                for (String name : names) {
-                    records.add(new AuditRecord(repositoryId, name));
+                try (Stream<AuditEvent> stream = metadataRepository.getMetadataFacetRangeStream(session,
+                        repositoryId, AuditEvent.class, null, null, queryParameter)) {
+                    stream.forEach(events::add);
                 }
             }
-            Collections.sort(records);
-            records = records.subList(0, records.size() < NUM_RECENT_EVENTS ? records.size() : NUM_RECENT_EVENTS);
-
-            List<AuditEvent> events = new ArrayList<>(records.size());
-            for (AuditRecord record : records) {
-                AuditEvent auditEvent = (AuditEvent) metadataRepository.getMetadataFacet(session,
-                        record.repositoryId,
-                        AuditEvent.FACET_ID, record.name);
-                events.add(auditEvent);
-            }
-            return events;
+            events.sort(Comparator.comparing(AuditEvent::getName).reversed());
+            return events.size() > NUM_RECENT_EVENTS ? new ArrayList<>(events.subList(0, NUM_RECENT_EVENTS)) : events;
         }
     }
 
@@ -118,35 +110,20 @@ public List<AuditEvent> getAuditEventsInRange( MetadataRepository metadataReposi
                                                    Date endTime )
         throws MetadataRepositoryException
     {
+        // the names start with the timestamp, the end time is included
+        String startName = startTime == null ? null : createNameFormat().format(startTime);
+        String endName = endTime == null ? null : createNameFormat().format(new Date(endTime.getTime() + 1));
+        QueryParameter queryParameter = new QueryParameter(false, 0, Long.MAX_VALUE);
         try(RepositorySession session = repositorySessionFactory.createSession()) {
             List<AuditEvent> results = new ArrayList<>();
             for (String repositoryId : repositoryIds) {
-                List<String> list = metadataRepository.getMetadataFacets(session, repositoryId, AuditEvent.FACET_ID);
-                for (String name : list) {
-                    try {
-                        Date date = createNameFormat().parse(name);
-                        if ((startTime == null || !date.before(startTime)) && (endTime == null || !date.after(
-                                endTime))) {
-                            AuditEvent event = (AuditEvent) metadataRepository.getMetadataFacet(session,
-                                    repositoryId,
-                                    AuditEvent.FACET_ID, name);
-
-                            if (resource == null || event.getResource().startsWith(resource)) {
-                                results.add(event);
-                            }
-                        }
-                    } catch (ParseException e) {
-                        log.error("Invalid audit event found in the metadata repository: {}", e.getMessage());
-                        // continue and ignore this one
-                    }
+                try (Stream<AuditEvent> stream = metadataRepository.getMetadataFacetRangeStream(session,
+                        repositoryId, AuditEvent.class, startName, endName, queryParameter)) {
+                    stream.filter(event -> resource == null || (event.getResource() != null
+                            && event.getResource().startsWith(resource))).forEach(results::add);
                 }
             }
-            Collections.sort(results, new Comparator<AuditEvent>() {
-                @Override
-                public int compare(AuditEvent o1, AuditEvent o2) {
-                    return o2.getTimestamp().compareTo(o1.getTimestamp());
-                }
-            });
+            results.sort(Comparator.comparing(AuditEvent::getTimestamp).reversed());
             return results;
         }
     }
@@ -158,27 +135,6 @@ private static SimpleDateFormat createNameFormat()
         return fmt;
     }
 
-    private static final class AuditRecord
-        implements Comparable<AuditRecord>
-    {
-        private String repositoryId;
-
-        private String name;
-
-        public AuditRecord( String repositoryId, String name )
-        {
-            this.repositoryId = repositoryId;
-            this.name = name;
-        }
-
-        @Override
-        public int compareTo( AuditRecord other )
-        {
-            // reverse ordering
-            return other.name.compareTo( name );
-        }
-    }
-
     public RepositorySessionFactory getRepositorySessionFactory( )
     {
         return repositorySessionFactory;
@@ -21,8 +21,10 @@
 
 import junit.framework.TestCase;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.QueryParameter;
 import org.apache.archiva.metadata.model.facets.AuditEvent;
 import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.repository.Repository;
@@ -39,6 +41,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -125,14 +128,7 @@ public void testGetMostRecentEvents()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    getEventNames(expectedEvents));
-
-            for (AuditEvent event : expectedEvents.subList(1, expectedEvents.size())) {
-                EasyMock.expect(
-                        metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, event.getName())).andReturn(
-                        event);
-            }
+        expectRangeQuery( TEST_REPO_ID, expectedEvents );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -165,13 +161,7 @@ public void testGetMostRecentEventsLessThan10()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    getEventNames(expectedEvents));
-            for (AuditEvent event : expectedEvents) {
-                EasyMock.expect(
-                        metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, event.getName())).andReturn(
-                        event);
-            }
+        expectRangeQuery( TEST_REPO_ID, expectedEvents );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -194,31 +184,24 @@ public void testGetMostRecentEventsInterleavedRepositories()
         throws Exception
     {
         int numEvents = 11;
-        Map<String, List<String>> eventNames = new LinkedHashMap<String, List<String>>();
+        Map<String, List<AuditEvent>> repositoryEvents = new LinkedHashMap<>();
         List<AuditEvent> events = new ArrayList<>();
-        eventNames.put( TEST_REPO_ID, new ArrayList<String>() );
-        eventNames.put( TEST_REPO_ID_2, new ArrayList<String>() );
+        repositoryEvents.put( TEST_REPO_ID, new ArrayList<AuditEvent>() );
+        repositoryEvents.put( TEST_REPO_ID_2, new ArrayList<AuditEvent>() );
         for ( int i = 0; i < numEvents; i++ )
         {
             String repositoryId = i % 2 == 0 ? TEST_REPO_ID : TEST_REPO_ID_2;
             String num = MILLIS_FORMAT.format( i );
             AuditEvent event = createEvent( repositoryId, AUDIT_EVENT_BASE + num, getDefaultTestResourceName( num ) );
             events.add( event );
-            eventNames.get( repositoryId ).add( event.getName() );
+            repositoryEvents.get( repositoryId ).add( event );
         }
         sessionControl.reset();
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    eventNames.get(TEST_REPO_ID));
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID_2, AuditEvent.FACET_ID)).andReturn(
-                    eventNames.get(TEST_REPO_ID_2));
-
-            for (AuditEvent event : events.subList(1, events.size())) {
-                EasyMock.expect(metadataRepository.getMetadataFacet(session, event.getRepositoryId(),
-                        AuditEvent.FACET_ID, event.getName())).andReturn(event);
-            }
+        expectRangeQuery( TEST_REPO_ID, repositoryEvents.get( TEST_REPO_ID ) );
+        expectRangeQuery( TEST_REPO_ID_2, repositoryEvents.get( TEST_REPO_ID_2 ) );
         metadataRepositoryControl.replay();
 
         events =
@@ -246,8 +229,7 @@ public void testGetMostRecentEventsWhenEmpty()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Collections.<String>emptyList());
+        expectRangeQuery( TEST_REPO_ID, Collections.<AuditEvent>emptyList() );
         metadataRepositoryControl.replay();
 
         assertTrue( auditManager.getMostRecentAuditEvents( metadataRepository,
@@ -328,13 +310,7 @@ public void testGetEventsRangeInside()
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
 
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(event1.getName(), expectedEvent.getName(), event3.getName()));
-
-            // only match the middle one
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent.getName())).andReturn(expectedEvent);
-
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( event1, expectedEvent, event3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -365,13 +341,7 @@ public void testGetEventsRangeUpperOutside()
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
 
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(event1.getName(), expectedEvent2.getName(), expectedEvent3.getName()));
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent2.getName())).andReturn(expectedEvent2);
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent3.getName())).andReturn(expectedEvent3);
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( event1, expectedEvent2, expectedEvent3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -402,14 +372,7 @@ public void testGetEventsRangeLowerOutside()
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
 
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(expectedEvent1.getName(), expectedEvent2.getName(), event3.getName()));
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent1.getName())).andReturn(expectedEvent1);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent2.getName())).andReturn(expectedEvent2);
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( expectedEvent1, expectedEvent2, event3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -441,17 +404,7 @@ public void testGetEventsRangeLowerAndUpperOutside()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(expectedEvent1.getName(), expectedEvent2.getName(), expectedEvent3.getName()));
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent1.getName())).andReturn(expectedEvent1);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent2.getName())).andReturn(expectedEvent2);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent3.getName())).andReturn(expectedEvent3);
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( expectedEvent1, expectedEvent2, expectedEvent3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -484,18 +437,7 @@ public void testGetEventsWithResource()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(expectedEvent1.getName(), expectedEvent2.getName(), expectedEvent3.getName()));
-
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent1.getName())).andReturn(expectedEvent1);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent2.getName())).andReturn(expectedEvent2);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID,
-                    AuditEvent.FACET_ID, expectedEvent3.getName())).andReturn(expectedEvent3);
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( expectedEvent1, expectedEvent2, expectedEvent3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -525,16 +467,7 @@ public void testGetEventsWithNonExistantResource()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID)).andReturn(
-                    Arrays.asList(expectedEvent1.getName(), expectedEvent2.getName(), expectedEvent3.getName()));
-
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, expectedEvent1.getName())).andReturn(expectedEvent1);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, expectedEvent2.getName())).andReturn(expectedEvent2);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, expectedEvent3.getName())).andReturn(expectedEvent3);
-
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( expectedEvent1, expectedEvent2, expectedEvent3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -564,21 +497,8 @@ public void testGetEventsRangeMultipleRepositories()
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID))
-                    .andReturn(Arrays.asList(expectedEvent1.getName(), expectedEvent3.getName()));
-
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID_2, AuditEvent.FACET_ID))
-                    .andReturn(Arrays.asList(expectedEvent2.getName()));
-
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, expectedEvent1.getName()))
-                    .andReturn(expectedEvent1);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID_2, AuditEvent.FACET_ID, expectedEvent2.getName()))
-                    .andReturn(expectedEvent2);
-
-            EasyMock.expect(metadataRepository.getMetadataFacet(session, TEST_REPO_ID, AuditEvent.FACET_ID, expectedEvent3.getName()))
-                    .andReturn(expectedEvent3);
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( expectedEvent1, expectedEvent3 ) );
+        expectRangeQuery( TEST_REPO_ID_2, Collections.singletonList( expectedEvent2 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -600,17 +520,15 @@ public void testGetEventsRangeNotInside()
     {
         Date current = new Date();
 
-        String name1 = createEvent( new Date( current.getTime() - 12345 ) ).getName();
-        Date expectedTimestamp = new Date( current.getTime() - 3000 );
-        String name2 = createEvent( expectedTimestamp ).getName();
-        String name3 = createEvent( new Date( current.getTime() - 1000 ) ).getName();
+        AuditEvent event1 = createEvent( new Date( current.getTime() - 12345 ) );
+        AuditEvent event2 = createEvent( new Date( current.getTime() - 3000 ) );
+        AuditEvent event3 = createEvent( new Date( current.getTime() - 1000 ) );
 
         sessionControl.reset();
         factoryControl.reset();
         EasyMock.expect( repositorySessionFactory.createSession() ).andStubReturn( session );
         factoryControl.replay();
-            EasyMock.expect(metadataRepository.getMetadataFacets(session, TEST_REPO_ID, AuditEvent.FACET_ID))
-                    .andReturn(Arrays.asList(name1, name2, name3));
+        expectRangeQuery( TEST_REPO_ID, Arrays.asList( event1, event2, event3 ) );
         metadataRepositoryControl.replay();
 
         List<AuditEvent> events =
@@ -669,13 +587,31 @@ private static void assertTestEvent( AuditEvent event, String repositoryId, Stri
         assertEquals( resource, event.getResource() );
     }
 
-    private List<String> getEventNames( List<AuditEvent> events )
+    /**
+     * Expects a range query for the audit events of the repository and answers it like the metadata store, i.e. the
+     * events are filtered by the name range and the sort order, offset and limit of the query are applied.
+     */
+    private void expectRangeQuery( String repositoryId, List<AuditEvent> events )
+        throws MetadataRepositoryException
     {
-        List<String> names = new ArrayList<>( events.size() );
-        for ( AuditEvent event : events )
-        {
-            names.add( event.getName() );
-        }
-        return names;
+        EasyMock.expect( metadataRepository.getMetadataFacetRangeStream( EasyMock.eq( session ),
+                                                                         EasyMock.eq( repositoryId ),
+                                                                         EasyMock.eq( AuditEvent.class ),
+                                                                         EasyMock.<String>anyObject(),
+                                                                         EasyMock.<String>anyObject(),
+                                                                         EasyMock.anyObject( QueryParameter.class ) ) )
+            .andAnswer( () -> {
+                Object[] arguments = EasyMock.getCurrentArguments();
+                String startName = (String) arguments[3];
+                String endName = (String) arguments[4];
+                QueryParameter queryParameter = (QueryParameter) arguments[5];
+                Comparator<AuditEvent> order = Comparator.comparing( AuditEvent::getName );
+                return events.stream()
+                    .filter( event -> startName == null || event.getName().compareTo( startName ) >= 0 )
+                    .filter( event -> endName == null || event.getName().compareTo( endName ) < 0 )
+                    .sorted( queryParameter.isAscending() ? order : order.reversed() )
+                    .skip( queryParameter.getOffset() )
+                    .limit( queryParameter.getLimit() );
+            } );
     }
 }
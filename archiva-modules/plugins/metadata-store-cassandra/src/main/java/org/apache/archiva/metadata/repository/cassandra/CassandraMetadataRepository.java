@@ -55,6 +55,7 @@
 import org.apache.archiva.metadata.model.ProjectVersionReference;
 import org.apache.archiva.metadata.model.Scm;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepository;
+import org.apache.archiva.metadata.repository.ChecksumSearchProvider;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.MetadataResolutionException;
@@ -89,7 +90,7 @@
  * @since 2.0.0
  */
 public class CassandraMetadataRepository
-    extends AbstractMetadataRepository implements MetadataRepository
+    extends AbstractMetadataRepository implements MetadataRepository, ChecksumSearchProvider
 {
 
     private static final String ARTIFACT_METADATA_MODEL_KEY = "artifactMetadataModel.key";
@@ -371,6 +372,9 @@ public void removeNamespace( RepositorySession session, String repositoryId, Str
             logger.error( e.getMessage(), e );
             throw new MetadataRepositoryException( e.getMessage(), e );
         }
+
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repositoryId );
     }
 
 
@@ -452,7 +456,8 @@ public void removeRepository( RepositorySession session, final String repository
             this.metadataFacetTemplate.deleteRow( row.getKey() );
         }
 
-
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repositoryId );
     }
 
     // FIXME this one need peformance improvement maybe a cache?
@@ -637,6 +642,9 @@ public void removeProject( RepositorySession session, final String repositoryId,
         {
             this.artifactMetadataTemplate.deleteRow( row.getKey() );
         }
+
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repositoryId );
     }
 
     @Override
@@ -1415,6 +1423,19 @@ public void updateArtifact( RepositorySession session, String repositoryId, Stri
 
         boolean exists = this.artifactMetadataTemplate.isColumnsExist( key );
 
+        ArtifactMetadata previous = null;
+        if ( exists && hasMetadataRepositoryListeners() )
+        {
+            // only the size is read, the facets are stored separately
+            previous = new ArtifactMetadata();
+            previous.setRepositoryId( repositoryId );
+            previous.setNamespace( namespaceId );
+            previous.setProject( projectId );
+            previous.setProjectVersion( projectVersion );
+            previous.setId( artifactMeta.getId() );
+            previous.setSize( this.artifactMetadataTemplate.queryColumns( key ).getLong( SIZE.toString() ) );
+        }
+
         if ( exists )
         {
             // updater
@@ -1495,6 +1516,8 @@ public void updateArtifact( RepositorySession session, String repositoryId, Stri
         // now facets
         updateFacets( artifactMeta, artifactMetadataModel );
 
+        fireArtifactUpdated( session, repositoryId, previous, artifactMeta );
+
     }
 
     @Override
@@ -1667,36 +1690,96 @@ public int characteristics( )
     }
 
 
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz, QueryParameter queryParameter) throws MetadataRepositoryException
+    {
+        return getMetadataFacetStream( session, repositoryId, facetClazz, null, null, queryParameter );
+    }
+
     /**
      * Implementation is not very performant, because sorting is part of the stream. I do not know how to specify the sort
-     * in the query.
+     * in the query. The name filters are part of the query, so only the matching facets are sorted.
      * 
      * @param <T>
      * @param session
      * @param repositoryId
      * @param facetClazz
+     * @param namePrefix
+     * @param startAfter
      * @param queryParameter
      * @return
      * @throws MetadataRepositoryException
      */
     @Override
-    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz, QueryParameter queryParameter) throws MetadataRepositoryException
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream( RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                       String namePrefix, String startAfter, QueryParameter queryParameter )
+        throws MetadataRepositoryException
     {
         final MetadataFacetFactory<T> metadataFacetFactory = getFacetFactory( facetClazz );
-        final String facetId = metadataFacetFactory.getFacetId( );
+        RangeSlicesQuery<String, String, String> query =
+            createMetadataFacetQuery( repositoryId, metadataFacetFactory.getFacetId( ) );
 
-        QueryResult<OrderedRows<String, String, String>> result = HFactory //
+        if ( StringUtils.isNotEmpty( namePrefix ) )
+        {
+            String prefixEnd = namePrefix.substring( 0, namePrefix.length( ) - 1 )
+                + (char) ( namePrefix.charAt( namePrefix.length( ) - 1 ) + 1 );
+            query = query.addGteExpression( NAME.toString( ), namePrefix ) //
+                .addLtExpression( NAME.toString( ), prefixEnd );
+        }
+        if ( startAfter != null )
+        {
+            query = query.addGtExpression( NAME.toString( ), startAfter );
+        }
+
+        return getMetadataFacetStream( query.execute( ), metadataFacetFactory, repositoryId )
+            .sorted( getFacetNameComparator( true ) ).skip( queryParameter.getOffset( ) ).limit( queryParameter.getLimit( ) );
+    }
+
+    /**
+     * The facet rows have no clustering key, so the range is queried by the secondary index of the name column and
+     * only the facets in the range are sorted.
+     */
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetRangeStream( RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                            String startName, String endName, QueryParameter queryParameter )
+        throws MetadataRepositoryException
+    {
+        final MetadataFacetFactory<T> metadataFacetFactory = getFacetFactory( facetClazz );
+        RangeSlicesQuery<String, String, String> query =
+            createMetadataFacetQuery( repositoryId, metadataFacetFactory.getFacetId( ) );
+
+        if ( startName != null )
+        {
+            query = query.addGteExpression( NAME.toString( ), startName );
+        }
+        if ( endName != null )
+        {
+            query = query.addLtExpression( NAME.toString( ), endName );
+        }
+
+        return getMetadataFacetStream( query.execute( ), metadataFacetFactory, repositoryId )
+            .sorted( getFacetNameComparator( queryParameter.isAscending( ) ) )
+            .skip( queryParameter.getOffset( ) ).limit( queryParameter.getLimit( ) );
+    }
+
+    private RangeSlicesQuery<String, String, String> createMetadataFacetQuery( String repositoryId, String facetId )
+    {
+        return HFactory //
             .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
             .setColumnFamily( cassandraArchivaManager.getMetadataFacetFamilyName( ) ) //
             .setColumnNames( NAME.toString( ), KEY.toString( ), VALUE.toString( ) ) //
             .addEqualsExpression( REPOSITORY_NAME.toString( ), repositoryId ) //
             .addEqualsExpression( FACET_ID.toString( ), facetId ) //
             .setRange( null, null, false, Integer.MAX_VALUE )
-            .setRowCount( Integer.MAX_VALUE )
-            .execute( );
-
-
+            .setRowCount( Integer.MAX_VALUE );
+    }
 
+    /**
+     * Creates the facets from the rows of the result. Each row holds one property of a facet.
+     */
+    private <T extends MetadataFacet> Stream<T> getMetadataFacetStream( QueryResult<OrderedRows<String, String, String>> result,
+                                                                        MetadataFacetFactory<T> metadataFacetFactory, String repositoryId )
+    {
         return StreamSupport.stream( createResultSpliterator( result, ( Row<String, String, String> row, T lastItem)-> {
             ColumnSlice<String, String> columnSlice = row.getColumnSlice();
             String name = getStringValue( columnSlice, NAME.toString( ) );
@@ -1717,7 +1800,7 @@ public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySess
             }
             return updateItem;
 
-        }), false ).sorted( (f1, f2) -> f1.getName()!=null ? f1.getName().compareTo( f2.getName() ) : 1 ).skip( queryParameter.getOffset()).limit( queryParameter.getLimit());
+        }), false );
     }
 
     @Override
@@ -1987,9 +2070,6 @@ public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session,
         throws MetadataRepositoryException
     {
 
-        // cql cannot run or in queries so running twice the query
-        Map<String, ArtifactMetadata> artifactMetadataMap = new HashMap<>();
-
         RangeSlicesQuery<String, String, String> query = HFactory //
             .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
             .setColumnFamily( cassandraArchivaManager.getChecksumFamilyName()) //
@@ -2009,14 +2089,51 @@ public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session,
 
         }
 
+        return getArtifactsByKeys( artifactKeys );
+    }
+
+    /**
+     * The checksums of all repositories are stored in the same column family, so the repositories are searched
+     * with a single query.
+     */
+    @Override
+    public List<ArtifactMetadata> getArtifactsByChecksum( RepositorySession session, Collection<String> repositoryIds, String checksum )
+        throws MetadataRepositoryException
+    {
+        Set<String> repositories = new HashSet<>( repositoryIds );
+
+        QueryResult<OrderedRows<String, String, String>> result = HFactory //
+            .createRangeSlicesQuery( keyspace, ss, ss, ss ) //
+            .setColumnFamily( cassandraArchivaManager.getChecksumFamilyName() ) //
+            .setColumnNames( ARTIFACT_METADATA_MODEL_KEY, REPOSITORY_NAME.toString() ) //
+            .addEqualsExpression( CHECKSUM_VALUE.toString(), checksum ) //
+            .execute();
+
+        List<String> artifactKeys = new ArrayList<>();
+        for ( Row<String, String, String> row : result.get() )
+        {
+            ColumnSlice<String, String> columnSlice = row.getColumnSlice();
+            if ( repositories.contains( getStringValue( columnSlice, REPOSITORY_NAME.toString() ) ) )
+            {
+                artifactKeys.add( getStringValue( columnSlice, ARTIFACT_METADATA_MODEL_KEY ) );
+            }
+        }
+
+        return getArtifactsByKeys( artifactKeys );
+    }
+
+    private List<ArtifactMetadata> getArtifactsByKeys( List<String> artifactKeys )
+    {
+        Map<String, ArtifactMetadata> artifactMetadataMap = new HashMap<>();
+
         for (String key : artifactKeys) {
-            query = HFactory //
+            QueryResult<OrderedRows<String, String, String>> result = HFactory //
                     .createRangeSlicesQuery(keyspace, ss, ss, ss) //
                     .setColumnFamily(cassandraArchivaManager.getArtifactMetadataFamilyName()) //
                     .setColumnNames(NAMESPACE_ID.toString(), SIZE.toString(), ID.toString(), FILE_LAST_MODIFIED.toString(), MD5.toString(), PROJECT.toString(), PROJECT_VERSION.toString(),
                             REPOSITORY_NAME.toString(), VERSION.toString(), WHEN_GATHERED.toString(), SHA1.toString())
-                    .setKeys(key, key);
-            result = query.execute();
+                    .setKeys(key, key)
+                    .execute();
 
             for (Row<String, String, String> row : result.get()) {
                 ColumnSlice<String, String> columnSlice = row.getColumnSlice();
@@ -2025,7 +2142,7 @@ public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session,
             }
         }
 
-        return new ArrayList(artifactMetadataMap.values());
+        return new ArrayList<>(artifactMetadataMap.values());
     }
 
     /**
@@ -2161,6 +2278,9 @@ public void removeArtifact( RepositorySession session, final String repositoryId
             .build();
 
         this.projectVersionMetadataTemplate.deleteRow( key );
+
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repositoryId );
     }
 
     @Override
@@ -2177,6 +2297,8 @@ public void removeTimestampedArtifact( RepositorySession session, ArtifactMetada
 
         this.artifactMetadataTemplate.deleteRow( key );
 
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, artifactMetadata.getRepositoryId() );
     }
 
     @Override
@@ -2201,6 +2323,9 @@ public void removeFacetFromArtifact( RepositorySession session, final String rep
         {
             this.artifactMetadataTemplate.deleteRow( row.getKey() );
         }
+
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repositoryId );
     }
 
 
@@ -2312,6 +2437,9 @@ public void removeProjectVersion( RepositorySession session, final String repoId
             this.artifactMetadataTemplate.deleteRow( row.getKey() );
 
         }
+
+        // the removed artifacts are not known, so the listeners have to recount
+        fireRepositoryChanged( session, repoId );
     }
 
     @Override
@@ -0,0 +1,172 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the names of the facets stored below a facet directory in the order of the names. The facet names
+ * are relative paths, so the directories are listed one by one and only the directories, that may contain names in
+ * the given range, are read.
+ * <p>
+ * The entries of a directory are sorted by the facet name of the child directory itself and by the name followed by
+ * a slash for the facets below it. All names below a directory share this prefix, so the result is in the string
+ * order of the full names.
+ * </p>
+ */
+class FacetNameIterator
+    implements Iterator<String>
+{
+    private static final Logger log = LoggerFactory.getLogger( FacetNameIterator.class );
+
+    private final String searchFile;
+
+    private final String startName;
+
+    private final String endName;
+
+    private final Comparator<Entry> order;
+
+    private final Deque<Entry> stack = new ArrayDeque<>( );
+
+    private String next;
+
+    /**
+     * @param directory  the facet directory
+     * @param searchFile the name of the file, that marks a facet directory
+     * @param startName  the lower bound of the names (inclusive) or <code>null</code>
+     * @param endName    the upper bound of the names (exclusive) or <code>null</code>
+     * @param ascending  the order of the names
+     */
+    FacetNameIterator( Path directory, String searchFile, String startName, String endName, boolean ascending )
+    {
+        this.searchFile = searchFile;
+        this.startName = startName;
+        this.endName = endName;
+        Comparator<Entry> comparator = Comparator.comparing( entry -> entry.key );
+        this.order = ascending ? comparator : comparator.reversed( );
+        stack.push( new Entry( "", directory, true ) );
+    }
+
+    @Override
+    public boolean hasNext( )
+    {
+        while ( next == null && !stack.isEmpty( ) )
+        {
+            Entry entry = stack.pop( );
+            if ( entry.subtree )
+            {
+                pushChildren( entry );
+            }
+            else
+            {
+                next = entry.key;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next( )
+    {
+        if ( !hasNext( ) )
+        {
+            throw new NoSuchElementException( );
+        }
+        String name = next;
+        next = null;
+        return name;
+    }
+
+    private void pushChildren( Entry parent )
+    {
+        List<Entry> entries = new ArrayList<>( );
+        try ( DirectoryStream<Path> children = Files.newDirectoryStream( parent.path, Files::isDirectory ) )
+        {
+            for ( Path child : children )
+            {
+                String name = parent.key + child.getFileName( ).toString( );
+                if ( isInRange( name ) && Files.exists( child.resolve( searchFile ) ) )
+                {
+                    entries.add( new Entry( name, child, false ) );
+                }
+                String prefix = name + "/";
+                if ( mayContainNamesInRange( prefix ) )
+                {
+                    entries.add( new Entry( prefix, child, true ) );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( "Could not read facet directory {}: {}", parent.path, e.getMessage( ), e );
+            return;
+        }
+        entries.sort( order );
+        for ( int i = entries.size( ) - 1; i >= 0; i-- )
+        {
+            stack.push( entries.get( i ) );
+        }
+    }
+
+    private boolean isInRange( String name )
+    {
+        return ( startName == null || name.compareTo( startName ) >= 0 ) && ( endName == null
+            || name.compareTo( endName ) < 0 );
+    }
+
+    private boolean mayContainNamesInRange( String prefix )
+    {
+        if ( endName != null && prefix.compareTo( endName ) >= 0 )
+        {
+            return false;
+        }
+        return startName == null || startName.startsWith( prefix ) || prefix.compareTo( startName ) > 0;
+    }
+
+    private static final class Entry
+    {
+        final String key;
+
+        final Path path;
+
+        final boolean subtree;
+
+        Entry( String key, Path path, boolean subtree )
+        {
+            this.key = key;
+            this.path = path;
+            this.subtree = subtree;
+        }
+    }
+}
@@ -65,19 +65,26 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * File implementation of the metadata repository. It uses property files in a separate directory tree.
- * The implementation has no fulltext index. So fulltext queries are not supported.
+ * Checksums, attributes and facet properties are found by a word based inverted index, that is stored
+ * beside the property files (see {@link MetadataIndex}).
  *
  * Some retrieval methods may not be very efficient.
  */
@@ -98,6 +105,8 @@
 
     private Map<String, Path> baseDirectory = new HashMap<>();
 
+    private final Map<String, MetadataIndex> metadataIndexes = new ConcurrentHashMap<>();
+
     public FileMetadataRepository(MetadataService metadataService,
                                   ArchivaConfiguration configuration) {
         super(metadataService);
@@ -125,6 +134,238 @@ private Path getDirectory(String repoId)
         return getBaseDirectory(repoId).resolve("content");
     }
 
+    private MetadataIndex getMetadataIndex(String repoId)
+            throws IOException {
+        MetadataIndex index = metadataIndexes.get(repoId);
+        if (index == null) {
+            Path directory = getBaseDirectory(repoId).resolve("index");
+            index = metadataIndexes.computeIfAbsent(repoId, id -> new MetadataIndex(directory));
+        }
+        return index;
+    }
+
+    /**
+     * Builds the metadata index of the repository from the stored version properties, if it does not exist yet.
+     */
+    private void ensureMetadataIndex(String repoId, MetadataIndex index)
+            throws IOException {
+        // the lock keeps updates of the metadata from running between the scan and the write of the index
+        synchronized (index) {
+            if (index.isComplete()) {
+                return;
+            }
+            log.info("Building metadata index of repository {}", repoId);
+            Map<String, Set<String>> terms = new HashMap<>();
+            Path content = getDirectory(repoId);
+            if (Files.exists(content)) {
+                String fileName = PROJECT_VERSION_METADATA_KEY + ".properties";
+                List<Path> files;
+                try (Stream<Path> found = Files.find(content, 4,
+                        (path, attributes) -> fileName.equals(path.getFileName().toString()))) {
+                    files = found.collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    // content/<namespace>/<project>/<version>/version-metadata.properties
+                    Path relative = content.relativize(file);
+                    if (relative.getNameCount() == 4) {
+                        Properties properties = readOrCreateProperties(file.getParent(), PROJECT_VERSION_METADATA_KEY);
+                        MetadataIndex.getTerms(relative.getName(0).toString(), relative.getName(1).toString(),
+                                relative.getName(2).toString(), properties).forEach((term, documents) ->
+                                terms.computeIfAbsent(term, t -> new LinkedHashSet<>()).addAll(documents));
+                    }
+                }
+            }
+            index.rebuild(terms);
+        }
+    }
+
+    /**
+     * Writes the properties of a project version, updates the metadata index with the changed terms and notifies
+     * the listeners about the changed artifacts.
+     */
+    private void writeVersionProperties(RepositorySession session, String repoId, String namespace, String projectId,
+                                        String projectVersion, Properties properties)
+            throws IOException {
+        Path directory = getDirectory(repoId).resolve(namespace + "/" + projectId + "/" + projectVersion);
+        Properties oldProperties = readOrCreateProperties(directory, PROJECT_VERSION_METADATA_KEY);
+        writeProperties(properties, directory, PROJECT_VERSION_METADATA_KEY);
+        updateMetadataIndex(repoId, namespace, projectId, projectVersion, oldProperties, properties);
+        fireArtifactChanges(session, repoId, namespace, projectId, projectVersion, oldProperties, properties);
+    }
+
+    /**
+     * Deletes a project version, removes its terms from the metadata index and notifies the listeners about the
+     * removed artifacts.
+     */
+    private void deleteVersionDirectory(RepositorySession session, String repoId, String namespace, String projectId,
+                                        String projectVersion)
+            throws IOException {
+        Path directory = getDirectory(repoId).resolve(namespace + "/" + projectId + "/" + projectVersion);
+        Properties oldProperties = readOrCreateProperties(directory, PROJECT_VERSION_METADATA_KEY);
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory(directory);
+        updateMetadataIndex(repoId, namespace, projectId, projectVersion, oldProperties, new Properties());
+        fireArtifactChanges(session, repoId, namespace, projectId, projectVersion, oldProperties, new Properties());
+    }
+
+    /**
+     * Compares the artifacts of the old and new version properties and notifies the listeners about the artifacts,
+     * that are added, changed or removed.
+     */
+    private void fireArtifactChanges(RepositorySession session, String repoId, String namespace, String projectId,
+                                     String projectVersion, Properties oldProperties, Properties newProperties) {
+        if (!hasMetadataRepositoryListeners()) {
+            return;
+        }
+        Map<String, Map<String, String>> oldValues = getArtifactProperties(oldProperties);
+        Map<String, Map<String, String>> newValues = getArtifactProperties(newProperties);
+        if (oldValues.equals(newValues)) {
+            return;
+        }
+        Map<String, ArtifactMetadata> oldArtifacts =
+                readArtifacts(repoId, namespace, projectId, projectVersion, oldProperties);
+        Map<String, ArtifactMetadata> newArtifacts =
+                readArtifacts(repoId, namespace, projectId, projectVersion, newProperties);
+        for (Map.Entry<String, ArtifactMetadata> artifact : oldArtifacts.entrySet()) {
+            if (!newArtifacts.containsKey(artifact.getKey())) {
+                fireArtifactRemoved(session, repoId, artifact.getValue());
+            }
+        }
+        for (Map.Entry<String, ArtifactMetadata> artifact : newArtifacts.entrySet()) {
+            String id = artifact.getKey();
+            if (!newValues.get(id).equals(oldValues.get(id))) {
+                fireArtifactUpdated(session, repoId, oldArtifacts.get(id), artifact.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the artifact properties of the version properties, grouped by the artifact id.
+     */
+    private static Map<String, Map<String, String>> getArtifactProperties(Properties properties) {
+        Map<String, Map<String, String>> artifacts = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            // artifact:<field>:<id>[:<key>]
+            String[] parts = name.split(":", 4);
+            if (parts.length >= 3 && "artifact".equals(parts[0])) {
+                artifacts.computeIfAbsent(parts[2], id -> new HashMap<>()).put(name, properties.getProperty(name));
+            }
+        }
+        return artifacts;
+    }
+
+    private void updateMetadataIndex(String repoId, String namespace, String projectId, String projectVersion,
+                                     Properties oldProperties, Properties newProperties)
+            throws IOException {
+        Map<String, Set<String>> oldTerms = MetadataIndex.getTerms(namespace, projectId, projectVersion, oldProperties);
+        Map<String, Set<String>> newTerms = MetadataIndex.getTerms(namespace, projectId, projectVersion, newProperties);
+        Map<String, Set<String>> removed = difference(oldTerms, newTerms);
+        Map<String, Set<String>> added = difference(newTerms, oldTerms);
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            getMetadataIndex(repoId).update(removed, added);
+        }
+    }
+
+    private static Map<String, Set<String>> difference(Map<String, Set<String>> terms, Map<String, Set<String>> other) {
+        Map<String, Set<String>> difference = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : terms.entrySet()) {
+            Set<String> documents = new HashSet<>(entry.getValue());
+            documents.removeAll(other.getOrDefault(entry.getKey(), Collections.emptySet()));
+            if (!documents.isEmpty()) {
+                difference.put(entry.getKey(), documents);
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Returns the artifacts of the index documents, that contain all terms of at least one of the alternatives.
+     * The documents are checked against the stored metadata, and entries of metadata that has been changed or
+     * removed without updating the index, e.g. by removing a whole project, are dropped from the index.
+     *
+     * @param repositoryId the repository or <code>null</code> for all repositories
+     * @param alternatives the lists of terms, that must be found together
+     */
+    private List<ArtifactMetadata> findArtifacts(RepositorySession session, String repositoryId,
+                                                 List<List<String>> alternatives)
+            throws MetadataRepositoryException {
+        return findArtifacts(session, repositoryId, alternatives, (storedTerms, document) -> true);
+    }
+
+    /**
+     * Returns the artifacts of the index documents, that contain all terms of at least one of the alternatives and
+     * are accepted by the filter.
+     *
+     * @param filter checks the stored terms of the project version for a document, that contains all terms
+     */
+    private List<ArtifactMetadata> findArtifacts(RepositorySession session, String repositoryId,
+                                                 List<List<String>> alternatives,
+                                                 BiPredicate<Map<String, Set<String>>, String> filter)
+            throws MetadataRepositoryException {
+        Collection<String> repositoryIds = repositoryId == null
+                ? configuration.getConfiguration().getManagedRepositoriesAsMap().keySet()
+                : Collections.singletonList(repositoryId);
+        Map<String, ArtifactMetadata> artifacts = new LinkedHashMap<>();
+        try {
+            for (String repoId : repositoryIds) {
+                MetadataIndex index = getMetadataIndex(repoId);
+                ensureMetadataIndex(repoId, index);
+                Path content = getDirectory(repoId);
+                Map<String, Map<String, Set<String>>> storedTerms = new HashMap<>();
+                for (List<String> terms : alternatives) {
+                    Set<String> documents = null;
+                    for (String term : terms) {
+                        Set<String> termDocuments = index.get(term);
+                        if (documents == null) {
+                            documents = termDocuments;
+                        } else {
+                            documents.retainAll(termDocuments);
+                        }
+                        if (documents.isEmpty()) {
+                            break;
+                        }
+                    }
+                    if (documents == null) {
+                        continue;
+                    }
+                    for (String document : documents) {
+                        // <namespace>/<project>/<version>[/<id>]
+                        String[] coordinates = document.split("/", 4);
+                        String namespace = coordinates[0];
+                        String projectId = coordinates[1];
+                        String projectVersion = coordinates[2];
+                        String id = coordinates.length > 3 ? coordinates[3] : null;
+                        Map<String, Set<String>> stored = storedTerms.computeIfAbsent(
+                                MetadataIndex.getDocument(namespace, projectId, projectVersion, null),
+                                version -> MetadataIndex.getTerms(namespace, projectId, projectVersion,
+                                        readOrCreateProperties(content.resolve(version), PROJECT_VERSION_METADATA_KEY)));
+                        Map<String, Set<String>> stale = new HashMap<>();
+                        for (String term : terms) {
+                            if (!stored.getOrDefault(term, Collections.emptySet()).contains(document)) {
+                                stale.put(term, Collections.singleton(document));
+                            }
+                        }
+                        if (!stale.isEmpty()) {
+                            index.update(stale, Collections.emptyMap());
+                            continue;
+                        }
+                        if (!filter.test(stored, document)) {
+                            continue;
+                        }
+                        for (ArtifactMetadata artifact : getArtifacts(session, repoId, namespace, projectId, projectVersion)) {
+                            if (id == null || id.equals(artifact.getId())) {
+                                artifacts.put(repoId + "/" + MetadataIndex.getDocument(namespace, projectId,
+                                        projectVersion, artifact.getId()), artifact);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException | MetadataResolutionException e) {
+            throw new MetadataRepositoryException(e.getMessage(), e);
+        }
+        return new ArrayList<>(artifacts.values());
+    }
+
     @Override
     public void updateProject(RepositorySession session, String repoId, ProjectMetadata project) {
         updateProject(session, repoId, project.getNamespace(), project.getId());
@@ -221,7 +462,7 @@ public void updateProjectVersion(RepositorySession session, String repoId, Strin
                 setProperty(properties, "dependency." + i + ".type", dependency.getType());
                 setProperty(properties, "dependency." + i + ".optional", String.valueOf(dependency.isOptional()));
 
-                updateProjectReference(repoId, dependency.getNamespace(), dependency.getArtifactId(),
+                updateProjectReference(session, repoId, dependency.getNamespace(), dependency.getArtifactId(),
                         dependency.getVersion(), reference);
 
                 i++;
@@ -232,7 +473,7 @@ public void updateProjectVersion(RepositorySession session, String repoId, Strin
 
             updateProjectVersionFacets(versionMetadata, properties);
 
-            writeProperties(properties, directory, PROJECT_VERSION_METADATA_KEY);
+            writeVersionProperties(session, repoId, namespace, projectId, versionMetadata.getId(), properties);
         } catch (IOException e) {
             log.error("Could not update project version {}, {}, {}: {}", repoId, namespace, versionMetadata.getId(), e.getMessage(), e);
         }
@@ -263,8 +504,8 @@ private static void clearMetadataFacetProperties(Collection<MetadataFacet> facet
         }
     }
 
-    private void updateProjectReference(String repoId, String namespace, String projectId, String projectVersion,
-                                        ProjectVersionReference reference) {
+    private void updateProjectReference(RepositorySession session, String repoId, String namespace, String projectId,
+                                        String projectVersion, ProjectVersionReference reference) {
         try {
             Path directory = getDirectory(repoId).resolve(namespace + "/" + projectId + "/" + projectVersion);
 
@@ -276,7 +517,7 @@ private void updateProjectReference(String repoId, String namespace, String proj
             setProperty(properties, "ref:reference." + i + ".projectVersion", reference.getProjectVersion());
             setProperty(properties, "ref:reference." + i + ".referenceType", reference.getReferenceType().toString());
 
-            writeProperties(properties, directory, PROJECT_VERSION_METADATA_KEY);
+            writeVersionProperties(session, repoId, namespace, projectId, projectVersion, properties);
         } catch (IOException e) {
             log.error("Could not update project reference {}, {}, {}, {}: {}", repoId, namespace, projectId, projectVersion, e.getMessage(), e);
         }
@@ -317,6 +558,12 @@ public List<String> getMetadataFacets(RepositorySession session, String repoId,
 
     @Override
     public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz, QueryParameter queryParameter) throws MetadataRepositoryException {
+        return getMetadataFacetStream(session, repositoryId, facetClazz, null, null, queryParameter);
+    }
+
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                      String namePrefix, String startAfter, QueryParameter queryParameter) throws MetadataRepositoryException {
         final MetadataFacetFactory<T> metadataFacetFactory = getFacetFactory(facetClazz);
         if (metadataFacetFactory == null) {
             return null;
@@ -325,16 +572,53 @@ public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySess
         final String searchFile = METADATA_KEY + ".properties";
         try {
             Path directory = getMetadataDirectory(repositoryId, facetId);
-            return Files.walk(directory, FileVisitOption.FOLLOW_LINKS).filter(Files::isDirectory)
+            // the facet names are relative paths, so only the directory of the prefix is walked
+            Path start = directory;
+            if (namePrefix != null && namePrefix.lastIndexOf('/') > 0) {
+                start = directory.resolve(namePrefix.substring(0, namePrefix.lastIndexOf('/'))).normalize();
+            }
+            if (!start.startsWith(directory.normalize()) || !Files.isDirectory(start)) {
+                return Stream.empty();
+            }
+            return Files.walk(start, FileVisitOption.FOLLOW_LINKS).filter(Files::isDirectory)
                     .filter(path -> Files.exists(path.resolve(searchFile)))
                     .map(path -> directory.relativize(path).toString())
+                    .filter(name -> matchesFacetName(name, namePrefix, startAfter))
                     .sorted()
                     .skip(queryParameter.getOffset())
                     .limit(queryParameter.getLimit())
-                    .map(name -> getMetadataFacet(session, repositoryId, facetClazz, name));
+                    .map(name -> getMetadataFacet(session, repositoryId, facetClazz, name))
+                    .filter(Objects::nonNull);
+        } catch (IOException e) {
+            throw new MetadataRepositoryException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetRangeStream(RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                           String startName, String endName, QueryParameter queryParameter) throws MetadataRepositoryException {
+        final MetadataFacetFactory<T> metadataFacetFactory = getFacetFactory(facetClazz);
+        if (metadataFacetFactory == null) {
+            return null;
+        }
+        final String facetId = metadataFacetFactory.getFacetId();
+        Path directory;
+        try {
+            directory = getMetadataDirectory(repositoryId, facetId);
         } catch (IOException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        // the directories are read lazily in the order of the names, so a limited query stops early
+        FacetNameIterator names = new FacetNameIterator(directory, METADATA_KEY + ".properties", startName, endName,
+                queryParameter.isAscending());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(names, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .skip(queryParameter.getOffset())
+                .limit(queryParameter.getLimit())
+                .map(name -> getMetadataFacet(session, repositoryId, facetClazz, name))
+                .filter(Objects::nonNull);
     }
 
     @Override
@@ -500,75 +784,82 @@ public List<ArtifactMetadata> getArtifacts( RepositorySession session, String re
                                                 String projectVersion)
             throws MetadataResolutionException {
         try {
-            Map<String, ArtifactMetadata> artifacts = new HashMap<>();
-
             Path directory = getDirectory(repoId).resolve(namespace + "/" + projectId + "/" + projectVersion);
 
             Properties properties = readOrCreateProperties(directory, PROJECT_VERSION_METADATA_KEY);
 
-            for (Map.Entry entry : properties.entrySet()) {
-                String name = (String) entry.getKey();
-                StringTokenizer tok = new StringTokenizer(name, ":");
-                if (tok.hasMoreTokens() && "artifact".equals(tok.nextToken())) {
-                    String field = tok.nextToken();
-                    String id = tok.nextToken();
-
-                    ArtifactMetadata artifact = artifacts.get(id);
-                    if (artifact == null) {
-                        artifact = new ArtifactMetadata();
-                        artifact.setRepositoryId(repoId);
-                        artifact.setNamespace(namespace);
-                        artifact.setProject(projectId);
-                        artifact.setProjectVersion(projectVersion);
-                        artifact.setVersion(projectVersion);
-                        artifact.setId(id);
-                        artifacts.put(id, artifact);
-                    }
+            return new ArrayList<>(readArtifacts(repoId, namespace, projectId, projectVersion, properties).values());
+        } catch (IOException e) {
+            throw new MetadataResolutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the artifacts of the stored version properties by id.
+     */
+    private Map<String, ArtifactMetadata> readArtifacts(String repoId, String namespace, String projectId,
+                                                        String projectVersion, Properties properties) {
+        Map<String, ArtifactMetadata> artifacts = new HashMap<>();
+        for (Map.Entry entry : properties.entrySet()) {
+            String name = (String) entry.getKey();
+            StringTokenizer tok = new StringTokenizer(name, ":");
+            if (tok.hasMoreTokens() && "artifact".equals(tok.nextToken())) {
+                String field = tok.nextToken();
+                String id = tok.nextToken();
+
+                ArtifactMetadata artifact = artifacts.get(id);
+                if (artifact == null) {
+                    artifact = new ArtifactMetadata();
+                    artifact.setRepositoryId(repoId);
+                    artifact.setNamespace(namespace);
+                    artifact.setProject(projectId);
+                    artifact.setProjectVersion(projectVersion);
+                    artifact.setVersion(projectVersion);
+                    artifact.setId(id);
+                    artifacts.put(id, artifact);
+                }
 
-                    String value = (String) entry.getValue();
-                    if ("updated".equals(field)) {
-                        artifact.setFileLastModified(Long.parseLong(value));
-                    } else if ("size".equals(field)) {
-                        artifact.setSize(Long.valueOf(value));
-                    } else if ("whenGathered".equals(field)) {
-                        artifact.setWhenGathered(ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneId.of("GMT")));
-                    } else if ("version".equals(field)) {
-                        artifact.setVersion(value);
-                    } else if (field.startsWith("checksum")) {
-                        String algorithmStr = StringUtils.removeStart( name, "artifact:checksum:"+id+":");
-                        artifact.setChecksum( ChecksumAlgorithm.valueOf( algorithmStr ), value );
-                    } else if ("facetIds".equals(field)) {
-                        if (value.length() > 0) {
-                            String propertyPrefix = "artifact:facet:" + id + ":";
-                            for (String facetId : value.split(",")) {
-                                MetadataFacetFactory factory = getFacetFactory(facetId);
-                                if (factory == null) {
-                                    log.error("Attempted to load unknown artifact metadata facet: {}", facetId);
-                                } else {
-                                    MetadataFacet facet = factory.createMetadataFacet();
-                                    String prefix = propertyPrefix + facet.getFacetId();
-                                    Map<String, String> map = new HashMap<>();
-                                    for (Object key : new ArrayList<>(properties.keySet())) {
-                                        String property = (String) key;
-                                        if (property.startsWith(prefix)) {
-                                            map.put(property.substring(prefix.length() + 1),
-                                                    properties.getProperty(property));
-                                        }
+                String value = (String) entry.getValue();
+                if ("updated".equals(field)) {
+                    artifact.setFileLastModified(Long.parseLong(value));
+                } else if ("size".equals(field)) {
+                    artifact.setSize(Long.valueOf(value));
+                } else if ("whenGathered".equals(field)) {
+                    artifact.setWhenGathered(ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneId.of("GMT")));
+                } else if ("version".equals(field)) {
+                    artifact.setVersion(value);
+                } else if (field.startsWith("checksum")) {
+                    String algorithmStr = StringUtils.removeStart( name, "artifact:checksum:"+id+":");
+                    artifact.setChecksum( ChecksumAlgorithm.valueOf( algorithmStr ), value );
+                } else if ("facetIds".equals(field)) {
+                    if (value.length() > 0) {
+                        String propertyPrefix = "artifact:facet:" + id + ":";
+                        for (String facetId : value.split(",")) {
+                            MetadataFacetFactory factory = getFacetFactory(facetId);
+                            if (factory == null) {
+                                log.error("Attempted to load unknown artifact metadata facet: {}", facetId);
+                            } else {
+                                MetadataFacet facet = factory.createMetadataFacet();
+                                String prefix = propertyPrefix + facet.getFacetId();
+                                Map<String, String> map = new HashMap<>();
+                                for (Object key : new ArrayList<>(properties.keySet())) {
+                                    String property = (String) key;
+                                    if (property.startsWith(prefix)) {
+                                        map.put(property.substring(prefix.length() + 1),
+                                                properties.getProperty(property));
                                     }
-                                    facet.fromProperties(map);
-                                    artifact.addFacet(facet);
                                 }
+                                facet.fromProperties(map);
+                                artifact.addFacet(facet);
                             }
                         }
-
-                        updateArtifactFacets(artifact, properties);
                     }
+
+                    updateArtifactFacets(artifact, properties);
                 }
             }
-            return new ArrayList<>(artifacts.values());
-        } catch (IOException e) {
-            throw new MetadataResolutionException(e.getMessage(), e);
         }
+        return artifacts;
     }
 
 
@@ -591,18 +882,8 @@ private void updateArtifactFacets(ArtifactMetadata artifact, Properties properti
     @Override
     public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session, String repositoryId, String checksum)
             throws MetadataRepositoryException {
-        try {
-            // TODO: this is quite slow - if we are to persist with this repository implementation we should build an index
-            //  of this information (eg. in Lucene, as before)
-            // alternatively, we could build a referential tree in the content repository, however it would need some levels
-            // of depth to avoid being too broad to be useful (eg. /repository/checksums/a/ab/abcdef1234567)
-
-            return getArtifactStream( session, repositoryId ).filter(
-                a -> a.hasChecksum( checksum )
-            ).collect( Collectors.toList() );
-        } catch (MetadataResolutionException e) {
-            throw new MetadataRepositoryException(e.getMessage(), e);
-        }
+        return findArtifacts(session, repositoryId, Collections.singletonList(
+                Collections.singletonList(MetadataIndex.exactTerm(MetadataIndex.CHECKSUM, null, checksum))));
     }
 
     @Override
@@ -611,6 +892,7 @@ public void removeNamespace(RepositorySession session, String repositoryId, Stri
         try {
             Path namespaceDirectory = getDirectory(repositoryId).resolve(project);
             org.apache.archiva.common.utils.FileUtils.deleteDirectory(namespaceDirectory);
+            fireRepositoryChanged(session, repositoryId);
             //Properties properties = new Properties();
             //properties.setProperty( "namespace", namespace );
             //writeProperties( properties, namespaceDirectory, NAMESPACE_METADATA_KEY );
@@ -649,7 +931,8 @@ public void removeTimestampedArtifact( RepositorySession session, ArtifactMetada
                 }
             }
 
-            writeProperties(properties, directory, PROJECT_VERSION_METADATA_KEY);
+            writeVersionProperties(session, artifactMetadata.getRepositoryId(), artifactMetadata.getNamespace(),
+                    artifactMetadata.getProject(), baseVersion, properties);
         } catch (IOException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
@@ -680,7 +963,7 @@ public void removeArtifact(RepositorySession session, String repoId, String name
                 }
             }
 
-            org.apache.archiva.common.utils.FileUtils.deleteDirectory(directory);
+            deleteVersionDirectory(session, repoId, namespace, project, version);
             //writeProperties( properties, directory, PROJECT_VERSION_METADATA_KEY );
         } catch (IOException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
@@ -711,6 +994,8 @@ public void removeRepository(RepositorySession session, String repoId)
         try {
             Path dir = getDirectory(repoId);
             org.apache.archiva.common.utils.FileUtils.deleteDirectory(dir);
+            getMetadataIndex(repoId).clear();
+            fireRepositoryChanged(session, repoId);
         } catch (IOException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
@@ -720,19 +1005,22 @@ public void removeRepository(RepositorySession session, String repoId)
     @Override
     public List<ArtifactMetadata> getArtifactsByProjectVersionFacet( RepositorySession session, String key, String value, String repositoryId)
             throws MetadataRepositoryException {
-        throw new UnsupportedOperationException("not yet implemented in File backend");
+        return findArtifacts(session, repositoryId, Collections.singletonList(
+                Collections.singletonList(MetadataIndex.exactTerm(MetadataIndex.PROJECT_VERSION_FACET, key, value))));
     }
 
     @Override
     public List<ArtifactMetadata> getArtifactsByAttribute( RepositorySession session, String key, String value, String repositoryId)
             throws MetadataRepositoryException {
-        throw new UnsupportedOperationException("not yet implemented in File backend");
+        return findArtifacts(session, repositoryId, Collections.singletonList(
+                Collections.singletonList(MetadataIndex.exactTerm(MetadataIndex.ARTIFACT_FACET, key, value))));
     }
 
     @Override
     public List<ArtifactMetadata> getArtifactsByProjectVersionAttribute( RepositorySession session, String key, String value, String repositoryId)
             throws MetadataRepositoryException {
-        throw new UnsupportedOperationException("getArtifactsByProjectVersionAttribute not yet implemented in File backend");
+        return findArtifacts(session, repositoryId, Collections.singletonList(
+                Collections.singletonList(MetadataIndex.exactTerm(MetadataIndex.PROJECT_VERSION_PROPERTY, key, value))));
     }
 
     private Path getMetadataDirectory(String repoId, String facetId)
@@ -790,7 +1078,7 @@ public void updateArtifact(RepositorySession session, String repoId, String name
 
             updateArtifactFacets(artifact, properties);
 
-            writeProperties(properties, directory, PROJECT_VERSION_METADATA_KEY);
+            writeVersionProperties(session, repoId, namespace, projectId, projectVersion, properties);
         } catch (IOException e) {
             // TODO
             log.error(e.getMessage(), e);
@@ -1155,8 +1443,13 @@ public void removeProject(RepositorySession session, String repositoryId, String
             throws MetadataRepositoryException {
         try {
             Path directory = getDirectory(repositoryId).resolve(namespace + "/" + projectId);
+            // the versions are removed one by one, so the index and the listeners see the removed artifacts
+            for (String projectVersion : getProjectVersions(session, repositoryId, namespace, projectId)) {
+                deleteVersionDirectory(session, repositoryId, namespace, projectId, projectVersion);
+            }
             org.apache.archiva.common.utils.FileUtils.deleteDirectory(directory);
-        } catch (IOException e) {
+            fireProjectRemoved(session, repositoryId, namespace, projectId);
+        } catch (IOException | MetadataResolutionException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
     }
@@ -1165,8 +1458,7 @@ public void removeProject(RepositorySession session, String repositoryId, String
     public void removeProjectVersion(RepositorySession session, String repoId, String namespace, String projectId, String projectVersion)
             throws MetadataRepositoryException {
         try {
-            Path directory = getDirectory(repoId).resolve(namespace + "/" + projectId + "/" + projectVersion);
-            org.apache.archiva.common.utils.FileUtils.deleteDirectory(directory);
+            deleteVersionDirectory(session, repoId, namespace, projectId, projectVersion);
         } catch (IOException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
@@ -1304,12 +1596,41 @@ private void getArtifacts(RepositorySession session, List<ArtifactMetadata> arti
     }
 
     @Override
-    public List<ArtifactMetadata> searchArtifacts(RepositorySession session, String repositoryId, String text, boolean exact) {
-        throw new UnsupportedOperationException("searchArtifacts not yet implemented in File backend");
+    public List<ArtifactMetadata> searchArtifacts(RepositorySession session, String repositoryId, String text, boolean exact)
+            throws MetadataRepositoryException {
+        return searchArtifacts(session, repositoryId, null, text, exact);
     }
 
+    /**
+     * Searches the project version properties and the facets of the project versions and artifacts. If
+     * <code>exact</code> is false, all words of the text must be found in the same property, ignoring the case.
+     * Without a key, the index finds the documents, that contain all words in any of their properties, and the
+     * stored terms of each document are checked for a single property with all words.
+     */
     @Override
-    public List<ArtifactMetadata> searchArtifacts(RepositorySession session, String repositoryId, String key, String text, boolean exact) {
-        throw new UnsupportedOperationException("searchArtifacts not yet implemented in File backend");
+    public List<ArtifactMetadata> searchArtifacts(RepositorySession session, String repositoryId, String key, String text, boolean exact)
+            throws MetadataRepositoryException {
+        List<Character> scopes = new ArrayList<>();
+        if (key == null || MetadataIndex.PROJECT_VERSION_PROPERTIES.contains(key)) {
+            scopes.add(MetadataIndex.PROJECT_VERSION_PROPERTY);
+        }
+        scopes.add(MetadataIndex.PROJECT_VERSION_FACET);
+        scopes.add(MetadataIndex.ARTIFACT_FACET);
+
+        List<String> words = MetadataIndex.tokenize(text);
+        List<List<String>> alternatives = new ArrayList<>();
+        for (char scope : scopes) {
+            if (exact) {
+                alternatives.add(Collections.singletonList(MetadataIndex.exactTerm(scope, key, text)));
+            } else if (!words.isEmpty()) {
+                alternatives.add(words.stream().map(word -> MetadataIndex.textTerm(scope, key, word))
+                        .collect(Collectors.toList()));
+            }
+        }
+        if (exact || key != null) {
+            return findArtifacts(session, repositoryId, alternatives);
+        }
+        return findArtifacts(session, repositoryId, alternatives, (storedTerms, document) -> scopes.stream().anyMatch(
+                scope -> MetadataIndex.hasWordsInOneProperty(storedTerms, scope, words, document)));
     }
 }
@@ -0,0 +1,373 @@
+package org.apache.archiva.metadata.repository.file;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent inverted index of the metadata of a single repository.
+ * <p>
+ * The index maps terms to documents. A document is either a project version (<code>namespace/project/version</code>)
+ * or an artifact (<code>namespace/project/version/id</code>). The terms are derived from the stored version
+ * properties: checksums, the searchable project version properties, and the properties of the project version
+ * and artifact facets. Each value is indexed as exact term and as full text term for each of its words, with and
+ * without the property key.
+ * </p>
+ * <p>
+ * The index is a hash table of property files: the hash of the term selects one of 65536 shards
+ * (<code>ab/cd.properties</code>), so a lookup reads only one small file. The documents of a term are separated by
+ * new lines.
+ * </p>
+ * <p>
+ * The index is only maintained after it was built completely. Until then the updates are ignored, because the
+ * next build reads them from the metadata anyway.
+ * </p>
+ *
+ * @since 3.0
+ */
+class MetadataIndex
+{
+    static final char CHECKSUM = 'c';
+
+    static final char PROJECT_VERSION_PROPERTY = 'p';
+
+    static final char PROJECT_VERSION_FACET = 'f';
+
+    static final char ARTIFACT_FACET = 'a';
+
+    /**
+     * The project version properties, that are searchable. Dependencies, mailing lists and references are not.
+     */
+    static final Set<String> PROJECT_VERSION_PROPERTIES = new HashSet<>(
+        Arrays.asList( "ci.system", "ci.url", "description", "incomplete", "issue.system", "issue.url", "name",
+            "org.name", "org.url", "url", "scm.connection", "scm.developerConnection", "scm.url" ) );
+
+    private static final String COMPLETE_MARKER = "complete";
+
+    private static final String SEPARATOR = "\n";
+
+    private final Path directory;
+
+    MetadataIndex( Path directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the term, that matches the whole value.
+     *
+     * @param scope the kind of property
+     * @param key   the key of the property or <code>null</code> for any key
+     */
+    static String exactTerm( char scope, String key, String value )
+    {
+        return scope + "=" + ( key == null ? "" : key ) + "\t" + value;
+    }
+
+    /**
+     * Returns the term, that matches a word of the value.
+     *
+     * @param scope the kind of property
+     * @param key   the key of the property or <code>null</code> for any key
+     */
+    static String textTerm( char scope, String key, String word )
+    {
+        return scope + "~" + ( key == null ? "" : key ) + "\t" + word;
+    }
+
+    /**
+     * Returns <code>true</code>, if a single property of the document contains all words.
+     *
+     * @param terms the terms of the project version, as returned by {@link #getTerms}
+     * @param scope the kind of property
+     */
+    static boolean hasWordsInOneProperty( Map<String, Set<String>> terms, char scope, List<String> words,
+                                          String document )
+    {
+        if ( words.isEmpty( ) )
+        {
+            return false;
+        }
+        String prefix = scope + "~";
+        String suffix = "\t" + words.get( 0 );
+        for ( Map.Entry<String, Set<String>> entry : terms.entrySet( ) )
+        {
+            String term = entry.getKey( );
+            if ( term.startsWith( prefix ) && term.endsWith( suffix ) && entry.getValue( ).contains( document ) )
+            {
+                String key = term.substring( prefix.length( ), term.length( ) - suffix.length( ) );
+                if ( !key.isEmpty( ) && words.stream( ).allMatch(
+                    word -> terms.getOrDefault( textTerm( scope, key, word ), Collections.emptySet( ) ).contains(
+                        document ) ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the text into lower case words.
+     */
+    static List<String> tokenize( String text )
+    {
+        return Arrays.stream( text.toLowerCase( Locale.ROOT ).split( "[^\\p{L}\\p{N}]+" ) ).filter(
+            word -> !word.isEmpty( ) ).distinct( ).collect( Collectors.toList( ) );
+    }
+
+    static String getDocument( String namespace, String projectId, String projectVersion, String id )
+    {
+        String document = namespace + "/" + projectId + "/" + projectVersion;
+        return id == null ? document : document + "/" + id;
+    }
+
+    /**
+     * Returns the terms of the project version and its artifacts.
+     *
+     * @param properties the stored version properties
+     * @return the documents for each term
+     */
+    static Map<String, Set<String>> getTerms( String namespace, String projectId, String projectVersion,
+                                              Properties properties )
+    {
+        Map<String, Set<String>> terms = new HashMap<>( );
+        String versionDocument = getDocument( namespace, projectId, projectVersion, null );
+        for ( String name : properties.stringPropertyNames( ) )
+        {
+            String value = properties.getProperty( name );
+            if ( value.isEmpty( ) )
+            {
+                continue;
+            }
+            if ( name.startsWith( "artifact:checksum:" ) )
+            {
+                String id = name.substring( "artifact:checksum:".length( ), name.lastIndexOf( ':' ) );
+                add( terms, exactTerm( CHECKSUM, null, value ), versionDocument + "/" + id );
+            }
+            else if ( name.startsWith( "artifact:facet:" ) )
+            {
+                // artifact:facet:<id>:<facetId>:<key>
+                int idEnd = name.indexOf( ':', "artifact:facet:".length( ) );
+                int facetEnd = idEnd < 0 ? -1 : name.indexOf( ':', idEnd + 1 );
+                if ( facetEnd > 0 )
+                {
+                    String id = name.substring( "artifact:facet:".length( ), idEnd );
+                    addValue( terms, ARTIFACT_FACET, name.substring( facetEnd + 1 ), value, versionDocument + "/" + id );
+                }
+            }
+            else if ( name.startsWith( "artifact:" ) || name.startsWith( "ref:" ) )
+            {
+                // artifact fields and references are not searchable
+            }
+            else if ( name.indexOf( ':' ) > 0 )
+            {
+                // <facetId>:<key>
+                addValue( terms, PROJECT_VERSION_FACET, name.substring( name.indexOf( ':' ) + 1 ), value,
+                    versionDocument );
+            }
+            else if ( PROJECT_VERSION_PROPERTIES.contains( name ) )
+            {
+                addValue( terms, PROJECT_VERSION_PROPERTY, name, value, versionDocument );
+            }
+        }
+        return terms;
+    }
+
+    private static void addValue( Map<String, Set<String>> terms, char scope, String key, String value,
+                                  String document )
+    {
+        add( terms, exactTerm( scope, key, value ), document );
+        add( terms, exactTerm( scope, null, value ), document );
+        for ( String word : tokenize( value ) )
+        {
+            add( terms, textTerm( scope, key, word ), document );
+            add( terms, textTerm( scope, null, word ), document );
+        }
+    }
+
+    private static void add( Map<String, Set<String>> terms, String term, String document )
+    {
+        terms.computeIfAbsent( term, t -> new LinkedHashSet<>( ) ).add( document );
+    }
+
+    /**
+     * Returns <code>true</code>, if the index contains the metadata of the whole repository.
+     */
+    synchronized boolean isComplete( )
+    {
+        return Files.exists( directory.resolve( COMPLETE_MARKER ) );
+    }
+
+    /**
+     * Replaces the content of the index and marks it as complete.
+     *
+     * @param terms the documents for each term
+     */
+    synchronized void rebuild( Map<String, Set<String>> terms )
+        throws IOException
+    {
+        clear( );
+        Map<Path, Properties> shards = new HashMap<>( );
+        for ( Map.Entry<String, Set<String>> entry : terms.entrySet( ) )
+        {
+            shards.computeIfAbsent( getShard( entry.getKey( ) ), shard -> new Properties( ) ).setProperty(
+                entry.getKey( ), String.join( SEPARATOR, entry.getValue( ) ) );
+        }
+        for ( Map.Entry<Path, Properties> shard : shards.entrySet( ) )
+        {
+            write( shard.getKey( ), shard.getValue( ) );
+        }
+        Files.createDirectories( directory );
+        Files.write( directory.resolve( COMPLETE_MARKER ), new byte[0] );
+    }
+
+    /**
+     * Deletes the index. It is built again on the next lookup.
+     */
+    synchronized void clear( )
+        throws IOException
+    {
+        org.apache.archiva.common.utils.FileUtils.deleteDirectory( directory );
+    }
+
+    /**
+     * Returns the documents, that contain the given term.
+     */
+    synchronized Set<String> get( String term )
+        throws IOException
+    {
+        return get( read( getShard( term ) ), term );
+    }
+
+    /**
+     * Removes and adds documents of terms. Each shard is written only once.
+     *
+     * @param removed the documents to remove for each term
+     * @param added   the documents to add for each term
+     */
+    synchronized void update( Map<String, Set<String>> removed, Map<String, Set<String>> added )
+        throws IOException
+    {
+        if ( !isComplete( ) )
+        {
+            return;
+        }
+        Map<Path, Set<String>> termsByShard = new HashMap<>( );
+        for ( String term : removed.keySet( ) )
+        {
+            termsByShard.computeIfAbsent( getShard( term ), shard -> new HashSet<>( ) ).add( term );
+        }
+        for ( String term : added.keySet( ) )
+        {
+            termsByShard.computeIfAbsent( getShard( term ), shard -> new HashSet<>( ) ).add( term );
+        }
+        for ( Map.Entry<Path, Set<String>> shard : termsByShard.entrySet( ) )
+        {
+            Properties properties = read( shard.getKey( ) );
+            boolean changed = false;
+            for ( String term : shard.getValue( ) )
+            {
+                Set<String> documents = get( properties, term );
+                changed |= documents.removeAll( removed.getOrDefault( term, Collections.emptySet( ) ) );
+                changed |= documents.addAll( added.getOrDefault( term, Collections.emptySet( ) ) );
+                if ( documents.isEmpty( ) )
+                {
+                    properties.remove( term );
+                }
+                else
+                {
+                    properties.setProperty( term, String.join( SEPARATOR, documents ) );
+                }
+            }
+            if ( changed )
+            {
+                write( shard.getKey( ), properties );
+            }
+        }
+    }
+
+    private static Set<String> get( Properties properties, String term )
+    {
+        Set<String> documents = new LinkedHashSet<>( );
+        String value = properties.getProperty( term );
+        if ( value != null && !value.isEmpty( ) )
+        {
+            Collections.addAll( documents, value.split( SEPARATOR ) );
+        }
+        return documents;
+    }
+
+    private Path getShard( String term )
+    {
+        String hash = String.format( "%04x", term.hashCode( ) & 0xffff );
+        return directory.resolve( hash.substring( 0, 2 ) ).resolve( hash.substring( 2 ) + ".properties" );
+    }
+
+    private static Properties read( Path shard )
+        throws IOException
+    {
+        Properties properties = new Properties( );
+        try ( InputStream in = Files.newInputStream( shard ) )
+        {
+            properties.load( in );
+        }
+        catch ( NoSuchFileException e )
+        {
+            // empty shard
+        }
+        return properties;
+    }
+
+    private static void write( Path shard, Properties properties )
+        throws IOException
+    {
+        if ( properties.isEmpty( ) )
+        {
+            Files.deleteIfExists( shard );
+            return;
+        }
+        Files.createDirectories( shard.getParent( ) );
+        // the shard is replaced atomically, so a failed write does not destroy the other entries of the shard
+        Path tmp = shard.resolveSibling( shard.getFileName( ) + ".tmp" );
+        try ( OutputStream os = Files.newOutputStream( tmp ) )
+        {
+            properties.store( os, null );
+        }
+        Files.move( tmp, shard, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+}
@@ -19,20 +19,25 @@
  * under the License.
  */
 
+import org.apache.archiva.checksum.ChecksumAlgorithm;
 import org.apache.archiva.configuration.ArchivaConfiguration;
 import org.apache.archiva.configuration.Configuration;
 import org.apache.archiva.configuration.ManagedRepositoryConfiguration;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.model.MetadataFacetFactory;
+import org.apache.archiva.metadata.model.ProjectVersionMetadata;
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataService;
+import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.junit.Before;
-import org.junit.Ignore;
+import org.junit.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -80,100 +85,68 @@ public void setUp()
         this.repository = new FileMetadataRepository( metadataService, config );
     }
 
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadata()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadataNoRepository()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testGetArtifactsByProjectVersionMetadataAllRepositories()
+    @Test
+    public void testChecksumIndexFollowsUpdatesAndRemovals()
         throws Exception
     {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testGetArtifactsByMetadataAllRepositories()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testGetArtifactsByPropertySingleResult()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testSearchArtifactsByKey()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testSearchArtifactsByKeyExact()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullText()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextExact()
-        throws Exception
-    {
-        // TODO not implemented
-    }
-
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKeyAllRepos()
-        throws Exception
-    {
-        // TODO not implemented
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            ArtifactMetadata artifact = createChecksumArtifact( "first" );
+            repository.updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+            // builds the index
+            assertEquals( 1, repository.getArtifactsByChecksum( session, TEST_REPO_ID, "first" ).size( ) );
+
+            artifact.setChecksum( ChecksumAlgorithm.SHA1, "second" );
+            repository.updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+            assertTrue( repository.getArtifactsByChecksum( session, TEST_REPO_ID, "first" ).isEmpty( ) );
+            assertEquals( 1, repository.getArtifactsByChecksum( session, TEST_REPO_ID, "second" ).size( ) );
+
+            // the index is persistent
+            Path directory = Paths.get( "target/test-repositories" );
+            MetadataService metadataService = new MetadataService( );
+            metadataService.setMetadataFacetFactories( createTestMetadataFacetFactories( ) );
+            FileMetadataRepository other = new FileMetadataRepository( metadataService, createTestConfiguration( directory ) );
+            assertEquals( 1, other.getArtifactsByChecksum( session, TEST_REPO_ID, "second" ).size( ) );
+
+            repository.removeProject( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT );
+            assertTrue( repository.getArtifactsByChecksum( session, TEST_REPO_ID, "second" ).isEmpty( ) );
+        }
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsByFacetKey()
+    @Test
+    public void testFullTextSearchMatchesWordsOfTheSameProperty()
         throws Exception
     {
-        // TODO not implemented
+        try ( RepositorySession session = getSessionFactory( ).createSession( ) )
+        {
+            ProjectVersionMetadata versionMetadata = new ProjectVersionMetadata( );
+            versionMetadata.setId( TEST_PROJECT_VERSION );
+            versionMetadata.setName( "Archiva Plugin" );
+            versionMetadata.setDescription( "Apache Maven" );
+            repository.updateProjectVersion( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, versionMetadata );
+            repository.updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION,
+                                       createChecksumArtifact( "first" ) );
+
+            assertEquals( 1, repository.searchArtifacts( session, TEST_REPO_ID, "maven apache", false ).size( ) );
+            assertEquals( 1, repository.searchArtifacts( session, TEST_REPO_ID, "plugin archiva", false ).size( ) );
+            // the words are found in the project version, but in different properties
+            assertTrue( repository.searchArtifacts( session, TEST_REPO_ID, "apache archiva", false ).isEmpty( ) );
+        }
     }
 
-    @Override
-    @Ignore
-    public void testSearchArtifactsFullTextByFacet()
-        throws Exception
+    private static ArtifactMetadata createChecksumArtifact( String sha1 )
     {
-        // TODO not implemented
+        ArtifactMetadata artifact = new ArtifactMetadata( );
+        artifact.setId( TEST_PROJECT + "-" + TEST_PROJECT_VERSION + ".jar" );
+        artifact.setWhenGathered( ZonedDateTime.now( ) );
+        artifact.setNamespace( TEST_NAMESPACE );
+        artifact.setProject( TEST_PROJECT );
+        artifact.setRepositoryId( TEST_REPO_ID );
+        artifact.setFileLastModified( System.currentTimeMillis( ) );
+        artifact.setVersion( TEST_PROJECT_VERSION );
+        artifact.setProjectVersion( TEST_PROJECT_VERSION );
+        artifact.setChecksum( ChecksumAlgorithm.SHA1, sha1 );
+        return artifact;
     }
 
     protected static ArchivaConfiguration createTestConfiguration( Path directory )
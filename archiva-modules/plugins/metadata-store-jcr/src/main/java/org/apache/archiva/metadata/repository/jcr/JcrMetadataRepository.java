@@ -56,7 +56,7 @@
  * TODO revise reference storage
  */
 public class JcrMetadataRepository
-        extends AbstractMetadataRepository implements MetadataRepository, RepositoryStatisticsProvider {
+        extends AbstractMetadataRepository implements MetadataRepository, RepositoryStatisticsProvider, ChecksumSearchProvider {
 
 
     private static final String QUERY_ARTIFACT_1 = "SELECT * FROM [" + ARTIFACT_NODE_TYPE + "] AS artifact WHERE ISDESCENDANTNODE(artifact,'/";
@@ -150,6 +150,10 @@ public void updateArtifact(RepositorySession session, String repositoryId, Strin
         updateNamespace(session, repositoryId, namespace);
 
         try {
+            Node root = jcrSession.getRootNode();
+            String artifactPath = getArtifactPath(repositoryId, namespace, projectId, projectVersion, artifactMeta.getId());
+            ArtifactMetadata previous = hasMetadataRepositoryListeners() && root.hasNode(artifactPath)
+                    ? getArtifactFromNode(repositoryId, root.getNode(artifactPath)) : null;
             Node node =
                     getOrAddArtifactNode(jcrSession, repositoryId, namespace, projectId, projectVersion, artifactMeta.getId());
 
@@ -199,6 +203,8 @@ public void updateArtifact(RepositorySession session, String repositoryId, Strin
                     }
                 }
             }
+
+            fireArtifactUpdated(session, repositoryId, previous, artifactMeta);
         } catch (RepositoryException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
         }
@@ -377,7 +383,9 @@ public void removeProject(RepositorySession session, String repositoryId, String
                 while (nodeIterator.hasNext()) {
                     Node node = nodeIterator.next();
                     if (node.isNodeType(org.apache.archiva.metadata.repository.jcr.JcrConstants.PROJECT_MIXIN_TYPE) && projectId.equals(node.getName())) {
+                        fireArtifactsRemoved(session, repositoryId, node);
                         node.remove();
+                        fireProjectRemoved(session, repositoryId, namespace, projectId);
                     }
                 }
 
@@ -504,6 +512,12 @@ private <T extends MetadataFacet> Function<Row, Optional<T>> getFacetFromRowFunc
 
     @Override
     public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz, QueryParameter queryParameter) throws MetadataRepositoryException {
+        return getMetadataFacetStream(session, repositoryId, facetClazz, null, null, queryParameter);
+    }
+
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                      String namePrefix, String startAfter, QueryParameter queryParameter) throws MetadataRepositoryException {
         final Session jcrSession = getSession(session);
         final MetadataFacetFactory<T> factory = metadataService.getFactory(facetClazz);
         final String facetId = factory.getFacetId();
@@ -511,15 +525,53 @@ public <T extends MetadataFacet> Stream<T> getMetadataFacetStream(RepositorySess
         StringBuilder query = new StringBuilder("SELECT * FROM [");
         query.append(FACET_NODE_TYPE).append("] AS facet WHERE ISDESCENDANTNODE(facet, [")
                 .append(facetPath).append("]) AND [facet].[archiva:name] IS NOT NULL");
+        Map<String, String> params = new HashMap<>();
+        if (StringUtils.isNotEmpty(namePrefix)) {
+            // the prefix is queried as range of the names, LIKE would treat the underscores of the names as wildcards
+            query.append(" AND [facet].[archiva:name] >= $namePrefix AND [facet].[archiva:name] < $namePrefixEnd");
+            params.put("namePrefix", namePrefix);
+            params.put("namePrefixEnd", namePrefix.substring(0, namePrefix.length() - 1)
+                    + (char) (namePrefix.charAt(namePrefix.length() - 1) + 1));
+        }
+        if (startAfter != null) {
+            query.append(" AND [facet].[archiva:name] > $startAfter");
+            params.put("startAfter", startAfter);
+        }
         appendQueryParams(query, "facet", "archiva:name", queryParameter);
         String q = query.toString();
-        Map<String, String> params = new HashMap<>();
         QueryResult result = runNativeJcrQuery(jcrSession, q, params, queryParameter.getOffset(), queryParameter.getLimit());
         final Function<Row, Optional<T>> rowFunc = getFacetFromRowFunc(factory, repositoryId);
         return StreamSupport.stream(createResultSpliterator(result, rowFunc), false).filter(Optional::isPresent).map(Optional::get);
 
     }
 
+    @Override
+    public <T extends MetadataFacet> Stream<T> getMetadataFacetRangeStream(RepositorySession session, String repositoryId, Class<T> facetClazz,
+                                                                           String startName, String endName, QueryParameter queryParameter) throws MetadataRepositoryException {
+        final Session jcrSession = getSession(session);
+        final MetadataFacetFactory<T> factory = metadataService.getFactory(facetClazz);
+        final String facetId = factory.getFacetId();
+        final String facetPath = '/' + getFacetPath(repositoryId, facetId);
+        StringBuilder query = new StringBuilder("SELECT * FROM [");
+        query.append(FACET_NODE_TYPE).append("] AS facet WHERE ISDESCENDANTNODE(facet, [")
+                .append(facetPath).append("]) AND [facet].[archiva:name] IS NOT NULL");
+        Map<String, String> params = new HashMap<>();
+        if (startName != null) {
+            query.append(" AND [facet].[archiva:name] >= $startName");
+            params.put("startName", startName);
+        }
+        if (endName != null) {
+            query.append(" AND [facet].[archiva:name] < $endName");
+            params.put("endName", endName);
+        }
+        // the order, offset and limit are applied by the query engine
+        appendQueryParams(query, "facet", "archiva:name", queryParameter);
+        String q = query.toString();
+        QueryResult result = runNativeJcrQuery(jcrSession, q, params, queryParameter.getOffset(), queryParameter.getLimit());
+        final Function<Row, Optional<T>> rowFunc = getFacetFromRowFunc(factory, repositoryId);
+        return StreamSupport.stream(createResultSpliterator(result, rowFunc), false).filter(Optional::isPresent).map(Optional::get);
+    }
+
     private void recurse(List<String> facets, String prefix, Node node)
             throws RepositoryException {
         for (Node n : JcrUtils.getChildNodes(node)) {
@@ -626,6 +678,7 @@ public void removeNamespace(RepositorySession session, String repositoryId, Stri
                 Node node = root.getNode(path);
                 if (node.isNodeType(NAMESPACE_MIXIN_TYPE)) {
                     node.remove();
+                    fireRepositoryChanged(session, repositoryId);
                 }
             }
         } catch (RepositoryException e) {
@@ -768,6 +821,42 @@ public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session,
         return artifacts;
     }
 
+    /**
+     * Searches the artifacts of all repositories with a single query. The repository of an artifact is taken from its
+     * path.
+     */
+    @Override
+    public List<ArtifactMetadata> getArtifactsByChecksum(RepositorySession session, Collection<String> repositoryIds, String checksum)
+            throws MetadataRepositoryException {
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        if (repositoryIds.isEmpty()) {
+            return artifacts;
+        }
+        final Session jcrSession = getSession(session);
+        Set<String> repositories = new HashSet<>(repositoryIds);
+
+        String q = new StringBuilder(QUERY_ARTIFACT_1).append("repositories").append(QUERY_ARTIFACT_2)
+                .append(" AND ([artifact].[checksums/*/value] = $checksum)").toString();
+
+        try {
+            Query query = jcrSession.getWorkspace().getQueryManager().createQuery(q, Query.JCR_SQL2);
+            ValueFactory valueFactory = jcrSession.getValueFactory();
+            query.bindValue("checksum", valueFactory.createValue(checksum));
+            QueryResult result = query.execute();
+
+            for (Node n : JcrUtils.getNodes(result)) {
+                // repositories/<repositoryId>/content/...
+                String repositoryId = n.getAncestor(2).getName();
+                if (repositories.contains(repositoryId)) {
+                    artifacts.add(getArtifactFromNode(repositoryId, n));
+                }
+            }
+        } catch (RepositoryException e) {
+            throw new MetadataRepositoryException(e.getMessage(), e);
+        }
+        return artifacts;
+    }
+
     public List<ArtifactMetadata> runJcrQuery(Session jcrSession, String repositoryId, String q, Map<String, String> bindingParam)
             throws MetadataRepositoryException {
         return runJcrQuery(jcrSession, repositoryId, q, bindingParam, true);
@@ -876,6 +965,7 @@ public void removeRepository(RepositorySession session, String repositoryId)
             String path = getRepositoryPath(repositoryId);
             if (root.hasNode(path)) {
                 root.getNode(path).remove();
+                fireRepositoryChanged(session, repositoryId);
             }
         } catch (RepositoryException e) {
             throw new MetadataRepositoryException(e.getMessage(), e);
@@ -1240,6 +1330,7 @@ public void removeTimestampedArtifact(RepositorySession session, ArtifactMetadat
                         if (n.hasProperty("version")) {
                             String version = n.getProperty("version").getString();
                             if (StringUtils.equals(version, artifactMetadata.getVersion())) {
+                                fireArtifactsRemoved(session, repositoryId, n);
                                 n.remove();
                             }
                         }
@@ -1269,6 +1360,7 @@ public void removeProjectVersion(RepositorySession session, String repoId, Strin
             for (Node node : JcrUtils.getChildNodes(nodeAtPath)) {
                 if (node.isNodeType(PROJECT_VERSION_NODE_TYPE) && StringUtils.equals(projectVersion,
                         node.getName())) {
+                    fireArtifactsRemoved(session, repoId, node);
                     node.remove();
                 }
             }
@@ -1286,6 +1378,7 @@ public void removeArtifact(RepositorySession session, String repositoryId, Strin
             Node root = jcrSession.getRootNode();
             String path = getArtifactPath(repositoryId, namespace, projectId, projectVersion, id);
             if (root.hasNode(path)) {
+                fireArtifactsRemoved(session, repositoryId, root.getNode(path));
                 root.getNode(path).remove();
             }
 
@@ -1298,6 +1391,7 @@ public void removeArtifact(RepositorySession session, String repositoryId, Strin
             for (Node node : JcrUtils.getChildNodes(nodeAtPath)) {
                 if (node.isNodeType(PROJECT_VERSION_NODE_TYPE) //
                         && StringUtils.equals(node.getName(), projectVersion)) {
+                    fireArtifactsRemoved(session, repositoryId, node);
                     node.remove();
                 }
             }
@@ -1324,6 +1418,7 @@ public void removeFacetFromArtifact(RepositorySession session, String repository
                         log.debug("artifactMetadata: {}", artifactMetadata);
                         MetadataFacet metadataFacetToRemove = artifactMetadata.getFacet(metadataFacet.getFacetId());
                         if (metadataFacetToRemove != null && metadataFacet.equals(metadataFacetToRemove)) {
+                            fireArtifactRemoved(session, repositoryId, artifactMetadata);
                             n.remove();
                         }
                     }
@@ -1411,6 +1506,25 @@ public List<ArtifactMetadata> searchArtifacts(RepositorySession session, String
         return result;
     }
 
+    /**
+     * Notifies the listeners about the artifacts, that are removed with the given artifact, version or project node.
+     */
+    private void fireArtifactsRemoved(RepositorySession session, String repositoryId, Node node)
+            throws RepositoryException {
+        if (!hasMetadataRepositoryListeners()) {
+            return;
+        }
+        if (node.isNodeType(ARTIFACT_NODE_TYPE)) {
+            fireArtifactRemoved(session, repositoryId, getArtifactFromNode(repositoryId, node));
+            return;
+        }
+        for (Node child : JcrUtils.getChildNodes(node)) {
+            if (child.isNodeType(PROJECT_VERSION_NODE_TYPE) || child.isNodeType(ARTIFACT_NODE_TYPE)) {
+                fireArtifactsRemoved(session, repositoryId, child);
+            }
+        }
+    }
+
     private ArtifactMetadata getArtifactFromNode(String repositoryId, Node artifactNode)
             throws RepositoryException {
         String id = artifactNode.getName();
@@ -27,6 +27,8 @@
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *
@@ -42,6 +44,11 @@ public class JcrRepositorySession extends RepositorySession implements AutoClose
     private Session jcrSession;
     private JcrMetadataRepository repository;
 
+    /**
+     * Events of the changes, that are not saved yet
+     */
+    private final List<Runnable> pendingEvents = new ArrayList<>( );
+
     public JcrRepositorySession( JcrMetadataRepository metadataRepository, MetadataResolver resolver) throws RepositoryException
     {
         super( metadataRepository, resolver );
@@ -60,8 +67,16 @@ public JcrMetadataRepository getJcrRepository() {
     @Override
     public void close( )
     {
-        super.close( );
-        jcrSession.logout();
+        try
+        {
+            super.close( );
+        }
+        finally
+        {
+            // changes, that are not saved, are discarded by the logout
+            pendingEvents.clear( );
+            jcrSession.logout( );
+        }
     }
 
     @Override
@@ -93,12 +108,14 @@ public void save( ) throws MetadataSessionException
         {
             throw new MetadataSessionException( e.getMessage( ), e );
         }
+        firePendingEvents( );
     }
 
     @Override
     public void revert( ) throws MetadataSessionException
     {
         super.revert( );
+        pendingEvents.clear( );
         try
         {
             jcrSession.refresh( false );
@@ -120,10 +137,31 @@ public void refresh() throws MetadataSessionException {
 
     @Override
     public void refreshAndDiscard() throws MetadataSessionException {
+        pendingEvents.clear();
         try {
             jcrSession.refresh(false);
         } catch (RepositoryException e) {
             throw new MetadataSessionException(e.getMessage(), e);
         }
     }
+
+    /**
+     * The changes are not visible to others before the session is saved and may be reverted, so the events are sent
+     * after the save.
+     */
+    @Override
+    protected void fireChangeEvent( Runnable event )
+    {
+        pendingEvents.add( event );
+    }
+
+    private void firePendingEvents( )
+    {
+        List<Runnable> events = new ArrayList<>( pendingEvents );
+        pendingEvents.clear( );
+        for ( Runnable event : events )
+        {
+            event.run( );
+        }
+    }
 }
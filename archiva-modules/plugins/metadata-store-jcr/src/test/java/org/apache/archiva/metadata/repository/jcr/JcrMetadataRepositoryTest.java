@@ -24,6 +24,7 @@
 import org.apache.archiva.metadata.repository.AbstractMetadataRepositoryTest;
 import org.apache.archiva.metadata.repository.DefaultMetadataResolver;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataRepositoryListener;
 import org.apache.archiva.metadata.repository.MetadataService;
 import org.apache.archiva.metadata.repository.MetadataSessionException;
 import org.apache.archiva.metadata.repository.RepositorySession;
@@ -39,7 +40,10 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -54,6 +58,7 @@
 
     private static JcrRepositorySessionFactory sessionFactory;
     private static JcrMetadataRepository repository;
+    private static MetadataService metadataService;
 
     @Override
     public JcrMetadataRepository getRepository( )
@@ -77,7 +82,7 @@ public static void setupSpec( ) throws IOException, InvalidFileStoreVersionExcep
         }
 
         List<MetadataFacetFactory> factories = createTestMetadataFacetFactories( );
-        MetadataService metadataService = new MetadataService();
+        metadataService = new MetadataService();
         metadataService.setMetadataFacetFactories( factories );
         JcrRepositorySessionFactory jcrSessionFactory = new JcrRepositorySessionFactory( );
         jcrSessionFactory.setMetadataResolver( new DefaultMetadataResolver( ) );
@@ -180,4 +185,75 @@ public void testSearchArtifactsByKeyExact()
             } );
         }
     }
+
+    @Test
+    public void testListenersAreNotifiedWhenTheSessionIsSaved( )
+        throws Exception
+    {
+        List<String> events = new ArrayList<>( );
+        metadataService.setMetadataRepositoryListeners( Collections.singletonList( new RecordingListener( events ) ) );
+        try ( RepositorySession session = sessionFactory.createSession( ) )
+        {
+            ArtifactMetadata artifact = new ArtifactMetadata( );
+            artifact.setId( TEST_PROJECT + "-" + TEST_PROJECT_VERSION + ".jar" );
+            artifact.setWhenGathered( ZonedDateTime.now( ) );
+            artifact.setNamespace( TEST_NAMESPACE );
+            artifact.setProject( TEST_PROJECT );
+            artifact.setRepositoryId( TEST_REPO_ID );
+            artifact.setFileLastModified( System.currentTimeMillis( ) );
+            artifact.setVersion( TEST_PROJECT_VERSION );
+            artifact.setProjectVersion( TEST_PROJECT_VERSION );
+
+            repository.updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+            assertThat( events ).isEmpty( );
+
+            // the events of reverted changes are dropped
+            session.revert( );
+            assertThat( events ).isEmpty( );
+
+            repository.updateArtifact( session, TEST_REPO_ID, TEST_NAMESPACE, TEST_PROJECT, TEST_PROJECT_VERSION, artifact );
+            assertThat( events ).isEmpty( );
+            session.save( );
+            assertThat( events ).containsExactly( "updated:" + artifact.getId( ) );
+        }
+        finally
+        {
+            metadataService.setMetadataRepositoryListeners( new ArrayList<>( ) );
+        }
+    }
+
+    private static class RecordingListener
+        implements MetadataRepositoryListener
+    {
+        private final List<String> events;
+
+        RecordingListener( List<String> events )
+        {
+            this.events = events;
+        }
+
+        @Override
+        public void artifactUpdated( String repositoryId, ArtifactMetadata previous, ArtifactMetadata artifact )
+        {
+            events.add( "updated:" + artifact.getId( ) );
+        }
+
+        @Override
+        public void artifactRemoved( String repositoryId, ArtifactMetadata artifact )
+        {
+            events.add( "removed:" + artifact.getId( ) );
+        }
+
+        @Override
+        public void projectRemoved( String repositoryId, String namespace, String projectId )
+        {
+            events.add( "project removed:" + projectId );
+        }
+
+        @Override
+        public void repositoryChanged( String repositoryId )
+        {
+            events.add( "changed:" + repositoryId );
+        }
+    }
 }
@@ -153,10 +153,8 @@ public void processFile( String path )
     {
         Path artifactFile = this.repositoryDir.resolve( path );
 
-        // TODO: would be quicker to somehow make sure it ran after the update database consumer, or as a part of that
-        //  perhaps could use an artifact context that is retained for all consumers? First in can set the SHA-1
-        //  alternatively this could come straight from the storage resolver, which could populate the artifact metadata
-        //  in the later parse call with the desired checksum and use that
+        // During a repository scan the checksum is taken from the checksum context of the scanner, so the file
+        //  is read only once, even if other consumers need the SHA-1 too
         String checksumSha1;
         ChecksummedFile checksummedFile = new ChecksummedFile( artifactFile);
         try
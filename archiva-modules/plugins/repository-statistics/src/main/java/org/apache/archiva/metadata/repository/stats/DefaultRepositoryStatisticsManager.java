@@ -19,8 +19,11 @@
  * under the License.
  */
 
+import org.apache.archiva.metadata.QueryParameter;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.repository.MetadataRepository;
 import org.apache.archiva.metadata.repository.MetadataRepositoryException;
+import org.apache.archiva.metadata.repository.MetadataRepositoryListener;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.stats.model.DefaultRepositoryStatistics;
@@ -34,27 +37,44 @@
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- *
+ * Statistics manager, that keeps the totals of the repositories as running counters.
+ * <p>
+ * The counters are updated from the events of the metadata repository. They are set by a walk over the metadata
+ * repository after a restart, after changes, that the events do not describe, and after the reconciliation interval
+ * to correct the drift, e.g. from changes of sessions, that were not saved.
+ * </p>
  */
 @Service("repositoryStatisticsManager#default")
 public class DefaultRepositoryStatisticsManager
-    implements RepositoryStatisticsManager
+    implements RepositoryStatisticsManager, MetadataRepositoryListener
 {
     private static final Logger log = LoggerFactory.getLogger( DefaultRepositoryStatisticsManager.class );
 
     private static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone( "UTC" );
 
+    private static final long DEFAULT_RECONCILIATION_INTERVAL = TimeUnit.HOURS.toMillis( 24 );
+
     private RepositoryWalkingStatisticsProvider walkingProvider = new RepositoryWalkingStatisticsProvider();
 
+    private final Map<String, RepositoryStatisticsCounters> counters = new ConcurrentHashMap<>( );
+
+    private long reconciliationInterval = DEFAULT_RECONCILIATION_INTERVAL;
 
 
     @Inject
@@ -114,21 +134,15 @@ public void addStatisticsAfterScan( String repositoryId, Date startTime,
             repositoryStatistics.setTotalFileCount(totalFiles);
             repositoryStatistics.setNewFileCount(newFiles);
 
-            // TODO
-            // In the future, instead of being tied to a scan we might want to record information in the fly based on
-            // events that are occurring. Even without these totals we could query much of the information on demand based
-            // on information from the metadata content repository. In the mean time, we lock information in at scan time.
-            // Note that if new types are later discoverable due to a code change or new plugin, historical stats will not
-            // be updated and the repository will need to be rescanned.
-
             long startGather = System.currentTimeMillis();
 
-            if (metadataRepository instanceof RepositoryStatisticsProvider) {
-                ((RepositoryStatisticsProvider) metadataRepository).populateStatistics(session,
-                        metadataRepository, repositoryId, repositoryStatistics);
-            } else {
-                walkingProvider.populateStatistics(session, metadataRepository, repositoryId, repositoryStatistics);
+            RepositoryStatisticsCounters repositoryCounters =
+                counters.computeIfAbsent( repositoryId, id -> new RepositoryStatisticsCounters( ) );
+            if ( repositoryCounters.needsReconciliation( reconciliationInterval ) )
+            {
+                reconcile( session, metadataRepository, repositoryId, repositoryCounters );
             }
+            repositoryCounters.populateStatistics( repositoryStatistics );
 
             log.info("Gathering statistics executed in {} ms", (System.currentTimeMillis() - startGather));
 
@@ -144,6 +158,73 @@ public void deleteStatistics( String repositoryId )
             final MetadataRepository metadataRepository = session.getRepository( );
             metadataRepository.removeMetadataFacets(session, repositoryId, DefaultRepositoryStatistics.FACET_ID);
         }
+        counters.remove( repositoryId );
+    }
+
+    /**
+     * Sets the counters of the repository by a walk over the metadata repository.
+     */
+    private void reconcile( RepositorySession session, MetadataRepository metadataRepository, String repositoryId,
+                            RepositoryStatisticsCounters repositoryCounters )
+        throws MetadataRepositoryException
+    {
+        long modifications = repositoryCounters.getModifications( );
+        DefaultRepositoryStatistics walked = new DefaultRepositoryStatistics( );
+        Map<String, Set<String>> projects = new HashMap<>( );
+        if ( metadataRepository instanceof RepositoryStatisticsProvider )
+        {
+            ( (RepositoryStatisticsProvider) metadataRepository ).populateStatistics( session, metadataRepository,
+                repositoryId, walked );
+            walkingProvider.walkProjects( session, metadataRepository, repositoryId,
+                ( ns, nsProjects ) -> projects.put( ns, new HashSet<>( nsProjects ) ) );
+        }
+        else
+        {
+            walkingProvider.populateStatistics( session, metadataRepository, repositoryId, walked,
+                ( ns, nsProjects ) -> projects.put( ns, new HashSet<>( nsProjects ) ) );
+        }
+        repositoryCounters.reconcile( walked, projects, modifications );
+        log.debug( "Reconciled the statistics counters of repository {}", repositoryId );
+    }
+
+    @Override
+    public void artifactUpdated( String repositoryId, ArtifactMetadata previous, ArtifactMetadata artifact )
+    {
+        RepositoryStatisticsCounters repositoryCounters = counters.get( repositoryId );
+        if ( repositoryCounters != null )
+        {
+            repositoryCounters.artifactUpdated( previous, artifact );
+        }
+    }
+
+    @Override
+    public void artifactRemoved( String repositoryId, ArtifactMetadata artifact )
+    {
+        RepositoryStatisticsCounters repositoryCounters = counters.get( repositoryId );
+        if ( repositoryCounters != null )
+        {
+            repositoryCounters.artifactRemoved( artifact );
+        }
+    }
+
+    @Override
+    public void projectRemoved( String repositoryId, String namespace, String projectId )
+    {
+        RepositoryStatisticsCounters repositoryCounters = counters.get( repositoryId );
+        if ( repositoryCounters != null )
+        {
+            repositoryCounters.projectRemoved( namespace, projectId );
+        }
+    }
+
+    @Override
+    public void repositoryChanged( String repositoryId )
+    {
+        RepositoryStatisticsCounters repositoryCounters = counters.get( repositoryId );
+        if ( repositoryCounters != null )
+        {
+            repositoryCounters.markDirty( );
+        }
     }
 
     @Override
@@ -151,28 +232,16 @@ public List<RepositoryStatistics> getStatisticsInRange( String repositoryId,
                                                             Date startTime, Date endTime )
         throws MetadataRepositoryException
     {
+        // the names are the scan timestamps, the end time is included
+        String startName = startTime == null ? null : createNameFormat().format(startTime);
+        String endName = endTime == null ? null : createNameFormat().format(new Date(endTime.getTime() + 1));
         try(RepositorySession session = repositorySessionFactory.createSession()) {
             final MetadataRepository metadataRepository = session.getRepository( );
-            List<RepositoryStatistics> results = new ArrayList<>();
-            List<String> list = metadataRepository.getMetadataFacets(session, repositoryId, DefaultRepositoryStatistics.FACET_ID);
-            Collections.sort(list, Collections.reverseOrder());
-            for (String name : list) {
-                try {
-                    Date date = createNameFormat().parse(name);
-                    if ((startTime == null || !date.before(startTime)) && (endTime == null || !date.after(
-                            endTime))) {
-                        RepositoryStatistics stats =
-                                (RepositoryStatistics) metadataRepository.getMetadataFacet(session,
-                                        repositoryId,
-                                        DefaultRepositoryStatistics.FACET_ID, name);
-                        results.add(stats);
-                    }
-                } catch (ParseException e) {
-                    log.error("Invalid scan result found in the metadata repository: {}", e.getMessage());
-                    // continue and ignore this one
-                }
+            try (Stream<RepositoryStatistics> stream = metadataRepository.getMetadataFacetRangeStream(session,
+                    repositoryId, RepositoryStatistics.class, startName, endName,
+                    new QueryParameter(false, 0, Long.MAX_VALUE))) {
+                return stream.collect(Collectors.toList());
             }
-            return results;
         }
     }
 
@@ -183,6 +252,19 @@ private static SimpleDateFormat createNameFormat()
         return fmt;
     }
 
+    /**
+     * Returns the time in milliseconds, after which the counters of a repository are set again by a walk.
+     */
+    public long getReconciliationInterval( )
+    {
+        return reconciliationInterval;
+    }
+
+    public void setReconciliationInterval( long reconciliationInterval )
+    {
+        this.reconciliationInterval = reconciliationInterval;
+    }
+
     public RepositorySessionFactory getRepositorySessionFactory( )
     {
         return repositorySessionFactory;
@@ -0,0 +1,182 @@
+package org.apache.archiva.metadata.repository.stats;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.metadata.maven.model.MavenArtifactFacet;
+import org.apache.archiva.metadata.model.ArtifactMetadata;
+import org.apache.archiva.metadata.repository.stats.model.RepositoryStatistics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running totals of the artifacts of a single repository.
+ * <p>
+ * The counters are set by a walk over the metadata repository and updated from the events of the metadata
+ * repository afterwards. The group and project counts are derived from the projects, that contain artifacts. A
+ * project is only dropped, if it is removed. If a change cannot be applied, the counters are marked as dirty and
+ * are set again by the next walk.
+ * </p>
+ *
+ * @since 3.0
+ */
+class RepositoryStatisticsCounters
+{
+    private long artifactCount = 0;
+
+    private long artifactFileSize = 0;
+
+    private final Map<String, Long> countForType = new HashMap<>( );
+
+    private final Map<String, Set<String>> projects = new HashMap<>( );
+
+    private long reconciled = 0;
+
+    private long modifications = 0;
+
+    private boolean dirty = true;
+
+    synchronized void artifactUpdated( ArtifactMetadata previous, ArtifactMetadata artifact )
+    {
+        modifications++;
+        String type = getType( artifact );
+        if ( previous == null )
+        {
+            artifactCount++;
+            artifactFileSize += artifact.getSize( );
+            addType( type, 1 );
+        }
+        else
+        {
+            artifactFileSize += artifact.getSize( ) - previous.getSize( );
+            // the type of the previous artifact is unknown, if the store does not return its facets
+            String previousType = getType( previous );
+            if ( previousType != null && type != null && !previousType.equals( type ) )
+            {
+                addType( previousType, -1 );
+                addType( type, 1 );
+            }
+        }
+        projects.computeIfAbsent( artifact.getNamespace( ), ns -> new HashSet<>( ) ).add( artifact.getProject( ) );
+    }
+
+    synchronized void artifactRemoved( ArtifactMetadata artifact )
+    {
+        modifications++;
+        artifactCount--;
+        artifactFileSize -= artifact.getSize( );
+        addType( getType( artifact ), -1 );
+    }
+
+    synchronized void projectRemoved( String namespace, String projectId )
+    {
+        modifications++;
+        Set<String> namespaceProjects = projects.get( namespace );
+        if ( namespaceProjects != null )
+        {
+            namespaceProjects.remove( projectId );
+            if ( namespaceProjects.isEmpty( ) )
+            {
+                projects.remove( namespace );
+            }
+        }
+    }
+
+    synchronized void markDirty( )
+    {
+        modifications++;
+        dirty = true;
+    }
+
+    /**
+     * Returns <code>true</code>, if the counters must be set by a walk.
+     *
+     * @param maxAge the time in milliseconds after the last walk, when the counters are walked again
+     */
+    synchronized boolean needsReconciliation( long maxAge )
+    {
+        return dirty || System.currentTimeMillis( ) - reconciled > maxAge;
+    }
+
+    /**
+     * Returns the number of the changes, that were applied. It is used to detect changes during a walk.
+     */
+    synchronized long getModifications( )
+    {
+        return modifications;
+    }
+
+    /**
+     * Replaces the counters with the result of a walk.
+     *
+     * @param walked         the totals of the walk
+     * @param walkedProjects the projects of the walk by namespace
+     * @param modifications  the number of changes before the walk was started
+     */
+    synchronized void reconcile( RepositoryStatistics walked, Map<String, Set<String>> walkedProjects,
+                                 long modifications )
+    {
+        artifactCount = walked.getTotalArtifactCount( );
+        artifactFileSize = walked.getTotalArtifactFileSize( );
+        countForType.clear( );
+        countForType.putAll( walked.getTotalCountForType( ) );
+        projects.clear( );
+        projects.putAll( walkedProjects );
+        reconciled = System.currentTimeMillis( );
+        // the changes during the walk may be missing in the result or may be counted twice
+        dirty = this.modifications != modifications;
+    }
+
+    synchronized void populateStatistics( RepositoryStatistics statistics )
+    {
+        statistics.setTotalArtifactCount( artifactCount );
+        statistics.setTotalArtifactFileSize( artifactFileSize );
+        for ( Map.Entry<String, Long> entry : countForType.entrySet( ) )
+        {
+            statistics.setTotalCountForType( entry.getKey( ), entry.getValue( ) );
+        }
+        statistics.setTotalGroupCount( projects.size( ) );
+        statistics.setTotalProjectCount( projects.values( ).stream( ).mapToLong( Set::size ).sum( ) );
+    }
+
+    private void addType( String type, long delta )
+    {
+        if ( type != null )
+        {
+            long count = countForType.getOrDefault( type, 0L ) + delta;
+            if ( count > 0 )
+            {
+                countForType.put( type, count );
+            }
+            else
+            {
+                countForType.remove( type );
+            }
+        }
+    }
+
+    private static String getType( ArtifactMetadata artifact )
+    {
+        MavenArtifactFacet facet = (MavenArtifactFacet) artifact.getFacet( MavenArtifactFacet.FACET_ID );
+        return facet == null ? null : facet.getType( );
+    }
+}
@@ -20,14 +20,17 @@
  */
 
 import junit.framework.TestCase;
+import org.apache.archiva.metadata.QueryParameter;
 import org.apache.archiva.metadata.model.ArtifactMetadata;
 import org.apache.archiva.metadata.maven.model.MavenArtifactFacet;
 import org.apache.archiva.metadata.repository.MetadataRepository;
+import org.apache.archiva.metadata.repository.MetadataRepositoryException;
 import org.apache.archiva.metadata.repository.RepositorySession;
 import org.apache.archiva.metadata.repository.RepositorySessionFactory;
 import org.apache.archiva.metadata.repository.stats.model.DefaultRepositoryStatistics;
 import org.apache.archiva.metadata.repository.stats.model.RepositoryStatistics;
 import org.apache.archiva.test.utils.ArchivaBlockJUnit4ClassRunner;
+import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +40,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -224,7 +228,8 @@ public void testAddNewStats()
     public void testDeleteStats()
         throws Exception
     {
-        walkRepository( 2 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
 
@@ -273,6 +278,68 @@ public void testDeleteStats()
         metadataRepositoryControl.verify();
     }
 
+    @Test
+    public void testStatsAreUpdatedFromEvents()
+        throws Exception
+    {
+        walkRepository( 2 );
+
+        Date current = new Date();
+
+        sessionControl.reset();
+        factoryControl.reset();
+        expect( repositorySessionFactory.createSession( ) ).andStubReturn( session );
+        expect( session.getRepository() ).andStubReturn( metadataRepository );
+        session.close();
+        expectLastCall( ).anyTimes( );
+        factoryControl.replay();
+        sessionControl.replay();
+
+        DefaultRepositoryStatistics stats1 =
+            createTestStats( new Date( current.getTime() - 12345 ), new Date( current.getTime() - 6000 ) );
+        metadataRepository.addMetadataFacet( session, TEST_REPO_ID, stats1 );
+
+        DefaultRepositoryStatistics stats2 =
+            createTestStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
+        stats2.setTotalArtifactFileSize( 20 * 12345L + 100 );
+        stats2.setTotalProjectCount( 5 );
+        stats2.setTotalGroupCount( 3 );
+        stats2.setTotalCountForType( "jar", 11 );
+        stats2.setTotalCountForType( "pom", 9 );
+        metadataRepository.addMetadataFacet( session, TEST_REPO_ID, stats2 );
+
+        DefaultRepositoryStatistics stats3 = createTestStats( new Date( current.getTime() - 1000 ), current );
+        metadataRepository.addMetadataFacet( session, TEST_REPO_ID, stats3 );
+
+        metadataRepositoryControl.replay();
+
+        repositoryStatisticsManager.addStatisticsAfterScan( TEST_REPO_ID, stats1.getScanStartTime(),
+                                                            stats1.getScanEndTime(), 56345, 45 );
+
+        repositoryStatisticsManager.artifactUpdated( TEST_REPO_ID, null,
+                                                     createArtifact( "org.apache.archiva", "archiva-new", "1.0",
+                                                                     "jar" ) );
+        ArtifactMetadata updated = createArtifact( "com.example", "example-project", "1.0", "jar" );
+        updated.setSize( 12445L );
+        repositoryStatisticsManager.artifactUpdated( TEST_REPO_ID,
+                                                     createArtifact( "com.example", "example-project", "1.0",
+                                                                     "jar" ), updated );
+        repositoryStatisticsManager.artifactRemoved( TEST_REPO_ID,
+                                                     createArtifact( "org.codehaus.plexus", "plexus-spring", "1.2",
+                                                                     "pom" ) );
+        repositoryStatisticsManager.projectRemoved( TEST_REPO_ID, "org.apache.maven", "maven-model" );
+
+        repositoryStatisticsManager.addStatisticsAfterScan( TEST_REPO_ID, stats2.getScanStartTime(),
+                                                            stats2.getScanEndTime(), 56345, 45 );
+
+        // the counters are walked again
+        repositoryStatisticsManager.repositoryChanged( TEST_REPO_ID );
+        repositoryStatisticsManager.addStatisticsAfterScan( TEST_REPO_ID, stats3.getScanStartTime(),
+                                                            stats3.getScanEndTime(), 56345, 45 );
+
+        metadataRepositoryControl.verify();
+    }
+
     @Test
     public void testDeleteStatsWhenEmpty()
         throws Exception
@@ -305,7 +372,8 @@ public void testDeleteStatsWhenEmpty()
     public void testGetStatsRangeInside()
         throws Exception
     {
-        walkRepository( 3 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
 
@@ -323,16 +391,7 @@ public void testGetStatsRangeInside()
         addStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
         addStats( new Date( current.getTime() - 1000 ), current );
 
-        ArrayList<String> keys = new ArrayList<>( statsCreated.keySet() );
-
-        expect( metadataRepository.getMetadataFacets(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID ) ).andReturn( keys );
-
-        // only match the middle one
-        String key = keys.get( 1 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-
+        expectRangeQuery( new ArrayList<>( statsCreated.values() ) );
 
         metadataRepositoryControl.replay();
 
@@ -358,7 +417,8 @@ public void testGetStatsRangeInside()
     public void testGetStatsRangeUpperOutside()
         throws Exception
     {
-        walkRepository( 3 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
 
@@ -375,21 +435,7 @@ public void testGetStatsRangeUpperOutside()
         addStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
         addStats( new Date( current.getTime() - 1000 ), current );
 
-        List<String> keys = new ArrayList<>( statsCreated.keySet() );
-
-        expect( metadataRepository.getMetadataFacets(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID ) ).andReturn( keys );
-
-        String key = keys.get( 1 );
-
-        expect( metadataRepository.getMetadataFacet(session, TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-
-        key = keys.get( 2 );
-
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-
+        expectRangeQuery( new ArrayList<>( statsCreated.values() ) );
 
         metadataRepositoryControl.replay();
 
@@ -415,7 +461,8 @@ public void testGetStatsRangeUpperOutside()
     public void testGetStatsRangeLowerOutside()
         throws Exception
     {
-        walkRepository( 3 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
 
@@ -432,18 +479,7 @@ public void testGetStatsRangeLowerOutside()
         addStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
         addStats( new Date( current.getTime() - 1000 ), current );
 
-        List<String> keys = new ArrayList<>( statsCreated.keySet() );
-
-        expect( metadataRepository.getMetadataFacets(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID ) ).andReturn( keys );
-
-        String key = keys.get( 0 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-        key = keys.get( 1 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
+        expectRangeQuery( new ArrayList<>( statsCreated.values() ) );
 
         metadataRepositoryControl.replay();
 
@@ -470,7 +506,8 @@ public void testGetStatsRangeLowerOutside()
     public void testGetStatsRangeLowerAndUpperOutside()
         throws Exception
     {
-        walkRepository( 3 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
 
@@ -487,22 +524,7 @@ public void testGetStatsRangeLowerAndUpperOutside()
         addStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
         addStats( new Date( current.getTime() - 1000 ), current );
 
-        ArrayList<String> keys = new ArrayList<>( statsCreated.keySet() );
-
-        expect( metadataRepository.getMetadataFacets(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID ) ).andReturn( keys );
-
-        String key = keys.get( 0 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-        key = keys.get( 1 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
-        key = keys.get( 2 );
-
-        expect( metadataRepository.getMetadataFacet(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID, key ) ).andReturn(
-            statsCreated.get( key ) );
+        expectRangeQuery( new ArrayList<>( statsCreated.values() ) );
 
         metadataRepositoryControl.replay();
 
@@ -529,7 +551,8 @@ public void testGetStatsRangeLowerAndUpperOutside()
     public void testGetStatsRangeNotInside()
         throws Exception
     {
-        walkRepository( 3 );
+        // the repository is walked only for the first scan
+        walkRepository( 1 );
 
         Date current = new Date();
         sessionControl.reset();
@@ -545,9 +568,7 @@ public void testGetStatsRangeNotInside()
         addStats( new Date( current.getTime() - 3000 ), new Date( current.getTime() - 2000 ) );
         addStats( new Date( current.getTime() - 1000 ), current );
 
-        ArrayList<String> keys = new ArrayList<>( statsCreated.keySet() );
-
-        expect( metadataRepository.getMetadataFacets(session , TEST_REPO_ID, DefaultRepositoryStatistics.FACET_ID ) ).andReturn( keys );
+        expectRangeQuery( new ArrayList<>( statsCreated.values() ) );
 
         metadataRepositoryControl.replay();
 
@@ -568,6 +589,32 @@ public void testGetStatsRangeNotInside()
         metadataRepositoryControl.verify();
     }
 
+    /**
+     * Expects a range query for the statistics and answers it like the metadata store, i.e. the statistics are
+     * filtered by the name range and the sort order, offset and limit of the query are applied.
+     */
+    private void expectRangeQuery( List<RepositoryStatistics> statistics )
+        throws MetadataRepositoryException
+    {
+        expect( metadataRepository.getMetadataFacetRangeStream( eq( session ), eq( TEST_REPO_ID ),
+                                                                eq( RepositoryStatistics.class ),
+                                                                EasyMock.<String>anyObject(),
+                                                                EasyMock.<String>anyObject(),
+                                                                anyObject( QueryParameter.class ) ) ).andAnswer( () -> {
+            Object[] arguments = getCurrentArguments();
+            String startName = (String) arguments[3];
+            String endName = (String) arguments[4];
+            QueryParameter queryParameter = (QueryParameter) arguments[5];
+            Comparator<RepositoryStatistics> order = Comparator.comparing( RepositoryStatistics::getName );
+            return statistics.stream()
+                .filter( stats -> startName == null || stats.getName().compareTo( startName ) >= 0 )
+                .filter( stats -> endName == null || stats.getName().compareTo( endName ) < 0 )
+                .sorted( queryParameter.isAscending() ? order : order.reversed() )
+                .skip( queryParameter.getOffset() )
+                .limit( queryParameter.getLimit() );
+        } );
+    }
+
     private void addStats( Date startTime, Date endTime )
         throws Exception
     {